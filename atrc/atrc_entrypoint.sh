@@ -21,6 +21,13 @@ PLANS_CRS=$inputs_PLANS_CRS_value
 ACTIVITY_CONFIG=$inputs_ACTIVITY_CONFIG_path
 LINK_STATS=$inputs_LINK_STATS_value
 ITERATIONS_MAX=$inputs_ITERATIONS_MAX_value
+PROFILE=$inputs_PROFILE_value
+CAR_ROUTING=$inputs_CAR_ROUTING_value
+# JVM overrides, when absent these are derived from the container limits and input sizes
+JVM_HEAP=$inputs_JVM_HEAP_value
+JVM_GC=$inputs_JVM_GC_value
+JVM_XSS=$inputs_JVM_XSS_value
+JVM_OPTS=$inputs_JVM_OPTS_value
 # Probably want to add some other test cases / other parameters.yamls to fill these out
 
 PARAMS=""
@@ -34,8 +41,13 @@ PARAMS=""
 [ ! -z "$LINK_STATS" ] && PARAMS="${PARAMS} --link_stats ${LINK_STATS}"
 [ ! -z "$ITERATIONS_MAX" ] && PARAMS="${PARAMS} --iterations_max ${ITERATIONS_MAX}"
 [ ! -z "$OUTPUT" ] && PARAMS="${PARAMS} --output ${OUTPUT}"
+[ ! -z "$PROFILE" ] && PARAMS="${PARAMS} --profile ${PROFILE}"
+[ ! -z "$CAR_ROUTING" ] && PARAMS="${PARAMS} --car_routing ${CAR_ROUTING}"
+
+# heap, gc and thread stack settings for this container and these inputs, see jvm_options.sh
+. /jvm_options.sh
 
 # run a simulation, e.g. --type simulation, rather than creating a (custom) MATSim config file
-CALL_STR="java -jar /app/jar/planit-aurin-matsim-${VERSION}.jar --type simulation ${PARAMS}"
+CALL_STR="java ${JAVA_OPTS} -jar /app/jar/planit-aurin-matsim-${VERSION}.jar --type simulation ${PARAMS}"
 echo $CALL_STR
 eval $CALL_STR
\ No newline at end of file
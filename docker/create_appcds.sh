@@ -0,0 +1,113 @@
+#!/bin/sh
+
+# ------------------------------------------------------------------------------------------
+# Create an AppCDS (application class data sharing) archive for the PLANit AURIN MATSim wrapper
+# fat jar, trained on the Melbourne test scenario, and measure the startup gain it yields.
+#
+# usage: create_appcds.sh <fat jar> <Melbourne resources dir> <archive file>
+#
+# The archive is only valid for the JVM that created it, so it must be created with the same
+# java installation that runs the jar (i.e. inside the runtime image, not the maven build image).
+# Java 11 does not support dynamic archiving, so we use the static two step approach:
+#   1. training runs with -XX:DumpLoadedClassList collect the classes that are loaded
+#   2. -Xshare:dump creates the archive from the collected class list
+#
+# Training covers --type default_config, --type config (car with pt teleportation, so the pt
+# matrix router classes are loaded) and a single iteration --type simulation on the coarse
+# appcds_training_network.xml shipped with the Melbourne resources. A failing training run
+# aborts the script, since the archive would otherwise silently miss the classes of that run.
+# Next to the archive a <archive>.report.txt is written with the measured startup of
+# --type default_config with and without the archive.
+# ------------------------------------------------------------------------------------------
+
+JAR=$1
+MELBOURNE=$2
+ARCHIVE=$3
+
+if [ -z "$JAR" ] || [ -z "$MELBOURNE" ] || [ -z "$ARCHIVE" ] || [ ! -f "$JAR" ]; then
+  echo "usage: create_appcds.sh <fat jar> <Melbourne resources dir> <archive file>"
+  exit 1
+fi
+
+# number of timed runs per variant, the fastest run is reported to reduce noise
+TIMED_RUNS=3
+WORK_DIR=$(mktemp -d)
+CLASS_LIST=${WORK_DIR}/classes.lst
+REPORT=${ARCHIVE}.report.txt
+
+# elapsed time in milliseconds based on /proc/uptime, works with busybox as well
+now_ms() {
+  awk '{printf "%d", $1 * 1000}' /proc/uptime
+}
+
+# fastest of TIMED_RUNS --type default_config invocations in ms, for the given JVM options
+time_startup() {
+  best=""
+  run=0
+  while [ $run -lt $TIMED_RUNS ]; do
+    start=$(now_ms)
+    java $1 -jar "$JAR" --type default_config --output "${WORK_DIR}/timing" > /dev/null 2>&1
+    elapsed=$(( $(now_ms) - start ))
+    if [ -z "$best" ] || [ $elapsed -lt $best ]; then
+      best=$elapsed
+    fi
+    run=$(( run + 1 ))
+  done
+  echo $best
+}
+
+# abort with an error message
+fail() {
+  echo "[AppCDS] ERROR: $1"
+  exit 1
+}
+
+# a single training run, its loaded classes are appended to the class list
+train() {
+  name=$1
+  shift
+  echo "[AppCDS] training run: ${name}"
+  java -Xshare:off -XX:DumpLoadedClassList="${WORK_DIR}/${name}.lst" -jar "$JAR" "$@" --output "${WORK_DIR}/${name}" > "${WORK_DIR}/${name}.log" 2>&1 \
+    || fail "training run ${name} failed, see ${WORK_DIR}/${name}.log"
+  [ -s "${WORK_DIR}/${name}.lst" ] || fail "training run ${name} did not record any loaded classes"
+  cat "${WORK_DIR}/${name}.lst" >> "${CLASS_LIST}.all"
+}
+
+mkdir -p "${WORK_DIR}/timing" "$(dirname "$ARCHIVE")"
+
+train default_config --type default_config
+
+train config --type config --modes car_sim_pt_teleport --crs epsg:3112 \
+  --plans "${MELBOURNE}/plans_victoria_car.xml" --plans_crs epsg:3112 \
+  --activity_config "${MELBOURNE}/activity_config.xml" \
+  --pt_stops_csv "${MELBOURNE}/melbourne_coarse_ptstops.csv" --iterations_max 1
+
+NETWORK="${MELBOURNE}/appcds_training_network.xml"
+[ -f "$NETWORK" ] || fail "training network ${NETWORK} not available"
+train simulation --type simulation --modes car_sim --crs epsg:3112 \
+  --network "$NETWORK" --network_crs epsg:3112 \
+  --plans "${MELBOURNE}/plans_victoria_car.xml" --plans_crs epsg:3112 \
+  --activity_config "${MELBOURNE}/activity_config.xml" --iterations_max 1
+[ -d "${WORK_DIR}/simulation/ITERS" ] || fail "training run simulation did not simulate any iteration, see ${WORK_DIR}/simulation.log"
+
+sort -u "${CLASS_LIST}.all" > "$CLASS_LIST"
+echo "[AppCDS] archiving $(wc -l < "$CLASS_LIST") classes in ${ARCHIVE}"
+java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" > "${WORK_DIR}/dump.log" 2>&1
+if [ ! -f "$ARCHIVE" ]; then
+  fail "unable to create archive, see ${WORK_DIR}/dump.log"
+fi
+
+WITHOUT_MS=$(time_startup "-Xshare:auto")
+WITH_MS=$(time_startup "-XX:SharedArchiveFile=${ARCHIVE} -Xshare:auto")
+{
+  echo "PLANit AURIN MATSim AppCDS report"
+  echo "java: $(java -version 2>&1 | head -n 1)"
+  echo "archived classes: $(wc -l < "$CLASS_LIST")"
+  echo "archive size: $(du -k "$ARCHIVE" | cut -f1) KB"
+  echo "--type default_config without archive: ${WITHOUT_MS} ms (fastest of ${TIMED_RUNS})"
+  echo "--type default_config with archive:    ${WITH_MS} ms (fastest of ${TIMED_RUNS})"
+  echo "startup gain: $(( WITHOUT_MS - WITH_MS )) ms"
+} > "$REPORT"
+cat "$REPORT"
+
+rm -rf "$WORK_DIR"
@@ -0,0 +1,187 @@
+#!/bin/sh
+
+# ------------------------------------------------------------------------------------------
+# Derive the JVM heap, garbage collector and thread stack settings for the PLANit AURIN MATSim
+# wrapper from the container's memory/cpu limits and the size of the network and plans inputs.
+# The maximum heap is the heap estimated for the inputs with headroom, bounded by the container
+# limit, the initial heap is the estimate itself so small runs do not commit memory up front.
+#
+# To be sourced (. ./jvm_options.sh) by the launcher of the image, after which JAVA_OPTS holds
+# the options to pass to java. POSIX sh so it works for both the bash (ATRC) and busybox sh
+# (docker/simulation) based launchers.
+#
+# Each choice can be overridden by setting the following variables before sourcing this script
+# (ATRC: via parameters.yaml, see atrc/README.md, docker: via -e):
+#
+#   JVM_HEAP   heap size in java notation, e.g. 12g or 4096m
+#   JVM_GC     one of [g1, zgc, parallel]
+#   JVM_XSS    thread stack size in java notation, e.g. 1m
+#   JVM_OPTS   any additional JVM options, appended last so they take precedence
+#   JVM_CDS_ARCHIVE  AppCDS archive to use when present, see create_appcds.sh, default /app/jar/planit-aurin-matsim.jsa
+#
+# Inputs used when present: NETWORK, PLANS (paths to the input files)
+# ------------------------------------------------------------------------------------------
+
+# memory held back from the heap for metaspace, code cache, thread stacks and direct buffers (MB)
+JVM_MIN_NON_HEAP_MB=512
+# fraction (percentage) of the container memory the heap may take at most
+JVM_MAX_HEAP_PCT=80
+# heap required on top of the inputs for MATSim and the wrapper itself (MB)
+JVM_BASE_HEAP_MB=512
+# in-memory size of the MATSim network and population relative to their (uncompressed) xml size
+JVM_NETWORK_XML_FACTOR=3
+JVM_PLANS_XML_FACTOR=4
+# assumed compression ratio of gzipped inputs
+JVM_GZ_RATIO=10
+# headroom (percentage) on top of the estimated heap need, for replanning and garbage collection
+JVM_HEAP_HEADROOM_PCT=150
+# smallest heap (MB) ever chosen
+JVM_MIN_HEAP_MB=256
+# heap (MB) from which G1 is preferred over the throughput (parallel) collector
+JVM_G1_THRESHOLD_MB=8192
+
+# container memory limit in MB, cgroup v2, then cgroup v1, then physical memory
+jvm_container_memory_mb() {
+  limit=""
+  if [ -r /sys/fs/cgroup/memory.max ]; then
+    limit=$(cat /sys/fs/cgroup/memory.max)
+    [ "$limit" = "max" ] && limit=""
+  elif [ -r /sys/fs/cgroup/memory/memory.limit_in_bytes ]; then
+    limit=$(cat /sys/fs/cgroup/memory/memory.limit_in_bytes)
+    # unlimited cgroup v1 reports a value close to 2^63
+    [ ${#limit} -ge 19 ] && limit=""
+  fi
+  if [ -n "$limit" ]; then
+    echo $(( limit / 1048576 ))
+  else
+    echo $(( $(awk '/MemTotal/ {print $2}' /proc/meminfo) / 1024 ))
+  fi
+}
+
+# container cpu limit (rounded up), cgroup v2, then cgroup v1, then available processors
+jvm_container_cpus() {
+  quota=""
+  period=""
+  if [ -r /sys/fs/cgroup/cpu.max ]; then
+    read quota period < /sys/fs/cgroup/cpu.max
+    [ "$quota" = "max" ] && quota=""
+  elif [ -r /sys/fs/cgroup/cpu/cpu.cfs_quota_us ]; then
+    quota=$(cat /sys/fs/cgroup/cpu/cpu.cfs_quota_us)
+    period=$(cat /sys/fs/cgroup/cpu/cpu.cfs_period_us)
+    [ "$quota" -le 0 ] && quota=""
+  fi
+  if [ -n "$quota" ] && [ -n "$period" ] && [ "$period" -gt 0 ]; then
+    echo $(( (quota + period - 1) / period ))
+  else
+    nproc
+  fi
+}
+
+# uncompressed size estimate of an input file in MB, 0 if absent
+jvm_input_size_mb() {
+  if [ -z "$1" ] || [ ! -f "$1" ]; then
+    echo 0
+    return
+  fi
+  size_kb=$(du -k "$1" | cut -f1)
+  case "$1" in
+    *.gz) size_kb=$(( size_kb * JVM_GZ_RATIO ));;
+  esac
+  echo $(( size_kb / 1024 ))
+}
+
+# size in MB of a value in java notation (e.g. 12g, 4096m, 1048576k, or bytes)
+jvm_size_mb() {
+  case "$1" in
+    *[tT]) echo $(( ${1%?} * 1048576 ));;
+    *[gG]) echo $(( ${1%?} * 1024 ));;
+    *[mM]) echo $(( ${1%?} ));;
+    *[kK]) echo $(( ${1%?} / 1024 ));;
+    *)     echo $(( $1 / 1048576 ));;
+  esac
+}
+
+JVM_CONTAINER_MB=$(jvm_container_memory_mb)
+JVM_CPUS=$(jvm_container_cpus)
+[ "$JVM_CPUS" -lt 1 ] && JVM_CPUS=1
+JVM_NETWORK_MB=$(jvm_input_size_mb "$NETWORK")
+JVM_PLANS_MB=$(jvm_input_size_mb "$PLANS")
+
+# ---- HEAP ----
+JVM_HEAP_LIMIT_MB=$(( JVM_CONTAINER_MB * JVM_MAX_HEAP_PCT / 100 ))
+[ $(( JVM_CONTAINER_MB - JVM_HEAP_LIMIT_MB )) -lt $JVM_MIN_NON_HEAP_MB ] && JVM_HEAP_LIMIT_MB=$(( JVM_CONTAINER_MB - JVM_MIN_NON_HEAP_MB ))
+[ $JVM_HEAP_LIMIT_MB -lt $JVM_MIN_HEAP_MB ] && JVM_HEAP_LIMIT_MB=$JVM_MIN_HEAP_MB
+JVM_HEAP_NEEDED_MB=$(( JVM_BASE_HEAP_MB + JVM_NETWORK_MB * JVM_NETWORK_XML_FACTOR + JVM_PLANS_MB * JVM_PLANS_XML_FACTOR ))
+# initial heap, only committed up front when actually needed by the inputs, the heap grows beyond it on demand
+JVM_HEAP_INITIAL_MB=""
+if [ -n "$JVM_HEAP" ]; then
+  JVM_HEAP_CHOICE=$JVM_HEAP
+  JVM_HEAP_MB=$(jvm_size_mb "$JVM_HEAP")
+  JVM_HEAP_SOURCE="override"
+else
+  # the inputs' need with headroom, bounded by what the container allows rather than the JVM default of 25%
+  JVM_HEAP_MB=$(( JVM_HEAP_NEEDED_MB * JVM_HEAP_HEADROOM_PCT / 100 ))
+  JVM_HEAP_SOURCE="input sizes"
+  if [ $JVM_HEAP_MB -gt $JVM_HEAP_LIMIT_MB ]; then
+    JVM_HEAP_MB=$JVM_HEAP_LIMIT_MB
+    JVM_HEAP_SOURCE="container limit"
+  fi
+  [ $JVM_HEAP_MB -lt $JVM_MIN_HEAP_MB ] && JVM_HEAP_MB=$JVM_MIN_HEAP_MB
+  JVM_HEAP_CHOICE="${JVM_HEAP_MB}m"
+  JVM_HEAP_INITIAL_MB=$JVM_HEAP_NEEDED_MB
+  [ $JVM_HEAP_INITIAL_MB -gt $JVM_HEAP_MB ] && JVM_HEAP_INITIAL_MB=$JVM_HEAP_MB
+  if [ $JVM_HEAP_NEEDED_MB -gt $JVM_HEAP_LIMIT_MB ]; then
+    echo "[JVM] WARNING: estimated heap need of ${JVM_HEAP_NEEDED_MB}m for the inputs exceeds the ${JVM_HEAP_LIMIT_MB}m available in this container, consider a larger container or --plans_sample"
+  fi
+fi
+
+# ---- GC ----
+JVM_GC_SOURCE="heap size"
+if [ -n "$JVM_GC" ]; then
+  JVM_GC_CHOICE=$JVM_GC
+  JVM_GC_SOURCE="override"
+elif [ $JVM_HEAP_MB -ge $JVM_G1_THRESHOLD_MB ] && [ $JVM_CPUS -ge 2 ]; then
+  JVM_GC_CHOICE=g1
+else
+  JVM_GC_CHOICE=parallel
+fi
+case "$JVM_GC_CHOICE" in
+  g1)       JVM_GC_OPTS="-XX:+UseG1GC -XX:+UseStringDeduplication";;
+  # ZGC is experimental on java 11
+  zgc)      JVM_GC_OPTS="-XX:+UnlockExperimentalVMOptions -XX:+UseZGC";;
+  parallel) JVM_GC_OPTS="-XX:+UseParallelGC";;
+  *)
+    echo "[JVM] WARNING: unknown JVM_GC value ${JVM_GC_CHOICE}, using parallel"
+    JVM_GC_CHOICE=parallel
+    JVM_GC_OPTS="-XX:+UseParallelGC";;
+esac
+
+# ---- THREAD STACKS ----
+JVM_XSS_SOURCE="container limit"
+if [ -n "$JVM_XSS" ]; then
+  JVM_XSS_CHOICE=$JVM_XSS
+  JVM_XSS_SOURCE="override"
+elif [ $JVM_CONTAINER_MB -lt 2048 ]; then
+  JVM_XSS_CHOICE=512k
+else
+  JVM_XSS_CHOICE=1m
+fi
+
+# ---- CLASS DATA SHARING ----
+# Xshare:auto silently falls back to regular class loading should the archive not match the JVM
+JVM_CDS_ARCHIVE=${JVM_CDS_ARCHIVE:-/app/jar/planit-aurin-matsim.jsa}
+JVM_CDS_OPTS=""
+JVM_CDS_CHOICE="none"
+if [ -f "$JVM_CDS_ARCHIVE" ]; then
+  JVM_CDS_OPTS="-XX:SharedArchiveFile=${JVM_CDS_ARCHIVE} -Xshare:auto"
+  JVM_CDS_CHOICE=$JVM_CDS_ARCHIVE
+fi
+
+JVM_HEAP_OPTS="-Xmx${JVM_HEAP_CHOICE}"
+[ -n "$JVM_HEAP_INITIAL_MB" ] && JVM_HEAP_OPTS="-Xms${JVM_HEAP_INITIAL_MB}m ${JVM_HEAP_OPTS}"
+
+JAVA_OPTS="${JVM_HEAP_OPTS} ${JVM_GC_OPTS} -XX:ParallelGCThreads=${JVM_CPUS} -XX:ActiveProcessorCount=${JVM_CPUS} -Xss${JVM_XSS_CHOICE} -XX:+ExitOnOutOfMemoryError ${JVM_CDS_OPTS} ${JVM_OPTS}"
+
+echo "[JVM] container memory: ${JVM_CONTAINER_MB}m, cpus: ${JVM_CPUS}, network: ~${JVM_NETWORK_MB}m, plans: ~${JVM_PLANS_MB}m"
+echo "[JVM] heap: ${JVM_HEAP_CHOICE} (${JVM_HEAP_SOURCE}), gc: ${JVM_GC_CHOICE} (${JVM_GC_SOURCE}), thread stack: ${JVM_XSS_CHOICE} (${JVM_XSS_SOURCE}), AppCDS archive: ${JVM_CDS_CHOICE}"
+echo "[JVM] options: ${JAVA_OPTS}"
@@ -1,29 +1,72 @@
 package org.goplanit.aurin.matsim;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.contrib.matrixbasedptrouter.MatrixBasedPtRouterConfigGroup;
 import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigReader;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.misc.Time;
 
+import org.goplanit.aurin.matsim.baserun.BaseRun;
+import org.goplanit.aurin.matsim.baserun.BaseRunRerouter;
+import org.goplanit.aurin.matsim.baserun.BaseRunTravelTimes;
+import org.goplanit.aurin.matsim.baserun.NetworkDiff;
+import org.goplanit.aurin.matsim.checkpoint.Checkpoint;
+import org.goplanit.aurin.matsim.estimate.RunEstimate;
+import org.goplanit.aurin.matsim.estimate.RunEstimator;
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.goplanit.aurin.matsim.profiling.BaseRunRerouteEvent;
+import org.goplanit.aurin.matsim.profiling.ConfigBuildEvent;
+import org.goplanit.aurin.matsim.profiling.InputValidationEvent;
+import org.goplanit.aurin.matsim.profiling.NetworkCleanEvent;
+import org.goplanit.aurin.matsim.profiling.NetworkSimplifyEvent;
+import org.goplanit.aurin.matsim.network.NetworkChainSimplifier;
+import org.goplanit.aurin.matsim.network.PlanitNetworkConverter;
+import org.goplanit.aurin.matsim.plans.PlansCollapser;
+import org.goplanit.aurin.matsim.plans.PlansTimeWindowFilter;
+import org.goplanit.aurin.matsim.plans.SampleSchedule;
+import org.goplanit.aurin.matsim.profiling.PlansCollapseEvent;
+import org.goplanit.aurin.matsim.profiling.PlansSamplingEvent;
+import org.goplanit.aurin.matsim.profiling.PlansTimeFilterEvent;
+import org.goplanit.aurin.matsim.profiling.PtMatrixBuildEvent;
+import org.goplanit.aurin.matsim.profiling.RunEstimateEvent;
+import org.goplanit.aurin.matsim.profiling.StudyAreaCropEvent;
+import org.goplanit.aurin.matsim.pt.PtStopsDeduplicator;
+import org.goplanit.aurin.matsim.skim.SkimZones;
+import org.goplanit.aurin.matsim.studyarea.StudyArea;
+import org.goplanit.aurin.matsim.studyarea.StudyAreaCropper;
+import org.goplanit.aurin.matsim.validation.InputValidator;
+import org.goplanit.aurin.matsim.validation.ValidationReport;
+import org.goplanit.network.MacroscopicNetwork;
 import org.goplanit.utils.exceptions.PlanItException;
 import org.goplanit.utils.math.Precision;
 import org.goplanit.utils.misc.StringUtils;
-import org.goplanit.utils.misc.UriUtils;
-import org.goplanit.utils.resource.ResourceUtils;
 import org.goplanit.utils.unit.Unit;
 
 /**
@@ -48,6 +91,9 @@ public class MatsimHelper {
   
   /** the default name for a MATSim configuration file*/
   public static final String DEFAULT_MATSIM_CONFIG_FILE = "config.xml";
+  
+  /** configuration templates read from the classpath, cached once per JVM */
+  private static final Map<String, byte[]> CONFIG_TEMPLATE_CACHE = new ConcurrentHashMap<>();
     
   //----------------------------------------------------
   //-------- OUTPUT_PATH ---------------------------
@@ -75,12 +121,15 @@ public class MatsimHelper {
   /** Value reflecting the need to conduct a MATSim simulation run*/
   public static final String TYPE_SIMULATION_VALUE = "simulation";    
   
+  /** Value reflecting the need to only estimate the heap and runtime of a MATSim simulation run*/
+  public static final String TYPE_ESTIMATE_VALUE = "estimate";
+  
   //----------------------------------------------------
   //-------- MODES -------------------------------------
   //----------------------------------------------------  
   
   /** the string representation used in MATSim for the mode car */
-  protected static String MATSIM_CAR_MODE = "car";
+  protected static final String MATSIM_CAR_MODE = "car";
   
   /** Key reflecting the modes to use in simulation */
   public static final String MODES_KEY = "modes";
@@ -104,7 +153,7 @@ public class MatsimHelper {
   //----------------------------------------------------  
   
   /** the string representation used in MATSim to convert all geo locations to in the output (when not set by the user). Default is WGS84*/
-  protected static String MATSIM_DEFAULT_GLOBAL_CRS = "EPSG:4326";
+  protected static final String MATSIM_DEFAULT_GLOBAL_CRS = "EPSG:4326";
   
   /** Key reflecting the CRS to use in simulation */
   public static final String CRS_KEY = "crs";  
@@ -114,7 +163,7 @@ public class MatsimHelper {
   //----------------------------------------------------  
   
   /** the default network file name in MATSim*/
-  protected static String MATSIM_DEFAULT_NETWORK = "network.xml";  
+  protected static final String MATSIM_DEFAULT_NETWORK = "network.xml";  
   
   /** Key reflecting the network file location */
   public static final String NETWORK_KEY = "network";
@@ -133,14 +182,23 @@ public class MatsimHelper {
   
   /** the default setting for cleaning the network on the fly (no). It is disabled because
    * we assume this has been done during parsing already */
-  protected static String DEFAULT_NETWORK_CLEAN = NETWORK_CLEAN_NO_VALUE;  
+  protected static final String DEFAULT_NETWORK_CLEAN = NETWORK_CLEAN_NO_VALUE;  
+  
+  /** Key reflecting the simplification of the network by merging chains of links through degree two nodes */
+  public static final String NETWORK_SIMPLIFY_KEY = "network_simplify";
+  
+  /** value indicating we should not simplify the network */
+  public static final String NETWORK_SIMPLIFY_NO_VALUE = "no";
+  
+  /** value indicating we should simplify the network */
+  public static final String NETWORK_SIMPLIFY_YES_VALUE = "yes";
   
   //----------------------------------------------------
   //-------- PLANS --------------------------------------
   //----------------------------------------------------  
   
   /** the default network file name in MATSim*/
-  protected static String MATSIM_DEFAULT_PLANS = "plans.xml";
+  protected static final String MATSIM_DEFAULT_PLANS = "plans.xml";
   
   /** Key reflecting the plan file location */
   public static final String PLANS_KEY = "plans";
@@ -153,16 +211,52 @@ public class MatsimHelper {
   
   /** Key reflecting the default plan sample population percentage to use (1=100%)*/
   public static final String PLANS_SAMPLE_DEFAULT = "1";  
+  
+  /** Key reflecting the filtering of plans to the --starttime/--endtime window before the population is loaded */
+  public static final String PLANS_TIME_FILTER_KEY = "plans_time_filter";
+  
+  /** value indicating plans are not filtered to the time window */
+  public static final String PLANS_TIME_FILTER_NO_VALUE = "no";
+  
+  /** value indicating plans are filtered to the time window */
+  public static final String PLANS_TIME_FILTER_YES_VALUE = "yes";
+  
+  /** Key reflecting the collapsing of persons with identical plans into weighted agent groups */
+  public static final String PLANS_COLLAPSE_KEY = "plans_collapse";
+  
+  /** value indicating plans are not collapsed */
+  public static final String PLANS_COLLAPSE_NO_VALUE = "no";
+  
+  /** value indicating plans are collapsed */
+  public static final String PLANS_COLLAPSE_YES_VALUE = "yes";
+  
+  /** Key reflecting the maximum number of persons represented by a single agent group */
+  public static final String PLANS_COLLAPSE_MAX_KEY = "plans_collapse_max";
+  
+  /** Default maximum number of persons represented by a single agent group */
+  public static final int DEFAULT_PLANS_COLLAPSE_MAX = 10;
+  
+  /** Key reflecting the maximum number of plans kept per agent during replanning */
+  public static final String PLANS_MEMORY_KEY = "plans_memory";
+  
+  /** Key reflecting the compaction of the routes of non-selected plans */
+  public static final String PLANS_COMPACT_KEY = "plans_compact";
+  
+  /** value indicating routes of non-selected plans are not compacted */
+  public static final String PLANS_COMPACT_NO_VALUE = "no";
+  
+  /** value indicating routes of non-selected plans are compacted */
+  public static final String PLANS_COMPACT_YES_VALUE = "yes";
+  
+  /** Key reflecting the schedule of the active share of the population per iteration */
+  public static final String PLANS_SAMPLE_SCHEDULE_KEY = "plans_sample_schedule";
     
   //----------------------------------------------------
   //-------- STARTTIME/ENDTIME -------------------------
   //----------------------------------------------------  
   
   /** the string representation used in MATSim for the default qsim start time*/
-  public static String MATSIM_DEFAULT_STARTTIME = "00:00:00";
-  
-  /** the string representation used in MATSim for the default qsim end time*/
-  public static String MATSIM_DEFAULT_ENDTIME = MATSIM_DEFAULT_STARTTIME;  
+  public static final String MATSIM_DEFAULT_STARTTIME = "00:00:00";
   
   /** Key reflecting the start time to use in simulation */
   public static final String STARTTIME_KEY = "starttime";    
@@ -175,7 +269,7 @@ public class MatsimHelper {
   //----------------------------------------------------  
   
   /** the default maximum number of iterations run when not set by user */
-  public static Integer DEFAULT_ITERATIONS_MAX = 10;
+  public static final int DEFAULT_ITERATIONS_MAX = 10;
   
   /** Key reflecting the maximum number of iterations to run in simulation */
   public static final String ITERATIONS_MAX_KEY = "iterations_max";  
@@ -213,55 +307,263 @@ public class MatsimHelper {
   
   /** Key reflecting the linkStats configuration to apply to the simulation */
   public static final String LINK_STATS_KEY = "link_stats";  
+  
+  /** Key reflecting the persistence of the wrapper's hourly link volumes after the last iteration */
+  public static final String LINK_VOLUMES_KEY = "link_volumes";
+  
+  /** value indicating hourly link volumes are not persisted */
+  public static final String LINK_VOLUMES_NO_VALUE = "no";
+  
+  /** value indicating hourly link volumes are persisted */
+  public static final String LINK_VOLUMES_YES_VALUE = "yes";
+  
+  //----------------------------------------------------
+  //-------- EVENTS ------------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting the number of threads used for parallel events handling */
+  public static final String EVENTS_THREADS_KEY = "events_threads";
+  
+  //----------------------------------------------------
+  //-------- SNAPSHOTS ---------------------------------
+  //----------------------------------------------------
+
+  /** Key reflecting the iteration interval at which snapshots are written, 0 for none */
+  public static final String SNAPSHOT_INTERVAL_KEY = "snapshot_interval";
+
+  /** Key reflecting the sample of the agents in the wrapper's snapshots */
+  public static final String SNAPSHOT_SAMPLE_KEY = "snapshot_sample";
+
+  /** Default sample of the agents in the wrapper's snapshots */
+  public static final double DEFAULT_SNAPSHOT_SAMPLE = 0.1;
+
+  /** Key reflecting the period in seconds between snapshots */
+  public static final String SNAPSHOT_PERIOD_KEY = "snapshot_period";
+
+  /** Default period in seconds between snapshots */
+  public static final double DEFAULT_SNAPSHOT_PERIOD = 60;
+
+  //----------------------------------------------------
+  //-------- SKIMS -------------------------------------
+  //----------------------------------------------------
+
+  /** Key reflecting the zones file to create skims for */
+  public static final String SKIM_ZONES_KEY = "skim_zones";
+
+  /** Key reflecting the format of the persisted skims */
+  public static final String SKIM_FORMAT_KEY = "skim_format";
+
+  /** skims are persisted in compact binary format */
+  public static final String SKIM_FORMAT_BINARY_VALUE = "binary";
+
+  /** skims are persisted as CSV */
+  public static final String SKIM_FORMAT_CSV_VALUE = "csv";
+
+  /** default format of the persisted skims */
+  public static final String DEFAULT_SKIM_FORMAT = SKIM_FORMAT_BINARY_VALUE;
+
+  //----------------------------------------------------
+  //-------- CHECKPOINT --------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting the iteration interval at which checkpoints are taken */
+  public static final String CHECKPOINT_INTERVAL_KEY = "checkpoint_interval";
+  
+  /** Key reflecting the output directory of a run to resume from its latest checkpoint */
+  public static final String RESUME_KEY = "resume";
+
+  //----------------------------------------------------
+  //-------- BASE RUN ----------------------------------
+  //----------------------------------------------------
+
+  /** Key reflecting the output directory of a base run whose final plans are rerouted where the network changed */
+  public static final String BASE_RUN_KEY = "base_run";
+
+  /** Key reflecting the number of hops around changed links within which routes are considered affected */
+  public static final String BASE_RUN_HOPS_KEY = "base_run_hops";
+
+  /** default number of hops around changed links */
+  public static final int DEFAULT_BASE_RUN_HOPS = 1;
+
+  //----------------------------------------------------
+  //-------- MOBSIM SCHEDULE ---------------------------
+  //----------------------------------------------------
+
+  /** Key reflecting the number of final iterations simulated by qsim, with the event-driven hermes mobsim simulating the iterations before */
+  public static final String MOBSIM_SCHEDULE_KEY = "mobsim_schedule";
+  
+  //----------------------------------------------------
+  //-------- ADMISSION ---------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting what to do with a simulation of which the estimated heap exceeds the available heap */
+  public static final String ADMISSION_KEY = "admission";
+  
+  /** value indicating the simulation is run regardless, with a warning */
+  public static final String ADMISSION_WARN_VALUE = "warn";
+  
+  /** value indicating the simulation is refused */
+  public static final String ADMISSION_REFUSE_VALUE = "refuse";
+  
+  /** value indicating the plans are down sampled (and capacities scaled accordingly) until the simulation fits */
+  public static final String ADMISSION_DOWNSAMPLE_VALUE = "downsample";
+  
+  /** default admission */
+  public static final String DEFAULT_ADMISSION = ADMISSION_WARN_VALUE;
+
+  //----------------------------------------------------
+  //-------- VALIDATION --------------------------------
+  //----------------------------------------------------
+
+  /** Key reflecting whether the inputs are validated before the simulation */
+  public static final String VALIDATE_KEY = "validate";
+
+  /** inputs are not validated */
+  public static final String VALIDATE_NO_VALUE = "no";
+
+  /** inputs are validated (default) */
+  public static final String VALIDATE_YES_VALUE = "yes";
 
   //----------------------------------------------------
   //-------- PT MATRIX BASED ROUTER --------------------
   //----------------------------------------------------
 
+  /** parameter of the matrix based pt router config group holding the pt stops file */
+  private static final String MATRIX_BASED_PT_STOPS_PARAM = "ptStopsInputFile";
+
   /** Key reflecting the location of the CSV file containing the supported pt stops for the network*/
   public static final String PT_STOPS_CSV_KEY = "pt_stops_csv";
   
+  /** Key reflecting the distance (in units of the pt stops' crs) within which pt stops are merged into a single stop before building the stop matrix */
+  public static final String PT_STOPS_SNAP_TOLERANCE_KEY = "pt_stops_snap_tolerance";
+  
+  /** Default snap tolerance, only merge pt stops at identical locations */
+  public static final double DEFAULT_PT_STOPS_SNAP_TOLERANCE = 0;
+  
   /** Estimate of car teleported speed. Used to for example derive pt teleported speed (multiplied by factor) when
    * including pt as teleported mode */
   public static final double DEFAULT_CAR_TELEPORTED_SPEED_ESTIMATE = 60.0;   
     
+  //----------------------------------------------------
+  //-------- PROFILE -----------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting the activation of a JFR profiling recording of the run */
+  public static final String PROFILE_KEY = "profile";
+  
+  /** value indicating we should not profile */
+  public static final String PROFILE_NO_VALUE = "no";
+  
+  /** value indicating we should profile */
+  public static final String PROFILE_YES_VALUE = "yes";  
+  
+  //----------------------------------------------------
+  //-------- CAR ROUTING -------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting the least cost path algorithm used for car routing (ReRoute and initial routing) */
+  public static final String CAR_ROUTING_KEY = "car_routing";
+  
+  /** value indicating MATSim's configured routing algorithm is used */
+  public static final String CAR_ROUTING_DEFAULT_VALUE = "default";
+  
+  /** value indicating the wrapper's landmark (ALT) based A* routing is used */
+  public static final String CAR_ROUTING_ALT_VALUE = "alt";
+  
+  /** Key reflecting the number of landmarks used by ALT car routing */
+  public static final String CAR_ROUTING_LANDMARKS_KEY = "car_routing_landmarks";
+  
+  /** Default number of landmarks used by ALT car routing */
+  public static final int DEFAULT_CAR_ROUTING_LANDMARKS = 16;
+  
+  /** Key reflecting whether the ALT car routing index is persisted next to the network file and reused by later runs on the same network */
+  public static final String CAR_ROUTING_INDEX_KEY = "car_routing_index";
+  
+  /** value indicating the ALT car routing index is not persisted */
+  public static final String CAR_ROUTING_INDEX_NO_VALUE = "no";
+  
+  /** value indicating the ALT car routing index is persisted and reused */
+  public static final String CAR_ROUTING_INDEX_YES_VALUE = "yes";
+  
+  //----------------------------------------------------
+  //-------- STUDY AREA --------------------------------
+  //----------------------------------------------------
+  
+  /** Key reflecting the study area the network and plans are cropped to, a bounding box or a WKT file in the simulation crs */
+  public static final String STUDY_AREA_KEY = "study_area";
+  
+  /** Key reflecting the buffer around the study area in units of the simulation crs */
+  public static final String STUDY_AREA_BUFFER_KEY = "study_area_buffer";
+  
+  /** Default buffer around the study area */
+  public static final double DEFAULT_STUDY_AREA_BUFFER = 0;
   
-  /** create a local file in the given directory and file name location for a resource that is available from within a jar file
+  
+  /** Collect the contents of a configuration template resource, parsing it from the classpath only the first time per JVM
    * 
-   * @param directory to use
-   * @param resourceFileNameToUse to use
-   * @param resourceLocation URI of resource in jar file
-   * @return location of created file which nis a copy of the jar resource on the local file system in desired location
-   * @throws IOException thrown if error
+   * @param configFileTemplateLocation resource to collect
+   * @return the contents of the resource
+   * @throws PlanItException thrown when resource cannot be located or read
    */
-  private static Path createLocalFileFromJarResourceOn(final Path directory, final String resourceFileNameToUse, URI resourceLocation) throws IOException {
-    InputStream baseConfigInputStream = ResourceUtils.getResourceAsInputStream(resourceLocation);      
-    Path jarResourceFileLocation = Path.of(directory.toString(), resourceFileNameToUse);    
-    Files.copy(baseConfigInputStream,  jarResourceFileLocation);
-    baseConfigInputStream.close();
-    return jarResourceFileLocation;
+  private static byte[] getConfigurationTemplate(final String configFileTemplateLocation) throws PlanItException {
+    byte[] template = CONFIG_TEMPLATE_CACHE.get(configFileTemplateLocation);
+    if(template != null) {
+      return template;
+    }
+    
+    try(InputStream templateStream = MatsimHelper.class.getClassLoader().getResourceAsStream(configFileTemplateLocation)){
+      if(templateStream == null) {
+        throw new PlanItException("Configuration file %s to use, not found",configFileTemplateLocation);
+      }
+      template = templateStream.readAllBytes();
+    }catch(IOException e) {
+      throw new PlanItException("Unable to read configuration file %s: %s",configFileTemplateLocation, e.getMessage());
+    }
+    LOGGER.fine(String.format("configuration template %s sourced from classpath",configFileTemplateLocation));
+    
+    /* concurrent first use may read it twice, both are identical so keep whichever was first */
+    CONFIG_TEMPLATE_CACHE.putIfAbsent(configFileTemplateLocation, template);
+    return CONFIG_TEMPLATE_CACHE.get(configFileTemplateLocation);
   }
 
   /** Collect the plans file location from command line arguments. If not set we use the current working directory and default plans name MATSIM_DEFAULT_PLANS.
    * 
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    * @return found location
    */
-  private static Path extractPlansFileLocation(Map<String, String> keyValueMap) {
-    String planFileLocation = keyValueMap.get(PLANS_KEY);     
+  private static Path extractPlansFileLocation(WrapperOptions options) {
+    String planFileLocation = options.get(PLANS_KEY);     
     if(StringUtils.isNullOrBlank(planFileLocation)) {
       planFileLocation = Paths.get(CURRENT_PATH.toString(), MATSIM_DEFAULT_PLANS).toString();
     }      
     return Paths.get(planFileLocation).normalize();
   }
 
+  /** Location of a plans file derived from the original plans file, persisted in the output directory. The suffix is inserted before the
+   * (first) extension of the original file name, e.g., plans.xml.gz becomes plans{suffix}.xml.gz
+   * 
+   * @param originalPlansFileLocation to derive from
+   * @param outputDir to place derived file in
+   * @param suffix to append to the file name
+   * @return derived location
+   */
+  private static Path createDerivedPlansFileLocation(final Path originalPlansFileLocation, final Path outputDir, final String suffix) {
+    String originalPlansFileName = originalPlansFileLocation.getFileName().toString();
+    int extensionIndex = originalPlansFileName.indexOf('.');
+    if(extensionIndex < 0) {
+      extensionIndex = originalPlansFileName.length();
+    }
+    String derivedPlansFileName = originalPlansFileName.substring(0, extensionIndex) + suffix + originalPlansFileName.substring(extensionIndex);
+    return Path.of(outputDir.toAbsolutePath().toString(), derivedPlansFileName);
+  }
+
   /** Configure the available modes in the simulation based on command line arguments provided
    * 
    * @param config to alter
-   * @param keyValueMap to extract configuration choice from
+   * @param options to extract configuration choice from
    */
-  private static void configureModes(final Config config, final Map<String, String> keyValueMap) {   
-    var modesType = parseModesType(keyValueMap);          
+  private static void configureModes(final Config config, final WrapperOptions options) {   
+    var modesType = parseModesType(options);          
     switch (modesType) {    
       case CAR_PT_TELEPORT:
         LOGGER.info("[SETTING] teleportation mode: pt");
@@ -270,20 +572,20 @@ public class MatsimHelper {
         LOGGER.info("[SETTING] simulation mode: car");
         break;
       case CAR_PT:
-        LOGGER.warning(String.format("value %s for --modes not yet supported, ignored", keyValueMap.get(MODES_KEY)));
+        LOGGER.warning(String.format("value %s for --modes not yet supported, ignored", options.get(MODES_KEY)));
         break;                
       default:
-        LOGGER.severe(String.format("Unknown value %s for --modes argument, ignored", keyValueMap.get(MODES_KEY)));
+        LOGGER.severe(String.format("Unknown value %s for --modes argument, ignored", options.get(MODES_KEY)));
     }        
   }
 
   /** Configure the CRS of the simulation. If not set we use the default MATSIM_DEFAULT_GLOBAL_CRS
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */  
-  private static void configureCrs(Config config, Map<String, String> keyValueMap) {
-    String crsValue = keyValueMap.get(CRS_KEY);
+  private static void configureCrs(Config config, WrapperOptions options) {
+    String crsValue = options.get(CRS_KEY);
     if(StringUtils.isNullOrBlank(crsValue)) {
       crsValue = MATSIM_DEFAULT_GLOBAL_CRS;
     }
@@ -296,14 +598,14 @@ public class MatsimHelper {
    * When invalid path is provided we log a warning and ignore.
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */
-  private static void configureNetwork(final Config config, final Map<String, String> keyValueMap) {
+  private static void configureNetwork(final Config config, final WrapperOptions options) {
     
-    String networkFileLocation = keyValueMap.get(NETWORK_KEY);     
+    String networkFileLocation = options.get(NETWORK_KEY);     
     try {      
       
-      Path networkFileLocationAsPath = parseNetworkFileLocation(keyValueMap);           
+      Path networkFileLocationAsPath = parseNetworkFileLocation(options);           
       
       /* set network path location */
       LOGGER.info(String.format("[SETTING] MATSim network file: %s", networkFileLocationAsPath.toString()));
@@ -318,10 +620,10 @@ public class MatsimHelper {
    * simulation global CRS.
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */  
-  private static void configureNetworkCrs(Config config, Map<String, String> keyValueMap) {
-    String crsValue = keyValueMap.get(NETWORK_CRS_KEY);
+  private static void configureNetworkCrs(Config config, WrapperOptions options) {
+    String crsValue = options.get(NETWORK_CRS_KEY);
     if(StringUtils.isNullOrBlank(crsValue)) {
       //crsValue = MATSIM_DEFAULT_GLOBAL_CRS; 17/1 do nothing instead because user did not specify anything to be done
       LOGGER.info("[SETTING] MATSim network input CRS NOT explicitly set");
@@ -336,19 +638,19 @@ public class MatsimHelper {
    * When invalid path is provided we log a warning and ignore.
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */
-  private static void configurePlans(final Config config, final Map<String, String> keyValueMap) {      
+  private static void configurePlans(final Config config, final WrapperOptions options) {      
     try {      
       
-      Path planFileLocationAsPath = extractPlansFileLocation(keyValueMap);
+      Path planFileLocationAsPath = extractPlansFileLocation(options);
       
       /* set plans path location */
       LOGGER.info(String.format("[SETTING] MATSim plans/population file: %s", planFileLocationAsPath.toString()));
       config.plans().setInputFile(planFileLocationAsPath.toString());
       
     }catch (Exception e) {
-      LOGGER.warning(String.format("Invalid plans file location %s for --plans, ignored", keyValueMap.get(PLANS_KEY)));
+      LOGGER.warning(String.format("Invalid plans file location %s for --plans, ignored", options.get(PLANS_KEY)));
     } 
   }
 
@@ -356,10 +658,10 @@ public class MatsimHelper {
    * simulation global CRS.
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */   
-  private static void configurePlansCrs(Config config, Map<String, String> keyValueMap) {
-    String crsValue = keyValueMap.get(PLANS_CRS_KEY);
+  private static void configurePlansCrs(Config config, WrapperOptions options) {
+    String crsValue = options.get(PLANS_CRS_KEY);
     if(StringUtils.isNullOrBlank(crsValue)) {
       //crsValue = MATSIM_DEFAULT_GLOBAL_CRS; 17/1 do nothing instead because user did not specify anything to be done
       LOGGER.info("[SETTING] MATSim plans input CRS NOT explicitly set");
@@ -375,10 +677,10 @@ public class MatsimHelper {
    * are considered. 
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */     
-  private static void configureStartTime(final Config config, final Map<String, String> keyValueMap) {
-    String startTimeValue = keyValueMap.get(STARTTIME_KEY);
+  private static void configureStartTime(final Config config, final WrapperOptions options) {
+    String startTimeValue = options.get(STARTTIME_KEY);
     if(StringUtils.isNullOrBlank(startTimeValue)) {
       startTimeValue = MATSIM_DEFAULT_STARTTIME;
     }
@@ -387,30 +689,31 @@ public class MatsimHelper {
     config.qsim().setStartTime(Time.parseTime(startTimeValue));
   }
 
-  /** Configure the end time of the simulation. If not set we use the default MATSIM_DEFAULT_ENDTIME and all activities
-   * are considered. 
+  /** Configure the end time of the simulation. If not set the qsim end time is left undefined, so the simulation runs until all agents completed
+   * their plans and all activities are considered. 
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */       
-  private static void configureEndTime(final Config config, final Map<String, String> keyValueMap) {
-    String endTimeValue = keyValueMap.get(ENDTIME_KEY);
+  private static void configureEndTime(final Config config, final WrapperOptions options) {
+    String endTimeValue = options.get(ENDTIME_KEY);
     if(StringUtils.isNullOrBlank(endTimeValue)) {
-      endTimeValue = MATSIM_DEFAULT_ENDTIME;
+      return;
     }
            
     LOGGER.info(String.format("[SETTING] MATSim simulation end time: %s", endTimeValue));
-    config.qsim().setStartTime(Time.parseTime(endTimeValue));  }
+    config.qsim().setEndTime(Time.parseTime(endTimeValue));
+  }
 
   /** Configure the storage capacity factor to apply to all links in simulation
    * 
    * @param config to use
-   * @param keyValueMap to extract value from
+   * @param options to extract value from
    */
-  private static void configureStorageCapacityFactor(Config config, Map<String, String> keyValueMap) {
+  private static void configureStorageCapacityFactor(Config config, WrapperOptions options) {
     double factor = 1;
     try {
-      String storageCapacityFactor = keyValueMap.get(CAPACITY_STORAGE_FACTOR_KEY);
+      String storageCapacityFactor = options.get(CAPACITY_STORAGE_FACTOR_KEY);
       if(!StringUtils.isNullOrBlank(storageCapacityFactor)) {
         factor = Double.parseDouble(storageCapacityFactor);
       }
@@ -424,12 +727,12 @@ public class MatsimHelper {
   /** Configure the flow capacity factor to apply to all links in simulation
    * 
    * @param config to use
-   * @param keyValueMap to extract value from
+   * @param options to extract value from
    */  
-  private static void configureFlowCapacityFactor(Config config, Map<String, String> keyValueMap) {
+  private static void configureFlowCapacityFactor(Config config, WrapperOptions options) {
     double factor = 1;
     try {
-      String flowCapacityFactor = keyValueMap.get(CAPACITY_FLOW_FACTOR_KEY);
+      String flowCapacityFactor = options.get(CAPACITY_FLOW_FACTOR_KEY);
       if(!StringUtils.isNullOrBlank(flowCapacityFactor)) {
         factor = Double.parseDouble(flowCapacityFactor);
       }
@@ -448,13 +751,13 @@ public class MatsimHelper {
    * They are expected to be comma separated
    * 
    * @param config to use
-   * @param keyValueMap to use
+   * @param options to use
    */
-  private static void configureLinkStats(Config config, Map<String, String> keyValueMap) {
+  private static void configureLinkStats(Config config, WrapperOptions options) {
     int averageOverIterations = config.linkStats().getAverageLinkStatsOverIterations();
     int writeInterval = config.linkStats().getWriteLinkStatsInterval();
     TRY : try {
-      String linkStats = keyValueMap.get(LINK_STATS_KEY);
+      String linkStats = options.get(LINK_STATS_KEY);
       if(!StringUtils.isNullOrBlank(linkStats)) {
         String[] linkStatsArray = linkStats.split(","); 
         if(linkStatsArray.length!=2) {
@@ -481,10 +784,10 @@ public class MatsimHelper {
   /** Configure the maximum number of iterations of the simulation. If not set we use the default DEFAULT_ITERATIONS_MAX.
    * 
    * @param config to configure
-   * @param keyValueMap to extract location from
+   * @param options to extract location from
    */     
-  private static void configureIterationsMax(final Config config, final Map<String, String> keyValueMap) {
-    String iterationsMaxValue = keyValueMap.get(ITERATIONS_MAX_KEY);
+  private static void configureIterationsMax(final Config config, final WrapperOptions options) {
+    String iterationsMaxValue = options.get(ITERATIONS_MAX_KEY);
     
     Integer iterationsMax = null; 
     if(StringUtils.isNullOrBlank(iterationsMaxValue)) {
@@ -505,10 +808,10 @@ public class MatsimHelper {
    * the MATSim code is quite messy and not documented very well on how to do this elegantly.
    * 
    * @param config to merge with activity configuration
-   * @param keyValueMap to use to locate the activity configuration file
+   * @param options to use to locate the activity configuration file
    */
-  private static void configureActivityConfig(final Config config, final Map<String, String> keyValueMap) {
-    String activityConfigValue = keyValueMap.get(ACTIVITY_CONFIG_KEY);
+  private static void configureActivityConfig(final Config config, final WrapperOptions options) {
+    String activityConfigValue = options.get(ACTIVITY_CONFIG_KEY);
     if(StringUtils.isNullOrBlank(activityConfigValue )) {
       LOGGER.warning("[SETTING] Activity configuration file not set");
       return;
@@ -523,20 +826,63 @@ public class MatsimHelper {
     ConfigUtils.loadConfig(config, activityConfigValue);
   }
   
+  /** Merge co-located or near coincident pt stops into representative stops and persist the reduced pt stops and the id mapping in the output directory.
+   * 
+   * @param ptStopsCsvValue location of the pt stops file
+   * @param options to extract the snap tolerance and output directory from
+   * @param ptMatrixBuildEvent to record stop counts on
+   * @return location of the pt stops file to use, the original when no stops were merged or merging failed
+   */
+  private static String deduplicatePtStops(final String ptStopsCsvValue, final WrapperOptions options, final PtMatrixBuildEvent ptMatrixBuildEvent) {
+    double snapTolerance = DEFAULT_PT_STOPS_SNAP_TOLERANCE;
+    String snapToleranceValue = options.get(PT_STOPS_SNAP_TOLERANCE_KEY);
+    if(!StringUtils.isNullOrBlank(snapToleranceValue)) {
+      try {
+        snapTolerance = Double.parseDouble(snapToleranceValue);
+      }catch(NumberFormatException e) {
+        LOGGER.warning(String.format("Invalid value for --%s switch, using %.2f", PT_STOPS_SNAP_TOLERANCE_KEY, snapTolerance));
+      }
+    }
+    
+    try {
+      Path ptStopsCsv = Path.of(ptStopsCsvValue);
+      var deduplicator = new PtStopsDeduplicator(snapTolerance);
+      deduplicator.parse(ptStopsCsv);
+      ptMatrixBuildEvent.stopsBefore = deduplicator.getNumberOfStops();
+      ptMatrixBuildEvent.stopsAfter = deduplicator.getNumberOfRepresentatives();
+      if(!deduplicator.hasDuplicates()) {
+        return ptStopsCsvValue;
+      }
+      
+      return deduplicator.write(ptStopsCsv, parseOutputDirectory(options)).toString();
+    }catch(Exception e) {
+      LOGGER.warning(String.format("IGNORED: merging of co-located pt stops, using original pt stops file %s with all its stops in the stop matrix: %s", 
+          ptStopsCsvValue, e.getMessage()));
+      return ptStopsCsvValue;
+    }
+  }
+
   /**
    * We enable MATSim's pt matrix based routing only when any of the required input files for PtMatrixBased simulation are configured, i.e.,
    * the --pt-stops-csv is present.
    *   
    * @param config to configure
-   * @param keyValueMap to extract settings from
+   * @param options to extract settings from
    */
-  private static void configurePtMatrixRouter(final Config config, final Map<String, String> keyValueMap) {
-    String ptStopsCsvValue = keyValueMap.get(PT_STOPS_CSV_KEY);
+  private static void configurePtMatrixRouter(final Config config, final WrapperOptions options) {
+    String ptStopsCsvValue = options.get(PT_STOPS_CSV_KEY);
     if(StringUtils.isNullOrBlank(ptStopsCsvValue )) {
       LOGGER.info(String.format("No pt stops CSV provided, MATSim matrix based pt router not activated"));
       return;
     }
         
+    var ptMatrixBuildEvent = new PtMatrixBuildEvent();
+    ptMatrixBuildEvent.begin();
+    ptMatrixBuildEvent.ptStopsFile = ptStopsCsvValue;
+    
+    /* merge co-located stops, the stop-to-stop matrix grows quadratically with the number of stops */
+    ptStopsCsvValue = deduplicatePtStops(ptStopsCsvValue, options, ptMatrixBuildEvent);
+    
     /* parse pt stops and configure PtMatrixBased router */
     var configGroup = new MatrixBasedPtRouterConfigGroup();
     configGroup.setPtStopsInputFile(ptStopsCsvValue);
@@ -562,44 +908,23 @@ public class MatsimHelper {
       }      
     }
     config.addModule(configGroup);
+    ptMatrixBuildEvent.commit();
   }
 
   /**
    * Create the in-memory configuration based on provided config file location where all user options are not predicated on other user options, i.e., they are unconditional.
+   * <p>
+   * The template is parsed directly from the classpath, so nothing is extracted to the working directory. A MATSim config is mutable and cannot be 
+   * copied, so each call creates a new config instance from the cached template, which makes it safe to use for concurrent runs and sweeps.
    * 
    * @param configFileTemplateLocation to create in memory configuration for
-   * @throws URISyntaxException when invalid URI 
    * @throws PlanItException when default config cannot be located
-   * @throws IOException thrown if error
    */
-  private static Config createConfigurationFromFile(final String configFileTemplateLocation) throws URISyntaxException, PlanItException, IOException {
-    URI baseConfigUri = ResourceUtils.getResourceUri(configFileTemplateLocation);
-    LOGGER.fine(String.format("configuration template sourced from %s",baseConfigUri.toString()));
-    
-    /* when using resource in jar, extract it as local temp file for Matsim */
-    Path configFileLocation = null;
-    if(UriUtils.isInJar(baseConfigUri)){      
-      /* MATSim is not able to extract from jar, so we have to locally create the file and then delete it afterwards */
-      configFileLocation = createLocalFileFromJarResourceOn(CURRENT_PATH,configFileTemplateLocation, baseConfigUri);
-    }else {
-      /* else just treat it as the local file that it is */
-      configFileLocation = Path.of(baseConfigUri);
-    }
-
-    /* update config with local config file used */
-    if(Files.notExists(configFileLocation)) {
-      throw new PlanItException("Configuration file %s to use, not found",configFileTemplateLocation);
-    }
+  private static Config createConfigurationFromFile(final String configFileTemplateLocation) throws PlanItException {
+    byte[] template = getConfigurationTemplate(configFileTemplateLocation);
     
     Config config = ConfigUtils.createConfig();    
-    ConfigUtils.loadConfig(config, configFileLocation.toAbsolutePath().toString());
-
-    /* clean up by deleting temporary file if needed*/
-    if(UriUtils.isInJar(baseConfigUri)){
-      LOGGER.fine(String.format("deleting local temp file %s",configFileLocation.toString()));
-      Files.delete(configFileLocation);
-    }
-    
+    new ConfigReader(config).parse(new ByteArrayInputStream(template));
     return config;
   }  
 
@@ -607,11 +932,9 @@ public class MatsimHelper {
    * Create the default configuration for a car only simulation based on this wrapper's default config
    * file.
    * 
-   * @throws URISyntaxException when invalid URI 
    * @throws PlanItException when default config cannot be located
-   * @throws IOException thrown if error
    */
-  private static Config createDefaultCarSimConfiguration() throws URISyntaxException, PlanItException, IOException {
+  private static Config createDefaultCarSimConfiguration() throws PlanItException {
     LOGGER.info("Using PLANit default car only configuration template");
     return createConfigurationFromFile(DEFAULT_CAR_CONFIG_RESOURCE);
   }
@@ -620,31 +943,29 @@ public class MatsimHelper {
    * Create the default configuration for a car simulation with teleported public transport mode based on this wrapper's default config
    * file.
    * 
-   * @throws URISyntaxException when invalid URI 
    * @throws PlanItException when default config cannot be located
-   * @throws IOException thrown if error
    */
-  private static Config createDefaultCarSimPtTeleportConfiguration() throws URISyntaxException, PlanItException, IOException {
+  private static Config createDefaultCarSimPtTeleportConfiguration() throws PlanItException {
     LOGGER.info("Using PLANit default car simulation with teleported public transport configuration template");
     return createConfigurationFromFile(DEFAULT_CAR_SIM_PT_TELE_CONFIG_RESOURCE);
   }  
 
   /** Verify if the simulation is based on using MATSim configuration file(s) or using command line arguments
    * 
-   * @param keyValueMap to extract from
+   * @param options to extract from
    * @return true when based on config files, false otherwise
    */
-  public static boolean isSimulationConfigurationFileBased(final Map<String, String> keyValueMap) {
-    return keyValueMap.containsKey(CONFIG_KEY) && isSimulationType(keyValueMap);
+  public static boolean isSimulationConfigurationFileBased(final WrapperOptions options) {
+    return options.isSet(CONFIG_KEY) && isSimulationType(options);
   }  
           
   /** Check if the chosen type relates to generation a configuration file or not
    * 
-   * @param keyValueMap to check
+   * @param options to check
    * @return true when TYPE_DEFAULT_CONFIG_VALUE or TYPE_CONFIG_VALUE is used for key TYPE_KEY, false otherwise
    */
-  public static boolean isConfigurationType(final Map<String, String> keyValueMap) {
-    String type = keyValueMap.get(TYPE_KEY);
+  public static boolean isConfigurationType(final WrapperOptions options) {
+    String type = options.get(TYPE_KEY);
     switch (type) {
       case TYPE_DEFAULT_CONFIG_VALUE:
         return true;
@@ -655,13 +976,22 @@ public class MatsimHelper {
     }
   }  
   
+  /** Check if the chosen type relates to estimating a MATSim simulation
+   * 
+   * @param options to check
+   * @return true when TYPE_ESTIMATE_VALUE is used for key TYPE_KEY, false otherwise
+   */
+  public static boolean isEstimateType(final WrapperOptions options) {
+    return TYPE_ESTIMATE_VALUE.equals(options.get(TYPE_KEY));
+  }
+  
   /** Check if the chosen type relates to running a MATSim simulation
    * 
-   * @param keyValueMap to check
+   * @param options to check
    * @return true when 
    */
-  public static boolean isSimulationType(final Map<String, String> keyValueMap) {
-    String type = keyValueMap.get(TYPE_KEY);
+  public static boolean isSimulationType(final WrapperOptions options) {
+    String type = options.get(TYPE_KEY);
     switch (type) {
       case TYPE_SIMULATION_VALUE:
         return true;
@@ -672,11 +1002,11 @@ public class MatsimHelper {
   
   /** Check if the user wants the in-memory MATSim network to be cleaned before conducting the simulation
    * 
-   * @param keyValueMap to check
+   * @param options to check
    * @return true when so, false otherwise 
    */
-  public static boolean isNetworkCleanActivated(final Map<String, String> keyValueMap) {
-    String cleanFlag = keyValueMap.get(NETWORK_CLEAN_KEY);
+  public static boolean isNetworkCleanActivated(final WrapperOptions options) {
+    String cleanFlag = options.get(NETWORK_CLEAN_KEY);
     if(StringUtils.isNullOrBlank(cleanFlag)) {
       cleanFlag = DEFAULT_NETWORK_CLEAN;
     }
@@ -694,19 +1024,151 @@ public class MatsimHelper {
         return false;
     }
   }
+  
+  /** Check if the user wants the in-memory MATSim network to be simplified, i.e., chains of links through degree two nodes merged, before conducting the simulation
+   * 
+   * @param options to check
+   * @return true when so, false otherwise 
+   */
+  public static boolean isNetworkSimplifyActivated(final WrapperOptions options) {
+    String simplifyFlag = options.get(NETWORK_SIMPLIFY_KEY);
+    if(StringUtils.isNullOrBlank(simplifyFlag) || NETWORK_SIMPLIFY_NO_VALUE.equals(simplifyFlag)) {
+      return false;
+    }
+    if(!NETWORK_SIMPLIFY_YES_VALUE.equals(simplifyFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",NETWORK_SIMPLIFY_KEY));
+      return false;
+    }
+    LOGGER.info(String.format("[SETTING] MATSim simplify network: %s", NETWORK_SIMPLIFY_YES_VALUE));
+    return true;
+  }
+  
+  /** Check if the user wants the run to be profiled via a JFR recording persisted in the output directory. The flag
+   * may be provided without value, e.g. {@code --profile}, which activates it
+   * 
+   * @param options to check
+   * @return true when so, false otherwise 
+   */
+  public static boolean isProfilingActivated(final WrapperOptions options) {
+    if(!options.isSet(PROFILE_KEY)) {
+      return false;
+    }
+    
+    String profileFlag = options.get(PROFILE_KEY);
+    if(StringUtils.isNullOrBlank(profileFlag) || PROFILE_YES_VALUE.equals(profileFlag)) {
+      LOGGER.info(String.format("[SETTING] JFR profiling: %s", PROFILE_YES_VALUE));
+      return true;
+    }
+    if(!PROFILE_NO_VALUE.equals(profileFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",PROFILE_KEY));
+    }
+    return false;
+  }
+  
+  /** Check if the user wants car routing to use the wrapper's landmark (ALT) based router instead of MATSim's configured one
+   * 
+   * @param options to check
+   * @return true when so, false otherwise 
+   */
+  public static boolean isAltCarRoutingActivated(final WrapperOptions options) {
+    String carRouting = options.getOrDefault(CAR_ROUTING_KEY, CAR_ROUTING_DEFAULT_VALUE);
+    switch (carRouting) {
+      case CAR_ROUTING_ALT_VALUE:
+        LOGGER.info(String.format("[SETTING] car routing: %s", CAR_ROUTING_ALT_VALUE));
+        return true;
+      case CAR_ROUTING_DEFAULT_VALUE:
+        return false;
+      default:
+        LOGGER.warning(String.format("Invalid value %s for --%s, using %s", carRouting, CAR_ROUTING_KEY, CAR_ROUTING_DEFAULT_VALUE));
+        return false;
+    }
+  }
+  
+  /** Check if the user wants the ALT car routing index to be persisted next to the network and reused by later runs, default yes
+   * 
+   * @param options to check
+   * @return true when so, false otherwise 
+   */
+  public static boolean isCarRoutingIndexPersisted(final WrapperOptions options) {
+    String indexFlag = options.getOrDefault(CAR_ROUTING_INDEX_KEY, CAR_ROUTING_INDEX_YES_VALUE);
+    switch (indexFlag) {
+      case CAR_ROUTING_INDEX_YES_VALUE:
+        return true;
+      case CAR_ROUTING_INDEX_NO_VALUE:
+        LOGGER.info(String.format("[SETTING] persist ALT car routing index: %s", CAR_ROUTING_INDEX_NO_VALUE));
+        return false;
+      default:
+        LOGGER.warning(String.format("Invalid value for --%s switch, using %s",CAR_ROUTING_INDEX_KEY, CAR_ROUTING_INDEX_YES_VALUE));
+        return true;
+    }
+  }
+  
+  /** Parse the number of landmarks to use for ALT car routing
+   * 
+   * @param options to parse from
+   * @return number of landmarks
+   */
+  public static int parseCarRoutingLandmarks(final WrapperOptions options) {
+    String landmarksValue = options.get(CAR_ROUTING_LANDMARKS_KEY);
+    int landmarks = DEFAULT_CAR_ROUTING_LANDMARKS;
+    if(!StringUtils.isNullOrBlank(landmarksValue)) {
+      try {
+        landmarks = Integer.parseInt(landmarksValue);
+      }catch(NumberFormatException e) {
+        LOGGER.warning(String.format("Invalid value %s for --%s, using default", landmarksValue, CAR_ROUTING_LANDMARKS_KEY));
+      }
+    }
+    if(landmarks < 1) {
+      LOGGER.warning(String.format("--%s must be positive, using default", CAR_ROUTING_LANDMARKS_KEY));
+      landmarks = DEFAULT_CAR_ROUTING_LANDMARKS;
+    }
+    LOGGER.info(String.format("[SETTING] ALT car routing landmarks: %d", landmarks));
+    return landmarks;
+  }
    
 
+  /** Check if the user wants the network and plans to be cropped to a study area before simulating
+   * 
+   * @param options to check
+   * @return true when a study area is provided, false otherwise
+   */
+  public static boolean isStudyAreaActivated(final WrapperOptions options) {
+    return options.isSet(STUDY_AREA_KEY) && !StringUtils.isNullOrBlank(options.get(STUDY_AREA_KEY));
+  }
+  
+  /** Parse the study area, extended with its buffer, from the user arguments
+   * 
+   * @param options to extract from
+   * @return study area
+   * @throws PlanItException thrown if error
+   */
+  public static StudyArea parseStudyArea(final WrapperOptions options) throws PlanItException {
+    double buffer = DEFAULT_STUDY_AREA_BUFFER;
+    String bufferValue = options.get(STUDY_AREA_BUFFER_KEY);
+    if(!StringUtils.isNullOrBlank(bufferValue)) {
+      try {
+        buffer = Double.parseDouble(bufferValue);
+      }catch(NumberFormatException e) {
+        throw new PlanItException("--%s value %s is not a valid number", STUDY_AREA_BUFFER_KEY, bufferValue);
+      }
+    }
+    
+    String studyAreaValue = options.get(STUDY_AREA_KEY);
+    LOGGER.info(String.format("[SETTING] Study area: %s (buffer %.2f)", studyAreaValue, buffer));
+    return StudyArea.parse(studyAreaValue, buffer);
+  }
+
   /** Verify if population (plans) is to be down sampled
    * 
-   * @param keyValueMap to check for
+   * @param options to check for
    * @return true when down sampling is enable, false otherwise
    */
-  public static boolean isPopulationPlansDownSampled(Map<String, String> keyValueMap) {
-    if(!keyValueMap.containsKey(PLANS_SAMPLE_KEY)) {
+  public static boolean isPopulationPlansDownSampled(WrapperOptions options) {
+    if(!options.isSet(PLANS_SAMPLE_KEY)) {
       return false;
     }
 
-    String downSampleValueString = keyValueMap.get(PLANS_SAMPLE_KEY);
+    String downSampleValueString = options.get(PLANS_SAMPLE_KEY);
     if(StringUtils.isNullOrBlank(downSampleValueString)){
       downSampleValueString = PLANS_SAMPLE_DEFAULT;
     }
@@ -723,110 +1185,863 @@ public class MatsimHelper {
     }
   }
 
-  /** Collect the location of the config file from the command line arguments (if any)
+  /** Verify if plans are to be filtered to the --starttime/--endtime window before the population is loaded
    * 
-   * @param keyValueMap to extract from
-   * @return found config file location
+   * @param options to check for
+   * @return true when time window filtering is enabled and a window is available, false otherwise
    */
-  public static String getConfigFileLocation(Map<String, String> keyValueMap) {
-    if(!isSimulationConfigurationFileBased(keyValueMap)) {
-      LOGGER.warning("Cannot extract config file location when simulation is not config file based");
-      return null;
+  public static boolean isPlansTimeFiltered(final WrapperOptions options) {
+    if(!options.isSet(PLANS_TIME_FILTER_KEY)) {
+      return false;
     }
     
-    String configFileLocation = keyValueMap.get(CONFIG_KEY);
-    if(!StringUtils.isNullOrBlank(configFileLocation)) {    
-      LOGGER.info(String.format("[SETTING] MATSim config file location : %s", configFileLocation));        
+    String filterFlag = options.get(PLANS_TIME_FILTER_KEY);
+    if(!StringUtils.isNullOrBlank(filterFlag) && !PLANS_TIME_FILTER_YES_VALUE.equals(filterFlag)) {
+      if(!PLANS_TIME_FILTER_NO_VALUE.equals(filterFlag)) {
+        LOGGER.warning(String.format("Invalid value for --%s switch",PLANS_TIME_FILTER_KEY));
+      }
+      return false;
     }
-    return configFileLocation;    
+    if(StringUtils.isNullOrBlank(options.get(STARTTIME_KEY)) && StringUtils.isNullOrBlank(options.get(ENDTIME_KEY))) {
+      LOGGER.warning(String.format("IGNORED: --%s requires --%s and/or --%s to be set", PLANS_TIME_FILTER_KEY, STARTTIME_KEY, ENDTIME_KEY));
+      return false;
+    }
+    LOGGER.info(String.format("[SETTING] Plans time window filter: %s", PLANS_TIME_FILTER_YES_VALUE));
+    return true;
   }
 
-  /** Collect the location of an additional config file which overrides the base config file for the available contents
+  /** Verify if persons with identical plans are to be collapsed into weighted agent groups
    * 
-   * @param keyValueMap to extract from
-   * @return found override config file location
-   */  
-  public static String getOverrideConfigFileLocation(final Map<String, String> keyValueMap) {
-    if(!isSimulationConfigurationFileBased(keyValueMap)) {
-      LOGGER.warning("Cannot extract override config file locations when simulation is not properly config file based");
-      return null;
+   * @param options to check for
+   * @return true when collapsing is enabled, false otherwise
+   */
+  public static boolean isPlansCollapseActivated(final WrapperOptions options) {
+    String collapseFlag = options.get(PLANS_COLLAPSE_KEY);
+    if(StringUtils.isNullOrBlank(collapseFlag) || PLANS_COLLAPSE_NO_VALUE.equals(collapseFlag)) {
+      return false;
     }
-
-    String overrideConfigFileLocation = keyValueMap.get(OVERRIDE_CONFIG_KEY);
-    if(!StringUtils.isNullOrBlank(overrideConfigFileLocation)) {
-      LOGGER.info(String.format("[SETTING] MATSim additional config file location : %s", overrideConfigFileLocation));        
+    if(!PLANS_COLLAPSE_YES_VALUE.equals(collapseFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",PLANS_COLLAPSE_KEY));
+      return false;
     }
-    return overrideConfigFileLocation; 
+    LOGGER.info(String.format("[SETTING] Plans collapse: %s", PLANS_COLLAPSE_YES_VALUE));
+    return true;
   }
-
-  /** The output directory to use. If not configure the default is provided which is the working directory of the application
+  
+  /** Parse the maximum number of persons represented by a single agent group
    * 
-   * @param keyValueMap to extract information from
-   * @return parsed output directory as path instance
-   * @throws PlanItException thrown if error
+   * @param options to extract from
+   * @return maximum group size
    */
-  public static Path parseOutputDirectory(final Map<String, String> keyValueMap) throws PlanItException {
-    PlanItException.throwIfNull(keyValueMap, "Configuration information null");
-    
-    Path outputDir = null;
-    if(keyValueMap.containsKey(OUTPUT_KEY) && !StringUtils.isNullOrBlank(keyValueMap.get(OUTPUT_KEY))) {
-      outputDir = Paths.get(keyValueMap.get(OUTPUT_KEY));  
-    }else {
-      outputDir = DEFAULT_OUTPUT_PATH; 
+  public static int parsePlansCollapseMax(final WrapperOptions options) {
+    int maxGroupSize = DEFAULT_PLANS_COLLAPSE_MAX;
+    String maxGroupSizeValue = options.get(PLANS_COLLAPSE_MAX_KEY);
+    if(!StringUtils.isNullOrBlank(maxGroupSizeValue)) {
+      try {
+        maxGroupSize = Integer.parseInt(maxGroupSizeValue);
+      }catch(NumberFormatException e) {
+        LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", PLANS_COLLAPSE_MAX_KEY, maxGroupSizeValue));
+      }
     }
-    
-    outputDir = outputDir.normalize();
-    LOGGER.info(String.format("[SETTING] MATSim output directory : %s", outputDir.toString()));        
-    return outputDir;
+    if(maxGroupSize < 1) {
+      LOGGER.warning(String.format("IGNORED: --%s should be positive", PLANS_COLLAPSE_MAX_KEY));
+      maxGroupSize = DEFAULT_PLANS_COLLAPSE_MAX;
+    }
+    LOGGER.info(String.format("[SETTING] Plans collapse maximum group size: %d", maxGroupSize));
+    return maxGroupSize;
   }
 
-
-  /** Determine what modesType we are working with (car, car and pt (teleport), car and pt))
+  /** Verify if the routes of non-selected plans are to be kept in compact form
    * 
-   * @param keyValueMap to extract information from
-   * @return type found, default CAR_ONLY when absent
+   * @param options to check for
+   * @return true when compaction is enabled, false otherwise
    */
-  public static ModesType parseModesType(final Map<String, String> keyValueMap) {
-    if(StringUtils.isNullOrBlank(keyValueMap.get(MODES_KEY))) {
-        return ModesType.CAR_ONLY;
+  public static boolean isPlansCompactActivated(final WrapperOptions options) {
+    String compactFlag = options.get(PLANS_COMPACT_KEY);
+    if(StringUtils.isNullOrBlank(compactFlag) || PLANS_COMPACT_NO_VALUE.equals(compactFlag)) {
+      return false;
     }
-    
-    return ModesType.of(keyValueMap.get(MODES_KEY));
+    if(!PLANS_COMPACT_YES_VALUE.equals(compactFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",PLANS_COMPACT_KEY));
+      return false;
+    }
+    LOGGER.info(String.format("[SETTING] Plans compaction: %s", PLANS_COMPACT_YES_VALUE));
+    return true;
   }
-
-  /** Collect the network file location as path based on the user configuration (if any) or defaults
+  
+  /** Parse the schedule of the active share of the population per iteration, if any
    * 
-   * @param keyValueMap to use
-   * @return network file location to use
+   * @param options to extract from
+   * @return schedule, null when absent or invalid
    */
-  public static Path parseNetworkFileLocation(Map<String, String> keyValueMap) {        
-    String networkFileLocation = keyValueMap.get(NETWORK_KEY);       
-    if(StringUtils.isNullOrBlank(networkFileLocation)) {
-      networkFileLocation = Paths.get(CURRENT_PATH.toString(), MATSIM_DEFAULT_NETWORK).toString();
-    }      
-    return Paths.get(networkFileLocation).normalize();                        
-  }
-
-  /** Generate a MATSim configuration in memory based on command line arguments.
+  public static SampleSchedule parseSampleSchedule(final WrapperOptions options) {
+    String scheduleValue = options.get(PLANS_SAMPLE_SCHEDULE_KEY);
+    if(StringUtils.isNullOrBlank(scheduleValue)) {
+      return null;
+    }
+    
+    try {
+      SampleSchedule schedule = SampleSchedule.parse(scheduleValue);
+      if(schedule.getFinalShare() < 1) {
+        LOGGER.warning(String.format("--%s does not end with the full population, the final iterations only simulate a share of %.2f", 
+            PLANS_SAMPLE_SCHEDULE_KEY, schedule.getFinalShare()));
+      }
+      LOGGER.info(String.format("[SETTING] Plans sample schedule: %s", schedule.toString()));
+      return schedule;
+    }catch(IllegalArgumentException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid schedule: %s", PLANS_SAMPLE_SCHEDULE_KEY, scheduleValue, e.getMessage()));
+      return null;
+    }
+  }
+  
+  /** Configure the maximum number of plans kept per agent during replanning, if provided. Applies to both command line and configuration file based 
+   * simulations, since it bounds the memory used by the population regardless of how the simulation is configured
+   * 
+   * @param config to configure
+   * @param options to extract value from
+   */
+  public static void configurePlansMemory(final Config config, final WrapperOptions options) {
+    String plansMemoryValue = options.get(PLANS_MEMORY_KEY);
+    if(StringUtils.isNullOrBlank(plansMemoryValue)) {
+      return;
+    }
+    
+    try {
+      int plansMemory = Integer.parseInt(plansMemoryValue);
+      if(plansMemory < 1) {
+        LOGGER.warning(String.format("IGNORED: --%s should be positive", PLANS_MEMORY_KEY));
+        return;
+      }
+      LOGGER.info(String.format("[SETTING] MATSim maximum plans per agent: %d", plansMemory));
+      config.strategy().setMaxAgentPlanMemorySize(plansMemory);
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", PLANS_MEMORY_KEY, plansMemoryValue));
+    }
+  }
+
+  /** Configure parallel events handling, if provided. Applies to both command line and configuration file based simulations. Without it, MATSim 
+   * delivers all events to all handlers serially behind the mobsim
+   * 
+   * @param config to configure
+   * @param options to extract value from
+   */
+  public static void configureEventsThreads(final Config config, final WrapperOptions options) {
+    String eventsThreadsValue = options.get(EVENTS_THREADS_KEY);
+    if(StringUtils.isNullOrBlank(eventsThreadsValue)) {
+      return;
+    }
+    
+    try {
+      int eventsThreads = Integer.parseInt(eventsThreadsValue);
+      if(eventsThreads < 1) {
+        LOGGER.warning(String.format("IGNORED: --%s should be positive", EVENTS_THREADS_KEY));
+        return;
+      }
+      LOGGER.info(String.format("[SETTING] MATSim parallel events handling threads: %d", eventsThreads));
+      config.parallelEventHandling().setNumberOfThreads(eventsThreads);
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", EVENTS_THREADS_KEY, eventsThreadsValue));
+    }
+  }
+  
+  /** Configure when snapshots are written, if provided. Applies to both command line and configuration file based simulations. The interval 
+   * replaces controler.writeSnapshotsInterval, so 0 disables snapshots altogether (including any MATSim snapshot formats of the configuration), 
+   * the --snapshot_period replaces qsim.snapshotperiod when snapshots are written
+   * 
+   * @param config to configure
+   * @param options to extract value from
+   */
+  public static void configureSnapshots(final Config config, final WrapperOptions options) {
+    int interval = parseSnapshotInterval(options);
+    if(interval < 0) {
+      return;
+    }
+    LOGGER.info(String.format("[SETTING] MATSim snapshot interval: %d", interval));
+    config.controler().setWriteSnapshotsInterval(interval);
+    if(interval == 0) {
+      return;
+    }
+    
+    double period = DEFAULT_SNAPSHOT_PERIOD;
+    String periodValue = options.get(SNAPSHOT_PERIOD_KEY);
+    if(!StringUtils.isNullOrBlank(periodValue)) {
+      try {
+        period = Double.parseDouble(periodValue);
+        if(period <= 0) {
+          LOGGER.warning(String.format("IGNORED: --%s should be positive", SNAPSHOT_PERIOD_KEY));
+          period = DEFAULT_SNAPSHOT_PERIOD;
+        }
+      }catch(NumberFormatException e) {
+        LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", SNAPSHOT_PERIOD_KEY, periodValue));
+      }
+    }
+    LOGGER.info(String.format("[SETTING] MATSim snapshot period: %.0f s", period));
+    config.qsim().setSnapshotPeriod(period);
+  }
+  
+  /** Parse the iteration interval at which snapshots are written
+   * 
+   * @param options to extract from
+   * @return interval, 0 for none, -1 when absent or invalid
+   */
+  private static int parseSnapshotInterval(final WrapperOptions options) {
+    String intervalValue = options.get(SNAPSHOT_INTERVAL_KEY);
+    if(StringUtils.isNullOrBlank(intervalValue)) {
+      return -1;
+    }
+    try {
+      int interval = Integer.parseInt(intervalValue);
+      if(interval < 0) {
+        LOGGER.warning(String.format("IGNORED: --%s should not be negative", SNAPSHOT_INTERVAL_KEY));
+        return -1;
+      }
+      return interval;
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", SNAPSHOT_INTERVAL_KEY, intervalValue));
+      return -1;
+    }
+  }
+  
+  /** Verify if the wrapper's sampled snapshots are to be written, i.e., when a positive --snapshot_interval is provided
+   * 
+   * @param options to check for
+   * @return true when written, false otherwise
+   */
+  public static boolean isSnapshotActivated(final WrapperOptions options) {
+    return parseSnapshotInterval(options) > 0;
+  }
+  
+  /** Parse the sample of the agents in the wrapper's snapshots
+   * 
+   * @param options to extract from
+   * @return sample
+   */
+  public static double parseSnapshotSample(final WrapperOptions options) {
+    double sample = DEFAULT_SNAPSHOT_SAMPLE;
+    String sampleValue = options.get(SNAPSHOT_SAMPLE_KEY);
+    if(!StringUtils.isNullOrBlank(sampleValue)) {
+      try {
+        sample = Double.parseDouble(sampleValue);
+        if(sample <= 0 || sample > 1) {
+          LOGGER.warning(String.format("IGNORED: --%s should be in (0,1]", SNAPSHOT_SAMPLE_KEY));
+          sample = DEFAULT_SNAPSHOT_SAMPLE;
+        }
+      }catch(NumberFormatException e) {
+        LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", SNAPSHOT_SAMPLE_KEY, sampleValue));
+      }
+    }
+    LOGGER.info(String.format("[SETTING] Snapshot sample: %.4f", sample));
+    return sample;
+  }
+  
+  /** Verify if zone-to-zone skims are to be created after the last iteration
+   * 
+   * @param options to check for
+   * @return true when skims are created, false otherwise
+   */
+  public static boolean isSkimActivated(final WrapperOptions options) {
+    return !StringUtils.isNullOrBlank(options.get(SKIM_ZONES_KEY));
+  }
+  
+  /** Parse the zones to create skims for
+   * 
+   * @param options to extract from
+   * @return zones
+   * @throws PlanItException thrown when the zones file cannot be parsed
+   */
+  public static SkimZones parseSkimZones(final WrapperOptions options) throws PlanItException {
+    SkimZones zones = SkimZones.parse(Path.of(options.get(SKIM_ZONES_KEY)));
+    LOGGER.info(String.format("[SETTING] Skims for %d zones: %s", zones.size(), options.get(SKIM_ZONES_KEY)));
+    return zones;
+  }
+  
+  /** Verify if the skims are to be persisted in binary format
+   * 
+   * @param options to check for
+   * @return true when binary, false when CSV
+   */
+  public static boolean isSkimFormatBinary(final WrapperOptions options) {
+    String skimFormat = options.get(SKIM_FORMAT_KEY);
+    if(StringUtils.isNullOrBlank(skimFormat)) {
+      skimFormat = DEFAULT_SKIM_FORMAT;
+    }
+    if(!SKIM_FORMAT_BINARY_VALUE.equals(skimFormat) && !SKIM_FORMAT_CSV_VALUE.equals(skimFormat)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",SKIM_FORMAT_KEY));
+      skimFormat = DEFAULT_SKIM_FORMAT;
+    }
+    LOGGER.info(String.format("[SETTING] Skim format: %s", skimFormat));
+    return SKIM_FORMAT_BINARY_VALUE.equals(skimFormat);
+  }
+  
+  /** Verify if the wrapper's hourly link volumes are to be persisted
+   * 
+   * @param options to check for
+   * @return true when link volumes are persisted, false otherwise
+   */
+  public static boolean isLinkVolumesActivated(final WrapperOptions options) {
+    String linkVolumesFlag = options.get(LINK_VOLUMES_KEY);
+    if(StringUtils.isNullOrBlank(linkVolumesFlag) || LINK_VOLUMES_NO_VALUE.equals(linkVolumesFlag)) {
+      return false;
+    }
+    if(!LINK_VOLUMES_YES_VALUE.equals(linkVolumesFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",LINK_VOLUMES_KEY));
+      return false;
+    }
+    LOGGER.info(String.format("[SETTING] Hourly link volumes: %s", LINK_VOLUMES_YES_VALUE));
+    return true;
+  }
+
+  /** Parse the iteration interval at which checkpoints are taken
+   * 
+   * @param options to extract from
+   * @return interval, 0 when no checkpoints are to be taken
+   */
+  public static int parseCheckpointInterval(final WrapperOptions options) {
+    String intervalValue = options.get(CHECKPOINT_INTERVAL_KEY);
+    if(StringUtils.isNullOrBlank(intervalValue)) {
+      return 0;
+    }
+    
+    try {
+      int interval = Integer.parseInt(intervalValue);
+      if(interval < 1) {
+        LOGGER.warning(String.format("IGNORED: --%s should be positive", CHECKPOINT_INTERVAL_KEY));
+        return 0;
+      }
+      LOGGER.info(String.format("[SETTING] Checkpoint every %d iterations", interval));
+      return interval;
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", CHECKPOINT_INTERVAL_KEY, intervalValue));
+      return 0;
+    }
+  }
+  
+  /** Parse the number of final iterations simulated by qsim, with the iterations before simulated by the event-driven hermes mobsim. Requires qsim as
+   * configured mobsim
+   * 
+   * @param config to verify configured mobsim and iterations of
+   * @param options to extract from
+   * @return number of final qsim iterations, 0 when all iterations are simulated by the configured mobsim
+   */
+  public static int parseMobsimSchedule(final Config config, final WrapperOptions options) {
+    String qsimIterationsValue = options.get(MOBSIM_SCHEDULE_KEY);
+    if(StringUtils.isNullOrBlank(qsimIterationsValue)) {
+      return 0;
+    }
+    
+    try {
+      int qsimIterations = Integer.parseInt(qsimIterationsValue);
+      if(qsimIterations < 1) {
+        LOGGER.warning(String.format("IGNORED: --%s should be positive", MOBSIM_SCHEDULE_KEY));
+        return 0;
+      }
+      if(!ControlerConfigGroup.MobsimType.qsim.toString().equals(config.controler().getMobsim())) {
+        LOGGER.warning(String.format("IGNORED: --%s only supports mobsim %s, %s is configured", 
+            MOBSIM_SCHEDULE_KEY, ControlerConfigGroup.MobsimType.qsim.toString(), config.controler().getMobsim()));
+        return 0;
+      }
+      int iterations = config.controler().getLastIteration() - config.controler().getFirstIteration() + 1;
+      if(qsimIterations >= iterations) {
+        LOGGER.warning(String.format("IGNORED: --%s covers all %d iterations, all are simulated by %s", 
+            MOBSIM_SCHEDULE_KEY, iterations, ControlerConfigGroup.MobsimType.qsim.toString()));
+        return 0;
+      }
+      LOGGER.info(String.format("[SETTING] Mobsim schedule: %s for %d iterations, %s for the final %d iterations", 
+          ControlerConfigGroup.MobsimType.hermes.toString(), iterations - qsimIterations, ControlerConfigGroup.MobsimType.qsim.toString(), qsimIterations));
+      return qsimIterations;
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number", MOBSIM_SCHEDULE_KEY, qsimIterationsValue));
+      return 0;
+    }
+  }
+  
+  /** Verify if the simulation is to be resumed from the latest checkpoint of an earlier run
+   * 
+   * @param options to check for
+   * @return true when resuming, false otherwise
+   */
+  public static boolean isResumeActivated(final WrapperOptions options) {
+    return !StringUtils.isNullOrBlank(options.get(RESUME_KEY));
+  }
+  
+  /** Configure the simulation to resume from the latest checkpoint of the run in the --resume directory, i.e., start from its plans at the iteration
+   * following the checkpoint with the run's random seed
+   * 
+   * @param config to configure
+   * @param options to extract the run to resume from
+   * @throws PlanItException thrown when no checkpoint is available or the run already passed the last iteration
+   */
+  public static void configureResume(final Config config, final WrapperOptions options) throws PlanItException {
+    Path resumeDir = Path.of(options.get(RESUME_KEY)).toAbsolutePath();
+    Checkpoint checkpoint = Checkpoint.findLatest(resumeDir).orElseThrow(
+        () -> new PlanItException("No checkpoint found in %s, unable to --%s", resumeDir.toString(), RESUME_KEY));
+    if(checkpoint.getIteration() >= config.controler().getLastIteration()) {
+      throw new PlanItException("Checkpoint of iteration %d in %s is not before the last iteration %d, nothing to --%s", 
+          checkpoint.getIteration(), resumeDir.toString(), config.controler().getLastIteration(), RESUME_KEY);
+    }
+    
+    if(isBaseRunActivated(options)) {
+      LOGGER.warning(String.format("IGNORED: --%s, resuming from the checkpoint instead", BASE_RUN_KEY));
+    }
+    config.plans().setInputFile(checkpoint.getPlansFile().toAbsolutePath().toString());
+    /* checkpointed plans are already in the coordinate reference system of the simulation */
+    config.plans().setInputCRS(null);
+    config.controler().setFirstIteration(checkpoint.getIteration() + 1);
+    config.global().setRandomSeed(checkpoint.getRandomSeed());
+    LOGGER.info(String.format("[SETTING] Resuming from checkpoint of iteration %d (%d persons) in %s", 
+        checkpoint.getIteration(), checkpoint.getPersons(), resumeDir.toString()));
+  }
+
+  /** Verify if the simulation starts from the final plans of a base run
+   * 
+   * @param options to check for
+   * @return true when starting from a base run, false otherwise
+   */
+  public static boolean isBaseRunActivated(final WrapperOptions options) {
+    return !StringUtils.isNullOrBlank(options.get(BASE_RUN_KEY));
+  }
+  
+  /** Parse the number of hops around changed links within which routes of the base run are considered affected
    * 
-   * @param keyValueMap to extract command line arguments from
+   * @param options to extract from
+   * @return number of hops
+   */
+  public static int parseBaseRunHops(final WrapperOptions options) {
+    String hopsValue = options.get(BASE_RUN_HOPS_KEY);
+    if(StringUtils.isNullOrBlank(hopsValue)) {
+      return DEFAULT_BASE_RUN_HOPS;
+    }
+    
+    try {
+      int hops = Integer.parseInt(hopsValue);
+      if(hops < 0) {
+        LOGGER.warning(String.format("IGNORED: --%s should be non-negative, using %d", BASE_RUN_HOPS_KEY, DEFAULT_BASE_RUN_HOPS));
+        return DEFAULT_BASE_RUN_HOPS;
+      }
+      return hops;
+    }catch(NumberFormatException e) {
+      LOGGER.warning(String.format("IGNORED: --%s value %s is not a valid number, using %d", BASE_RUN_HOPS_KEY, hopsValue, DEFAULT_BASE_RUN_HOPS));
+      return DEFAULT_BASE_RUN_HOPS;
+    }
+  }
+  
+  /** Configure the simulation to start from the final plans of the base run in the --base_run directory instead of the --plans
+   * 
+   * @param config to configure
+   * @param options to extract the base run from
+   * @return the base run
+   * @throws PlanItException thrown when the base run lacks its final plans, network or events
+   */
+  public static BaseRun configureBaseRun(final Config config, final WrapperOptions options) throws PlanItException {
+    Path baseRunDir = Path.of(options.get(BASE_RUN_KEY)).toAbsolutePath();
+    BaseRun baseRun = BaseRun.find(baseRunDir).orElseThrow(
+        () -> new PlanItException("No complete run found in %s, unable to start from --%s", baseRunDir.toString(), BASE_RUN_KEY));
+    
+    config.plans().setInputFile(baseRun.getPlansFile().toString());
+    config.plans().setInputCRS(null);
+    LOGGER.info(String.format("[SETTING] Starting from the final plans of base run %s", baseRunDir.toString()));
+    return baseRun;
+  }
+  
+  /** Reroute the agents of the (base run) population of a scenario whose selected routes traverse links that changed compared to the network of the
+   * base run, or links within --base_run_hops of them, on the travel times of the base run, see {@link BaseRunRerouter}
+   * 
+   * @param config of the scenario
+   * @param options to extract the number of hops from
+   * @param scenario with the new network and the population of the base run
+   * @param baseRun to compare with
+   * @throws PlanItException thrown if error
+   */
+  public static void rerouteFromBaseRun(final Config config, final WrapperOptions options, final Scenario scenario, final BaseRun baseRun) throws PlanItException {
+    var baseRunRerouteEvent = new BaseRunRerouteEvent();
+    baseRunRerouteEvent.begin();
+    
+    Network baseNetwork = NetworkUtils.createNetwork();
+    try(InputStream inputStream = PipelinedGzipInputStream.open(baseRun.getNetworkFile())){
+      new MatsimNetworkReader(baseNetwork).parse(inputStream);
+    }catch(IOException e) {
+      throw new PlanItException("Unable to parse base run network %s: %s", baseRun.getNetworkFile().toString(), e.getMessage());
+    }
+    
+    var networkDiff = new NetworkDiff(baseNetwork, scenario.getNetwork());
+    int hops = parseBaseRunHops(options);
+    var affectedLinks = networkDiff.getAffectedLinks(hops);
+    baseRunRerouteEvent.changedLinks = networkDiff.getChangedLinks().size();
+    baseRunRerouteEvent.affectedLinks = affectedLinks.size();
+    LOGGER.info(String.format("[SETTING] Base run network diff: %d changed links, %d links affected within %d hops", 
+        networkDiff.getChangedLinks().size(), affectedLinks.size(), hops));
+    
+    if(!networkDiff.getChangedLinks().isEmpty()) {
+      var travelTimes = BaseRunTravelTimes.read(
+          baseRun.getEventsFile(), config.travelTimeCalculator().getTraveltimeBinSize(), config.travelTimeCalculator().getMaxTime());
+      var rerouter = new BaseRunRerouter(scenario.getNetwork(), travelTimes, networkDiff.getChangedLinks(), affectedLinks);
+      rerouter.run(scenario.getPopulation());
+      baseRunRerouteEvent.personsAffected = rerouter.getPersonsAffected();
+      baseRunRerouteEvent.legsRerouted = rerouter.getLegsRerouted();
+    }
+    baseRunRerouteEvent.commit();
+  }
+
+  /** Estimate the heap and per-iteration runtime of the simulation configured by the options, see {@link RunEstimator}. The network and plans are
+   * taken from the --config (and --override_config) files when provided, and from the command line options otherwise. The --plans_sample and 
+   * --study_area are accounted for, time window filtering and collapsing are not, so for these the estimate is an upper bound
+   * 
+   * @param options to estimate simulation of
+   * @return estimate
+   * @throws PlanItException thrown if error
+   */
+  public static RunEstimate estimateRun(final WrapperOptions options) throws PlanItException {
+    return estimateRun(options, null);
+  }
+  
+  /** Estimate the heap and per-iteration runtime of the simulation configured by the options, see {@link RunEstimator}. With a study area only the
+   * network within it and the persons it retains are counted, a network provided in memory is counted in full
+   * 
+   * @param options to estimate simulation of
+   * @param planitNetwork network provided in memory instead of a network file, may be null
+   * @return estimate
+   * @throws PlanItException thrown if error
+   */
+  public static RunEstimate estimateRun(final WrapperOptions options, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    var runEstimateEvent = new RunEstimateEvent();
+    runEstimateEvent.begin();
+    
+    URL networkUrl = null;
+    URL plansUrl = null;
+    double sample = 1;
+    Config config = null;
+    CoordinateTransformation networkTransformation = null;
+    CoordinateTransformation plansTransformation = null;
+    if(options.isSet(CONFIG_KEY)) {
+      String[] overrideFiles = options.isSet(OVERRIDE_CONFIG_KEY) ? new String[] {options.get(OVERRIDE_CONFIG_KEY)} : new String[0];
+      config = createConfigurationFromFiles(options.get(CONFIG_KEY), overrideFiles).orElseThrow(
+          () -> new PlanItException("Unable to estimate run, configuration not available"));
+      networkUrl = planitNetwork != null ? null : config.network().getInputFileURL(config.getContext());
+      plansUrl = config.plans().getInputFileURL(config.getContext());
+      networkTransformation = getTransformation(config.network().getInputCRS(), config.global().getCoordinateSystem());
+      plansTransformation = getTransformation(config.plans().getInputCRS(), config.global().getCoordinateSystem());
+    }else {
+      config = ConfigUtils.createConfig();
+      String globalCrs = StringUtils.isNullOrBlank(options.get(CRS_KEY)) ? MATSIM_DEFAULT_GLOBAL_CRS : options.get(CRS_KEY);
+      networkTransformation = getTransformation(options.get(NETWORK_CRS_KEY), globalCrs);
+      plansTransformation = getTransformation(options.get(PLANS_CRS_KEY), globalCrs);
+      try {
+        networkUrl = planitNetwork != null ? null : parseNetworkFileLocation(options).toAbsolutePath().toUri().toURL();
+        plansUrl = extractPlansFileLocation(options).toAbsolutePath().toUri().toURL();
+      }catch(IOException e) {
+        throw new PlanItException("Unable to estimate run, invalid network or plans location: %s", e.getMessage());
+      }
+      if(isPopulationPlansDownSampled(options)) {
+        sample = Double.parseDouble(options.get(PLANS_SAMPLE_KEY));
+      }
+    }
+    if((networkUrl == null && planitNetwork == null) || plansUrl == null) {
+      throw new PlanItException("Unable to estimate run, network or plans file not configured");
+    }
+    configurePlansMemory(config, options);
+    int timeBins = (int) Math.ceil(config.travelTimeCalculator().getMaxTime() / config.travelTimeCalculator().getTraveltimeBinSize());
+    
+    StudyArea studyArea = isStudyAreaActivated(options) ? parseStudyArea(options) : null;
+    long[] networkSize = planitNetwork != null ? 
+        PlanitNetworkConverter.getSize(planitNetwork) : RunEstimator.countNetwork(networkUrl, studyArea, networkTransformation);
+    RunEstimate estimate = RunEstimator.estimate(
+        networkSize, plansUrl, studyArea, plansTransformation, sample, config.strategy().getMaxAgentPlanMemorySize(), timeBins);
+    runEstimateEvent.persons = estimate.getPersons();
+    runEstimateEvent.links = estimate.getLinks();
+    runEstimateEvent.sample = estimate.getSample();
+    runEstimateEvent.heapBytes = estimate.getHeapBytes();
+    runEstimateEvent.availableHeapBytes = Runtime.getRuntime().maxMemory();
+    runEstimateEvent.commit();
+    
+    LOGGER.info(String.format("Run estimate: %s", estimate.toString()));
+    LOGGER.info(String.format("Run estimate: %d MB of %d MB available heap", estimate.getHeapBytes() / (1024 * 1024), Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+    return estimate;
+  }
+  
+  /** Pre-flight admission control of a simulation. When its estimated heap exceeds the available heap the simulation is, depending on --admission, 
+   * run regardless with a warning, refused, or run on a down sampled population with flow and storage capacity factors scaled by the same 
+   * proportion. Down sampling is only possible when the plans are provided via the command line options. The options are expected to refer to the 
+   * plans as simulated, i.e., after time window filtering, down sampling and collapsing, so the returned --plans_sample applies to that plans file
+   * 
+   * @param options of the simulation
+   * @param planitNetwork network provided in memory instead of a network file, may be null
+   * @return options to run the simulation with
+   * @throws PlanItException thrown when the simulation is refused
+   */
+  public static WrapperOptions admitSimulation(final WrapperOptions options, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    String admission = options.get(ADMISSION_KEY);
+    if(StringUtils.isNullOrBlank(admission)) {
+      admission = DEFAULT_ADMISSION;
+    }
+    if(!ADMISSION_WARN_VALUE.equals(admission) && !ADMISSION_REFUSE_VALUE.equals(admission) && !ADMISSION_DOWNSAMPLE_VALUE.equals(admission)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",ADMISSION_KEY));
+      admission = DEFAULT_ADMISSION;
+    }
+    LOGGER.info(String.format("[SETTING] Admission: %s", admission));
+    
+    RunEstimate estimate = estimateRun(options, planitNetwork);
+    long availableHeapBytes = Runtime.getRuntime().maxMemory();
+    if(estimate.fits(availableHeapBytes)) {
+      return options;
+    }
+    
+    String exceeded = String.format("Estimated heap of %d MB exceeds available heap of %d MB", estimate.getHeapBytes() / (1024 * 1024), availableHeapBytes / (1024 * 1024));
+    switch (admission) {
+      case ADMISSION_WARN_VALUE:
+        LOGGER.warning(String.format("%s, simulation may run out of memory", exceeded));
+        return options;
+      case ADMISSION_DOWNSAMPLE_VALUE:
+        if(options.isSet(CONFIG_KEY)) {
+          throw new PlanItException("%s, unable to down sample plans of configuration file based simulation, simulation refused", exceeded);
+        }
+        /* round down to the precision used for sampling */
+        double fittingSample = Math.floor(estimate.getFittingSample(availableHeapBytes) * 1000) / 1000;
+        if(fittingSample <= 0) {
+          throw new PlanItException("%s, even without population, simulation refused", exceeded);
+        }
+        double scaling = fittingSample / estimate.getSample();
+        WrapperOptions admittedOptions = options.with(PLANS_SAMPLE_KEY, String.valueOf(fittingSample));
+        admittedOptions = admittedOptions.with(CAPACITY_FLOW_FACTOR_KEY, String.valueOf(scaling * parseCapacityFactor(options, CAPACITY_FLOW_FACTOR_KEY)));
+        admittedOptions = admittedOptions.with(CAPACITY_STORAGE_FACTOR_KEY, String.valueOf(scaling * parseCapacityFactor(options, CAPACITY_STORAGE_FACTOR_KEY)));
+        LOGGER.warning(String.format("%s, plans down sampled to %.3f and capacities scaled by %.3f", exceeded, fittingSample, scaling));
+        return admittedOptions;
+      default:
+        throw new PlanItException("%s, simulation refused", exceeded);
+    }
+  }
+  
+  /** Parse a capacity factor without logging, for scaling it
+   * 
+   * @param options to extract from
+   * @param key of the factor
+   * @return factor, 1 when absent or invalid
+   */
+  private static double parseCapacityFactor(final WrapperOptions options, final String key) {
+    try {
+      String factor = options.get(key);
+      return StringUtils.isNullOrBlank(factor) ? 1 : Double.parseDouble(factor);
+    }catch(NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  /** Verify if the inputs are to be validated before the simulation
+   * 
+   * @param options to check for
+   * @return true when validated, false otherwise
+   */
+  public static boolean isValidationActivated(final WrapperOptions options) {
+    String validateFlag = options.get(VALIDATE_KEY);
+    if(StringUtils.isNullOrBlank(validateFlag) || VALIDATE_YES_VALUE.equals(validateFlag)) {
+      LOGGER.info(String.format("[SETTING] Input validation: %s", VALIDATE_YES_VALUE));
+      return true;
+    }
+    if(!VALIDATE_NO_VALUE.equals(validateFlag)) {
+      LOGGER.warning(String.format("Invalid value for --%s switch",VALIDATE_KEY));
+      return true;
+    }
+    LOGGER.info(String.format("[SETTING] Input validation: %s", VALIDATE_NO_VALUE));
+    return false;
+  }
+  
+  /** Transformation between two crs
+   * 
+   * @param fromCrs to transform from, no transformation when absent
+   * @param toCrs to transform to
+   * @return transformation
+   */
+  private static CoordinateTransformation getTransformation(final String fromCrs, final String toCrs) {
+    if(StringUtils.isNullOrBlank(fromCrs) || StringUtils.isNullOrBlank(toCrs) || fromCrs.equalsIgnoreCase(toCrs)) {
+      return new IdentityTransformation();
+    }
+    return TransformationFactory.getCoordinateTransformation(fromCrs, toCrs);
+  }
+  
+  /** Validate the network, plans, activity configuration and pt stops of the simulation configured by the options in a single streamed pass, 
+   * see {@link InputValidator}. The inputs are taken from the --config (and --override_config) files when provided, and from the command line 
+   * options otherwise
+   * 
+   * @param options to validate inputs of
+   * @param planitNetwork network provided in memory instead of a network file, may be null in which case network based checks are skipped
+   * @return report of the validation
+   * @throws PlanItException thrown when the inputs cannot be streamed
+   */
+  public static ValidationReport validateInputs(final WrapperOptions options, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    var inputValidationEvent = new InputValidationEvent();
+    inputValidationEvent.begin();
+    
+    InputValidator validator = null;
+    try {
+      if(options.isSet(CONFIG_KEY)) {
+        String[] overrideFiles = options.isSet(OVERRIDE_CONFIG_KEY) ? new String[] {options.get(OVERRIDE_CONFIG_KEY)} : new String[0];
+        Config config = createConfigurationFromFiles(options.get(CONFIG_KEY), overrideFiles).orElseThrow(
+            () -> new PlanItException("Unable to validate inputs, configuration not available"));
+        String globalCrs = config.global().getCoordinateSystem();
+        
+        URL ptStopsUrl = null;
+        ConfigGroup ptRouterGroup = config.getModules().get(MatrixBasedPtRouterConfigGroup.GROUP_NAME);
+        if(ptRouterGroup != null && !StringUtils.isNullOrBlank(ptRouterGroup.getValue(MATRIX_BASED_PT_STOPS_PARAM))) {
+          ptStopsUrl = ConfigGroup.getInputFileURL(config.getContext(), ptRouterGroup.getValue(MATRIX_BASED_PT_STOPS_PARAM));
+        }
+        validator = new InputValidator(
+            planitNetwork != null ? null : config.network().getInputFileURL(config.getContext()), 
+            getTransformation(config.network().getInputCRS(), globalCrs),
+            config.plans().getInputFileURL(config.getContext()), 
+            getTransformation(config.plans().getInputCRS(), globalCrs),
+            new HashSet<>(config.planCalcScore().getActivityTypes()), 
+            ptStopsUrl);
+      }else {
+        String globalCrs = StringUtils.isNullOrBlank(options.get(CRS_KEY)) ? MATSIM_DEFAULT_GLOBAL_CRS : options.get(CRS_KEY);
+        
+        /* activity types as configured by the activity configuration, see configureActivityConfig */
+        Config activityConfig = ConfigUtils.createConfig();
+        String activityConfigValue = options.get(ACTIVITY_CONFIG_KEY);
+        if(!StringUtils.isNullOrBlank(activityConfigValue) && Paths.get(activityConfigValue).toFile().exists()) {
+          ConfigUtils.loadConfig(activityConfig, activityConfigValue);
+        }
+        
+        String ptStopsCsvValue = options.get(PT_STOPS_CSV_KEY);
+        boolean ptStops = parseModesType(options).equals(ModesType.CAR_PT_TELEPORT) && !StringUtils.isNullOrBlank(ptStopsCsvValue);
+        validator = new InputValidator(
+            planitNetwork != null ? null : parseNetworkFileLocation(options).toAbsolutePath().toUri().toURL(), 
+            getTransformation(options.get(NETWORK_CRS_KEY), globalCrs),
+            extractPlansFileLocation(options).toAbsolutePath().toUri().toURL(), 
+            getTransformation(options.get(PLANS_CRS_KEY), globalCrs),
+            new HashSet<>(activityConfig.planCalcScore().getActivityTypes()), 
+            ptStops ? Path.of(ptStopsCsvValue).toAbsolutePath().toUri().toURL() : null);
+      }
+    }catch(IOException e) {
+      throw new PlanItException("Unable to validate inputs, invalid input location: %s", e.getMessage());
+    }
+    if(planitNetwork != null) {
+      LOGGER.info("PLANit network in memory, network based input validation skipped");
+    }
+    
+    ValidationReport report = validator.validate();
+    inputValidationEvent.persons = report.getPersons();
+    inputValidationEvent.activities = report.getActivities();
+    inputValidationEvent.errors = report.getErrors().size();
+    inputValidationEvent.warnings = report.getWarnings().size();
+    inputValidationEvent.commit();
+    
+    if(report.isValid()) {
+      LOGGER.info(String.format("Input validation: %s", report.toString()));
+    }else {
+      LOGGER.severe(String.format("Input validation: %s", report.toString()));
+    }
+    return report;
+  }
+
+  /** Collect the location of the config file from the command line arguments (if any)
+   * 
+   * @param options to extract from
+   * @return found config file location
+   */
+  public static String getConfigFileLocation(WrapperOptions options) {
+    if(!isSimulationConfigurationFileBased(options)) {
+      LOGGER.warning("Cannot extract config file location when simulation is not config file based");
+      return null;
+    }
+    
+    String configFileLocation = options.get(CONFIG_KEY);
+    if(!StringUtils.isNullOrBlank(configFileLocation)) {    
+      LOGGER.info(String.format("[SETTING] MATSim config file location : %s", configFileLocation));        
+    }
+    return configFileLocation;    
+  }
+
+  /** Collect the location of an additional config file which overrides the base config file for the available contents
+   * 
+   * @param options to extract from
+   * @return found override config file location
+   */  
+  public static String getOverrideConfigFileLocation(final WrapperOptions options) {
+    if(!isSimulationConfigurationFileBased(options)) {
+      LOGGER.warning("Cannot extract override config file locations when simulation is not properly config file based");
+      return null;
+    }
+
+    String overrideConfigFileLocation = options.get(OVERRIDE_CONFIG_KEY);
+    if(!StringUtils.isNullOrBlank(overrideConfigFileLocation)) {
+      LOGGER.info(String.format("[SETTING] MATSim additional config file location : %s", overrideConfigFileLocation));        
+    }
+    return overrideConfigFileLocation; 
+  }
+
+  /** The output directory to use. If not configure the default is provided which is the working directory of the application
+   * 
+   * @param options to extract information from
+   * @return parsed output directory as path instance
+   * @throws PlanItException thrown if error
+   */
+  public static Path parseOutputDirectory(final WrapperOptions options) throws PlanItException {
+    PlanItException.throwIfNull(options, "Configuration information null");
+    
+    Path outputDir = null;
+    if(options.isSet(OUTPUT_KEY) && !StringUtils.isNullOrBlank(options.get(OUTPUT_KEY))) {
+      outputDir = Paths.get(options.get(OUTPUT_KEY));  
+    }else {
+      outputDir = DEFAULT_OUTPUT_PATH; 
+    }
+    
+    outputDir = outputDir.normalize();
+    LOGGER.info(String.format("[SETTING] MATSim output directory : %s", outputDir.toString()));        
+    return outputDir;
+  }
+
+
+  /** Determine what modesType we are working with (car, car and pt (teleport), car and pt))
+   * 
+   * @param options to extract information from
+   * @return type found, default CAR_ONLY when absent
+   */
+  public static ModesType parseModesType(final WrapperOptions options) {
+    if(StringUtils.isNullOrBlank(options.get(MODES_KEY))) {
+        return ModesType.CAR_ONLY;
+    }
+    
+    return ModesType.of(options.get(MODES_KEY));
+  }
+
+  /** Collect the network file location as path based on the user configuration (if any) or defaults
+   * 
+   * @param options to use
+   * @return network file location to use
+   */
+  public static Path parseNetworkFileLocation(WrapperOptions options) {        
+    String networkFileLocation = options.get(NETWORK_KEY);       
+    if(StringUtils.isNullOrBlank(networkFileLocation)) {
+      networkFileLocation = Paths.get(CURRENT_PATH.toString(), MATSIM_DEFAULT_NETWORK).toString();
+    }      
+    return Paths.get(networkFileLocation).normalize();                        
+  }
+
+  /** Generate a MATSim configuration in memory based on command line arguments.
+   * 
+   * @param options to extract command line arguments from
    * @return created MATSim config instance, null if unable to create
    */  
-  public static Optional<Config> createConfigurationFromCommandLine(final Map<String, String> keyValueMap) {
+  public static Optional<Config> createConfigurationFromCommandLine(final WrapperOptions options) {
     Config config = null;
     
+    var configBuildEvent = new ConfigBuildEvent();
+    configBuildEvent.begin();
+    
     /* mode specific base config template */
-    var modesType = MatsimHelper.parseModesType(keyValueMap);
+    var modesType = MatsimHelper.parseModesType(options);
+    configBuildEvent.modes = modesType.getValue();
     try {      
       switch (modesType) {
       case CAR_ONLY:
+        configBuildEvent.source = DEFAULT_CAR_CONFIG_RESOURCE;
         config = createDefaultCarSimConfiguration(); 
         break;
       case CAR_PT_TELEPORT:
+        configBuildEvent.source = DEFAULT_CAR_SIM_PT_TELE_CONFIG_RESOURCE;
         config = createDefaultCarSimPtTeleportConfiguration();
         break;
       default:
-        throw new PlanItException("Only car, or car with public transport as teleportation are currently supported, consider using a different --modes values than %s", keyValueMap.get(MODES_KEY));
+        throw new PlanItException("Only car, or car with public transport as teleportation are currently supported, consider using a different --modes values than %s", options.get(MODES_KEY));
       }
     }catch(Exception e) {
       LOGGER.severe(e.getMessage());
@@ -838,29 +2053,30 @@ public class MatsimHelper {
     {
       /* do this first to ensure that other options are not overwritten by this additional config file in case
        * the user includes more than just the activity configuration portion */
-      MatsimHelper.configureActivityConfig(config,keyValueMap);
+      MatsimHelper.configureActivityConfig(config,options);
       
-      MatsimHelper.configureModes(config, keyValueMap);
-      MatsimHelper.configureCrs(config,keyValueMap);
-      MatsimHelper.configureNetwork(config,keyValueMap);
-      MatsimHelper.configureNetworkCrs(config,keyValueMap);
-      MatsimHelper.configurePlans(config,keyValueMap);
-      MatsimHelper.configurePlansCrs(config,keyValueMap);  
-      MatsimHelper.configureStartTime(config,keyValueMap);
-      MatsimHelper.configureEndTime(config,keyValueMap);
-      MatsimHelper.configureFlowCapacityFactor(config,keyValueMap);
-      MatsimHelper.configureStorageCapacityFactor(config,keyValueMap);
-      MatsimHelper.configureLinkStats(config,keyValueMap);
-      MatsimHelper.configureIterationsMax(config,keyValueMap);      
+      MatsimHelper.configureModes(config, options);
+      MatsimHelper.configureCrs(config,options);
+      MatsimHelper.configureNetwork(config,options);
+      MatsimHelper.configureNetworkCrs(config,options);
+      MatsimHelper.configurePlans(config,options);
+      MatsimHelper.configurePlansCrs(config,options);  
+      MatsimHelper.configureStartTime(config,options);
+      MatsimHelper.configureEndTime(config,options);
+      MatsimHelper.configureFlowCapacityFactor(config,options);
+      MatsimHelper.configureStorageCapacityFactor(config,options);
+      MatsimHelper.configureLinkStats(config,options);
+      MatsimHelper.configureIterationsMax(config,options);      
     }
     
     /* conditional configuration */
     {
       if(modesType.equals(ModesType.CAR_PT_TELEPORT)) {
-        MatsimHelper.configurePtMatrixRouter(config,keyValueMap);
+        MatsimHelper.configurePtMatrixRouter(config,options);
       }      
     }
     
+    configBuildEvent.commit();
     return Optional.of(config);
   }
 
@@ -871,55 +2087,325 @@ public class MatsimHelper {
    * @return created MATSim config instance
    */  
   public static Optional<Config> createConfigurationFromFiles(final String configFile, final String... overrideFiles) {  
+    var configBuildEvent = new ConfigBuildEvent();
+    configBuildEvent.begin();
+    configBuildEvent.source = configFile;
+    
     Config config = ConfigUtils.loadConfig(configFile);
     if(overrideFiles!=null) {
       for(int index=0;index<overrideFiles.length;++index) {
         ConfigUtils.loadConfig(config, overrideFiles[index]);
       }
     }
+    
+    configBuildEvent.commit();
     return Optional.of(config);
   }
 
+  /** Filter the plans file from the command line arguments to the --starttime/--endtime window, i.e., persons without legs in the window are
+   * removed and the remaining plans are trimmed to the window, see {@link PlansTimeWindowFilter}. The plans file is streamed, so the original
+   * population is never loaded in memory. The result is persisted in the output directory, with the window supplemented to the original file name 
+   * 
+   * @param options to extract from
+   * @param outputDir to use
+   * @return path to filtered plans file, null if not filtered
+   * @throws PlanItException thrown if error
+   */
+  public static Path createTimeFilteredPopulation(final WrapperOptions options, final Path outputDir) throws PlanItException {
+    if(!isPlansTimeFiltered(options)) {
+      return null;
+    }
+    
+    var plansTimeFilterEvent = new PlansTimeFilterEvent();
+    plansTimeFilterEvent.begin();
+    
+    Path originalPlanFileLocationAsPath = extractPlansFileLocation(options);
+    String startTimeValue = options.get(STARTTIME_KEY);
+    String endTimeValue = options.get(ENDTIME_KEY);
+    double startTime = StringUtils.isNullOrBlank(startTimeValue) ? 0 : Time.parseTime(startTimeValue);
+    double endTime = StringUtils.isNullOrBlank(endTimeValue) ? Double.POSITIVE_INFINITY : Time.parseTime(endTimeValue);
+    if(endTime <= startTime) {
+      throw new PlanItException("Unable to filter plans, --%s %s is not after --%s %s", ENDTIME_KEY, endTimeValue, STARTTIME_KEY, startTimeValue);
+    }
+    plansTimeFilterEvent.plansFile = originalPlanFileLocationAsPath.toString();
+    plansTimeFilterEvent.startTime = startTime;
+    plansTimeFilterEvent.endTime = endTime;
+    
+    String windowSuffix = String.format("_window_%d_%s", (long) startTime, Double.isInfinite(endTime) ? "end" : String.valueOf((long) endTime));
+    Path filteredPlansFileLocationAsPath = createDerivedPlansFileLocation(originalPlanFileLocationAsPath, outputDir, windowSuffix);
+    try {
+      Files.createDirectories(outputDir);
+    }catch(IOException e) {
+      throw new PlanItException("Unable to create output directory %s for time window filtered plans: %s", outputDir.toString(), e.getMessage());
+    }
+    
+    var filter = new PlansTimeWindowFilter(startTime, endTime);
+    filter.filter(originalPlanFileLocationAsPath, filteredPlansFileLocationAsPath);
+    plansTimeFilterEvent.personsBefore = filter.getPersonsRead();
+    plansTimeFilterEvent.personsAfter = filter.getPersonsWritten();
+    plansTimeFilterEvent.commit();
+    return filteredPlansFileLocationAsPath;
+  }
+
+  /** Collapse persons with identical plans of the plans file from the command line arguments into weighted agent groups, see {@link PlansCollapser}. 
+   * The collapsed plans file and the mapping of persons to their group leader are persisted in the output directory, supplementing the original file name 
+   * with "_collapsed" and "_collapsed_groups" respectively
+   * 
+   * @param options to extract from
+   * @param outputDir to use
+   * @return path to collapsed plans file, null if not collapsed
+   * @throws PlanItException thrown if error
+   */
+  public static Path createCollapsedPopulation(final WrapperOptions options, final Path outputDir) throws PlanItException {
+    if(!isPlansCollapseActivated(options)) {
+      return null;
+    }
+    
+    var plansCollapseEvent = new PlansCollapseEvent();
+    plansCollapseEvent.begin();
+    
+    Path originalPlanFileLocationAsPath = extractPlansFileLocation(options);
+    int maxGroupSize = parsePlansCollapseMax(options);
+    plansCollapseEvent.plansFile = originalPlanFileLocationAsPath.toString();
+    plansCollapseEvent.maxGroupSize = maxGroupSize;
+    
+    Path collapsedPlansFileLocationAsPath = createDerivedPlansFileLocation(originalPlanFileLocationAsPath, outputDir, "_collapsed");
+    String plansFileName = originalPlanFileLocationAsPath.getFileName().toString();
+    int extensionIndex = plansFileName.indexOf('.');
+    Path groupsFileLocationAsPath = Path.of(outputDir.toAbsolutePath().toString(), 
+        (extensionIndex < 0 ? plansFileName : plansFileName.substring(0, extensionIndex)) + "_collapsed_groups.csv");
+    try {
+      Files.createDirectories(outputDir);
+    }catch(IOException e) {
+      throw new PlanItException("Unable to create output directory %s for collapsed plans: %s", outputDir.toString(), e.getMessage());
+    }
+    
+    var collapser = new PlansCollapser(maxGroupSize);
+    collapser.collapse(originalPlanFileLocationAsPath, collapsedPlansFileLocationAsPath, groupsFileLocationAsPath);
+    plansCollapseEvent.persons = collapser.getPersonsRead();
+    plansCollapseEvent.groups = collapser.getGroupsWritten();
+    plansCollapseEvent.commit();
+    return collapsedPlansFileLocationAsPath;
+  }
+
   /** A plans or populations file cannot be downsampled on the fly and conduct a simulation. Therefore it is created
    * separately via this method based on the original plans file from the command line arguments and the provided output 
    * directory to store it in. The original plans file name is supplemented with the sample size of the new population to create
    * the new file name 
    * 
-   * @param keyValueMap to extract from
+   * @param options to extract from
    * @param outputDir to use
    * @return path to down sampled plans file
    */
-  public static Path createDownSampledPopulation(Map<String, String> keyValueMap, Path outputDir) {
-    if(MatsimHelper.isPopulationPlansDownSampled(keyValueMap)) {
-      Path originalPlanFileLocationAsPath = extractPlansFileLocation(keyValueMap);
-      double sampleSize = Double.parseDouble(keyValueMap.get(PLANS_SAMPLE_KEY));
+  public static Path createDownSampledPopulation(WrapperOptions options, Path outputDir) {
+    if(MatsimHelper.isPopulationPlansDownSampled(options)) {
+      var plansSamplingEvent = new PlansSamplingEvent();
+      plansSamplingEvent.begin();
+      
+      Path originalPlanFileLocationAsPath = extractPlansFileLocation(options);
+      double sampleSize = Double.parseDouble(options.get(PLANS_SAMPLE_KEY));
+      plansSamplingEvent.plansFile = originalPlanFileLocationAsPath.toString();
+      plansSamplingEvent.sampleSize = sampleSize;
       Population population = PopulationUtils.readPopulation(originalPlanFileLocationAsPath.toAbsolutePath().toString());
 
       PopulationUtils.sampleDown(population, sampleSize);
+      plansSamplingEvent.persons = population.getPersons().size();
       
-      String[] originalPlansFileName = originalPlanFileLocationAsPath.subpath(originalPlanFileLocationAsPath.getNameCount()-1, originalPlanFileLocationAsPath.getNameCount()).toString().split(".");
-      Path updatedPlansFileLocationAsPath = Path.of(outputDir.toAbsolutePath().toString(), originalPlansFileName[0],String.format("_sample_%.4f", sampleSize),originalPlansFileName[1]);
+      Path updatedPlansFileLocationAsPath = createDerivedPlansFileLocation(originalPlanFileLocationAsPath, outputDir, String.format("_sample_%.4f", sampleSize));
       PopulationUtils.writePopulation(population, updatedPlansFileLocationAsPath.toAbsolutePath().toString());
       
       LOGGER.info(String.format("[Downsampled MATSim plans file %s by factor %.4f",originalPlanFileLocationAsPath.toString(), sampleSize)); 
+      plansSamplingEvent.commit();
       return updatedPlansFileLocationAsPath;
     }
     return null;
   }
 
-  /** Conduct a clean on MATSim network and persist result in location of where the MATSim network was sourced from (append "_cleaned" to origin name in the process)
+  /** Verify if an input is a local gzipped file, which can be parsed while it is inflated, see {@link PipelinedGzipInputStream}
+   *
+   * @param url of the input, may be null
+   * @return true when pipelined parsing applies, false otherwise
+   */
+  private static boolean isPipelined(final URL url) {
+    return url != null && "file".equals(url.getProtocol()) && url.getPath().endsWith(PipelinedGzipInputStream.GZIP_EXTENSION);
+  }
+
+  /** Load the scenario of a configuration. Gzipped network and plans files are parsed while they are inflated on a separate thread (see
+   * {@link PipelinedGzipInputStream}) rather than inflated and parsed on the same thread as MATSim does, everything else is loaded by MATSim. A
+   * time variant network is left to MATSim since its change events are loaded together with the network, and so are plans with a (deprecated)
+   * person attributes file
+   *
+   * @param config of the scenario
+   * @return loaded scenario
+   * @throws PlanItException thrown if error
+   */
+  public static Scenario loadScenario(final Config config) throws PlanItException {
+    URL networkUrl = config.network().getInputFile() == null ? null : config.network().getInputFileURL(config.getContext());
+    boolean pipelineNetwork = isPipelined(networkUrl) && !config.network().isTimeVariantNetwork() && config.network().getChangeEventsInputFile() == null;
+    URL plansUrl = config.plans().getInputFile() == null ? null : config.plans().getInputFileURL(config.getContext());
+    boolean pipelinePlans = isPipelined(plansUrl) && config.plans().getInputPersonAttributeFile() == null;
+    if(!pipelineNetwork && !pipelinePlans) {
+      return ScenarioUtils.loadScenario(config);
+    }
+
+    /* let MATSim load everything but the pipelined inputs, then parse those into the scenario */
+    String networkFile = config.network().getInputFile();
+    String plansFile = config.plans().getInputFile();
+    Scenario scenario;
+    try {
+      if(pipelineNetwork) {
+        config.network().setInputFile(null);
+      }
+      if(pipelinePlans) {
+        config.plans().setInputFile(null);
+      }
+      scenario = ScenarioUtils.loadScenario(config);
+    }finally {
+      config.network().setInputFile(networkFile);
+      config.plans().setInputFile(plansFile);
+    }
+
+    String globalCrs = config.global().getCoordinateSystem();
+    if(pipelineNetwork) {
+      LOGGER.info(String.format("Parsing MATSim network %s while inflating", networkUrl.toString()));
+      try(InputStream inputStream = PipelinedGzipInputStream.open(networkUrl)){
+        new MatsimNetworkReader(config.network().getInputCRS(), globalCrs, scenario.getNetwork()).parse(inputStream);
+      }catch(IOException e) {
+        throw new PlanItException("Unable to parse MATSim network %s: %s", networkUrl.toString(), e.getMessage());
+      }
+    }
+    if(pipelinePlans) {
+      LOGGER.info(String.format("Parsing MATSim plans %s while inflating", plansUrl.toString()));
+      try(InputStream inputStream = PipelinedGzipInputStream.open(plansUrl)){
+        new PopulationReader(config.plans().getInputCRS(), globalCrs, scenario).parse(inputStream);
+      }catch(IOException e) {
+        throw new PlanItException("Unable to parse MATSim plans %s: %s", plansUrl.toString(), e.getMessage());
+      }
+    }
+    return scenario;
+  }
+
+  /** Crop the network of a scenario to the study area and stream the plans of the configuration into its population, retaining only persons with
+   * activities within the study area or car legs crossing it, see {@link StudyAreaCropper}. The scenario is expected to be loaded without its population
    * 
-   * @param keyValueMap the user configuration
+   * @param config of the scenario, providing the plans file and its crs
+   * @param scenario with the network to crop and the (empty) population to populate
+   * @param studyArea to crop to
+   * @throws PlanItException thrown if error
+   */
+  public static void cropScenarioToStudyArea(final Config config, final Scenario scenario, final StudyArea studyArea) throws PlanItException {
+    var studyAreaCropEvent = new StudyAreaCropEvent();
+    studyAreaCropEvent.begin();
+    
+    var cropper = new StudyAreaCropper(studyArea);
+    studyAreaCropEvent.linksBefore = scenario.getNetwork().getLinks().size();
+    cropper.cropNetwork(scenario.getNetwork());
+    studyAreaCropEvent.linksAfter = scenario.getNetwork().getLinks().size();
+    
+    CoordinateTransformation transformation = null;
+    String plansCrs = config.plans().getInputCRS();
+    String globalCrs = config.global().getCoordinateSystem();
+    if(plansCrs != null && globalCrs != null && !plansCrs.equals(globalCrs)) {
+      transformation = TransformationFactory.getCoordinateTransformation(plansCrs, globalCrs);
+    }
+    
+    URL plansUrl = config.plans().getInputFileURL(config.getContext());
+    if(plansUrl == null) {
+      throw new PlanItException("Unable to crop plans to study area, plans file not available");
+    }
+    cropper.cropPopulation(plansUrl, scenario.getPopulation(), scenario.getNetwork(), transformation);
+    studyAreaCropEvent.personsBefore = cropper.getPersonsRead();
+    studyAreaCropEvent.personsAfter = cropper.getPersonsRetained();
+    studyAreaCropEvent.throughPersons = cropper.getThroughPersons();
+    studyAreaCropEvent.cordonActivities = cropper.getCordonActivities();
+    studyAreaCropEvent.commit();
+  }
+
+  /** Location of the network file the network of the simulation originates from, used to name the files derived from it. A PLANit network in memory
+   * has no such file, it is named after the PLANit network in the output directory instead, so derived files never end up in the working directory
+   * 
+   * @param options the user configuration
+   * @param planitNetwork network provided in memory instead of a network file, may be null
+   * @return network file location
+   * @throws PlanItException thrown if error
+   */
+  private static Path getNetworkOrigin(final WrapperOptions options, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    if(planitNetwork == null) {
+      return parseNetworkFileLocation(options);
+    }
+    String planitNetworkId = planitNetwork.getXmlId() != null ? planitNetwork.getXmlId() : String.valueOf(planitNetwork.getId());
+    return parseOutputDirectory(options).resolve(String.format("planit_network_%s.xml", planitNetworkId));
+  }
+
+  /** Simplify the MATSim network of a scenario by merging chains of links through degree two nodes, see {@link NetworkChainSimplifier}. References
+   * of the population to merged links are updated and the mapping of original to simplified links is persisted in the output directory (as 
+   * {@code <network>_simplified_mapping.csv}), so link results can be projected back onto the original network
+   * 
+   * @param options the user configuration
+   * @param scenario with network to simplify and population to update
+   * @param planitNetwork the network was converted from, may be null
+   * @throws PlanItException thrown if error
+   */
+  public static void simplifyMatsimNetwork(final WrapperOptions options, final Scenario scenario, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    LOGGER.info("Simplifying MATSim network");
+    var networkSimplifyEvent = new NetworkSimplifyEvent();
+    networkSimplifyEvent.begin();
+    networkSimplifyEvent.linksBefore = scenario.getNetwork().getLinks().size();
+    networkSimplifyEvent.nodesBefore = scenario.getNetwork().getNodes().size();
+    
+    var simplifier = new NetworkChainSimplifier();
+    simplifier.run(scenario.getNetwork());
+    simplifier.updatePopulation(scenario.getPopulation());
+    simplifier.writeMapping(getNetworkOrigin(options, planitNetwork), parseOutputDirectory(options));
+    
+    networkSimplifyEvent.linksAfter = scenario.getNetwork().getLinks().size();
+    networkSimplifyEvent.nodesAfter = scenario.getNetwork().getNodes().size();
+    networkSimplifyEvent.commit();
+  }
+
+  /** Populate the (empty) network of a scenario from a PLANit network in memory, see {@link PlanitNetworkConverter}. Coordinates are transformed
+   * from the network crs of the configuration (if any) to the simulation crs
+   * 
+   * @param config of the scenario
+   * @param planitNetwork to convert
+   * @param network to populate
+   * @throws PlanItException thrown if error
+   */
+  public static void convertPlanitNetwork(final Config config, final MacroscopicNetwork planitNetwork, final Network network) throws PlanItException {
+    LOGGER.info(String.format("[SETTING] MATSim network: PLANit network %s in memory", planitNetwork.getXmlId()));
+    String networkCrs = config.network().getInputCRS();
+    CoordinateTransformation transformation = StringUtils.isNullOrBlank(networkCrs) ? new IdentityTransformation() :
+      TransformationFactory.getCoordinateTransformation(networkCrs, config.global().getCoordinateSystem());
+    new PlanitNetworkConverter(transformation).convert(planitNetwork, network);
+  }
+
+  /** Conduct a clean on MATSim network and persist result in location of where the MATSim network was sourced from (append "_cleaned" to origin name in the process).
+   * A network converted from a PLANit network in memory is persisted in the output directory instead
+   * 
+   * @param options the user configuration
    * @param matsimNetwork MATSim network to clean
+   * @param planitNetwork the network was converted from, may be null
+   * @throws PlanItException thrown if error
    */
-  public static void cleanAndPersistMatsimNetwork(Map<String, String> keyValueMap, org.matsim.api.core.v01.network.Network matsimNetwork) {
+  public static void cleanAndPersistMatsimNetwork(WrapperOptions options, org.matsim.api.core.v01.network.Network matsimNetwork, 
+      final MacroscopicNetwork planitNetwork) throws PlanItException {
     LOGGER.info("Cleaning MATSim network");
+    var networkCleanEvent = new NetworkCleanEvent();
+    networkCleanEvent.begin();
+    networkCleanEvent.linksBefore = matsimNetwork.getLinks().size();
     new org.matsim.core.network.algorithms.NetworkCleaner().run(matsimNetwork);      
-    Path networkFileLocationAsPath = MatsimHelper.parseNetworkFileLocation(keyValueMap);
+    networkCleanEvent.linksAfter = matsimNetwork.getLinks().size();
+    Path networkFileLocationAsPath = getNetworkOrigin(options, planitNetwork);
     var originalFileName = networkFileLocationAsPath.getFileName().toString();
     var cleanedNetworkFileName = new StringBuilder().append(originalFileName.substring(0, originalFileName.lastIndexOf('.'))).append("_cleaned").append(originalFileName.substring(originalFileName.lastIndexOf('.'))).toString();
     var networkCleanedPath = Path.of(networkFileLocationAsPath.getParent().toString(),cleanedNetworkFileName);
     LOGGER.info(String.format("Persisting cleaned MATSim network as %s",networkCleanedPath.toAbsolutePath().toString()));
+    try {
+      Files.createDirectories(networkCleanedPath.getParent());
+    }catch(IOException e) {
+      throw new PlanItException("Unable to create directory for cleaned MATSim network %s: %s", networkCleanedPath.toString(), e.getMessage());
+    }
     org.matsim.core.network.NetworkUtils.writeNetwork(matsimNetwork, networkCleanedPath.toString());
+    networkCleanEvent.commit();
   }
 }
@@ -0,0 +1,472 @@
+package org.goplanit.aurin.matsim;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.contrib.matrixbasedptrouter.MatrixBasedPtModule;
+import org.matsim.contrib.matrixbasedptrouter.MatrixBasedPtRouterConfigGroup;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigWriter;
+import org.matsim.core.controler.Controler;
+import org.goplanit.aurin.matsim.baserun.BaseRun;
+import org.goplanit.aurin.matsim.checkpoint.CheckpointListener;
+import org.goplanit.aurin.matsim.events.LinkVolumesModule;
+import org.goplanit.aurin.matsim.mobsim.MobsimScheduleModule;
+import org.goplanit.aurin.matsim.plans.PlansCollapser;
+import org.goplanit.aurin.matsim.plans.PlansCompactionListener;
+import org.goplanit.aurin.matsim.plans.SampleSchedule;
+import org.goplanit.aurin.matsim.plans.SampleScheduleModule;
+import org.goplanit.aurin.matsim.profiling.IterationPhaseProfilingListener;
+import org.goplanit.aurin.matsim.profiling.JfrProfiler;
+import org.goplanit.aurin.matsim.routing.AltLeastCostPathCalculatorFactory;
+import org.goplanit.aurin.matsim.routing.AltRoutingModule;
+import org.goplanit.aurin.matsim.skim.SkimListener;
+import org.goplanit.aurin.matsim.snapshot.SampledSnapshotModule;
+import org.goplanit.aurin.matsim.studyarea.StudyArea;
+import org.goplanit.aurin.matsim.validation.ValidationReport;
+import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.misc.StringUtils;
+
+/**
+ * Instance based access point to the wrapper's functionality for a given set of {@link WrapperOptions}. It supports the same types of
+ * functionality as the command line, see {@link PlanitAurinMatsimMain}.
+ * <p>
+ * A runner holds no state other than its immutable options and all wrapper state of a run is local to that run, so a runner can be
+ * invoked repeatedly, and multiple runners can be invoked concurrently from within a single JVM, each with its own output directory.
+ * Note that MATSim itself keeps some process wide state, i.e., its random number generator and the logging to the output directory, so
+ * concurrent runs are not guaranteed to be reproducible and their MATSim log files may contain entries of the other runs.
+ *
+ * @author markr
+ *
+ */
+public class MatsimWrapperRunner {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(MatsimWrapperRunner.class.getCanonicalName());
+
+  /** the options of this runner */
+  private final WrapperOptions options;
+
+  /** PLANit network to simulate on instead of the network file of the options, null if none */
+  private final MacroscopicNetwork planitNetwork;
+
+  /** Override the output directory in the configuration
+   *
+   * @param config to adjust
+   * @param outputDir to set
+   */
+  private static void setMatsimOutputDir(Optional<Config> config, Path outputDir) {
+    if(config.isEmpty()) {
+      LOGGER.warning(String.format("MATSim config not available, unable to set output directory to %s",outputDir.toString()));
+      return;
+    }
+
+    if(outputDir != null) {
+      config.get().controler().setOutputDirectory(outputDir.toAbsolutePath().toString());
+      LOGGER.warning(String.format("MATSim output directory changed to %s",outputDir.toAbsolutePath().toString()));
+    }
+  }
+
+  /** Add modules programmatically in case configuration or user options require it
+   *
+   * @param controller to override modules on (if any)
+   * @param config to extract information from
+   * @param runOptions to extract information from
+   */
+  private static void configureOverridingModules(final Controler controller, final Config config, final WrapperOptions runOptions) {
+
+    /* Matrix based pt router requires overriding routing module (if it is configured) */
+    if(config.getModules().containsKey(MatrixBasedPtRouterConfigGroup.GROUP_NAME)) {
+      controller.addOverridingModule(new MatrixBasedPtModule());
+    }
+
+    /* landmark based car routing replaces the least cost path calculator used by network routing */
+    if(MatsimHelper.isAltCarRoutingActivated(runOptions)) {
+      Path networkFile = MatsimHelper.isCarRoutingIndexPersisted(runOptions) ? getLocalNetworkFile(config) : null;
+      controller.addOverridingModule(new AltRoutingModule(
+          new AltLeastCostPathCalculatorFactory(MatsimHelper.parseCarRoutingLandmarks(runOptions), networkFile)));
+    }
+  }
+
+  /** Location of the network file of the configuration, if it is a local file
+   *
+   * @param config to extract network file from
+   * @return location, null if not a local file
+   */
+  private static Path getLocalNetworkFile(final Config config) {
+    try {
+      URL networkUrl = config.network().getInputFileURL(config.getContext());
+      if(networkUrl != null && "file".equals(networkUrl.getProtocol())) {
+        return Path.of(networkUrl.toURI());
+      }
+    }catch(Exception e) {
+      LOGGER.warning(String.format("Unable to locate network file: %s", e.getMessage()));
+    }
+    LOGGER.info("Network is not a local file, ALT car routing index is not persisted");
+    return null;
+  }
+
+  /** Validate the inputs before any plans are derived or the scenario is loaded
+   *
+   * @param runOptions to validate inputs of
+   * @param planitNetwork network provided in memory, may be null
+   * @throws PlanItException thrown when the inputs are invalid or could not be validated
+   */
+  private static void validateInputs(final WrapperOptions runOptions, final MacroscopicNetwork planitNetwork) throws PlanItException {
+    ValidationReport report = MatsimHelper.validateInputs(runOptions, planitNetwork);
+    if(!report.isValid()) {
+      throw new PlanItException("Invalid inputs, simulation aborted (disable with --%s %s): %s",
+          MatsimHelper.VALIDATE_KEY, MatsimHelper.VALIDATE_NO_VALUE, String.join("; ", report.getErrors()));
+    }
+  }
+
+  /** Conduct a MATSim simulation based on the provided configuration information.
+   *
+   * @param runOptions to use
+   * @param outputDir to use, use default if null
+   * @throws PlanItException thrown if error
+   */
+  private void runSimulation(final WrapperOptions runOptions, Path outputDir) throws PlanItException {
+
+    /* simulation is using MATSim config files to configure everything or use command line arguments instead */
+    Optional<Config> config = null;
+    if(MatsimHelper.isSimulationConfigurationFileBased(runOptions)) {
+      LOGGER.info(String.format("Running MATSim simulation using command line configuration file"));
+      config = MatsimHelper.createConfigurationFromFiles(
+          MatsimHelper.getConfigFileLocation(runOptions), MatsimHelper.getOverrideConfigFileLocation(runOptions));
+    }else {
+        LOGGER.info(String.format("Running MATSim simulation using command line configuration options"));
+        config = MatsimHelper.createConfigurationFromCommandLine(runOptions);
+    }
+
+    /* explicitly set output dir */
+    setMatsimOutputDir(config, outputDir);
+
+    /* bound plan memory per agent, also for configuration file based simulations */
+    config.ifPresent(matsimConfig -> MatsimHelper.configurePlansMemory(matsimConfig, runOptions));
+
+    /* parallel events handling, also for configuration file based simulations */
+    config.ifPresent(matsimConfig -> MatsimHelper.configureEventsThreads(matsimConfig, runOptions));
+
+    /* when snapshots are written, also for configuration file based simulations */
+    config.ifPresent(matsimConfig -> MatsimHelper.configureSnapshots(matsimConfig, runOptions));
+
+    runSimulation(config.orElseThrow(() -> new PlanItException("Unable to run MATSim simulation, configuration not available")), runOptions);
+  }
+
+  /** Conduct a MATSim simulation based on the provided configuration.
+   *
+   * @param config to use
+   * @param runOptions to use
+   * @throws PlanItException thrown if error
+   */
+  private void runSimulation(Config config, final WrapperOptions runOptions) throws PlanItException {
+    /* continue from the latest checkpoint of an earlier run, replacing the plans and first iteration */
+    if(MatsimHelper.isResumeActivated(runOptions)) {
+      MatsimHelper.configureResume(config, runOptions);
+    }
+
+    /* start from the final plans of a base run instead, rerouting only the agents affected by network changes once the network is in place */
+    BaseRun baseRun = null;
+    if(!MatsimHelper.isResumeActivated(runOptions) && MatsimHelper.isBaseRunActivated(runOptions)) {
+      baseRun = MatsimHelper.configureBaseRun(config, runOptions);
+    }
+
+    StudyArea studyArea = MatsimHelper.isStudyAreaActivated(runOptions) ? MatsimHelper.parseStudyArea(runOptions) : null;
+
+    /* with a PLANit network in memory no network file is parsed, the network is converted into the scenario instead */
+    if(planitNetwork != null) {
+      config.network().setInputFile(null);
+    }
+
+    /* with a study area the plans are streamed into the scenario after cropping the network, so only persons within the area are loaded */
+    String plansFile = config.plans().getInputFile();
+    if(studyArea != null) {
+      config.plans().setInputFile(null);
+    }
+    Scenario scenario = MatsimHelper.loadScenario(config);
+    if(planitNetwork != null) {
+      MatsimHelper.convertPlanitNetwork(config, planitNetwork, scenario.getNetwork());
+    }
+
+    /* clean network on the fly if required */
+    if(MatsimHelper.isNetworkCleanActivated(runOptions)) {
+      MatsimHelper.cleanAndPersistMatsimNetwork(runOptions, scenario.getNetwork(), planitNetwork);
+    }
+
+    /* crop to study area if required */
+    if(studyArea != null) {
+      config.plans().setInputFile(plansFile);
+      MatsimHelper.cropScenarioToStudyArea(config, scenario, studyArea);
+    }
+
+    /* simplify network on the fly if required, after cropping so only the study area is simplified */
+    if(MatsimHelper.isNetworkSimplifyActivated(runOptions)) {
+      MatsimHelper.simplifyMatsimNetwork(runOptions, scenario, planitNetwork);
+    }
+
+    /* reroute the base run agents affected by network changes, after all network processing the base run was subjected to as well */
+    if(baseRun != null) {
+      MatsimHelper.rerouteFromBaseRun(config, runOptions, scenario, baseRun);
+    }
+
+    /* agent groups of a collapsed population drive vehicles representing all their members */
+    if(PlansCollapser.hasGroups(scenario.getPopulation())) {
+      PlansCollapser.createGroupVehicles(scenario);
+    }
+
+    /* controller */
+    Controler controller = new Controler(scenario);
+
+    /* special module configuration */
+    configureOverridingModules(controller, config, runOptions);
+
+    /* routes of non-selected plans in compact form */
+    if(MatsimHelper.isPlansCompactActivated(runOptions)) {
+      controller.addControlerListener(new PlansCompactionListener(scenario.getPopulation()));
+    }
+
+    /* hourly link volumes, sharded by link id across the events threads */
+    if(MatsimHelper.isLinkVolumesActivated(runOptions)) {
+      Integer eventsThreads = config.parallelEventHandling().getNumberOfThreads();
+      controller.addOverridingModule(new LinkVolumesModule(eventsThreads == null ? 1 : eventsThreads));
+    }
+
+    /* zone-to-zone skims on the travel times of the last iteration */
+    if(MatsimHelper.isSkimActivated(runOptions)) {
+      controller.addControlerListener(new SkimListener(scenario.getNetwork(), MatsimHelper.parseSkimZones(runOptions),
+          MatsimHelper.isSkimFormatBinary(runOptions), config.global().getNumberOfThreads(),
+          config.travelTimeCalculator().getTraveltimeBinSize(), config.travelTimeCalculator().getMaxTime()));
+    }
+
+    /* sampled columnar snapshots, persisted in the background */
+    if(MatsimHelper.isSnapshotActivated(runOptions)) {
+      controller.addOverridingModule(new SampledSnapshotModule(MatsimHelper.parseSnapshotSample(runOptions)));
+    }
+
+    /* simulated population grown during the run, with capacities scaled to the active share */
+    SampleSchedule sampleSchedule = MatsimHelper.parseSampleSchedule(runOptions);
+    if(sampleSchedule != null) {
+      controller.addOverridingModule(new SampleScheduleModule(scenario.getPopulation(), scenario.getNetwork(), sampleSchedule,
+          config.qsim().getFlowCapFactor(), config.qsim().getStorageCapFactor()));
+    }
+
+    /* event-driven hermes mobsim for all but the final iterations, simulated by qsim */
+    int qsimIterations = MatsimHelper.parseMobsimSchedule(config, runOptions);
+    if(qsimIterations > 0) {
+      controller.addOverridingModule(new MobsimScheduleModule(qsimIterations));
+    }
+
+    /* checkpoints of the selected plans, persisted in the background */
+    int checkpointInterval = MatsimHelper.parseCheckpointInterval(runOptions);
+    if(checkpointInterval > 0) {
+      controller.addControlerListener(new CheckpointListener(
+          scenario.getPopulation(), Path.of(config.controler().getOutputDirectory()), checkpointInterval, config.global().getRandomSeed()));
+    }
+
+    /* JFR events for iteration phases, only recorded when a recording is active */
+    controller.addControlerListener(new IterationPhaseProfilingListener());
+
+    /* simulation */
+    controller.run();
+  }
+
+  /** Generate a MATSim configuration file and persist in output directory. Useful to allow users to get started and allow them to edit it offline and then provide it as input
+   * again to this wrapper for an actual simulation run
+   *
+   * @param runOptions to use
+   * @param outputDir to use, use default if null
+   * @return location where config file has been created
+   * @throws PlanItException thrown if unsuccessful
+   */
+  private String generateMatsimConfiguration(final WrapperOptions runOptions, Path outputDir) throws PlanItException {
+    if(outputDir == null) {
+      outputDir = MatsimHelper.DEFAULT_OUTPUT_PATH;
+    }
+
+    /* DEFAULT MATSIM FULL CONFIG */
+    String outputFileLocation = Path.of(outputDir.toString(), MatsimHelper.DEFAULT_MATSIM_CONFIG_FILE).normalize().toAbsolutePath().toString();
+    if( MatsimHelper.TYPE_DEFAULT_CONFIG_VALUE.equals(runOptions.getType())){
+      org.matsim.run.CreateFullConfig.main(new String[] {outputFileLocation});
+    }
+    /* CUSTOMISED MATSIM CONFIG */
+    else if(MatsimHelper.TYPE_CONFIG_VALUE.equals(runOptions.getType())) {
+
+      Config config = MatsimHelper.createConfigurationFromCommandLine(runOptions).orElseThrow(() -> new PlanItException("Unable to generate MATSim configuration"));
+      if(planitNetwork != null) {
+        LOGGER.warning("IGNORED: PLANit network in memory is not part of generated MATSim configuration, it refers to the --network file instead");
+      }
+      MatsimHelper.configureEventsThreads(config, runOptions);
+      MatsimHelper.configureSnapshots(config, runOptions);
+      new ConfigWriter(config).write(outputFileLocation);
+    }
+    return outputFileLocation;
+  }
+
+  /** Execute the chosen type of functionality after the options have been verified
+   *
+   * @param outputDir to use
+   * @throws Exception thrown if error
+   */
+  private void execute(final Path outputDir) throws Exception {
+    WrapperOptions runOptions = options;
+
+    /* when resuming or starting from a base run, the checkpointed or final plans already reflect any filtering, down sampling and collapsing */
+    final boolean resume = MatsimHelper.isResumeActivated(runOptions) || MatsimHelper.isBaseRunActivated(runOptions);
+
+    /* TYPE: ESTIMATE ONLY */
+    if(MatsimHelper.isEstimateType(runOptions)) {
+      MatsimHelper.estimateRun(runOptions, planitNetwork);
+      return;
+    }
+
+    /* FAIL-FAST INPUT VALIDATION, a single streamed pass that aborts before any plans are derived or the scenario is loaded. Every later step
+     * depends on the plans as derived, so there is no independent work to overlap it with */
+    if(MatsimHelper.isSimulationType(runOptions) && !resume && MatsimHelper.isValidationActivated(runOptions)) {
+      validateInputs(runOptions, planitNetwork);
+    }
+
+    /* TIME WINDOW FILTERING OF PLANS/POPULATION, before down sampling so the latter only needs to load the persons within the window */
+    Path timeFilteredPopulationPath = resume ? null : MatsimHelper.createTimeFilteredPopulation(runOptions, outputDir);
+    if(timeFilteredPopulationPath != null) {
+      runOptions = runOptions.with(MatsimHelper.PLANS_KEY, timeFilteredPopulationPath.toString());
+    }
+
+    /* DOWN SAMPLING OF PLANS/POPULATION */
+    Path downSampledPopulationPath = null;
+    if(!resume && MatsimHelper.isPopulationPlansDownSampled(runOptions)) {
+      /* down sampling cannot be done in memory. Requires creating new plans file
+       * So create new down sampled plans file and use it instead of the original plans file location
+       * for simulation (if that is the type) */
+      downSampledPopulationPath = MatsimHelper.createDownSampledPopulation(runOptions, outputDir);
+      if(downSampledPopulationPath != null) {
+        runOptions = runOptions.with(MatsimHelper.PLANS_KEY, downSampledPopulationPath.toString());
+      }
+    }
+
+    /* COLLAPSING OF IDENTICAL PLANS INTO AGENT GROUPS, after down sampling so groups reflect the sampled population */
+    Path collapsedPopulationPath = resume ? null : MatsimHelper.createCollapsedPopulation(runOptions, outputDir);
+    if(collapsedPopulationPath != null) {
+      runOptions = runOptions.with(MatsimHelper.PLANS_KEY, collapsedPopulationPath.toString());
+    }
+
+    /* PRE-FLIGHT ADMISSION CONTROL on the plans as simulated, i.e., already reduced by the above, may further down sample them when the simulation
+     * would not fit in the available heap */
+    Path admittedPopulationPath = null;
+    if(MatsimHelper.isSimulationType(runOptions) && !resume) {
+      /* the plans file is already down sampled, any sample returned applies to it */
+      runOptions = MatsimHelper.admitSimulation(runOptions.without(MatsimHelper.PLANS_SAMPLE_KEY), planitNetwork);
+      if(MatsimHelper.isPopulationPlansDownSampled(runOptions)) {
+        admittedPopulationPath = MatsimHelper.createDownSampledPopulation(runOptions, outputDir);
+        runOptions = runOptions.with(MatsimHelper.PLANS_KEY, admittedPopulationPath.toString()).without(MatsimHelper.PLANS_SAMPLE_KEY);
+      }
+    }
+
+    /* TYPE: CONFIGURATION ONLY */
+    if(MatsimHelper.isConfigurationType(runOptions)) {
+
+      /* each run of a sweep may use its own, not yet existing, output directory */
+      Files.createDirectories(outputDir);
+      final String outputFileLocation = generateMatsimConfiguration(runOptions, outputDir);
+      LOGGER.info(String.format("Generated MATSim configuration file: %s",outputFileLocation));
+      if(timeFilteredPopulationPath != null) {
+        LOGGER.info(String.format("Generated time window filtered MATSim plans file: %s",timeFilteredPopulationPath.toString()));
+      }
+      if(downSampledPopulationPath != null) {
+        LOGGER.info(String.format("Generated downsampled MATSim plans file: %s",downSampledPopulationPath.toString()));
+      }
+      if(collapsedPopulationPath != null) {
+        LOGGER.info(String.format("Generated collapsed MATSim plans file: %s",collapsedPopulationPath.toString()));
+      }
+
+    }
+    /* TYPE: SIMULATION ONLY */
+    else if(MatsimHelper.isSimulationType(runOptions)) {
+
+      LOGGER.info(String.format("Running MATSim simulation"));
+      runSimulation(runOptions, outputDir);
+      /* any temporary filtered, downsampled, collapsed or admitted plans should be deleted upon termination of the simulation */
+      if(timeFilteredPopulationPath != null) {
+        Files.delete(timeFilteredPopulationPath);
+      }
+      if(downSampledPopulationPath != null) {
+        Files.delete(downSampledPopulationPath);
+      }
+      if(collapsedPopulationPath != null) {
+        Files.delete(collapsedPopulationPath);
+      }
+      if(admittedPopulationPath != null) {
+        Files.delete(admittedPopulationPath);
+      }
+      LOGGER.info(String.format("MATSim simulation run ended. Results persisted in %s",outputDir.toAbsolutePath().toString()));
+
+    }else {
+      throw new PlanItException("--type value %s unknown, unable to proceed", runOptions.getType());
+    }
+  }
+
+  /** Constructor
+   *
+   * @param options to run with
+   */
+  public MatsimWrapperRunner(final WrapperOptions options) {
+    this(options, null);
+  }
+
+  /** Constructor for simulating on a PLANit network that is already available in memory. The MATSim network is built from it directly, without
+   * persisting and parsing a MATSim network file, the {@code --network} option (or network file of the configuration) is ignored. The {@code --network_crs}
+   * should reflect the crs of the PLANit network when it differs from the {@code --crs}
+   *
+   * @param options to run with
+   * @param planitNetwork to simulate on
+   */
+  public MatsimWrapperRunner(final WrapperOptions options, final MacroscopicNetwork planitNetwork) {
+    this.options = options;
+    this.planitNetwork = planitNetwork;
+  }
+
+  /** The options of this runner
+   *
+   * @return options
+   */
+  public WrapperOptions getOptions() {
+    return options;
+  }
+
+  /** Run the type of functionality chosen via the {@code --type} option, i.e., generate a (default) configuration file or
+   * conduct a simulation
+   *
+   * @throws PlanItException thrown if unsuccessful
+   */
+  public void run() throws PlanItException {
+    if(StringUtils.isNullOrBlank(options.getType())) {
+      throw new PlanItException("--%s argument missing, unable to proceed with MATSim simulation wrapper", MatsimHelper.TYPE_KEY);
+    }
+
+    Path outputDir = MatsimHelper.parseOutputDirectory(options);
+
+    /* PROFILING, started before any other work so all wrapper events are captured */
+    JfrProfiler profiler = null;
+    if(MatsimHelper.isProfilingActivated(options)) {
+      profiler = JfrProfiler.start(outputDir);
+    }
+
+    try {
+      execute(outputDir);
+    }catch(PlanItException e) {
+      throw e;
+    }catch(Exception e) {
+      throw new PlanItException("Run of PLANit AURIN MATSim wrapper failed: %s", e.getMessage());
+    }finally {
+      if(profiler != null) {
+        profiler.close();
+      }
+    }
+  }
+
+}
@@ -1,23 +1,12 @@
 package org.goplanit.aurin.matsim;
 
-import java.nio.file.Files;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
-import org.matsim.api.core.v01.Scenario;
-import org.matsim.contrib.matrixbasedptrouter.MatrixBasedPtModule;
-import org.matsim.contrib.matrixbasedptrouter.MatrixBasedPtRouterConfigGroup;
-import org.matsim.core.config.Config;
-import org.matsim.core.config.ConfigWriter;
-import org.matsim.core.controler.Controler;
-import org.matsim.core.scenario.ScenarioUtils;
 import org.goplanit.logging.Logging;
-import org.goplanit.utils.args.ArgumentParser;
-import org.goplanit.utils.args.ArgumentStyle;
 import org.goplanit.utils.exceptions.PlanItException;
 
 /**
@@ -32,7 +21,7 @@ import org.goplanit.utils.exceptions.PlanItException;
  * setting the {@code --type} parameter </i>.
  *  
  * <ul>
- * <li>--type   indicates the type of functionality, options: {@code simulation, config, default_config}</li>
+ * <li>--type   indicates the type of functionality, options: {@code simulation, config, default_config, estimate}</li>
  * </ul>
  * 
  * When choosing {@code default_config} all other configuration settings are ignored except for the --output option on where to store the result, 
@@ -41,6 +30,9 @@ import org.goplanit.utils.exceptions.PlanItException;
  * it provides the user with a template with all default options explicitly listed, whereas config provides the tailored configuration file used by this wrapper including 
  * modifications made by (under simulation listed) command line options provided.
  * <p>
+ * When choosing {@code estimate} the network and plans are only streamed to predict the heap and runtime per iteration of the simulation, the same
+ * estimate is made before each simulation for admission control, see {@code --admission}.
+ * <p>
  * When choosing {--type @code simulation}, one can either utilise MATsim config files to configure the simulation or the exposed
  * command line configuration options. When configuring the simulation here the default simulator of MATSim is used (qsim). 
  * The following command line options are available when configuring a simulation via the command line:
@@ -48,20 +40,47 @@ import org.goplanit.utils.exceptions.PlanItException;
  * <ul>
  * <li>--modes              Options [car_sim, car_sim_pt_teleport, car_pt_sim]. Default car_sim. Defines the type of simulation to configure for and/or run</li>
  * <li>--crs                Format: "epsg:xyz". Default: WGS84 (EPSG:4326). Indicates the coordinate reference system to use in MATSim internally, e.g. EPSG:1234.</li>
- * <li>--network            Format: {@code path-to/file} to the network file. Default: cwd under "./network.xml"</li>
+ * <li>--network            Format: {@code path-to/file} to the network file. Default: cwd under "./network.xml", gzipped files are parsed while inflated</li>
  * <li>--network_crs        Format: "epsg:xyz". Default: unchanged. Coordinate reference system of the network file, converted to --crs in simulation if different</li>
  * <li>--network_clean      Options: [yes, no]. Default: no. When yes, apply a network clean operation on memory model of network before simulating, persists result under original network input location when possible. Can be used to remove unreachable links if needed</li> 
- * <li>--plans              Format: {@code path-to/file}. Default: "./plans.xml"</li>
+ * <li>--network_simplify   Options: [yes, no]. Default: no. When yes, merge chains of links through degree two nodes with identical attributes before simulating, the original to simplified link mapping is persisted in the --output directory</li>
+ * <li>--plans              Format: {@code path-to/file}. Default: "./plans.xml", gzipped files are parsed while inflated</li>
  * <li>--plans_crs          Format: "epsg:xyz. Default: unchanged. Coordinate reference system of the plans file, converted to --crs in simulation if different</li>
  * <li>--plans_sample       Format: between 0 and 1. Default: 1. Sample of the population plans applied in simulation. When in config mode, downsampled plan is persisted as well</li>
+ * <li>--plans_time_filter  Options: [yes, no]. Default: no. When yes, plans are streamed and filtered to the --starttime/--endtime window before loading, persons without legs in the window are removed and plans are trimmed to the window</li>
+ * <li>--plans_collapse     Options: [yes, no]. Default: no. When yes, persons with identical plans are collapsed into agent groups driving a vehicle with a passenger car equivalent of the group size</li>
+ * <li>--plans_collapse_max Format: positive number. Default: 10. Maximum number of persons represented by a single agent group</li>
+ * <li>--plans_memory       Format: positive number. Default: from config. Maximum number of plans kept per agent during replanning</li>
+ * <li>--plans_compact      Options: [yes, no]. Default: no. When yes, routes of non-selected plans are kept as link index arrays and expanded when selected</li>
+ * <li>--plans_sample_schedule Format: <i>share:iteration,...</i>, e.g. 0.1:0,0.25:21,1:41. Default: none. Grow the active population during the run, scaling the capacity factors to the active share and warm-routing activated persons on current travel times</li>
+ * <li>--mobsim_schedule    Format: positive number. Default: none. Number of final iterations simulated by qsim, all iterations before are simulated by the event-driven hermes mobsim</li>
  * <li>--activity_config    Format: {@code path-to/file} to activity config file. Defining activity types portion in MATSim config file format (plancalcscore section only) compatible with the plans file</li>
  * <li>--starttime          Format: "hh:mm:ss". Default:00:00:00. Start time of the simulation in, ignore activities in the plans file before this time.</li>
- * <li>--endtime            Format: "hh:mm:ss". Default:00:00:00. End time of the simulation in "hh:mm:ss" format, ignore activities in the plans file after this time.</li>
+ * <li>--endtime            Format: "hh:mm:ss". Default: none, the qsim end time is left undefined so the simulation runs until all agents have completed their plans. End time of the simulation in "hh:mm:ss" format, ignore activities in the plans file after this time.</li>
  * <li>--flowcap_factor     Format: between 0 and 1. Default 1. Scale link flow capacity. Use icw down sampling of population plans to remain consistent</li>
  * <li>--storagecap_factor  Format: between 0 and 1. Default 1. Scale link storage capacity. Use icw down sampling of population plans to remain consistent</li>
  * <li>--link_stats         Format: <i>int1,int2</i>". Default: from config file. Set linkStats configuration, <i>int1</i> is the iteration interval to average over, <i>int2</i> is iteration persistence interval, int1 is smaller or equal than int2, when int2 is 0, no persistence </li>
+ * <li>--link_volumes       Options: [yes, no]. Default: no. When yes, hourly vehicles entering each link in the last iteration are persisted in the --output directory</li>
+ * <li>--events_threads     Format: positive number. Default: from config. Number of threads for parallel events handling</li>
+ * <li>--snapshot_interval  Format: non-negative number. Default: from config. Iteration interval at which snapshots are written, 0 for none, when positive a sample of the agents is persisted in a columnar binary format</li>
+ * <li>--snapshot_sample    Format: between 0 and 1. Default: 0.1. Sample of the agents in the wrapper's snapshots</li>
+ * <li>--snapshot_period    Format: positive number of seconds. Default: 60. Time between snapshots within an iteration</li>
+ * <li>--skim_zones         Format: {@code path-to/file} CSV with header id,x,y in the --crs. Default: none. After the last iteration, zone-to-zone car travel time and distance skims are created per travel time bin and persisted in the --output directory</li>
+ * <li>--skim_format        Options: [binary, csv]. Default: binary. Format of the persisted skims</li>
+ * <li>--checkpoint_interval Format: positive number. Default: none. Iteration interval at which the selected plans are checkpointed in the --output directory, persisted in the background</li>
+ * <li>--resume             Format: {@code path} to the output directory of an earlier run. Default: none. Resume from the latest checkpoint of that run instead of iteration 0</li>
+ * <li>--base_run           Format: {@code path} to the output directory of a base run. Default: none. Start from the final plans of that run, rerouting only the agents whose routes traverse links changed in the --network (or near them) on the travel times of that run</li>
+ * <li>--base_run_hops      Format: non-negative number. Default: 1. Number of hops around changed links within which routes are considered affected</li>
+ * <li>--admission          Options: [warn, refuse, downsample]. Default: warn. What to do when the estimated heap of the simulation exceeds the available heap</li>
+ * <li>--validate           Options: [yes, no]. Default: yes. When yes, the network, plans and activity configuration are validated in a single streamed pass and the simulation is aborted when they are inconsistent</li>
  * <li>--iterations_max     Format: positive number. Default: none. Maximum number of iterations the simulation will run before terminating. Mandatory</li>
  * <li>--output             Format: {@code path}.  Default: ".". Location to store the generated simulation results or configuration file(s).</li>
+ * <li>--profile            Options: [yes, no]. Default: no. When present without value or yes, record a JFR profile of the run with the wrapper's tuned settings, persisted in the --output directory</li>
+ * <li>--car_routing        Options: [default, alt]. Default: default. When alt, car routes are computed with the wrapper's landmark based A* (ALT) router instead of MATSim's configured routing algorithm</li>
+ * <li>--car_routing_landmarks Format: positive number. Default: 16. Number of landmarks used when --car_routing alt</li>
+ * <li>--car_routing_index  Options: [yes, no]. Default: yes. When yes, the ALT landmarks are persisted next to the network file and reused by later runs on the same network</li>
+ * <li>--study_area         Format: "minx,miny,maxx,maxy" or {@code path-to/file} with a WKT polygon, in the --crs. Default: none. Crop network and plans to the study area, retaining through traffic, car activities outside the area are moved to where their route crosses its cordon</li>
+ * <li>--study_area_buffer  Format: non-negative number in units of the --crs. Default: 0. Buffer added around the study area before cropping</li>
  * </ul> 
  * 
  * Format {@code <path>}. Default: "." the directory this application was invoked from
@@ -76,6 +95,7 @@ import org.goplanit.utils.exceptions.PlanItException;
  * In addition to these general options that can always be used when the type is set to simulation; there are a number of conditional options available too. These are listed below
  * <ul>
  * <li>--pt-stops-csv       Condition: --modes car_sim_pt_teleport. Format: <i>path</i> to the ptStops CSV file.  Default: none. Location to obtain stop locations from in csv format for PtMatrixBasedRouter</li>
+ * <li>--pt_stops_snap_tolerance Condition: --pt-stops-csv. Format: non-negative number in units of the stops' crs. Default: 0. Stops within this distance are merged into a single stop before building the stop-to-stop matrix</li>
  * </ul> 
  * 
  * The {@code --pt-stops-csv} does two things. First it attempts to parse the provided file. Second it implicitly assumes the user would like to use the stop information to construct the pt teleportation travel times rather than
@@ -90,135 +110,23 @@ import org.goplanit.utils.exceptions.PlanItException;
  * 
  * We note that when the above options are used all other command line options for simulation are ignored since they custom configuration file takes precedence.
  * 
+ * The same functionality is available from Java via {@link MatsimWrapperRunner} configured with {@link WrapperOptions}, which this access point
+ * merely creates from the command line arguments.
+ * 
  * @author markr
  *
  */
 public class PlanitAurinMatsimMain {
   
-  /** logger to use */
-  private static Logger LOGGER = null;
-
-  /**
-   * Create a key value map based on provided arguments. If a key does not require a value, then it receives an
-   * empty string.
-   * 
-   * @param args to parse
-   * @return arguments as key value pairs
-   * @throws PlanItException thrown if error
-   */
-  private static Map<String, String> getKeyValueMap(String[] args) throws PlanItException {
-
-    Map<String, String> keyValueMap = ArgumentParser.convertArgsToMap(args, ArgumentStyle.DOUBLEHYPHEN);
-    Map<String, String> lowerCaseKeyValueMap = new HashMap<String, String>(keyValueMap.size());
-    for (Entry<String, String> entry : keyValueMap.entrySet()) {
-      lowerCaseKeyValueMap.put(entry.getKey().toLowerCase(), entry.getValue());
-    }
-    return lowerCaseKeyValueMap;
-
-  }
-  
-  /** Override the output directory in the configuration
-   * 
-   * @param config to adjust
-   * @param outputDir to set
-   */
-  private static void setMatsimOutputDir(Optional<Config> config, Path outputDir) {
-    if(config.isEmpty()) {
-      LOGGER.warning(String.format("MATSim config not available, unable to set output directory to %s",outputDir.toString()));
-      return;
-    }
-    
-    if(outputDir != null) {
-      config.get().controler().setOutputDirectory(outputDir.toAbsolutePath().toString());
-      LOGGER.warning(String.format("MATSim output directory changed to %s",outputDir.toAbsolutePath().toString()));
-    }   
-  }  
-  
-  /** Add modules programmatically in case configuration requires it 
-   * 
-   * @param controller to override modules on (if any)
-   * @param config to extract information from
-   */
-  private static void configureOverridingModules(final Controler controller, final Config config) {
-    
-    /* Matrix based pt router requires overriding routing module (if it is configured) */
-    if(config.getModules().containsKey(MatrixBasedPtRouterConfigGroup.GROUP_NAME)) {
-      controller.addOverridingModule(new MatrixBasedPtModule());
-    }
-  }
-
-  /** Conduct a MATSim simulation based on the provided command line configuration information. 
-   * 
-   * @param keyValueMap to use
-   * @param outputDir to use, use default if null
-   */  
-  private static void runSimulation(final Map<String, String> keyValueMap, Path outputDir) {
-    
-    /* simulation is using MATSim config files to configure everything or use command line arguments instead */
-    Optional<Config> config = null;      
-    if(MatsimHelper.isSimulationConfigurationFileBased(keyValueMap)) {
-      LOGGER.info(String.format("Running MATSim simulation using command line configuration file"));
-      config = MatsimHelper.createConfigurationFromFiles(
-          MatsimHelper.getConfigFileLocation(keyValueMap), MatsimHelper.getOverrideConfigFileLocation(keyValueMap));
-    }else {
-        LOGGER.info(String.format("Running MATSim simulation using command line configuration options"));
-        config = MatsimHelper.createConfigurationFromCommandLine(keyValueMap);
-    }
-    
-    /* explicitly set output dir */
-    setMatsimOutputDir(config, outputDir); 
-    
-    config.ifPresentOrElse((theConfig) -> runSimulation(theConfig, keyValueMap), () -> LOGGER.severe("Unable to run MATSim simulation, configuration not available"));    
-  }
-
-  /** Conduct a MATSim simulation based on the provided configuration.
+  /** Report the JVM settings the wrapper runs with, so the heap, gc and processors chosen by the launcher are visible in the log
    * 
-   * @param config to use
-   * @param keyValueMap to use
+   * @param logger to use
    */
-  private static void runSimulation(Config config, final Map<String, String> keyValueMap) {    
-    Scenario scenario = ScenarioUtils.loadScenario(config);
-    
-    /* clean network on the fly if required */
-    if(MatsimHelper.isNetworkCleanActivated(keyValueMap)) {
-      MatsimHelper.cleanAndPersistMatsimNetwork(keyValueMap, scenario.getNetwork());
-    }
-            
-    /* controller */
-    Controler controller = new Controler(scenario);
-    
-    /* special module configuration */
-    configureOverridingModules(controller, config);
-    
-    /* simulation */
-    controller.run();    
-  }
-
-  /** Generate a MATSim configuration file and persist in output directory. Useful to allow users to get started and allow them to edit it offline and then provide it as input
-   * again to this wrapper for an actual simulation run
-   * 
-   * @param keyValueMap to use
-   * @param outputDir to use, use default if null
-   * @return location where config file has been created
-   * @throws PlanItException thrown if unsuccessful
-   */
-  private static String generateMatsimConfiguration(final Map<String, String> keyValueMap, Path outputDir) throws PlanItException {
-    if(outputDir == null) {
-      outputDir = MatsimHelper.DEFAULT_OUTPUT_PATH;
-    }
-    
-    /* DEFAULT MATSIM FULL CONFIG */
-    String outputFileLocation = Path.of(outputDir.toString(), MatsimHelper.DEFAULT_MATSIM_CONFIG_FILE).normalize().toAbsolutePath().toString();
-    if( MatsimHelper.TYPE_DEFAULT_CONFIG_VALUE.equals(keyValueMap.get(MatsimHelper.TYPE_KEY))){
-      org.matsim.run.CreateFullConfig.main(new String[] {outputFileLocation});
-    }
-    /* CUSTOMISED MATSIM CONFIG */
-    else if(MatsimHelper.TYPE_CONFIG_VALUE.equals(keyValueMap.get(MatsimHelper.TYPE_KEY))) {
-      
-      Config config = MatsimHelper.createConfigurationFromCommandLine(keyValueMap).orElseThrow(() -> new PlanItException("Unable to generate MATSim configuration"));                      
-      new ConfigWriter(config).write(outputFileLocation);
-    }
-    return outputFileLocation;
+  private static void logJvmSettings(final Logger logger) {
+    var runtime = Runtime.getRuntime();
+    String garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans().stream().map(GarbageCollectorMXBean::getName).collect(Collectors.joining(", "));
+    logger.info(String.format("[SETTING] JVM max heap: %d MB, processors: %d, gc: %s", 
+        runtime.maxMemory() / (1024 * 1024), runtime.availableProcessors(), garbageCollectors));
   }
 
   /** Path from which application was invoked */
@@ -233,68 +141,33 @@ public class PlanitAurinMatsimMain {
    * @param args arguments provided
    */
   public static void main(String[] args) {
+    Logger logger = null;
     try {
-      LOGGER = Logging.createLogger(PlanitAurinMatsimMain.class);
-      if(LOGGER==null) {
+      logger = Logging.createLogger(PlanitAurinMatsimMain.class);
+      if(logger==null) {
         throw new PlanItException("Unable to instantiate logger using default PLANit logging.properties");
       }
+      logJvmSettings(logger);
       
-      Map<String, String> keyValueMap = getKeyValueMap(args);
-      if (keyValueMap.containsKey(ARGUMENT_HELP)) {
+      WrapperOptions options = WrapperOptions.of(args);
+      if (options.isSet(ARGUMENT_HELP)) {
 
         // TODO
-        LOGGER.info("--help is not yet implemented, see Javadoc instead for available arguments");
+        logger.info("--help is not yet implemented, see Javadoc instead for available arguments");
 
       } else {
 
-        if(!keyValueMap.containsKey(MatsimHelper.TYPE_KEY)) {
-          LOGGER.warning("--type argument missing, unable to proceed with MATSim simulation wrapper");
+        if(!options.isSet(MatsimHelper.TYPE_KEY)) {
+          logger.warning("--type argument missing, unable to proceed with MATSim simulation wrapper");
           return;
         }
         
-        /* DOWN SAMPLING OF PLANS/POPULATION */
-        Path outputDir = MatsimHelper.parseOutputDirectory(keyValueMap);
-        if(MatsimHelper.isPopulationPlansDownSampled(keyValueMap)) {
-          /* down sampling cannot be done in memory. Requires creating new plans file
-           * So create new down sampled plans file and overwrite original plans file location so it is used
-           * for simulation (if that is the type) */
-          Path downSampledPopulationPath = MatsimHelper.createDownSampledPopulation(keyValueMap, outputDir);
-          if(downSampledPopulationPath != null) {
-            keyValueMap.put(MatsimHelper.PLANS_KEY, downSampledPopulationPath.toString());
-          }
-        }
-        
-        /* TYPE: CONFIGURATION ONLY */ 
-        if(MatsimHelper.isConfigurationType(keyValueMap)) {
-          
-          final String outputFileLocation = generateMatsimConfiguration(keyValueMap, outputDir);
-          LOGGER.info(String.format("Generated MATSim configuration file: %s",outputFileLocation));
-          if(MatsimHelper.isPopulationPlansDownSampled(keyValueMap)) {
-            LOGGER.info(String.format("Generated downsampled MATSim plans file: %s",keyValueMap.get(MatsimHelper.PLANS_KEY))); 
-          }
-          
-        }
-        /* TYPE: SIMULATION ONLY */
-        else if(MatsimHelper.isSimulationType(keyValueMap)) {
-          
-          LOGGER.info(String.format("Running MATSim simulation"));
-          runSimulation(keyValueMap, outputDir);
-          if(MatsimHelper.isPopulationPlansDownSampled(keyValueMap)) {
-            /* any temporary downsampled path should be deleted upon termination of the simulation */
-            Files.delete(Path.of(keyValueMap.get(MatsimHelper.PLANS_KEY)));
-          }
-          LOGGER.info(String.format("MATSim simulation run ended. Results persisted in %s",outputDir.toAbsolutePath().toString()));
-          
-        }else {
-          LOGGER.warning("--type value %s unknown, unable to proceed");
-          return;          
-        }
-
+        new MatsimWrapperRunner(options).run();
       }
     } catch (Exception e) {
-      if(LOGGER !=null) {
-        LOGGER.severe(e.getMessage());
-        LOGGER.severe("Something went wrong while executing PLANit AURIN MATSim wrapper, terminating");
+      if(logger !=null) {
+        logger.severe(e.getMessage());
+        logger.severe("Something went wrong while executing PLANit AURIN MATSim wrapper, terminating");
       }else {
         e.printStackTrace();
       }
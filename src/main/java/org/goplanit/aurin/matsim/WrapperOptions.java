@@ -0,0 +1,479 @@
+package org.goplanit.aurin.matsim;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.goplanit.utils.args.ArgumentParser;
+import org.goplanit.utils.args.ArgumentStyle;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.misc.StringUtils;
+
+/**
+ * Immutable set of options for a single run of the wrapper. The options mirror the command line options of {@link PlanitAurinMatsimMain},
+ * where each option is identified by its key (see the {@code _KEY} constants of {@link MatsimHelper}) and keys are case insensitive.
+ * Values are kept in their command line form so that the command line and the Java API are interpreted identically.
+ * <p>
+ * Instances can be created from command line arguments, from a key value map, or via the {@link Builder} which offers typed setters for use
+ * from Java. Since an instance cannot change, it can be shared freely between threads, use {@link #with(String, String)} to derive an altered copy.
+ *
+ * @author markr
+ *
+ */
+public final class WrapperOptions {
+
+  /** the options, lower case keys */
+  private final Map<String, String> options;
+
+  /** Constructor
+   *
+   * @param keyValueMap to copy the options from
+   */
+  private WrapperOptions(final Map<String, String> keyValueMap) {
+    Map<String, String> lowerCaseKeyValueMap = new HashMap<String, String>(keyValueMap.size());
+    for (Entry<String, String> entry : keyValueMap.entrySet()) {
+      lowerCaseKeyValueMap.put(entry.getKey().toLowerCase(), entry.getValue() == null ? "" : entry.getValue());
+    }
+    this.options = Collections.unmodifiableMap(lowerCaseKeyValueMap);
+  }
+
+  /** Create options from a key value map, the map is copied
+   *
+   * @param keyValueMap to use
+   * @return created options
+   */
+  public static WrapperOptions of(final Map<String, String> keyValueMap) {
+    return new WrapperOptions(keyValueMap);
+  }
+
+  /** Create options from command line arguments in {@code --<key> <value>} form
+   *
+   * @param args to parse
+   * @return created options
+   * @throws PlanItException thrown if error
+   */
+  public static WrapperOptions of(final String[] args) throws PlanItException {
+    return new WrapperOptions(ArgumentParser.convertArgsToMap(args, ArgumentStyle.DOUBLEHYPHEN));
+  }
+
+  /** Create a builder for options
+   *
+   * @return builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Create a copy of these options with the given option (re)set
+   *
+   * @param key of the option
+   * @param value of the option
+   * @return new options instance
+   */
+  public WrapperOptions with(final String key, final String value) {
+    Map<String, String> copy = new HashMap<>(options);
+    copy.put(key.toLowerCase(), value);
+    return new WrapperOptions(copy);
+  }
+
+  /** Create a copy of these options without the given option
+   *
+   * @param key of the option
+   * @return new options instance
+   */
+  public WrapperOptions without(final String key) {
+    Map<String, String> copy = new HashMap<>(options);
+    copy.remove(key.toLowerCase());
+    return new WrapperOptions(copy);
+  }
+
+  /** Verify if option is present (possibly without a value)
+   *
+   * @param key of the option
+   * @return true when present, false otherwise
+   */
+  public boolean isSet(final String key) {
+    return options.containsKey(key.toLowerCase());
+  }
+
+  /** Collect the value of an option as provided
+   *
+   * @param key of the option
+   * @return value, empty string when option is present without value, null when absent
+   */
+  public String get(final String key) {
+    return options.get(key.toLowerCase());
+  }
+
+  /** Collect the value of an option, or the default when absent or blank
+   *
+   * @param key of the option
+   * @param defaultValue to use
+   * @return value
+   */
+  public String getOrDefault(final String key, final String defaultValue) {
+    String value = get(key);
+    return StringUtils.isNullOrBlank(value) ? defaultValue : value;
+  }
+
+  /** The options as unmodifiable map
+   *
+   * @return options
+   */
+  public Map<String, String> asMap() {
+    return options;
+  }
+
+  /** The type of functionality to run, see {@code MatsimHelper.TYPE_*_VALUE}
+   *
+   * @return type, null if not set
+   */
+  public String getType() {
+    return get(MatsimHelper.TYPE_KEY);
+  }
+
+  /** The modes type to configure for
+   *
+   * @return modes type, default CAR_ONLY when absent
+   */
+  public ModesType getModesType() {
+    return MatsimHelper.parseModesType(this);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return options.toString();
+  }
+
+  /**
+   * Builder with typed setters for the most commonly used options. Options without a typed setter can be set via
+   * {@link #option(String, String)}.
+   */
+  public static final class Builder {
+
+    /** options collected so far */
+    private final Map<String, String> options = new HashMap<>();
+
+    /** Constructor
+     */
+    private Builder() {
+    }
+
+    /** Set any option by its key
+     *
+     * @param key of option
+     * @param value of option, use empty string for flags
+     * @return this builder
+     */
+    public Builder option(final String key, final String value) {
+      options.put(key.toLowerCase(), value);
+      return this;
+    }
+
+    /** Set any option that is a path
+     *
+     * @param key of option
+     * @param path value of option
+     * @return this builder
+     */
+    private Builder option(final String key, final Path path) {
+      return option(key, path.toAbsolutePath().toString());
+    }
+
+    /** Set any option that is a yes/no switch
+     *
+     * @param key of option
+     * @param flag value of option
+     * @return this builder
+     */
+    private Builder option(final String key, final boolean flag) {
+      return option(key, flag ? "yes" : "no");
+    }
+
+    /** @param type of functionality, see {@code MatsimHelper.TYPE_*_VALUE}
+     * @return this builder */
+    public Builder type(final String type) {
+      return option(MatsimHelper.TYPE_KEY, type);
+    }
+
+    /** @param outputDirectory to use
+     * @return this builder */
+    public Builder output(final Path outputDirectory) {
+      return option(MatsimHelper.OUTPUT_KEY, outputDirectory);
+    }
+
+    /** @param modesType to use
+     * @return this builder */
+    public Builder modes(final ModesType modesType) {
+      return option(MatsimHelper.MODES_KEY, modesType.getValue());
+    }
+
+    /** @param crs to use in simulation, e.g. "epsg:3112"
+     * @return this builder */
+    public Builder crs(final String crs) {
+      return option(MatsimHelper.CRS_KEY, crs);
+    }
+
+    /** @param network file
+     * @return this builder */
+    public Builder network(final Path network) {
+      return option(MatsimHelper.NETWORK_KEY, network);
+    }
+
+    /** @param crs of the network file
+     * @return this builder */
+    public Builder networkCrs(final String crs) {
+      return option(MatsimHelper.NETWORK_CRS_KEY, crs);
+    }
+
+    /** @param clean the network before simulating, or not
+     * @return this builder */
+    public Builder networkClean(final boolean clean) {
+      return option(MatsimHelper.NETWORK_CLEAN_KEY, clean);
+    }
+
+    /** @param simplify the network by merging chains of links through degree two nodes before simulating, or not
+     * @return this builder */
+    public Builder networkSimplify(final boolean simplify) {
+      return option(MatsimHelper.NETWORK_SIMPLIFY_KEY, simplify);
+    }
+
+    /** @param plans file
+     * @return this builder */
+    public Builder plans(final Path plans) {
+      return option(MatsimHelper.PLANS_KEY, plans);
+    }
+
+    /** @param crs of the plans file
+     * @return this builder */
+    public Builder plansCrs(final String crs) {
+      return option(MatsimHelper.PLANS_CRS_KEY, crs);
+    }
+
+    /** @param sample of the population between 0 and 1
+     * @return this builder */
+    public Builder plansSample(final double sample) {
+      return option(MatsimHelper.PLANS_SAMPLE_KEY, String.valueOf(sample));
+    }
+
+    /** @param plansTimeFilter when true, plans are filtered to the start/end time window before the population is loaded
+     * @return this builder */
+    public Builder plansTimeFilter(final boolean plansTimeFilter) {
+      return option(MatsimHelper.PLANS_TIME_FILTER_KEY, plansTimeFilter);
+    }
+
+    /** @param plansCollapse when true, persons with identical plans are collapsed into weighted agent groups
+     * @return this builder */
+    public Builder plansCollapse(final boolean plansCollapse) {
+      return option(MatsimHelper.PLANS_COLLAPSE_KEY, plansCollapse);
+    }
+
+    /** @param maxGroupSize maximum number of persons represented by a single agent group
+     * @return this builder */
+    public Builder plansCollapseMax(final int maxGroupSize) {
+      return option(MatsimHelper.PLANS_COLLAPSE_MAX_KEY, String.valueOf(maxGroupSize));
+    }
+
+    /** @param plansMemory maximum number of plans kept per agent during replanning
+     * @return this builder */
+    public Builder plansMemory(final int plansMemory) {
+      return option(MatsimHelper.PLANS_MEMORY_KEY, String.valueOf(plansMemory));
+    }
+
+    /** @param plansCompact when true, routes of non-selected plans are kept in compact form
+     * @return this builder */
+    public Builder plansCompact(final boolean plansCompact) {
+      return option(MatsimHelper.PLANS_COMPACT_KEY, plansCompact);
+    }
+
+    /** @param activityConfig file
+     * @return this builder */
+    public Builder activityConfig(final Path activityConfig) {
+      return option(MatsimHelper.ACTIVITY_CONFIG_KEY, activityConfig);
+    }
+
+    /** @param startTime in "hh:mm:ss" format
+     * @return this builder */
+    public Builder startTime(final String startTime) {
+      return option(MatsimHelper.STARTTIME_KEY, startTime);
+    }
+
+    /** @param endTime in "hh:mm:ss" format
+     * @return this builder */
+    public Builder endTime(final String endTime) {
+      return option(MatsimHelper.ENDTIME_KEY, endTime);
+    }
+
+    /** @param factor to scale flow capacity with
+     * @return this builder */
+    public Builder flowCapacityFactor(final double factor) {
+      return option(MatsimHelper.CAPACITY_FLOW_FACTOR_KEY, String.valueOf(factor));
+    }
+
+    /** @param factor to scale storage capacity with
+     * @return this builder */
+    public Builder storageCapacityFactor(final double factor) {
+      return option(MatsimHelper.CAPACITY_STORAGE_FACTOR_KEY, String.valueOf(factor));
+    }
+
+    /** @param averageOverIterations iterations to average link stats over
+     * @param writeInterval iteration interval to persist link stats, 0 for none
+     * @return this builder */
+    public Builder linkStats(final int averageOverIterations, final int writeInterval) {
+      return option(MatsimHelper.LINK_STATS_KEY, averageOverIterations + "," + writeInterval);
+    }
+
+    /** @param linkVolumes when true, hourly link volumes of the last iteration are persisted
+     * @return this builder */
+    public Builder linkVolumes(final boolean linkVolumes) {
+      return option(MatsimHelper.LINK_VOLUMES_KEY, linkVolumes);
+    }
+
+    /** @param eventsThreads number of threads for parallel events handling
+     * @return this builder */
+    public Builder eventsThreads(final int eventsThreads) {
+      return option(MatsimHelper.EVENTS_THREADS_KEY, String.valueOf(eventsThreads));
+    }
+
+    /** @param interval iteration interval at which snapshots are written, 0 for none
+     * @param sample of the agents in the wrapper's snapshots
+     * @param period in seconds between snapshots
+     * @return this builder */
+    public Builder snapshots(final int interval, final double sample, final double period) {
+      option(MatsimHelper.SNAPSHOT_INTERVAL_KEY, String.valueOf(interval));
+      option(MatsimHelper.SNAPSHOT_SAMPLE_KEY, String.valueOf(sample));
+      return option(MatsimHelper.SNAPSHOT_PERIOD_KEY, String.valueOf(period));
+    }
+
+    /** @param zones CSV file (id,x,y in the simulation crs) of the zones to create skims for after the last iteration
+     * @param format of the persisted skims, see {@code MatsimHelper.SKIM_FORMAT_*_VALUE}
+     * @return this builder */
+    public Builder skims(final Path zones, final String format) {
+      option(MatsimHelper.SKIM_ZONES_KEY, zones);
+      return option(MatsimHelper.SKIM_FORMAT_KEY, format);
+    }
+
+    /** @param schedule of the active share of the population per iteration, e.g., {@code 0.1:0,0.25:21,1:41}
+     * @return this builder */
+    public Builder plansSampleSchedule(final String schedule) {
+      return option(MatsimHelper.PLANS_SAMPLE_SCHEDULE_KEY, schedule);
+    }
+
+    /** @param qsimIterations number of final iterations simulated by qsim, with the event-driven hermes mobsim simulating the iterations before
+     * @return this builder */
+    public Builder mobsimSchedule(final int qsimIterations) {
+      return option(MatsimHelper.MOBSIM_SCHEDULE_KEY, String.valueOf(qsimIterations));
+    }
+
+    /** @param checkpointInterval iteration interval at which checkpoints are taken
+     * @return this builder */
+    public Builder checkpointInterval(final int checkpointInterval) {
+      return option(MatsimHelper.CHECKPOINT_INTERVAL_KEY, String.valueOf(checkpointInterval));
+    }
+
+    /** @param runOutputDir output directory of an earlier run to resume from its latest checkpoint
+     * @return this builder */
+    public Builder resume(final Path runOutputDir) {
+      return option(MatsimHelper.RESUME_KEY, runOutputDir.toAbsolutePath().toString());
+    }
+
+    /** @param baseRunOutputDir output directory of a base run to start from, rerouting only agents affected by network changes
+     * @param hops number of hops around changed links within which routes are considered affected
+     * @return this builder */
+    public Builder baseRun(final Path baseRunOutputDir, final int hops) {
+      option(MatsimHelper.BASE_RUN_KEY, baseRunOutputDir);
+      return option(MatsimHelper.BASE_RUN_HOPS_KEY, String.valueOf(hops));
+    }
+
+    /** @param admission what to do when the estimated heap exceeds the available heap, see {@code MatsimHelper.ADMISSION_*_VALUE}
+     * @return this builder */
+    public Builder admission(final String admission) {
+      return option(MatsimHelper.ADMISSION_KEY, admission);
+    }
+
+    /** @param validate when true (default), the inputs are validated before the simulation and it is aborted when they are inconsistent
+     * @return this builder */
+    public Builder validate(final boolean validate) {
+      return option(MatsimHelper.VALIDATE_KEY, validate);
+    }
+
+    /** @param iterationsMax maximum number of iterations
+     * @return this builder */
+    public Builder iterationsMax(final int iterationsMax) {
+      return option(MatsimHelper.ITERATIONS_MAX_KEY, String.valueOf(iterationsMax));
+    }
+
+    /** @param config MATSim config file to run the simulation with
+     * @return this builder */
+    public Builder config(final Path config) {
+      return option(MatsimHelper.CONFIG_KEY, config);
+    }
+
+    /** @param overrideConfig MATSim config file overriding config
+     * @return this builder */
+    public Builder overrideConfig(final Path overrideConfig) {
+      return option(MatsimHelper.OVERRIDE_CONFIG_KEY, overrideConfig);
+    }
+
+    /** @param ptStopsCsv file with pt stops for the matrix based pt router
+     * @return this builder */
+    public Builder ptStopsCsv(final Path ptStopsCsv) {
+      return option(MatsimHelper.PT_STOPS_CSV_KEY, ptStopsCsv);
+    }
+
+    /** @param snapTolerance within which pt stops are merged, in units of the pt stops' crs
+     * @return this builder */
+    public Builder ptStopsSnapTolerance(final double snapTolerance) {
+      return option(MatsimHelper.PT_STOPS_SNAP_TOLERANCE_KEY, String.valueOf(snapTolerance));
+    }
+
+    /** @param alt use the landmark based car router, or MATSim's default one
+     * @return this builder */
+    public Builder altCarRouting(final boolean alt) {
+      return option(MatsimHelper.CAR_ROUTING_KEY, alt ? MatsimHelper.CAR_ROUTING_ALT_VALUE : MatsimHelper.CAR_ROUTING_DEFAULT_VALUE);
+    }
+
+    /** @param landmarks number of landmarks for the landmark based car router
+     * @return this builder */
+    public Builder carRoutingLandmarks(final int landmarks) {
+      return option(MatsimHelper.CAR_ROUTING_LANDMARKS_KEY, String.valueOf(landmarks));
+    }
+
+    /** @param persist the landmark based car router's index next to the network for reuse by later runs, or not
+     * @return this builder */
+    public Builder carRoutingIndex(final boolean persist) {
+      return option(MatsimHelper.CAR_ROUTING_INDEX_KEY, persist);
+    }
+
+    /** @param studyArea bounding box "minx,miny,maxx,maxy" or WKT file, in the simulation crs, to crop network and plans to
+     * @return this builder */
+    public Builder studyArea(final String studyArea) {
+      return option(MatsimHelper.STUDY_AREA_KEY, studyArea);
+    }
+
+    /** @param buffer around the study area in units of the simulation crs
+     * @return this builder */
+    public Builder studyAreaBuffer(final double buffer) {
+      return option(MatsimHelper.STUDY_AREA_BUFFER_KEY, String.valueOf(buffer));
+    }
+
+    /** @param profile the run via a JFR recording, or not
+     * @return this builder */
+    public Builder profile(final boolean profile) {
+      return option(MatsimHelper.PROFILE_KEY, profile);
+    }
+
+    /** Create the options
+     *
+     * @return created options
+     */
+    public WrapperOptions build() {
+      return new WrapperOptions(options);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.goplanit.aurin.matsim.baserun;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Output of an earlier (base) run to simulate a scenario with a slightly different network from, consisting of the final plans, network and events
+ * MATSim persists in the output directory of a run. The final plans are the starting point of the new run, the final network is compared with the
+ * new network to find the changed links (see {@link NetworkDiff}) and the final events provide the travel times to reroute the affected agents with
+ * (see {@link BaseRunTravelTimes}).
+ *
+ * @author markr
+ *
+ */
+public class BaseRun {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(BaseRun.class.getCanonicalName());
+
+  /** name of the final plans file of a run */
+  public static final String PLANS_FILE = "output_plans.xml.gz";
+
+  /** name of the final network file of a run */
+  public static final String NETWORK_FILE = "output_network.xml.gz";
+
+  /** name of the final events file of a run */
+  public static final String EVENTS_FILE = "output_events.xml.gz";
+
+  /** output directory of the run */
+  private final Path outputDir;
+
+  /** Find the base run in an output directory
+   *
+   * @param outputDir of the base run
+   * @return base run, empty when any of its final plans, network or events is missing
+   */
+  public static Optional<BaseRun> find(final Path outputDir) {
+    for(String file : new String[] {PLANS_FILE, NETWORK_FILE, EVENTS_FILE}) {
+      if(!Files.exists(outputDir.resolve(file))) {
+        LOGGER.warning(String.format("Base run %s without %s", outputDir.toString(), file));
+        return Optional.empty();
+      }
+    }
+    return Optional.of(new BaseRun(outputDir));
+  }
+
+  /** Constructor
+   *
+   * @param outputDir of the run
+   */
+  public BaseRun(final Path outputDir) {
+    this.outputDir = outputDir;
+  }
+
+  /** Output directory of the run
+   *
+   * @return output directory
+   */
+  public Path getOutputDir() {
+    return outputDir;
+  }
+
+  /** Location of the final plans
+   *
+   * @return location
+   */
+  public Path getPlansFile() {
+    return outputDir.resolve(PLANS_FILE);
+  }
+
+  /** Location of the final network
+   *
+   * @return location
+   */
+  public Path getNetworkFile() {
+    return outputDir.resolve(NETWORK_FILE);
+  }
+
+  /** Location of the final events
+   *
+   * @return location
+   */
+  public Path getEventsFile() {
+    return outputDir.resolve(EVENTS_FILE);
+  }
+}
@@ -0,0 +1,176 @@
+package org.goplanit.aurin.matsim.baserun;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.goplanit.aurin.matsim.routing.TimeDependentRouter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Reroutes the agents of a base run population affected by network changes, leaving the selected plans of all other agents untouched. An agent is
+ * affected when a network route of its selected plan traverses an affected link (see {@link NetworkDiff#getAffectedLinks(int)}). Its car legs on such
+ * routes are rerouted on the new car network with the travel times of the base run (see {@link BaseRunTravelTimes}), using free-flow travel times on the
+ * changed links themselves, by a time dependent fastest path search departing at the planned departure time (see {@link TimeDependentRouter}). Routes
+ * of other network modes, and car routes that cannot be rerouted, are removed so MATSim routes them before the first iteration. The score of the
+ * selected plan of an affected agent is reset, and non-selected plans that traverse affected links are removed from all agents, so they cannot be
+ * selected later on.
+ * <p>
+ * Activities on links no longer in the network lose their link so MATSim assigns the nearest link to their coordinate.
+ *
+ * @author markr
+ *
+ */
+public class BaseRunRerouter {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(BaseRunRerouter.class.getCanonicalName());
+
+  /** the new network */
+  private final Network network;
+
+  /** ids of the links whose traversal makes an agent affected */
+  private final Set<Id<Link>> affectedLinks;
+
+  /** router of the affected car legs */
+  private final TimeDependentRouter router;
+
+  /** number of affected persons */
+  private long personsAffected = 0;
+
+  /** number of legs of other network modes whose route is removed */
+  private long legsUnrouted = 0;
+
+  /** number of removed non-selected plans */
+  private long plansRemoved = 0;
+
+  /** number of activities that lost their link */
+  private long activitiesUnlinked = 0;
+
+  /** Verify if a route traverses an affected link
+   *
+   * @param route to verify
+   * @return true when affected, false otherwise
+   */
+  private boolean isAffected(final NetworkRoute route) {
+    if(affectedLinks.contains(route.getStartLinkId()) || affectedLinks.contains(route.getEndLinkId())) {
+      return true;
+    }
+    for(Id<Link> linkId : route.getLinkIds()) {
+      if(affectedLinks.contains(linkId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Verify if a plan has a network route traversing an affected link
+   *
+   * @param plan to verify
+   * @return true when affected, false otherwise
+   */
+  private boolean isAffected(final Plan plan) {
+    for(PlanElement element : plan.getPlanElements()) {
+      if(element instanceof Leg && ((Leg) element).getRoute() instanceof NetworkRoute && isAffected((NetworkRoute) ((Leg) element).getRoute())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Unlink activities on removed links and remove affected routes of network modes other than car, which are left to MATSim
+   *
+   * @param plan to process
+   */
+  private void prepare(final Plan plan) {
+    for(PlanElement element : plan.getPlanElements()) {
+      if(element instanceof Activity) {
+        Activity activity = (Activity) element;
+        if(activity.getLinkId() != null && !network.getLinks().containsKey(activity.getLinkId()) && activity.getCoord() != null) {
+          activity.setLinkId(null);
+          ++activitiesUnlinked;
+        }
+      }else if(element instanceof Leg) {
+        Leg leg = (Leg) element;
+        if(!TransportMode.car.equals(leg.getMode()) && leg.getRoute() instanceof NetworkRoute && isAffected((NetworkRoute) leg.getRoute())) {
+          leg.setRoute(null);
+          ++legsUnrouted;
+        }
+      }
+    }
+  }
+
+  /** Constructor
+   *
+   * @param network the new network
+   * @param travelTime of the base run
+   * @param changedLinks ids of the links changed compared to the base run
+   * @param affectedLinks ids of the links whose traversal makes an agent affected, including the changed links
+   */
+  public BaseRunRerouter(final Network network, final TravelTime travelTime, final Set<Id<Link>> changedLinks, final Set<Id<Link>> affectedLinks) {
+    this.network = network;
+    this.affectedLinks = affectedLinks;
+    this.router = new TimeDependentRouter(network, (link, time, person, vehicle) -> changedLinks.contains(link.getId()) ?
+        link.getLength() / link.getFreespeed(time) : travelTime.getLinkTravelTime(link, time, person, vehicle));
+  }
+
+  /** Reroute the affected agents of a population
+   *
+   * @param population to reroute
+   */
+  public void run(final Population population) {
+    for(Person person : population.getPersons().values()) {
+      Plan selectedPlan = person.getSelectedPlan();
+      for(Plan plan : new ArrayList<>(person.getPlans())) {
+        if(plan != selectedPlan && isAffected(plan)) {
+          person.removePlan(plan);
+          ++plansRemoved;
+        }
+      }
+      if(selectedPlan == null || !isAffected(selectedPlan)) {
+        continue;
+      }
+      ++personsAffected;
+      prepare(selectedPlan);
+      router.reroute(selectedPlan, this::isAffected);
+      selectedPlan.setScore(null);
+    }
+    LOGGER.info(String.format("Rerouted %d car legs of %d affected persons, %d legs left to MATSim to route, %d plans removed, %d activities unlinked",
+        getLegsRerouted(), personsAffected, getLegsUnrouted(), plansRemoved, activitiesUnlinked));
+  }
+
+  /** Number of affected persons
+   *
+   * @return persons affected
+   */
+  public long getPersonsAffected() {
+    return personsAffected;
+  }
+
+  /** Number of rerouted car legs
+   *
+   * @return legs rerouted
+   */
+  public long getLegsRerouted() {
+    return router.getLegsRerouted();
+  }
+
+  /** Number of legs whose route was removed to be routed by MATSim
+   *
+   * @return legs unrouted
+   */
+  public long getLegsUnrouted() {
+    return legsUnrouted + router.getLegsUnrouted();
+  }
+}
@@ -0,0 +1,142 @@
+package org.goplanit.aurin.matsim.baserun;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Link travel times of a base run, derived from its final events: the average time between vehicles entering and leaving a link, per travel time bin
+ * of their entry. Bins without traversals, links unknown to the base run and times beyond the last bin fall back to the free-flow travel time. Only
+ * the bins of links that were traversed are stored.
+ *
+ * @author markr
+ *
+ */
+public class BaseRunTravelTimes implements LinkEnterEventHandler, LinkLeaveEventHandler, VehicleLeavesTrafficEventHandler, TravelTime {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(BaseRunTravelTimes.class.getCanonicalName());
+
+  /** size of the travel time bins (s) */
+  private final double binSize;
+
+  /** number of travel time bins */
+  private final int bins;
+
+  /** per traversed link the sum of the travel times per bin, followed by the number of traversals per bin */
+  private final Map<Id<Link>, double[]> travelTimes = new HashMap<>();
+
+  /** entry time of the vehicles currently on a link */
+  private final Map<Id<Vehicle>, Double> entryTimes = new HashMap<>();
+
+  /** Free-flow travel time of a link
+   *
+   * @param link to use
+   * @param time of entering the link
+   * @return travel time (s)
+   */
+  private static double getFreeFlowTravelTime(final Link link, double time) {
+    return link.getLength() / link.getFreespeed(time);
+  }
+
+  /** Read the travel times of a base run from its events
+   *
+   * @param eventsFile to read
+   * @param binSize size of the travel time bins (s)
+   * @param maxTime end of the last travel time bin (s)
+   * @return travel times
+   */
+  public static BaseRunTravelTimes read(final Path eventsFile, double binSize, double maxTime) {
+    BaseRunTravelTimes travelTimes = new BaseRunTravelTimes(binSize, maxTime);
+    EventsManager eventsManager = EventsUtils.createEventsManager();
+    eventsManager.addHandler(travelTimes);
+    eventsManager.initProcessing();
+    new MatsimEventsReader(eventsManager).readFile(eventsFile.toAbsolutePath().toString());
+    eventsManager.finishProcessing();
+    LOGGER.info(String.format("Read base run travel times of %d links from %s", travelTimes.travelTimes.size(), eventsFile.toString()));
+    return travelTimes;
+  }
+
+  /** Constructor
+   *
+   * @param binSize size of the travel time bins (s)
+   * @param maxTime end of the last travel time bin (s)
+   */
+  public BaseRunTravelTimes(double binSize, double maxTime) {
+    this.binSize = binSize;
+    this.bins = Math.max(1, (int) Math.ceil(maxTime / binSize));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void handleEvent(final LinkEnterEvent event) {
+    entryTimes.put(event.getVehicleId(), event.getTime());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void handleEvent(final LinkLeaveEvent event) {
+    Double entryTime = entryTimes.remove(event.getVehicleId());
+    if(entryTime == null) {
+      /* left the link it departed on, which is not a traversal */
+      return;
+    }
+    int bin = (int) (entryTime / binSize);
+    if(bin >= bins) {
+      return;
+    }
+    double[] linkTravelTimes = travelTimes.computeIfAbsent(event.getLinkId(), linkId -> new double[2 * bins]);
+    linkTravelTimes[bin] += event.getTime() - entryTime;
+    ++linkTravelTimes[bins + bin];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void handleEvent(final VehicleLeavesTrafficEvent event) {
+    entryTimes.remove(event.getVehicleId());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void reset(int iteration) {
+    entryTimes.clear();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getLinkTravelTime(final Link link, double time, final Person person, final Vehicle vehicle) {
+    double freeFlowTravelTime = getFreeFlowTravelTime(link, time);
+    double[] linkTravelTimes = travelTimes.get(link.getId());
+    int bin = (int) (time / binSize);
+    if(linkTravelTimes == null || bin < 0 || bin >= bins || linkTravelTimes[bins + bin] == 0) {
+      return freeFlowTravelTime;
+    }
+    return Math.max(freeFlowTravelTime, linkTravelTimes[bin] / linkTravelTimes[bins + bin]);
+  }
+}
@@ -0,0 +1,119 @@
+package org.goplanit.aurin.matsim.baserun;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.goplanit.utils.math.Precision;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Difference between the network of a base run and a new network with the same link ids. A link is changed when it is added, removed, or any of its
+ * nodes, length, free speed, capacity, number of lanes or allowed modes differ. Agents whose routes traverse a changed link, or a link near one, are
+ * the ones to reroute, see {@link #getAffectedLinks(int)}.
+ *
+ * @author markr
+ *
+ */
+public class NetworkDiff {
+
+  /** network of the base run */
+  private final Network baseNetwork;
+
+  /** new network */
+  private final Network network;
+
+  /** ids of the changed links */
+  private final Set<Id<Link>> changedLinks = new HashSet<>();
+
+  /** Verify if a link differs from its base counterpart
+   *
+   * @param baseLink in the base network
+   * @param link in the new network
+   * @return true when changed, false otherwise
+   */
+  private static boolean isChanged(final Link baseLink, final Link link) {
+    return !baseLink.getFromNode().getId().equals(link.getFromNode().getId())
+        || !baseLink.getToNode().getId().equals(link.getToNode().getId())
+        || !Precision.equal(baseLink.getLength(), link.getLength())
+        || !Precision.equal(baseLink.getFreespeed(), link.getFreespeed())
+        || !Precision.equal(baseLink.getCapacity(), link.getCapacity())
+        || !Precision.equal(baseLink.getNumberOfLanes(), link.getNumberOfLanes())
+        || !baseLink.getAllowedModes().equals(link.getAllowedModes());
+  }
+
+  /** Add the links incident to a node of a network, if present, to the neighbourhood
+   *
+   * @param network to use
+   * @param nodeId of the node
+   * @param neighbourhood to add to
+   */
+  private static void addIncidentLinks(final Network network, final Id<Node> nodeId, final Set<Id<Link>> neighbourhood) {
+    Node node = network.getNodes().get(nodeId);
+    if(node == null) {
+      return;
+    }
+    neighbourhood.addAll(node.getInLinks().keySet());
+    neighbourhood.addAll(node.getOutLinks().keySet());
+  }
+
+  /** Constructor, compares the networks
+   *
+   * @param baseNetwork network of the base run
+   * @param network new network
+   */
+  public NetworkDiff(final Network baseNetwork, final Network network) {
+    this.baseNetwork = baseNetwork;
+    this.network = network;
+
+    for(Link link : network.getLinks().values()) {
+      Link baseLink = baseNetwork.getLinks().get(link.getId());
+      if(baseLink == null || isChanged(baseLink, link)) {
+        changedLinks.add(link.getId());
+      }
+    }
+    for(Id<Link> baseLinkId : baseNetwork.getLinks().keySet()) {
+      if(!network.getLinks().containsKey(baseLinkId)) {
+        changedLinks.add(baseLinkId);
+      }
+    }
+  }
+
+  /** Ids of the added, removed and modified links
+   *
+   * @return changed links
+   */
+  public Set<Id<Link>> getChangedLinks() {
+    return changedLinks;
+  }
+
+  /** Ids of the changed links and the links within a number of hops of them, in either network and direction
+   *
+   * @param hops number of hops, 0 for the changed links only
+   * @return affected links
+   */
+  public Set<Id<Link>> getAffectedLinks(int hops) {
+    Set<Id<Link>> affected = new HashSet<>(changedLinks);
+    Set<Id<Link>> frontier = changedLinks;
+    for(int hop = 0; hop < hops && !frontier.isEmpty(); ++hop) {
+      Set<Id<Link>> neighbourhood = new HashSet<>();
+      for(Id<Link> linkId : frontier) {
+        for(Network current : new Network[] {baseNetwork, network}) {
+          Link link = current.getLinks().get(linkId);
+          if(link != null) {
+            addIncidentLinks(baseNetwork, link.getFromNode().getId(), neighbourhood);
+            addIncidentLinks(baseNetwork, link.getToNode().getId(), neighbourhood);
+            addIncidentLinks(network, link.getFromNode().getId(), neighbourhood);
+            addIncidentLinks(network, link.getToNode().getId(), neighbourhood);
+          }
+        }
+      }
+      neighbourhood.removeAll(affected);
+      affected.addAll(neighbourhood);
+      frontier = neighbourhood;
+    }
+    return affected;
+  }
+}
@@ -0,0 +1,233 @@
+package org.goplanit.aurin.matsim.checkpoint;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Checkpoint of a simulation run after a given iteration, consisting of a plans file holding the selected plan (with its score) of each person and a
+ * properties file with the iteration and random seed. The properties file is written last, so its presence marks a complete checkpoint.
+ * <p>
+ * This suffices to resume a run: MATSim reseeds its random number generator from the random seed and the iteration at the start of each iteration,
+ * and does not replan in the first iteration of a run, so the resumed run starts with a mobsim of the checkpointed plans that rebuilds the travel
+ * times before any rerouting takes place.
+ *
+ * @author markr
+ *
+ */
+public class Checkpoint {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(Checkpoint.class.getCanonicalName());
+
+  /** directory within the output directory holding the checkpoints */
+  public static final String CHECKPOINT_DIR = "checkpoints";
+
+  /** prefix of the checkpoint files */
+  public static final String CHECKPOINT_PREFIX = "checkpoint_";
+
+  /** extension of the checkpoint plans file */
+  public static final String PLANS_EXTENSION = ".plans.xml.gz";
+
+  /** extension of the checkpoint properties file */
+  public static final String PROPERTIES_EXTENSION = ".properties";
+
+  /** property holding the iteration */
+  private static final String ITERATION_PROPERTY = "iteration";
+
+  /** property holding the random seed */
+  private static final String RANDOM_SEED_PROPERTY = "random_seed";
+
+  /** property holding the number of persons */
+  private static final String PERSONS_PROPERTY = "persons";
+
+  /** iteration after which the checkpoint was taken */
+  private final int iteration;
+
+  /** random seed of the run */
+  private final long randomSeed;
+
+  /** number of persons in the checkpoint */
+  private final long persons;
+
+  /** location of the plans file */
+  private final Path plansFile;
+
+  /** Base name of the checkpoint files of an iteration
+   *
+   * @param iteration of the checkpoint
+   * @return base name
+   */
+  private static String getBaseName(int iteration) {
+    return CHECKPOINT_PREFIX + iteration;
+  }
+
+  /** Read a checkpoint from its properties file
+   *
+   * @param propertiesFile to read
+   * @return checkpoint, empty if unreadable or incomplete
+   */
+  private static Optional<Checkpoint> read(final Path propertiesFile) {
+    Properties properties = new Properties();
+    try(Reader reader = Files.newBufferedReader(propertiesFile, StandardCharsets.UTF_8)){
+      properties.load(reader);
+      int iteration = Integer.parseInt(properties.getProperty(ITERATION_PROPERTY));
+      Path plansFile = propertiesFile.resolveSibling(getBaseName(iteration) + PLANS_EXTENSION);
+      if(!Files.exists(plansFile)) {
+        LOGGER.warning(String.format("Checkpoint %s without plans file, ignored", propertiesFile.toString()));
+        return Optional.empty();
+      }
+      return Optional.of(new Checkpoint(
+          iteration, Long.parseLong(properties.getProperty(RANDOM_SEED_PROPERTY)), Long.parseLong(properties.getProperty(PERSONS_PROPERTY)), plansFile));
+    }catch(IOException | RuntimeException e) {
+      LOGGER.warning(String.format("Unable to read checkpoint %s: %s", propertiesFile.toString(), e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  /** Move a file in place, atomically where supported
+   *
+   * @param source to move
+   * @param target to move to
+   * @throws IOException thrown if error
+   */
+  private static void moveInPlace(final Path source, final Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }catch(AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Location of the checkpoint directory of an output directory
+   *
+   * @param outputDir of the run
+   * @return checkpoint directory
+   */
+  public static Path getCheckpointDir(final Path outputDir) {
+    return outputDir.resolve(CHECKPOINT_DIR);
+  }
+
+  /** Location of the plans file of a checkpoint
+   *
+   * @param checkpointDir to use
+   * @param iteration of the checkpoint
+   * @return location
+   */
+  public static Path getPlansFile(final Path checkpointDir, int iteration) {
+    return checkpointDir.resolve(getBaseName(iteration) + PLANS_EXTENSION);
+  }
+
+  /** Find the latest complete checkpoint of a run
+   *
+   * @param outputDir of the run to resume
+   * @return latest checkpoint, empty if none
+   */
+  public static Optional<Checkpoint> findLatest(final Path outputDir) {
+    Path checkpointDir = getCheckpointDir(outputDir);
+    if(!Files.isDirectory(checkpointDir)) {
+      return Optional.empty();
+    }
+
+    Checkpoint latest = null;
+    try(DirectoryStream<Path> propertiesFiles = Files.newDirectoryStream(checkpointDir, CHECKPOINT_PREFIX + "*" + PROPERTIES_EXTENSION)){
+      for(Path propertiesFile : propertiesFiles) {
+        Checkpoint checkpoint = read(propertiesFile).orElse(null);
+        if(checkpoint != null && (latest == null || checkpoint.getIteration() > latest.getIteration())) {
+          latest = checkpoint;
+        }
+      }
+    }catch(IOException e) {
+      LOGGER.warning(String.format("Unable to list checkpoints in %s: %s", checkpointDir.toString(), e.getMessage()));
+    }
+    return Optional.ofNullable(latest);
+  }
+
+  /** Persist the properties of a checkpoint whose plans file is already in place, completing the checkpoint
+   *
+   * @param checkpointDir to persist in
+   * @param iteration of the checkpoint
+   * @param randomSeed of the run
+   * @param persons in the checkpoint
+   * @return the completed checkpoint
+   * @throws IOException thrown if error
+   */
+  public static Checkpoint complete(final Path checkpointDir, int iteration, long randomSeed, long persons) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(ITERATION_PROPERTY, String.valueOf(iteration));
+    properties.setProperty(RANDOM_SEED_PROPERTY, String.valueOf(randomSeed));
+    properties.setProperty(PERSONS_PROPERTY, String.valueOf(persons));
+
+    Path propertiesFile = checkpointDir.resolve(getBaseName(iteration) + PROPERTIES_EXTENSION);
+    Path temporaryFile = checkpointDir.resolve(getBaseName(iteration) + PROPERTIES_EXTENSION + ".tmp");
+    try(Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)){
+      properties.store(writer, "PLANit AURIN MATSim wrapper checkpoint");
+    }
+    moveInPlace(temporaryFile, propertiesFile);
+    return new Checkpoint(iteration, randomSeed, persons, getPlansFile(checkpointDir, iteration));
+  }
+
+  /** Constructor
+   *
+   * @param iteration after which the checkpoint was taken
+   * @param randomSeed of the run
+   * @param persons in the checkpoint
+   * @param plansFile of the checkpoint
+   */
+  public Checkpoint(int iteration, long randomSeed, long persons, final Path plansFile) {
+    this.iteration = iteration;
+    this.randomSeed = randomSeed;
+    this.persons = persons;
+    this.plansFile = plansFile;
+  }
+
+  /** Remove the files of this checkpoint
+   *
+   * @throws IOException thrown if error
+   */
+  public void delete() throws IOException {
+    Files.deleteIfExists(plansFile.resolveSibling(getBaseName(iteration) + PROPERTIES_EXTENSION));
+    Files.deleteIfExists(plansFile);
+  }
+
+  /** Iteration after which the checkpoint was taken
+   *
+   * @return iteration
+   */
+  public int getIteration() {
+    return iteration;
+  }
+
+  /** Random seed of the run
+   *
+   * @return random seed
+   */
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  /** Number of persons in the checkpoint
+   *
+   * @return persons
+   */
+  public long getPersons() {
+    return persons;
+  }
+
+  /** Location of the plans file of the checkpoint
+   *
+   * @return plans file
+   */
+  public Path getPlansFile() {
+    return plansFile;
+  }
+}
@@ -0,0 +1,155 @@
+package org.goplanit.aurin.matsim.checkpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+
+/**
+ * Controller listener taking a {@link Checkpoint} every given number of iterations. On the controller thread only the selected plans are copied, which
+ * is cheap compared to persisting them, after which a background thread persists the copy while the next iteration runs. At most one checkpoint is
+ * written at a time, and once a checkpoint is complete the previous one is removed, so a single checkpoint is kept on disk.
+ *
+ * @author markr
+ *
+ */
+public class CheckpointListener implements IterationEndsListener, ShutdownListener {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(CheckpointListener.class.getCanonicalName());
+
+  /** population to checkpoint */
+  private final Population population;
+
+  /** directory to persist the checkpoints in */
+  private final Path checkpointDir;
+
+  /** iteration interval of the checkpoints */
+  private final int interval;
+
+  /** random seed of the run */
+  private final long randomSeed;
+
+  /** background writer */
+  private final ExecutorService writer;
+
+  /** pending checkpoint write, if any */
+  private Future<Checkpoint> pendingWrite = null;
+
+  /** latest complete checkpoint, if any */
+  private Checkpoint latest = null;
+
+  /** Copy the selected plan of a person, including its score, and the person's attributes
+   *
+   * @param person to copy
+   * @param factory to create the copy with
+   * @return copy
+   */
+  private static Person copySelected(final Person person, final PopulationFactory factory) {
+    Person copy = factory.createPerson(person.getId());
+    AttributesUtils.copyAttributesFromTo(person, copy);
+    Plan plan = PopulationUtils.createPlan(copy);
+    PopulationUtils.copyFromTo(person.getSelectedPlan(), plan);
+    plan.setScore(person.getSelectedPlan().getScore());
+    copy.addPlan(plan);
+    copy.setSelectedPlan(plan);
+    return copy;
+  }
+
+  /** Wait for the pending checkpoint write (if any) to finish and remove the checkpoint it supersedes */
+  private void awaitPendingWrite() {
+    if(pendingWrite == null) {
+      return;
+    }
+    try {
+      Checkpoint checkpoint = pendingWrite.get();
+      if(latest != null) {
+        latest.delete();
+      }
+      latest = checkpoint;
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }catch(ExecutionException | IOException e) {
+      LOGGER.warning(String.format("Unable to complete checkpoint: %s", e.getMessage()));
+    }finally {
+      pendingWrite = null;
+    }
+  }
+
+  /** Constructor
+   *
+   * @param population to checkpoint
+   * @param outputDir of the run, checkpoints are persisted in its {@link Checkpoint#CHECKPOINT_DIR}
+   * @param interval iteration interval of the checkpoints
+   * @param randomSeed of the run
+   */
+  public CheckpointListener(final Population population, final Path outputDir, int interval, long randomSeed) {
+    this.population = population;
+    this.checkpointDir = Checkpoint.getCheckpointDir(outputDir);
+    this.interval = interval;
+    this.randomSeed = randomSeed;
+    this.writer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "planit-checkpoint-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyIterationEnds(IterationEndsEvent event) {
+    final int iteration = event.getIteration();
+    if(event.isLastIteration() || iteration % interval != 0) {
+      return;
+    }
+
+    /* bounded to a single checkpoint in flight */
+    awaitPendingWrite();
+
+    long startNanos = System.nanoTime();
+    final Population copy = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    List<Person> selected = population.getPersons().values().parallelStream()
+        .map(person -> copySelected(person, copy.getFactory())).collect(Collectors.toList());
+    selected.forEach(copy::addPerson);
+    LOGGER.info(String.format("Iteration %d: copied %d selected plans for checkpoint in %d ms", iteration, selected.size(), (System.nanoTime() - startNanos) / 1_000_000));
+
+    pendingWrite = writer.submit(() -> {
+      Files.createDirectories(checkpointDir);
+      Path plansFile = Checkpoint.getPlansFile(checkpointDir, iteration);
+      new PopulationWriter(copy).write(plansFile.toAbsolutePath().toString());
+      Checkpoint checkpoint = Checkpoint.complete(checkpointDir, iteration, randomSeed, copy.getPersons().size());
+      LOGGER.info(String.format("Checkpoint of iteration %d persisted in %s", iteration, checkpointDir.toString()));
+      return checkpoint;
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyShutdown(ShutdownEvent event) {
+    awaitPendingWrite();
+    writer.shutdown();
+  }
+}
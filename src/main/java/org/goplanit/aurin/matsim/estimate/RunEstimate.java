@@ -0,0 +1,175 @@
+package org.goplanit.aurin.matsim.estimate;
+
+/**
+ * Predicted heap and per-iteration runtime of a simulation run, see {@link RunEstimator}
+ *
+ * @author markr
+ *
+ */
+public class RunEstimate {
+
+  /** number of bytes per megabyte */
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  /** nodes of the network */
+  private final long nodes;
+
+  /** links of the network */
+  private final long links;
+
+  /** persons of the plans file */
+  private final long persons;
+
+  /** plans of the plans file */
+  private final long plans;
+
+  /** legs of the selected plans */
+  private final long legs;
+
+  /** activities of the selected plans */
+  private final long activities;
+
+  /** sample of the persons that is simulated */
+  private final double sample;
+
+  /** predicted heap of the part that does not scale with the population */
+  private final long fixedHeapBytes;
+
+  /** predicted heap of the part that scales with the population */
+  private final long populationHeapBytes;
+
+  /** predicted serial runtime per iteration */
+  private final double secondsPerIteration;
+
+  /** Constructor
+   *
+   * @param nodes of the network
+   * @param links of the network
+   * @param persons of the plans file
+   * @param plans of the plans file
+   * @param legs of the selected plans
+   * @param activities of the selected plans
+   * @param sample of the persons that is simulated
+   * @param fixedHeapBytes predicted heap not scaling with the population
+   * @param populationHeapBytes predicted heap scaling with the population (at the sample)
+   * @param secondsPerIteration predicted serial runtime per iteration (at the sample)
+   */
+  public RunEstimate(long nodes, long links, long persons, long plans, long legs, long activities, double sample,
+      long fixedHeapBytes, long populationHeapBytes, double secondsPerIteration) {
+    this.nodes = nodes;
+    this.links = links;
+    this.persons = persons;
+    this.plans = plans;
+    this.legs = legs;
+    this.activities = activities;
+    this.sample = sample;
+    this.fixedHeapBytes = fixedHeapBytes;
+    this.populationHeapBytes = populationHeapBytes;
+    this.secondsPerIteration = secondsPerIteration;
+  }
+
+  /** Verify if the predicted heap fits within the available heap
+   *
+   * @param availableHeapBytes available heap
+   * @return true when it fits, false otherwise
+   */
+  public boolean fits(long availableHeapBytes) {
+    return getHeapBytes() <= availableHeapBytes;
+  }
+
+  /** Largest sample (relative to the plans file) of which the predicted heap fits within the available heap
+   *
+   * @param availableHeapBytes available heap
+   * @return sample, 0 when not even the network fits
+   */
+  public double getFittingSample(long availableHeapBytes) {
+    if(availableHeapBytes <= fixedHeapBytes) {
+      return 0;
+    }
+    if(populationHeapBytes == 0) {
+      return sample;
+    }
+    return Math.min(sample, sample * (availableHeapBytes - fixedHeapBytes) / (double) populationHeapBytes);
+  }
+
+  /** Predicted heap
+   *
+   * @return heap in bytes
+   */
+  public long getHeapBytes() {
+    return fixedHeapBytes + populationHeapBytes;
+  }
+
+  /** Predicted serial runtime per iteration
+   *
+   * @return seconds
+   */
+  public double getSecondsPerIteration() {
+    return secondsPerIteration;
+  }
+
+  /** Nodes of the network
+   *
+   * @return nodes
+   */
+  public long getNodes() {
+    return nodes;
+  }
+
+  /** Links of the network
+   *
+   * @return links
+   */
+  public long getLinks() {
+    return links;
+  }
+
+  /** Persons of the plans file
+   *
+   * @return persons
+   */
+  public long getPersons() {
+    return persons;
+  }
+
+  /** Plans of the plans file
+   *
+   * @return plans
+   */
+  public long getPlans() {
+    return plans;
+  }
+
+  /** Legs of the selected plans
+   *
+   * @return legs
+   */
+  public long getLegs() {
+    return legs;
+  }
+
+  /** Activities of the selected plans
+   *
+   * @return activities
+   */
+  public long getActivities() {
+    return activities;
+  }
+
+  /** Sample of the persons that is simulated
+   *
+   * @return sample
+   */
+  public double getSample() {
+    return sample;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("nodes: %d, links: %d, persons: %d, plans: %d, selected legs: %d, selected activities: %d, sample: %.4f, heap: %d MB, runtime per iteration: %.0f s",
+        nodes, links, persons, plans, legs, activities, sample, getHeapBytes() / BYTES_PER_MB, secondsPerIteration);
+  }
+}
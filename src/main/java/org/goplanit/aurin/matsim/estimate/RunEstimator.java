@@ -0,0 +1,345 @@
+package org.goplanit.aurin.matsim.estimate;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.goplanit.aurin.matsim.studyarea.StudyArea;
+import org.goplanit.aurin.matsim.studyarea.StudyAreaCropper;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.locationtech.jts.geom.Envelope;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Predicts the heap and per-iteration runtime of a simulation run before it is started, so runs that do not fit in the available memory can be refused
+ * or down sampled up front rather than dying mid-simulation. The network and plans files are streamed with a SAX parser that only counts elements, so
+ * the estimate takes seconds and bounded memory regardless of the size of the inputs.
+ * <p>
+ * The prediction multiplies the counted entities with indicative per-entity costs based on MATSim 13 object sizes (compressed oops, see the
+ * constants for their make-up), to be refined with heap and iteration phase measurements of actual runs, see {@code --profile}. Heap consists of a
+ * part that does not depend on the population (JVM and MATSim baseline, network, mobsim links, travel time bins) and a part that scales with the
+ * simulated persons and the plans they hold in memory, the latter including headroom for the garbage created during replanning. Once replanning
+ * has started, each person holds up to the plans memory of plans that are variations of its selected plan, hence the plans held are predicted from
+ * the size of the selected plans times the plans memory, or from all plans of the file when these take more. The runtime is a serial-equivalent per
+ * iteration (mobsim, scoring and replanning) of the legs of the selected plans, actual runtimes are lower on multi-core hosts.
+ * <p>
+ * The inputs are expected to be the plans as simulated, i.e., after time window filtering, down sampling and collapsing. When the run is cropped to
+ * a study area, only the nodes within the area, the links between them and the persons with an activity within the area, or with consecutive
+ * activities around it, are counted, mirroring {@link StudyAreaCropper}.
+ *
+ * @author markr
+ *
+ */
+public class RunEstimator {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(RunEstimator.class.getCanonicalName());
+
+  /** heap of the JVM and MATSim baseline (classes, injector, config, output writers), the order of the heap in use after start-up of a MATSim 13
+   * run without population */
+  public static final long BASE_HEAP_BYTES = 256L * 1024L * 1024L;
+
+  /** heap per network node: the node (~50 bytes) with its coordinate (~30), maps of in and out links (~2 x 60), its id (~50) and its routing
+   * representation */
+  public static final long BYTES_PER_NODE = 250;
+
+  /** heap per network link: the link (~80 bytes) with its attributes (~60), its id (~50), its entries in the network and node maps (~80) and its
+   * mobsim representation (qsim link and lane buffers, ~400) */
+  public static final long BYTES_PER_LINK = 700;
+
+  /** heap per link per travel time bin: the travel time calculator's travel time sum (8 bytes), entry count (4) and derived travel time (8), plus
+   * array overhead */
+  public static final long BYTES_PER_LINK_TIME_BIN = 24;
+
+  /** heap per person, excluding its plans: the person (~40 bytes), its id (~50), attributes (~100), plans list (~40), vehicle (~150), population
+   * map entry (~40) and scoring function state (~150) */
+  public static final long BYTES_PER_PERSON = 600;
+
+  /** heap per activity per plan held in memory: the activity (~70 bytes), its coordinate (~30), attributes (~80) and its share of the plan element
+   * list, with activity types shared */
+  public static final long BYTES_PER_ACTIVITY = 250;
+
+  /** heap per leg per plan held in memory, including its route: the leg (~50 bytes), attributes (~80), network route (~70) and its list of link
+   * ids (~4 bytes per link reference, ~100 links for a typical urban car trip) */
+  public static final long BYTES_PER_LEG = 600;
+
+  /** headroom on the population part of the heap for the garbage created during replanning, where each replanned person's selected plan is copied
+   * before it is mutated */
+  public static final double POPULATION_HEAP_HEADROOM = 1.5;
+
+  /** serial runtime per leg of the selected plans per iteration (mobsim, scoring and replanning share), the order of MATSim 13 runs of tens of
+   * thousands of agents on a single core */
+  public static final double SECONDS_PER_LEG = 5e-5;
+
+  /** serial runtime per link per iteration (mobsim link updates over the simulated day) */
+  public static final double SECONDS_PER_LINK = 1e-4;
+
+  /** Parse the coordinate of a network node or activity element
+   *
+   * @param attributes of the element
+   * @param transformation to the coordinate reference system of the study area
+   * @return coordinate, null when absent
+   */
+  private static Coord parseCoord(final Attributes attributes, final CoordinateTransformation transformation) {
+    String x = attributes.getValue("x");
+    String y = attributes.getValue("y");
+    if(x == null || y == null) {
+      return null;
+    }
+    Coord coord = new Coord(Double.parseDouble(x), Double.parseDouble(y));
+    return transformation == null ? coord : transformation.transform(coord);
+  }
+
+  /** Stream an XML file with a handler
+   *
+   * @param url to stream
+   * @param handler to stream with
+   * @throws PlanItException thrown if error
+   */
+  private static void stream(final URL url, final DefaultHandler handler) throws PlanItException {
+    try(InputStream inputStream = PipelinedGzipInputStream.open(url)){
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setValidating(false);
+      factory.setNamespaceAware(false);
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      SAXParser parser = factory.newSAXParser();
+      parser.parse(inputStream, handler);
+    }catch(Exception e) {
+      throw new PlanItException("Unable to stream %s for run estimate: %s", url.toString(), e.getMessage());
+    }
+  }
+
+  /** Handler counting the persons of a plans file with the activities and legs of all their plans and of their selected plans */
+  private static class PlansCounter extends DefaultHandler {
+
+    /** study area persons are counted for, null for all persons */
+    private final StudyArea studyArea;
+
+    /** transformation of activity coordinates to the study area's coordinate reference system, null for none */
+    private final CoordinateTransformation transformation;
+
+    /** envelope of the study area, null without study area */
+    private final Envelope envelope;
+
+    /** counted persons */
+    private long persons = 0;
+
+    /** counted plans */
+    private long plans = 0;
+
+    /** activities and legs of all plans of the counted persons */
+    private long activities = 0;
+    private long legs = 0;
+
+    /** activities and legs of the selected plans of the counted persons */
+    private long selectedActivities = 0;
+    private long selectedLegs = 0;
+
+    /** state of the current person, see {@link #reset()} */
+    private boolean within;
+    private int personPlans;
+    private long personActivities;
+    private long personLegs;
+    private long planActivities;
+    private long planLegs;
+    private boolean planSelected;
+    private boolean selectedFound;
+    private long personSelectedActivities;
+    private long personSelectedLegs;
+    private Coord previousCoord;
+
+    /** Reset the state of the current person */
+    private void reset() {
+      within = studyArea == null;
+      personPlans = 0;
+      personActivities = 0;
+      personLegs = 0;
+      selectedFound = false;
+      personSelectedActivities = 0;
+      personSelectedLegs = 0;
+    }
+
+    /** Verify if a leg between two activity locations outside the area may cross it, as done by the study area cropper
+     *
+     * @param from location
+     * @param to location
+     * @return true when it may cross, false otherwise
+     */
+    private boolean mayCross(final Coord from, final Coord to) {
+      Envelope legEnvelope = new Envelope(from.getX(), to.getX(), from.getY(), to.getY());
+      legEnvelope.expandBy(StudyAreaCropper.DETOUR_MARGIN * NetworkUtils.getEuclideanDistance(from, to));
+      return legEnvelope.intersects(envelope);
+    }
+
+    /** Constructor
+     *
+     * @param studyArea to count persons for, null for all persons
+     * @param transformation of activity coordinates to the study area's coordinate reference system, null for none
+     */
+    private PlansCounter(final StudyArea studyArea, final CoordinateTransformation transformation) {
+      this.studyArea = studyArea;
+      this.transformation = transformation;
+      this.envelope = studyArea == null ? null : studyArea.getArea().getEnvelopeInternal();
+      reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      switch (qName) {
+        case "person":
+          reset();
+          break;
+        case "plan":
+          ++personPlans;
+          planActivities = 0;
+          planLegs = 0;
+          planSelected = "yes".equals(attributes.getValue("selected"));
+          previousCoord = null;
+          break;
+        case "act":
+        case "activity":
+          ++planActivities;
+          if(!within) {
+            Coord coord = parseCoord(attributes, transformation);
+            /* an activity located by its link only cannot be verified, assume it is within */
+            within = coord == null || studyArea.contains(coord) || (previousCoord != null && mayCross(previousCoord, coord));
+            previousCoord = coord;
+          }
+          break;
+        case "leg":
+          ++planLegs;
+          break;
+        default:
+          break;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if("plan".equals(qName)) {
+        personActivities += planActivities;
+        personLegs += planLegs;
+        /* without selected plan MATSim selects the first */
+        if(planSelected || (!selectedFound && personPlans == 1)) {
+          selectedFound |= planSelected;
+          personSelectedActivities = planActivities;
+          personSelectedLegs = planLegs;
+        }
+      }else if("person".equals(qName) && within) {
+        ++persons;
+        plans += personPlans;
+        activities += personActivities;
+        legs += personLegs;
+        selectedActivities += personSelectedActivities;
+        selectedLegs += personSelectedLegs;
+      }
+    }
+  }
+
+  /** Count the nodes and links of a network file
+   *
+   * @param networkUrl network file
+   * @return nodes and links
+   * @throws PlanItException thrown if error
+   */
+  public static long[] countNetwork(final URL networkUrl) throws PlanItException {
+    return countNetwork(networkUrl, null, null);
+  }
+
+  /** Count the nodes of a network file within a study area and the links between them
+   *
+   * @param networkUrl network file
+   * @param studyArea to count within, null for the entire network
+   * @param transformation of node coordinates to the study area's coordinate reference system, null for none
+   * @return nodes and links
+   * @throws PlanItException thrown if error
+   */
+  public static long[] countNetwork(final URL networkUrl, final StudyArea studyArea, final CoordinateTransformation transformation) throws PlanItException {
+    final long[] counts = new long[2];
+    /* only nodes within the area are retained, so memory scales with the area */
+    final Set<String> nodesWithin = new HashSet<>();
+    stream(networkUrl, new DefaultHandler() {
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if("node".equals(qName)) {
+          if(studyArea == null) {
+            ++counts[0];
+            return;
+          }
+          Coord coord = parseCoord(attributes, transformation);
+          if(coord != null && studyArea.contains(coord)) {
+            ++counts[0];
+            nodesWithin.add(attributes.getValue("id"));
+          }
+        }else if("link".equals(qName)) {
+          if(studyArea == null || (nodesWithin.contains(attributes.getValue("from")) && nodesWithin.contains(attributes.getValue("to")))) {
+            ++counts[1];
+          }
+        }
+      }
+    });
+    return counts;
+  }
+
+  /** Estimate a run
+   *
+   * @param networkUrl network file
+   * @param plansUrl plans file
+   * @param sample of the persons that is simulated
+   * @param plansMemory maximum number of plans per person
+   * @param timeBins number of travel time bins per link
+   * @return estimate
+   * @throws PlanItException thrown if error
+   */
+  public static RunEstimate estimate(final URL networkUrl, final URL plansUrl, double sample, int plansMemory, int timeBins) throws PlanItException {
+    return estimate(countNetwork(networkUrl), plansUrl, null, null, sample, plansMemory, timeBins);
+  }
+
+  /** Estimate a run for a network of known size, e.g., a network that is provided in memory or counted within a study area
+   *
+   * @param networkSize nodes and links of the network
+   * @param plansUrl plans file
+   * @param studyArea to count persons for, null for all persons
+   * @param transformation of activity coordinates to the study area's coordinate reference system, null for none
+   * @param sample of the persons that is simulated
+   * @param plansMemory maximum number of plans per person
+   * @param timeBins number of travel time bins per link
+   * @return estimate
+   * @throws PlanItException thrown if error
+   */
+  public static RunEstimate estimate(final long[] networkSize, final URL plansUrl, final StudyArea studyArea, final CoordinateTransformation transformation,
+      double sample, int plansMemory, int timeBins) throws PlanItException {
+    long startNanos = System.nanoTime();
+    var plansCounter = new PlansCounter(studyArea, transformation);
+    stream(plansUrl, plansCounter);
+    LOGGER.info(String.format("Streamed plans for run estimate in %d ms", (System.nanoTime() - startNanos) / 1_000_000));
+
+    long nodes = networkSize[0];
+    long links = networkSize[1];
+    long fixedHeapBytes = BASE_HEAP_BYTES + nodes * BYTES_PER_NODE + links * (BYTES_PER_LINK + timeBins * BYTES_PER_LINK_TIME_BIN);
+    double filePlansBytes = plansCounter.activities * BYTES_PER_ACTIVITY + plansCounter.legs * BYTES_PER_LEG;
+    double memoryPlansBytes = Math.max(1, plansMemory) * (plansCounter.selectedActivities * BYTES_PER_ACTIVITY + plansCounter.selectedLegs * BYTES_PER_LEG);
+    double populationBytes = plansCounter.persons * BYTES_PER_PERSON + Math.max(filePlansBytes, memoryPlansBytes);
+    long populationHeapBytes = (long) (sample * populationBytes * POPULATION_HEAP_HEADROOM);
+    double secondsPerIteration = sample * plansCounter.selectedLegs * SECONDS_PER_LEG + links * SECONDS_PER_LINK;
+
+    return new RunEstimate(nodes, links, plansCounter.persons, plansCounter.plans, plansCounter.selectedLegs, plansCounter.selectedActivities, sample,
+        fixedHeapBytes, populationHeapBytes, secondsPerIteration);
+  }
+}
@@ -0,0 +1,84 @@
+package org.goplanit.aurin.matsim.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Event handler counting the hourly number of vehicles entering the links of a single shard, i.e., the links for which the index of their id
+ * modulo the number of shards equals the shard index. Events of other links are ignored. Each shard owns its state exclusively, so with MATSim's
+ * parallel events handling, where each handler is served by a single thread, shards are processed concurrently without any synchronisation.
+ *
+ * @author markr
+ *
+ */
+public class LinkVolumeShard implements LinkEnterEventHandler {
+
+  /** number of seconds per hour */
+  private static final int SECONDS_PER_HOUR = 3600;
+
+  /** index of this shard */
+  private final int shard;
+
+  /** total number of shards */
+  private final int shards;
+
+  /** hourly volumes per link of this shard */
+  private final Map<Id<Link>, int[]> volumes = new HashMap<>();
+
+  /** number of hours tracked */
+  private final int hours;
+
+  /** Constructor
+   *
+   * @param shard index of this shard
+   * @param shards total number of shards
+   * @param hours number of hours to track, entries beyond are added to the last hour
+   */
+  public LinkVolumeShard(int shard, int shards, int hours) {
+    this.shard = shard;
+    this.shards = shards;
+    this.hours = hours;
+  }
+
+  /** Verify if a link belongs to this shard
+   *
+   * @param linkId to verify
+   * @return true when it belongs to this shard, false otherwise
+   */
+  public boolean isOwner(final Id<Link> linkId) {
+    return Math.floorMod(linkId.index(), shards) == shard;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void handleEvent(final LinkEnterEvent event) {
+    if(!isOwner(event.getLinkId())) {
+      return;
+    }
+    int hour = Math.min(hours - 1, Math.max(0, (int) (event.getTime() / SECONDS_PER_HOUR)));
+    volumes.computeIfAbsent(event.getLinkId(), linkId -> new int[hours])[hour]++;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void reset(int iteration) {
+    volumes.clear();
+  }
+
+  /** Hourly volumes per link of this shard, only to be accessed once the events of the iteration are processed
+   *
+   * @return volumes per link
+   */
+  public Map<Id<Link>, int[]> getVolumes() {
+    return volumes;
+  }
+}
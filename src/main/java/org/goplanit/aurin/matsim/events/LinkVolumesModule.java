@@ -0,0 +1,100 @@
+package org.goplanit.aurin.matsim.events;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+/**
+ * Overriding module registering the wrapper's hourly link volumes, see {@link LinkVolumeShard}. The state is sharded by link id into one handler per
+ * events thread, so with parallel events handling the counting is spread over all threads instead of being processed by a single one. After the
+ * last iteration the shards are merged into {@link #LINK_VOLUMES_FILE} in the output directory.
+ *
+ * @author markr
+ *
+ */
+public class LinkVolumesModule extends AbstractModule {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(LinkVolumesModule.class.getCanonicalName());
+
+  /** name of the persisted link volumes file */
+  public static final String LINK_VOLUMES_FILE = "planit_link_volumes.csv";
+
+  /** header of the link volumes file */
+  public static final String LINK_VOLUMES_HEADER = "link_id,hour,vehicles";
+
+  /** number of hours tracked, covering MATSim's default maximum time of 30 hours */
+  public static final int HOURS = 30;
+
+  /** shards of the link volumes */
+  private final List<LinkVolumeShard> shards;
+
+  /** Persist the volumes of all shards
+   *
+   * @param outputFile to persist to
+   * @throws IOException thrown if error
+   */
+  private void write(final Path outputFile) throws IOException {
+    try(BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)){
+      writer.write(LINK_VOLUMES_HEADER);
+      writer.newLine();
+      for(LinkVolumeShard shard : shards) {
+        for(Map.Entry<Id<Link>, int[]> entry : shard.getVolumes().entrySet()) {
+          int[] hourlyVolumes = entry.getValue();
+          for(int hour = 0; hour < hourlyVolumes.length; ++hour) {
+            if(hourlyVolumes[hour] > 0) {
+              writer.write(String.format("%s,%d,%d", entry.getKey().toString(), hour, hourlyVolumes[hour]));
+              writer.newLine();
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Constructor
+   *
+   * @param numberOfShards to split the link volumes into, typically the number of events threads
+   */
+  public LinkVolumesModule(int numberOfShards) {
+    int numShards = Math.max(1, numberOfShards);
+    this.shards = new ArrayList<>(numShards);
+    for(int shard = 0; shard < numShards; ++shard) {
+      shards.add(new LinkVolumeShard(shard, numShards, HOURS));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void install() {
+    for(LinkVolumeShard shard : shards) {
+      addEventHandlerBinding().toInstance(shard);
+    }
+    addControlerListenerBinding().toInstance((IterationEndsListener) (IterationEndsEvent event) -> {
+      if(!event.isLastIteration()) {
+        return;
+      }
+      Path outputFile = Path.of(event.getServices().getControlerIO().getOutputFilename(LINK_VOLUMES_FILE));
+      try {
+        write(outputFile);
+        LOGGER.info(String.format("Persisted hourly link volumes of %d shards to %s", shards.size(), outputFile.toString()));
+      }catch(IOException e) {
+        LOGGER.warning(String.format("Unable to persist hourly link volumes to %s: %s", outputFile.toString(), e.getMessage()));
+      }
+    });
+  }
+}
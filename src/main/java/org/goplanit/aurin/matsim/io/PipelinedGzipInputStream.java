@@ -0,0 +1,250 @@
+package org.goplanit.aurin.matsim.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Input stream of a gzipped file where decompression and consumption are pipelined. A background thread inflates the file into a bounded ring of byte
+ * buffers while the consumer, e.g., an XML parser, reads from the filled buffers on its own thread. This way inflating and parsing, which MATSim
+ * otherwise performs one after the other on a single thread, overlap, and the slower of the two determines the throughput rather than their sum.
+ * Memory is bounded by the ring, when the consumer falls behind the inflating thread waits for a buffer to be released.
+ * <p>
+ * Not thread safe, a single consumer is assumed.
+ *
+ * @author markr
+ *
+ */
+public class PipelinedGzipInputStream extends InputStream {
+
+  /** extension of gzipped files */
+  public static final String GZIP_EXTENSION = ".gz";
+
+  /** default size of each buffer in the ring */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  /** default number of buffers in the ring */
+  public static final int DEFAULT_BUFFERS = 8;
+
+  /** size of the buffer of the underlying gzip stream */
+  private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+
+  /** a buffer of the ring with the number of bytes it holds */
+  private static class Chunk {
+
+    /** content */
+    private final byte[] data;
+
+    /** number of valid bytes */
+    private int length = 0;
+
+    /** Constructor
+     *
+     * @param size of the buffer
+     */
+    private Chunk(int size) {
+      this.data = new byte[size];
+    }
+  }
+
+  /** marks the end of the inflated content */
+  private static final Chunk END = new Chunk(0);
+
+  /** buffers available for inflating into */
+  private final BlockingQueue<Chunk> free;
+
+  /** buffers filled with inflated content, in order */
+  private final BlockingQueue<Chunk> filled;
+
+  /** inflating thread */
+  private final Thread inflater;
+
+  /** failure of the inflating thread, if any */
+  private volatile IOException failure = null;
+
+  /** buffer currently consumed, null before the first read */
+  private Chunk current = null;
+
+  /** read position in the current buffer */
+  private int position = 0;
+
+  /** Fill a buffer from a stream as far as possible
+   *
+   * @param in to read from
+   * @param chunk to fill
+   * @throws IOException thrown if error
+   */
+  private static void fill(final InputStream in, final Chunk chunk) throws IOException {
+    int length = 0;
+    int read;
+    while(length < chunk.data.length && (read = in.read(chunk.data, length, chunk.data.length - length)) >= 0) {
+      length += read;
+    }
+    chunk.length = length;
+  }
+
+  /** Inflate the compressed stream into the ring until its end, then mark the end
+   *
+   * @param compressed stream to inflate
+   */
+  private void inflate(final InputStream compressed) {
+    try(GZIPInputStream in = new GZIPInputStream(compressed, INFLATER_BUFFER_SIZE)){
+      while(true) {
+        Chunk chunk = free.take();
+        fill(in, chunk);
+        if(chunk.length == 0) {
+          break;
+        }
+        filled.put(chunk);
+      }
+    }catch(IOException e) {
+      failure = e;
+    }catch(InterruptedException e) {
+      /* closed by the consumer */
+      return;
+    }
+
+    try {
+      /* there is always room for the end marker, the queue holds one more entry than there are buffers */
+      filled.put(END);
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Make the next filled buffer current when the current one is consumed
+   *
+   * @return true when content is available, false at the end of the stream
+   * @throws IOException thrown when inflating failed
+   */
+  private boolean advance() throws IOException {
+    if(current == END) {
+      return false;
+    }
+    if(current != null && position < current.length) {
+      return true;
+    }
+    if(current != null) {
+      free.add(current);
+    }
+    try {
+      current = filled.take();
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for inflated content", e);
+    }
+    position = 0;
+    if(current == END) {
+      if(failure != null) {
+        throw failure;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /** Open a stream on the content of a URL, pipelined when it is a local gzipped file, and as provided by MATSim otherwise
+   *
+   * @param url to open
+   * @return stream on the (inflated) content
+   * @throws IOException thrown if error
+   */
+  public static InputStream open(final URL url) throws IOException {
+    if("file".equals(url.getProtocol()) && url.getPath().endsWith(GZIP_EXTENSION)) {
+      try {
+        return new PipelinedGzipInputStream(Files.newInputStream(Path.of(url.toURI())));
+      }catch(URISyntaxException e) {
+        throw new IOException(String.format("Invalid file location %s", url.toString()), e);
+      }
+    }
+    return IOUtils.getInputStream(url);
+  }
+
+  /** Open a stream on the content of a file, pipelined when it is gzipped, and as provided by MATSim otherwise
+   *
+   * @param file to open
+   * @return stream on the (inflated) content
+   * @throws IOException thrown if error
+   */
+  public static InputStream open(final Path file) throws IOException {
+    return open(file.toAbsolutePath().toUri().toURL());
+  }
+
+  /** Constructor with default ring
+   *
+   * @param compressed gzipped stream to inflate, closed when inflated
+   */
+  public PipelinedGzipInputStream(final InputStream compressed) {
+    this(compressed, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+  }
+
+  /** Constructor
+   *
+   * @param compressed gzipped stream to inflate, closed when inflated
+   * @param bufferSize size of each buffer of the ring
+   * @param buffers number of buffers of the ring
+   */
+  public PipelinedGzipInputStream(final InputStream compressed, int bufferSize, int buffers) {
+    this.free = new ArrayBlockingQueue<>(buffers);
+    this.filled = new ArrayBlockingQueue<>(buffers + 1);
+    for(int index = 0; index < buffers; ++index) {
+      free.add(new Chunk(bufferSize));
+    }
+    this.inflater = new Thread(() -> inflate(compressed), "planit-gzip-inflater");
+    this.inflater.setDaemon(true);
+    this.inflater.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read() throws IOException {
+    if(!advance()) {
+      return -1;
+    }
+    return current.data[position++] & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    if(!advance()) {
+      return -1;
+    }
+    int read = Math.min(len, current.length - position);
+    System.arraycopy(current.data, position, b, off, read);
+    position += read;
+    return read;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int available() {
+    return current == null || current == END ? 0 : current.length - position;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    inflater.interrupt();
+    current = END;
+  }
+}
@@ -0,0 +1,117 @@
+package org.goplanit.aurin.matsim.mobsim;
+
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.MatsimServices;
+import org.matsim.core.mobsim.framework.Mobsim;
+import org.matsim.core.mobsim.hermes.HermesProvider;
+import org.matsim.core.mobsim.qsim.QSimProvider;
+
+/**
+ * Overriding module replacing MATSim's mobsim binding by a schedule that runs the event-driven Hermes mobsim for all but the last iterations, and the
+ * configured QSim for the last {@link #getQsimIterations()} iterations. Hermes moves agents from link to link on precomputed events instead of
+ * stepping through time, so intermediate iterations, in which plans are still settling, are simulated at a fraction of the cost, while the final
+ * iterations, and thereby the final outputs, retain the fidelity of QSim.
+ * <p>
+ * MATSim requests a new mobsim for each iteration. Before each Hermes iteration its flow and storage capacity factors and end time are aligned with
+ * those of QSim, so capacities scaled during the run (see --plans_sample_schedule) apply to either mobsim. Requires QSim as configured mobsim, so the
+ * QSim components remain bound.
+ *
+ * @author markr
+ *
+ */
+public class MobsimScheduleModule extends AbstractModule {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(MobsimScheduleModule.class.getCanonicalName());
+
+  /** number of final iterations simulated by QSim */
+  private final int qsimIterations;
+
+  /** Provides the mobsim of the current iteration */
+  private static class MobsimScheduleProvider implements Provider<Mobsim> {
+
+    /** services to obtain iteration and configuration from */
+    @Inject
+    private MatsimServices services;
+
+    /** provider of the configured QSim */
+    @Inject
+    private QSimProvider qsimProvider;
+
+    /** provider of Hermes */
+    @Inject
+    private HermesProvider hermesProvider;
+
+    /** number of final iterations simulated by QSim */
+    private final int qsimIterations;
+
+    /** Align the Hermes configuration with the QSim configuration
+     *
+     * @param config to align
+     */
+    private static void alignHermes(final Config config) {
+      config.hermes().setFlowCapacityFactor(config.qsim().getFlowCapFactor());
+      config.hermes().setStorageCapacityFactor(config.qsim().getStorageCapFactor());
+      if(config.qsim().getEndTime().isDefined()) {
+        config.hermes().setEndTime((int) config.qsim().getEndTime().seconds());
+      }
+    }
+
+    /** Constructor
+     *
+     * @param qsimIterations number of final iterations simulated by QSim
+     */
+    private MobsimScheduleProvider(int qsimIterations) {
+      this.qsimIterations = qsimIterations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mobsim get() {
+      Config config = services.getConfig();
+      int iteration = services.getIterationNumber();
+      int firstQsimIteration = config.controler().getLastIteration() - qsimIterations + 1;
+      if(iteration >= firstQsimIteration) {
+        if(iteration == firstQsimIteration) {
+          LOGGER.info(String.format("Iteration %d: switching to qsim for the final %d iterations", iteration, qsimIterations));
+        }
+        return qsimProvider.get();
+      }
+
+      alignHermes(config);
+      return hermesProvider.get();
+    }
+  }
+
+  /** Constructor
+   *
+   * @param qsimIterations number of final iterations simulated by QSim
+   */
+  public MobsimScheduleModule(int qsimIterations) {
+    this.qsimIterations = qsimIterations;
+  }
+
+  /** Number of final iterations simulated by QSim
+   *
+   * @return QSim iterations
+   */
+  public int getQsimIterations() {
+    return qsimIterations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void install() {
+    bindMobsim().toProvider(new MobsimScheduleProvider(qsimIterations));
+  }
+}
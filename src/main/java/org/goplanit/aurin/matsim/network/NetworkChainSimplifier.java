@@ -0,0 +1,325 @@
+package org.goplanit.aurin.matsim.network;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.goplanit.utils.exceptions.PlanItException;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+
+/**
+ * Topology preserving simplification of a MATSim network, merging chains of links through nodes of degree two into a single link. OSM (and PLANit)
+ * derived networks contain many such nodes, e.g., to follow the geometry of a road, which add links to be processed by the mobsim and nodes to be
+ * searched by routing without affecting the outcome.
+ * <p>
+ * A node is merged away when it connects exactly two neighbouring nodes, either by a single link in and a single link out (one way) or by a link in and
+ * out to each neighbour (two way), and the links passing through it have the same free speed, capacity, number of lanes, allowed modes and type. A chain
+ * of links is replaced by a link with the id and attributes of its first link and the total length of the chain, so free-flow travel times, flow
+ * capacity and storage capacity are retained. Chains forming an isolated cycle are left untouched.
+ * <p>
+ * The mapping of each merged link to the link it is merged into can be persisted, so link results of the simplified network can be projected back onto
+ * the original links, i.e., each original link carries the volume of the link it was merged into.
+ *
+ * @author markr
+ *
+ */
+public class NetworkChainSimplifier {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(NetworkChainSimplifier.class.getCanonicalName());
+
+  /** header of the mapping CSV file */
+  public static final String MAPPING_HEADER = "original_link_id,simplified_link_id";
+
+  /** postfix added to the file name of the network for the mapping file */
+  public static final String MAPPING_POSTFIX = "_simplified_mapping";
+
+  /** original link id to id of the link it is merged into, only for links part of a merged chain, in order of simplification */
+  private final Map<Id<Link>, Id<Link>> mapping = new LinkedHashMap<>();
+
+  /** Verify two links may be merged
+   *
+   * @param first link
+   * @param second link
+   * @return true when they have identical attributes, false otherwise
+   */
+  private static boolean isCompatible(final Link first, final Link second) {
+    return first.getFreespeed() == second.getFreespeed() && first.getCapacity() == second.getCapacity()
+        && first.getNumberOfLanes() == second.getNumberOfLanes() && first.getAllowedModes().equals(second.getAllowedModes())
+        && Objects.equals(NetworkUtils.getType(first), NetworkUtils.getType(second));
+  }
+
+  /** Collect the out link of a node leading to the given node
+   *
+   * @param node to collect out link from
+   * @param toNode of the out link
+   * @return out link, null if none
+   */
+  private static Link getOutLinkTo(final Node node, final Node toNode) {
+    for(Link outLink : node.getOutLinks().values()) {
+      if(outLink.getToNode() == toNode) {
+        return outLink;
+      }
+    }
+    return null;
+  }
+
+  /** Verify a node can be merged away, i.e., it is passed through by compatible links only and connects exactly two neighbouring nodes
+   *
+   * @param node to verify
+   * @return true when it can be merged away, false otherwise
+   */
+  private static boolean isChainNode(final Node node) {
+    int inLinks = node.getInLinks().size();
+    int outLinks = node.getOutLinks().size();
+    if(inLinks != outLinks || (inLinks != 1 && inLinks != 2)) {
+      return false;
+    }
+
+    /* parallel links in the same direction are not merged */
+    Set<Node> fromNeighbours = new HashSet<>();
+    for(Link inLink : node.getInLinks().values()) {
+      fromNeighbours.add(inLink.getFromNode());
+    }
+    Set<Node> toNeighbours = new HashSet<>();
+    for(Link outLink : node.getOutLinks().values()) {
+      toNeighbours.add(outLink.getToNode());
+    }
+    if(fromNeighbours.size() != inLinks || toNeighbours.size() != outLinks) {
+      return false;
+    }
+    Set<Node> neighbours = new HashSet<>(fromNeighbours);
+    neighbours.addAll(toNeighbours);
+    if(neighbours.size() != 2 || neighbours.contains(node)) {
+      return false;
+    }
+
+    /* each in link continues to the other neighbour via a compatible out link */
+    for(Link inLink : node.getInLinks().values()) {
+      Node otherNeighbour = null;
+      for(Node neighbour : neighbours) {
+        if(neighbour != inLink.getFromNode()) {
+          otherNeighbour = neighbour;
+        }
+      }
+      Link outLink = getOutLinkTo(node, otherNeighbour);
+      if(outLink == null || !isCompatible(inLink, outLink)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Collect the chain of links starting with the given link, i.e., continue through chain nodes
+   *
+   * @param firstLink of the chain
+   * @param chainNodes nodes that can be merged away
+   * @return links of the chain, empty if it forms a cycle
+   */
+  private static List<Link> collectChain(final Link firstLink, final Set<Node> chainNodes) {
+    List<Link> chain = new ArrayList<>();
+    chain.add(firstLink);
+    Link link = firstLink;
+    while(chainNodes.contains(link.getToNode())) {
+      link = getOutLinkTo(link.getToNode(), getOtherNeighbour(link));
+      if(link == firstLink) {
+        return Collections.emptyList();
+      }
+      chain.add(link);
+    }
+    return chain;
+  }
+
+  /** Collect the neighbour of a link's to node that differs from the link's from node
+   *
+   * @param inLink to a chain node
+   * @return neighbour the chain continues to
+   */
+  private static Node getOtherNeighbour(final Link inLink) {
+    for(Link outLink : inLink.getToNode().getOutLinks().values()) {
+      if(outLink.getToNode() != inLink.getFromNode()) {
+        return outLink.getToNode();
+      }
+    }
+    return null;
+  }
+
+  /** Replace a chain of links by a single link
+   *
+   * @param network to replace chain in
+   * @param chain to replace
+   */
+  private void merge(final Network network, final List<Link> chain) {
+    Link firstLink = chain.get(0);
+    Node toNode = chain.get(chain.size() - 1).getToNode();
+    double length = 0;
+    for(Link link : chain) {
+      length += link.getLength();
+      mapping.put(link.getId(), firstLink.getId());
+      network.removeLink(link.getId());
+    }
+
+    Link mergedLink = network.getFactory().createLink(firstLink.getId(), firstLink.getFromNode(), toNode);
+    mergedLink.setLength(length);
+    mergedLink.setFreespeed(firstLink.getFreespeed());
+    mergedLink.setCapacity(firstLink.getCapacity());
+    mergedLink.setNumberOfLanes(firstLink.getNumberOfLanes());
+    mergedLink.setAllowedModes(firstLink.getAllowedModes());
+    firstLink.getAttributes().getAsMap().forEach((name, value) -> mergedLink.getAttributes().putAttribute(name, value));
+    network.addLink(mergedLink);
+  }
+
+  /** Simplify the network by merging chains of links through nodes of degree two
+   *
+   * @param network to simplify
+   */
+  public void run(final Network network) {
+    int linksBefore = network.getLinks().size();
+    int nodesBefore = network.getNodes().size();
+
+    Set<Node> chainNodes = new HashSet<>();
+    for(Node node : network.getNodes().values()) {
+      if(isChainNode(node)) {
+        chainNodes.add(node);
+      }
+    }
+
+    /* chains start at a link leaving a node that is retained */
+    List<List<Link>> chains = new ArrayList<>();
+    for(Link link : network.getLinks().values()) {
+      if(!chainNodes.contains(link.getFromNode()) && chainNodes.contains(link.getToNode())) {
+        List<Link> chain = collectChain(link, chainNodes);
+        /* a chain returning to its start node would become a self loop */
+        if(!chain.isEmpty() && chain.get(chain.size() - 1).getToNode() != link.getFromNode()) {
+          chains.add(chain);
+        }
+      }
+    }
+
+    Set<Node> mergedNodes = new HashSet<>();
+    for(List<Link> chain : chains) {
+      for(int index = 1; index < chain.size(); ++index) {
+        mergedNodes.add(chain.get(index).getFromNode());
+      }
+      merge(network, chain);
+    }
+    for(Node node : mergedNodes) {
+      if(node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+        network.removeNode(node.getId());
+      }
+    }
+
+    LOGGER.info(String.format("Simplified MATSim network from %d to %d links and from %d to %d nodes",
+        linksBefore, network.getLinks().size(), nodesBefore, network.getNodes().size()));
+  }
+
+  /** Update references of a population to merged links, activities are moved to the link they were merged into and routes using merged links are
+   * removed, so they are recomputed before the first iteration
+   *
+   * @param population to update
+   */
+  public void updatePopulation(final Population population) {
+    if(mapping.isEmpty()) {
+      return;
+    }
+
+    for(Person person : population.getPersons().values()) {
+      for(Plan plan : person.getPlans()) {
+        for(PlanElement element : plan.getPlanElements()) {
+          if(element instanceof Activity) {
+            Activity activity = (Activity) element;
+            if(activity.getLinkId() != null) {
+              activity.setLinkId(mapping.getOrDefault(activity.getLinkId(), activity.getLinkId()));
+            }
+          }else if(element instanceof Leg) {
+            Leg leg = (Leg) element;
+            if(leg.getRoute() != null && isUsingMergedLinks(leg.getRoute())) {
+              leg.setRoute(null);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Verify if a route uses any merged link
+   *
+   * @param route to verify
+   * @return true when so, false otherwise
+   */
+  private boolean isUsingMergedLinks(final Route route) {
+    if(mapping.containsKey(route.getStartLinkId()) || mapping.containsKey(route.getEndLinkId())) {
+      return true;
+    }
+    if(route instanceof NetworkRoute) {
+      for(Id<Link> linkId : ((NetworkRoute) route).getLinkIds()) {
+        if(mapping.containsKey(linkId)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Persist the mapping of merged links in the given directory
+   *
+   * @param networkFile the network was read from, used to name the mapping file
+   * @param outputDir to persist mapping in
+   * @return location of the mapping file
+   * @throws PlanItException thrown if error
+   */
+  public Path writeMapping(final Path networkFile, final Path outputDir) throws PlanItException {
+    String networkFileName = networkFile.getFileName().toString();
+    int extensionIndex = networkFileName.indexOf('.');
+    String baseName = extensionIndex < 0 ? networkFileName : networkFileName.substring(0, extensionIndex);
+    Path mappingFile = outputDir.resolve(baseName + MAPPING_POSTFIX + ".csv");
+    try {
+      Files.createDirectories(outputDir);
+      try(BufferedWriter writer = Files.newBufferedWriter(mappingFile, StandardCharsets.UTF_8)){
+        writer.write(MAPPING_HEADER);
+        writer.newLine();
+        for(Map.Entry<Id<Link>, Id<Link>> entry : mapping.entrySet()) {
+          writer.write(entry.getKey().toString());
+          writer.write(',');
+          writer.write(entry.getValue().toString());
+          writer.newLine();
+        }
+      }
+    }catch(IOException e) {
+      throw new PlanItException("Unable to persist network simplification mapping %s: %s", mappingFile.toString(), e.getMessage());
+    }
+    LOGGER.info(String.format("Persisted network simplification mapping in %s", mappingFile.toString()));
+    return mappingFile;
+  }
+
+  /** Mapping of merged links to the link they are merged into
+   *
+   * @return unmodifiable mapping, only containing links part of a merged chain
+   */
+  public Map<Id<Link>, Id<Link>> getMapping() {
+    return Collections.unmodifiableMap(mapping);
+  }
+}
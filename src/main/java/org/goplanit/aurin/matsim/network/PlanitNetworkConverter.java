@@ -0,0 +1,135 @@
+package org.goplanit.aurin.matsim.network;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.goplanit.utils.graph.Vertex;
+import org.goplanit.utils.id.ExternalIdAble;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.mode.PredefinedModeType;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
+import org.goplanit.utils.network.layer.physical.Node;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+
+/**
+ * Builds a MATSim network directly from a PLANit macroscopic network in memory, so a pipeline that already holds a PLANit network does not have to
+ * persist it in MATSim format only for the wrapper to parse it again.
+ * <p>
+ * Each PLANit node becomes a MATSim node and each PLANit link segment (one direction of a link) becomes a MATSim link, both identified by their
+ * PLANit XML id (or internal id when absent), consistent with the networks written by PLANit's MATSim writer. Length, free speed, lanes and capacity
+ * are taken from the link segment and its parent link, the link segment type name becomes the MATSim link type. Coordinates are transformed from the
+ * crs of the PLANit network to the simulation crs.
+ *
+ * @author markr
+ *
+ */
+public class PlanitNetworkConverter {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(PlanitNetworkConverter.class.getCanonicalName());
+
+  /** number of metres per kilometre */
+  private static final double METRES_PER_KM = 1000.0;
+
+  /** number of seconds per hour */
+  private static final double SECONDS_PER_HOUR = 3600.0;
+
+  /** transformation of the PLANit network crs to the simulation crs */
+  private final CoordinateTransformation transformation;
+
+  /** MATSim id of a PLANit entity
+   *
+   * @param entity to identify
+   * @return id
+   */
+  private static String getId(final ExternalIdAble entity) {
+    return entity.getXmlId() != null ? entity.getXmlId() : String.valueOf(entity.getId());
+  }
+
+  /** MATSim modes of the modes allowed on a link segment
+   *
+   * @param linkSegment to collect modes of
+   * @return MATSim modes
+   */
+  private static Set<String> getModes(final MacroscopicLinkSegment linkSegment) {
+    Set<String> modes = new HashSet<>();
+    for(Mode mode : linkSegment.getAllowedModes()) {
+      modes.add(PredefinedModeType.CAR.equals(mode.getPredefinedModeType()) ? TransportMode.car : mode.getName().toLowerCase());
+    }
+    return modes;
+  }
+
+  /** Constructor
+   *
+   * @param transformation of the PLANit network crs to the simulation crs
+   */
+  public PlanitNetworkConverter(final CoordinateTransformation transformation) {
+    this.transformation = transformation;
+  }
+
+  /** Number of nodes and links the MATSim network will have when converting a PLANit network
+   *
+   * @param planitNetwork to convert
+   * @return nodes and links
+   */
+  public static long[] getSize(final MacroscopicNetwork planitNetwork) {
+    long nodes = 0;
+    long links = 0;
+    for(MacroscopicNetworkLayer layer : planitNetwork.getTransportLayers()) {
+      nodes += layer.getNodes().size();
+      links += layer.getLinkSegments().size();
+    }
+    return new long[] {nodes, links};
+  }
+
+  /** Convert a PLANit network into an (empty) MATSim network
+   *
+   * @param planitNetwork to convert
+   * @param network to populate
+   * @throws PlanItException thrown if error
+   */
+  public void convert(final MacroscopicNetwork planitNetwork, final Network network) throws PlanItException {
+    if(!network.getNodes().isEmpty()) {
+      throw new PlanItException("MATSim network to convert PLANit network %s into is not empty", getId(planitNetwork));
+    }
+
+    Map<Vertex, org.matsim.api.core.v01.network.Node> nodes = new HashMap<>();
+    for(MacroscopicNetworkLayer layer : planitNetwork.getTransportLayers()) {
+      for(Node planitNode : layer.getNodes()) {
+        if(planitNode.getPosition() == null) {
+          throw new PlanItException("PLANit node %s has no position, unable to convert to MATSim network", getId(planitNode));
+        }
+        Coord coord = transformation.transform(new Coord(planitNode.getPosition().getX(), planitNode.getPosition().getY()));
+        nodes.put(planitNode, NetworkUtils.createAndAddNode(network, Id.createNodeId(getId(planitNode)), coord));
+      }
+
+      for(MacroscopicLinkSegment linkSegment : layer.getLinkSegments()) {
+        Link link = network.getFactory().createLink(
+            Id.createLinkId(getId(linkSegment)), nodes.get(linkSegment.getUpstreamVertex()), nodes.get(linkSegment.getDownstreamVertex()));
+        link.setLength(linkSegment.getParentLink().getLengthKm() * METRES_PER_KM);
+        link.setFreespeed(linkSegment.getPhysicalSpeedLimitKmH() * METRES_PER_KM / SECONDS_PER_HOUR);
+        link.setNumberOfLanes(linkSegment.getNumberOfLanes());
+        link.setCapacity(linkSegment.getCapacityOrDefaultPcuH());
+        link.setAllowedModes(getModes(linkSegment));
+        if(linkSegment.getLinkSegmentType() != null) {
+          NetworkUtils.setType(link, linkSegment.getLinkSegmentType().getName());
+        }
+        network.addLink(link);
+      }
+    }
+    LOGGER.info(String.format("Converted PLANit network %s into MATSim network with %d nodes and %d links in memory",
+        getId(planitNetwork), network.getNodes().size(), network.getLinks().size()));
+  }
+}
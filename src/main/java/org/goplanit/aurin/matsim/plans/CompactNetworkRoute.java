@@ -0,0 +1,202 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.population.routes.AbstractRoute;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Network route storing its links as an array of link id indices (see {@link Id#index()}) rather than a list of link ids, used for plans that are
+ * not selected. It is a fully functional {@link NetworkRoute}, so plans holding it remain valid for all MATSim components, but link ids are decoded
+ * on every call to {@link #getLinkIds()}, hence routes of selected plans should be expanded again, see {@link #expand()}.
+ * <p>
+ * The array is never altered once created, {@link #setLinkIds(Id, List, Id)} replaces it, so clones may share it.
+ *
+ * @author markr
+ *
+ */
+public class CompactNetworkRoute extends AbstractRoute implements NetworkRoute {
+
+  /** route type, identical to MATSim's link network route so persisted plans are read as regular network routes */
+  public static final String ROUTE_TYPE = "links";
+
+  /** indices of the link ids between start and end link */
+  private int[] linkIndices;
+
+  /** travel cost of the route */
+  private double travelCost = Double.NaN;
+
+  /** vehicle of the route, null if none */
+  private Id<Vehicle> vehicleId = null;
+
+  /** Encode link ids as indices
+   *
+   * @param linkIds to encode
+   * @return indices
+   */
+  private static int[] encode(final List<Id<Link>> linkIds) {
+    int[] indices = new int[linkIds.size()];
+    for(int index = 0; index < indices.length; ++index) {
+      indices[index] = linkIds.get(index).index();
+    }
+    return indices;
+  }
+
+  /** Create a compact copy of a network route
+   *
+   * @param route to copy
+   * @return compact route
+   */
+  public static CompactNetworkRoute of(final NetworkRoute route) {
+    var compactRoute = new CompactNetworkRoute(route.getStartLinkId(), route.getEndLinkId());
+    compactRoute.linkIndices = encode(route.getLinkIds());
+    compactRoute.setDistance(route.getDistance());
+    route.getTravelTime().ifDefined(compactRoute::setTravelTime);
+    compactRoute.travelCost = route.getTravelCost();
+    compactRoute.vehicleId = route.getVehicleId();
+    return compactRoute;
+  }
+
+  /** Constructor
+   *
+   * @param startLinkId of the route
+   * @param endLinkId of the route
+   */
+  public CompactNetworkRoute(final Id<Link> startLinkId, final Id<Link> endLinkId) {
+    super(startLinkId, endLinkId);
+    this.linkIndices = new int[0];
+  }
+
+  /** Create a regular MATSim network route with the same content
+   *
+   * @return expanded route
+   */
+  public NetworkRoute expand() {
+    NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(getStartLinkId(), getLinkIds(), getEndLinkId());
+    route.setDistance(getDistance());
+    getTravelTime().ifDefined(route::setTravelTime);
+    route.setTravelCost(travelCost);
+    route.setVehicleId(vehicleId);
+    return route;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLinkIds(final Id<Link> startLinkId, final List<Id<Link>> linkIds, final Id<Link> endLinkId) {
+    setStartLinkId(startLinkId);
+    setEndLinkId(endLinkId);
+    this.linkIndices = encode(linkIds);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Id<Link>> getLinkIds() {
+    List<Id<Link>> linkIds = new ArrayList<>(linkIndices.length);
+    for(int linkIndex : linkIndices) {
+      linkIds.add(Id.get(linkIndex, Link.class));
+    }
+    return linkIds;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public NetworkRoute getSubRoute(final Id<Link> fromLinkId, final Id<Link> toLinkId) {
+    return expand().getSubRoute(fromLinkId, toLinkId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setTravelCost(final double travelCost) {
+    this.travelCost = travelCost;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public double getTravelCost() {
+    return travelCost;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setVehicleId(final Id<Vehicle> vehicleId) {
+    this.vehicleId = vehicleId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Id<Vehicle> getVehicleId() {
+    return vehicleId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getRouteDescription() {
+    StringBuilder description = new StringBuilder();
+    if(getStartLinkId() != null) {
+      description.append(getStartLinkId().toString());
+    }
+    for(int linkIndex : linkIndices) {
+      description.append(' ').append(Id.get(linkIndex, Link.class).toString());
+    }
+    if(getEndLinkId() != null && (linkIndices.length > 0 || !getEndLinkId().equals(getStartLinkId()))) {
+      description.append(' ').append(getEndLinkId().toString());
+    }
+    return description.toString().trim();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setRouteDescription(final String routeDescription) {
+    List<Id<Link>> linkIds = new ArrayList<>();
+    for(String linkId : routeDescription.trim().split("\\s+")) {
+      if(!linkId.isEmpty()) {
+        linkIds.add(Id.createLinkId(linkId));
+      }
+    }
+    if(linkIds.isEmpty()) {
+      return;
+    }
+    Id<Link> startLinkId = linkIds.get(0);
+    Id<Link> endLinkId = linkIds.get(linkIds.size() - 1);
+    setLinkIds(startLinkId, linkIds.size() > 2 ? linkIds.subList(1, linkIds.size() - 1) : new ArrayList<>(), endLinkId);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getRouteType() {
+    return ROUTE_TYPE;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompactNetworkRoute clone() {
+    return (CompactNetworkRoute) super.clone();
+  }
+}
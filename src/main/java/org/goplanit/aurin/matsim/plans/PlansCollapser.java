@@ -0,0 +1,260 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+/**
+ * Collapses persons with identical plans into weighted agent groups, so memory and routing effort scale with the number of distinct plans rather than
+ * with the number of persons. Synthetic populations often contain many persons with identical activity chains, locations and times.
+ * <p>
+ * The plans file is streamed twice: the first pass counts persons per plan content hash, the second pass writes one group leader per group (at most the
+ * maximum group size persons per leader) with its group size as person attribute {@link #GROUP_SIZE_ATTRIBUTE} and skips the other members. Each
+ * member is listed with its leader in a groups CSV, so results can be projected back onto persons.
+ * <p>
+ * In the simulation, each leader drives a vehicle with a passenger car equivalent of its group size, see {@link #createGroupVehicles(Scenario)}, so
+ * a group consumes the flow and storage capacity of all its members and capacities scaled via the flow and storage capacity factors remain
+ * consistent. Note that members of a group always share their route and that link volumes count vehicles, i.e., groups.
+ *
+ * @author markr
+ *
+ */
+public class PlansCollapser {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(PlansCollapser.class.getCanonicalName());
+
+  /** person attribute holding the number of persons the agent represents */
+  public static final String GROUP_SIZE_ATTRIBUTE = "planit_group_size";
+
+  /** header of the groups CSV file */
+  public static final String GROUPS_HEADER = "person_id,group_leader_id";
+
+  /** prefix of the ids of the vehicle types created per group size */
+  public static final String GROUP_VEHICLE_TYPE_PREFIX = "planit_group_";
+
+  /** maximum number of persons per group */
+  private final int maxGroupSize;
+
+  /** persons read */
+  private long personsRead = 0;
+
+  /** group leaders written */
+  private long groupsWritten = 0;
+
+  /** String representation of an optional time
+   *
+   * @param time to represent
+   * @return seconds, or "-" when undefined
+   */
+  private static String asString(final OptionalTime time) {
+    return time.isDefined() ? String.valueOf(time.seconds()) : "-";
+  }
+
+  /** Hash of the content of a person's plans and attributes, persons with the same hash are considered identical
+   *
+   * @param person to hash
+   * @return hash
+   */
+  private static UUID hash(final Person person) {
+    StringBuilder content = new StringBuilder();
+    content.append(new TreeMap<>(person.getAttributes().getAsMap()));
+    for(Plan plan : person.getPlans()) {
+      content.append(plan == person.getSelectedPlan() ? "|S" : "|P");
+      for(PlanElement element : plan.getPlanElements()) {
+        if(element instanceof Activity) {
+          Activity activity = (Activity) element;
+          content.append("|A").append(activity.getType()).append(';').append(activity.getCoord()).append(';').append(activity.getLinkId());
+          content.append(';').append(activity.getFacilityId()).append(';').append(asString(activity.getEndTime())).append(';').append(asString(activity.getMaximumDuration()));
+        }else if(element instanceof Leg) {
+          Leg leg = (Leg) element;
+          content.append("|L").append(leg.getMode()).append(';').append(asString(leg.getDepartureTime())).append(';').append(asString(leg.getTravelTime()));
+          if(leg.getRoute() != null) {
+            content.append(';').append(leg.getRoute().getStartLinkId()).append(';').append(leg.getRoute().getRouteDescription());
+            content.append(';').append(leg.getRoute().getEndLinkId());
+          }
+        }
+      }
+    }
+    return UUID.nameUUIDFromBytes(content.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Stream a plans file
+   *
+   * @param plansFile to stream
+   * @param algorithm to apply to each person
+   */
+  private static void stream(final Path plansFile, final PersonAlgorithm algorithm) {
+    StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+    reader.addAlgorithm(algorithm);
+    try(InputStream inputStream = PipelinedGzipInputStream.open(plansFile)){
+      reader.parse(inputStream);
+    }catch(IOException e) {
+      throw new UncheckedIOException(String.format("Unable to stream MATSim plans file %s", plansFile.toString()), e);
+    }
+  }
+
+  /** Constructor
+   *
+   * @param maxGroupSize maximum number of persons represented by a single agent
+   */
+  public PlansCollapser(int maxGroupSize) {
+    this.maxGroupSize = maxGroupSize;
+  }
+
+  /** Collapse a plans file into group leaders and persist the result together with the groups CSV
+   *
+   * @param plansFile to collapse
+   * @param collapsedPlansFile to persist the group leaders in
+   * @param groupsFile to persist the person to group leader mapping in
+   * @throws PlanItException thrown if error
+   */
+  public void collapse(final Path plansFile, final Path collapsedPlansFile, final Path groupsFile) throws PlanItException {
+    personsRead = 0;
+    groupsWritten = 0;
+
+    /* first pass, count persons per hash */
+    final Map<UUID, int[]> remainingPersons = new HashMap<>();
+    stream(plansFile, person -> remainingPersons.computeIfAbsent(hash(person), hash -> new int[1])[0]++);
+
+    /* second pass, write a leader for each (capped) group and skip its members */
+    final Map<UUID, Id<Person>> openGroupLeader = new HashMap<>();
+    final Map<UUID, int[]> openGroupRemaining = new HashMap<>();
+    StreamingPopulationWriter writer = new StreamingPopulationWriter();
+    writer.startStreaming(collapsedPlansFile.toAbsolutePath().toString());
+    try(BufferedWriter groupsWriter = Files.newBufferedWriter(groupsFile, StandardCharsets.UTF_8)){
+      groupsWriter.write(GROUPS_HEADER);
+      groupsWriter.newLine();
+      stream(plansFile, person -> {
+        ++personsRead;
+        UUID hash = hash(person);
+        int[] openRemaining = openGroupRemaining.computeIfAbsent(hash, h -> new int[1]);
+        if(openRemaining[0] == 0) {
+          int[] remaining = remainingPersons.get(hash);
+          int groupSize = Math.min(maxGroupSize, remaining[0]);
+          remaining[0] -= groupSize;
+          openRemaining[0] = groupSize - 1;
+          openGroupLeader.put(hash, person.getId());
+          person.getAttributes().putAttribute(GROUP_SIZE_ATTRIBUTE, groupSize);
+          writer.run(person);
+          ++groupsWritten;
+        }else {
+          --openRemaining[0];
+        }
+        try {
+          groupsWriter.write(person.getId().toString());
+          groupsWriter.write(',');
+          groupsWriter.write(openGroupLeader.get(hash).toString());
+          groupsWriter.newLine();
+        }catch(IOException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    }catch(IOException | IllegalStateException e) {
+      throw new PlanItException("Unable to persist plans groups %s: %s", groupsFile.toString(), e.getMessage());
+    }finally {
+      writer.closeStreaming();
+    }
+    LOGGER.info(String.format("Collapsed MATSim plans file %s from %d persons into %d agent groups", plansFile.toString(), personsRead, groupsWritten));
+  }
+
+  /** Number of persons read by the last collapse
+   *
+   * @return persons read
+   */
+  public long getPersonsRead() {
+    return personsRead;
+  }
+
+  /** Number of group leaders written by the last collapse
+   *
+   * @return groups written
+   */
+  public long getGroupsWritten() {
+    return groupsWritten;
+  }
+
+  /** Verify if a population holds agent groups, i.e., was created by collapsing a plans file
+   *
+   * @param population to verify
+   * @return true when any person represents a group, false otherwise
+   */
+  public static boolean hasGroups(final Population population) {
+    for(Person person : population.getPersons().values()) {
+      if(person.getAttributes().getAttribute(GROUP_SIZE_ATTRIBUTE) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Assign each person of a collapsed population a vehicle for each main mode with a passenger car equivalent of its group size. The vehicles
+   * source of the configuration is changed to use these vehicles. Not possible when vehicles are already provided by the configuration
+   *
+   * @param scenario to create vehicles for
+   * @return true when created, false otherwise
+   */
+  public static boolean createGroupVehicles(final Scenario scenario) {
+    QSimConfigGroup qsim = scenario.getConfig().qsim();
+    if(qsim.getVehiclesSource() != QSimConfigGroup.VehiclesSource.defaultVehicle) {
+      LOGGER.warning(String.format("IGNORED: Vehicles source %s is configured, agent groups are simulated with their configured vehicles", qsim.getVehiclesSource()));
+      return false;
+    }
+
+    VehicleType defaultVehicleType = VehicleUtils.getDefaultVehicleType();
+    Map<Integer, VehicleType> typesBySize = new HashMap<>();
+    for(Person person : scenario.getPopulation().getPersons().values()) {
+      Object groupSizeAttribute = person.getAttributes().getAttribute(GROUP_SIZE_ATTRIBUTE);
+      int groupSize = groupSizeAttribute instanceof Number ? ((Number) groupSizeAttribute).intValue() : 1;
+      VehicleType vehicleType = typesBySize.computeIfAbsent(groupSize, size -> {
+        VehicleType type = VehicleUtils.createVehicleType(Id.create(GROUP_VEHICLE_TYPE_PREFIX + size, VehicleType.class));
+        type.setLength(defaultVehicleType.getLength());
+        type.setMaximumVelocity(defaultVehicleType.getMaximumVelocity());
+        type.setPcuEquivalents(size * defaultVehicleType.getPcuEquivalents());
+        scenario.getVehicles().addVehicleType(type);
+        return type;
+      });
+
+      Map<String, Id<Vehicle>> vehicleIdsByMode = new HashMap<>();
+      for(String mainMode : qsim.getMainModes()) {
+        Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId(person.getId().toString() + "_" + mainMode), vehicleType);
+        scenario.getVehicles().addVehicle(vehicle);
+        vehicleIdsByMode.put(mainMode, vehicle.getId());
+      }
+      VehicleUtils.insertVehicleIdsIntoAttributes(person, vehicleIdsByMode);
+    }
+    qsim.setVehiclesSource(QSimConfigGroup.VehiclesSource.fromVehiclesData);
+    LOGGER.info(String.format("Created vehicles for %d agent groups with %d distinct group sizes", scenario.getPopulation().getPersons().size(), typesBySize.size()));
+    return true;
+  }
+}
@@ -0,0 +1,74 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.population.routes.NetworkRoute;
+
+/**
+ * Controller listener that keeps the routes of non-selected plans in compact form, see {@link CompactNetworkRoute}. Once replanning has finished,
+ * i.e., right before the mobsim, network routes of non-selected plans are compacted and compact routes of selected plans are expanded, so the
+ * mobsim and scoring operate on regular routes only. Persons are processed in parallel since they are independent.
+ *
+ * @author markr
+ *
+ */
+public class PlansCompactionListener implements BeforeMobsimListener {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(PlansCompactionListener.class.getCanonicalName());
+
+  /** population to compact */
+  private final Population population;
+
+  /** Compact or expand the routes of a plan
+   *
+   * @param plan to process
+   * @param selected true when the plan is selected, false otherwise
+   * @param compacted count of compacted routes
+   */
+  private static void process(final Plan plan, final boolean selected, final LongAdder compacted) {
+    for(PlanElement element : plan.getPlanElements()) {
+      if(!(element instanceof Leg)) {
+        continue;
+      }
+      Leg leg = (Leg) element;
+      if(selected && leg.getRoute() instanceof CompactNetworkRoute) {
+        leg.setRoute(((CompactNetworkRoute) leg.getRoute()).expand());
+      }else if(!selected && leg.getRoute() instanceof NetworkRoute && !(leg.getRoute() instanceof CompactNetworkRoute)) {
+        leg.setRoute(CompactNetworkRoute.of((NetworkRoute) leg.getRoute()));
+        compacted.increment();
+      }
+    }
+  }
+
+  /** Constructor
+   *
+   * @param population to compact
+   */
+  public PlansCompactionListener(final Population population) {
+    this.population = population;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+    final LongAdder compacted = new LongAdder();
+    population.getPersons().values().parallelStream().forEach((Person person) -> {
+      Plan selectedPlan = person.getSelectedPlan();
+      for(Plan plan : person.getPlans()) {
+        process(plan, plan == selectedPlan, compacted);
+      }
+    });
+    LOGGER.fine(String.format("Iteration %d: compacted %d routes of non-selected plans", event.getIteration(), compacted.sum()));
+  }
+}
@@ -0,0 +1,191 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Streaming filter that restricts a plans file to a time window, so persons that do not travel within the simulated period are never loaded, routed or scored.
+ * Persons are read and written one at a time, so the full population is never held in memory.
+ * <p>
+ * A leg is within the window when it is en route during the window, i.e., it departs before the end of the window and arrives (departs when its travel time is
+ * unknown) at or after its start. Each plan is trimmed to the activity preceding its first leg within the window up to the activity following its last leg
+ * within the window. The first remaining activity receives an explicit end time, so its departure time is retained when it was derived from durations. Plans
+ * without legs within the window are removed, as are persons without remaining plans.
+ *
+ * @author markr
+ *
+ */
+public class PlansTimeWindowFilter {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(PlansTimeWindowFilter.class.getCanonicalName());
+
+  /** start of the window (s) */
+  private final double startTime;
+
+  /** end of the window (s) */
+  private final double endTime;
+
+  /** persons read */
+  private long personsRead = 0;
+
+  /** persons written */
+  private long personsWritten = 0;
+
+  /** End time of an activity given the time it starts
+   *
+   * @param activity to get end time for
+   * @param time activity starts
+   * @param isLast true when it is the last activity of the plan
+   * @return end time
+   */
+  private static double getActivityEndTime(final Activity activity, double time, boolean isLast) {
+    if(isLast) {
+      return Double.POSITIVE_INFINITY;
+    }
+    if(activity.getEndTime().isDefined()) {
+      return activity.getEndTime().seconds();
+    }
+    if(activity.getMaximumDuration().isDefined()) {
+      return time + activity.getMaximumDuration().seconds();
+    }
+    return time;
+  }
+
+  /** Trim a plan to the window
+   *
+   * @param plan to trim
+   * @return true when the plan has legs within the window, false otherwise
+   */
+  private boolean trim(final Plan plan) {
+    final List<PlanElement> elements = plan.getPlanElements();
+    int firstLeg = -1;
+    int lastLeg = -1;
+    double firstActivityEndTime = 0;
+    double previousActivityEndTime = 0;
+    double time = 0;
+    for(int index = 0; index < elements.size(); ++index) {
+      PlanElement element = elements.get(index);
+      if(element instanceof Activity) {
+        time = getActivityEndTime((Activity) element, time, index == elements.size() - 1);
+        previousActivityEndTime = time;
+      }else if(element instanceof Leg) {
+        Leg leg = (Leg) element;
+        double departureTime = leg.getDepartureTime().orElse(time);
+        double arrivalTime = departureTime + leg.getTravelTime().orElse(0);
+        if(departureTime < endTime && arrivalTime >= startTime) {
+          if(firstLeg < 0) {
+            firstLeg = index;
+            firstActivityEndTime = previousActivityEndTime;
+          }
+          lastLeg = index;
+        }
+        time = arrivalTime;
+      }
+    }
+    if(firstLeg < 0) {
+      return false;
+    }
+
+    /* legs are always surrounded by activities in a valid plan */
+    List<PlanElement> trimmed = new ArrayList<>(elements.subList(firstLeg - 1, Math.min(lastLeg + 2, elements.size())));
+    Activity firstActivity = (Activity) trimmed.get(0);
+    if(firstActivity.getEndTime().isUndefined()) {
+      firstActivity.setEndTime(firstActivityEndTime);
+    }
+    elements.clear();
+    elements.addAll(trimmed);
+    return true;
+  }
+
+  /** Filter a person's plans
+   *
+   * @param person to filter
+   * @return true when the person has remaining plans, false otherwise
+   */
+  private boolean filter(final Person person) {
+    Plan selectedPlan = person.getSelectedPlan();
+    for(Plan plan : new ArrayList<>(person.getPlans())) {
+      if(!trim(plan)) {
+        person.removePlan(plan);
+      }
+    }
+    if(person.getPlans().isEmpty()) {
+      return false;
+    }
+    if(!person.getPlans().contains(selectedPlan)) {
+      person.setSelectedPlan(person.getPlans().get(0));
+    }
+    return true;
+  }
+
+  /** Constructor
+   *
+   * @param startTime of the window (s)
+   * @param endTime of the window (s), use infinity for an open ended window
+   */
+  public PlansTimeWindowFilter(double startTime, double endTime) {
+    this.startTime = startTime;
+    this.endTime = endTime;
+  }
+
+  /** Filter a plans file to the window and persist the result
+   *
+   * @param plansFile to filter
+   * @param filteredPlansFile to persist the result in
+   */
+  public void filter(final Path plansFile, final Path filteredPlansFile) {
+    Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+    StreamingPopulationReader reader = new StreamingPopulationReader(scenario);
+    StreamingPopulationWriter writer = new StreamingPopulationWriter();
+    writer.startStreaming(filteredPlansFile.toAbsolutePath().toString());
+    reader.addAlgorithm(person -> {
+      ++personsRead;
+      if(filter(person)) {
+        ++personsWritten;
+        writer.run(person);
+      }
+    });
+    try(InputStream inputStream = PipelinedGzipInputStream.open(plansFile)){
+      reader.parse(inputStream);
+    }catch(IOException e) {
+      throw new UncheckedIOException(String.format("Unable to filter MATSim plans file %s", plansFile.toString()), e);
+    }finally {
+      writer.closeStreaming();
+    }
+    LOGGER.info(String.format("Filtered MATSim plans file %s to time window, retained %d of %d persons", plansFile.toString(), personsWritten, personsRead));
+  }
+
+  /** Number of persons read by the last filter
+   *
+   * @return persons read
+   */
+  public long getPersonsRead() {
+    return personsRead;
+  }
+
+  /** Number of persons retained by the last filter
+   *
+   * @return persons written
+   */
+  public long getPersonsWritten() {
+    return personsWritten;
+  }
+}
@@ -0,0 +1,98 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Schedule of the share of the population that is active per iteration, as a list of steps each activating a share from a given iteration onwards,
+ * e.g., {@code 0.1:0,0.25:21,1:41} for 10% in iterations 0-20, 25% in iterations 21-40 and the full population afterwards. Iterations before the first
+ * step use the share of the first step.
+ *
+ * @author markr
+ *
+ */
+public class SampleSchedule {
+
+  /** separator between steps */
+  public static final String STEP_SEPARATOR = ",";
+
+  /** separator between share and iteration of a step */
+  public static final String SHARE_ITERATION_SEPARATOR = ":";
+
+  /** share per step */
+  private final double[] shares;
+
+  /** first iteration per step */
+  private final int[] iterations;
+
+  /** Parse a schedule
+   *
+   * @param schedule to parse, see class description
+   * @return parsed schedule
+   * @throws IllegalArgumentException thrown when not a valid schedule, i.e., shares not in (0,1], iterations negative, or steps not strictly increasing
+   * in iteration and non-decreasing in share
+   */
+  public static SampleSchedule parse(final String schedule) {
+    String[] steps = schedule.trim().split(STEP_SEPARATOR);
+    double[] shares = new double[steps.length];
+    int[] iterations = new int[steps.length];
+    for(int step = 0; step < steps.length; ++step) {
+      String[] shareIteration = steps[step].trim().split(SHARE_ITERATION_SEPARATOR);
+      if(shareIteration.length != 2) {
+        throw new IllegalArgumentException(String.format("step %s is not of the form share%siteration", steps[step], SHARE_ITERATION_SEPARATOR));
+      }
+      shares[step] = Double.parseDouble(shareIteration[0].trim());
+      iterations[step] = Integer.parseInt(shareIteration[1].trim());
+      if(shares[step] <= 0 || shares[step] > 1) {
+        throw new IllegalArgumentException(String.format("share %s is not between 0 and 1", shareIteration[0]));
+      }
+      if(iterations[step] < 0) {
+        throw new IllegalArgumentException(String.format("iteration %s is negative", shareIteration[1]));
+      }
+      if(step > 0 && (iterations[step] <= iterations[step - 1] || shares[step] < shares[step - 1])) {
+        throw new IllegalArgumentException("steps should increase in iteration and not decrease in share");
+      }
+    }
+    return new SampleSchedule(shares, iterations);
+  }
+
+  /** Constructor
+   *
+   * @param shares per step
+   * @param iterations first iteration per step
+   */
+  public SampleSchedule(final double[] shares, final int[] iterations) {
+    this.shares = shares;
+    this.iterations = iterations;
+  }
+
+  /** Active share of the population in an iteration
+   *
+   * @param iteration to get share for
+   * @return share
+   */
+  public double getShare(int iteration) {
+    double share = shares[0];
+    for(int step = 1; step < shares.length && iterations[step] <= iteration; ++step) {
+      share = shares[step];
+    }
+    return share;
+  }
+
+  /** Share of the population active in the last step
+   *
+   * @return final share
+   */
+  public double getFinalShare() {
+    return shares[shares.length - 1];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return IntStream.range(0, shares.length).mapToObj(step -> String.format("%.2f from iteration %d", shares[step], iterations[step]))
+        .collect(Collectors.joining(", "));
+  }
+}
@@ -0,0 +1,118 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.util.logging.Logger;
+
+import org.goplanit.aurin.matsim.routing.TimeDependentRouter;
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+/**
+ * Controller listener growing the active population during the run according to a {@link SampleSchedule}, so early iterations, in which routes are
+ * still settling, are conducted on a sample only. All persons remain in the population, MATSim only simulates, scores and replans the persons of a
+ * {@link SampledPopulation} (see {@link SampleScheduleModule}). At the start of the first iteration, after MATSim prepared the full population, the
+ * sample is reduced to the first share. At the start of each iteration in which the share grows, the persons entering the sample are activated,
+ * with their car legs warm-routed on the travel times of the previous iteration (see {@link TimeDependentRouter}) and the scores of their plans, which
+ * stem from before the run, reset. Which persons are sampled is decided by a hash of their id (see {@link HashSampler}), so each sample contains the
+ * previous one.
+ * <p>
+ * At each step the flow and storage capacity factors are set to the configured factors multiplied by the active share, so the sample experiences the
+ * congestion of the full population. Listeners run ahead of replanning, so activated persons take part in the replanning of the iteration.
+ *
+ * @author markr
+ *
+ */
+public class SampleScheduleListener implements IterationStartsListener {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(SampleScheduleListener.class.getCanonicalName());
+
+  /** sampled view of the population simulated by the mobsim */
+  private final SampledPopulation sampledPopulation;
+
+  /** network to warm-route on */
+  private final Network network;
+
+  /** schedule to follow */
+  private final SampleSchedule schedule;
+
+  /** configured flow capacity factor for the full population */
+  private final double flowCapacityFactor;
+
+  /** configured storage capacity factor for the full population */
+  private final double storageCapacityFactor;
+
+  /** currently active share, negative before the first iteration */
+  private double activeShare = -1;
+
+  /** Activate the persons entering a sample, warm-routing their car legs and resetting their scores
+   *
+   * @param share of the sample
+   * @param router to warm-route with
+   * @return number of activated persons
+   */
+  private long activate(double share, final TimeDependentRouter router) {
+    long activated = 0;
+    for(Person person : sampledPopulation.getFullPopulation().getPersons().values()) {
+      if(sampledPopulation.isActive(person.getId()) || !HashSampler.isSampled(person.getId(), share)) {
+        continue;
+      }
+      for(Plan plan : person.getPlans()) {
+        router.reroute(plan, route -> true);
+        plan.setScore(null);
+      }
+      ++activated;
+    }
+    sampledPopulation.setShare(share);
+    return activated;
+  }
+
+  /** Constructor
+   *
+   * @param sampledPopulation sampled view of the population simulated by the mobsim, the population being fully prepared for the simulation
+   * @param network to warm-route on
+   * @param schedule to follow
+   * @param flowCapacityFactor configured flow capacity factor for the full population
+   * @param storageCapacityFactor configured storage capacity factor for the full population
+   */
+  public SampleScheduleListener(final SampledPopulation sampledPopulation, final Network network, final SampleSchedule schedule,
+      double flowCapacityFactor, double storageCapacityFactor) {
+    this.sampledPopulation = sampledPopulation;
+    this.network = network;
+    this.schedule = schedule;
+    this.flowCapacityFactor = flowCapacityFactor;
+    this.storageCapacityFactor = storageCapacityFactor;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyIterationStarts(final IterationStartsEvent event) {
+    double share = schedule.getShare(event.getIteration());
+    if(share == activeShare) {
+      return;
+    }
+
+    if(activeShare < 0) {
+      sampledPopulation.setShare(share);
+      LOGGER.info(String.format("Iteration %d: sample %.2f active, %d of %d persons not simulated", event.getIteration(), share,
+          sampledPopulation.getFullPopulation().getPersons().size() - sampledPopulation.getPersons().size(),
+          sampledPopulation.getFullPopulation().getPersons().size()));
+    }else {
+      var router = new TimeDependentRouter(network, event.getServices().getLinkTravelTimes());
+      long activated = activate(share, router);
+      LOGGER.info(String.format("Iteration %d: sample %.2f active, %d persons activated with %d car legs warm-routed",
+          event.getIteration(), share, activated, router.getLegsRerouted()));
+    }
+    activeShare = share;
+
+    Config config = event.getServices().getConfig();
+    config.qsim().setFlowCapFactor(flowCapacityFactor * share);
+    config.qsim().setStorageCapFactor(storageCapacityFactor * share);
+  }
+}
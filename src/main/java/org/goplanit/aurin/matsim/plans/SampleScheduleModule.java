@@ -0,0 +1,105 @@
+package org.goplanit.aurin.matsim.plans;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.mobsim.hermes.HermesProvider;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Overriding module growing the simulated population during the run according to a {@link SampleSchedule}, see {@link SampleScheduleListener}. The
+ * population of the scenario is left intact, instead MATSim's population binding is replaced by a {@link SampledPopulation}, so only the active
+ * persons are simulated (QSim's population agent source), scored, counted in the score statistics and replanned. Persons outside the sample keep
+ * their plans and scores untouched until activated. Hermes, whether configured or scheduled (see --mobsim_schedule), takes its population from the
+ * scenario, so it is built on a scenario with the sampled population.
+ * <p>
+ * Components given the population of the scenario directly, such as checkpoints, see all persons. When the schedule ends below the full population,
+ * the final plans only contain the active persons.
+ *
+ * @author markr
+ *
+ */
+public class SampleScheduleModule extends AbstractModule {
+
+  /** sampled view of the population simulated by the mobsim */
+  private final SampledPopulation sampledPopulation;
+
+  /** listener following the schedule */
+  private final SampleScheduleListener listener;
+
+  /** Provides the Hermes provider on a scenario with the sampled population */
+  private static class SampledHermesProvider implements Provider<HermesProvider> {
+
+    /** scenario to sample the population of */
+    @Inject
+    private Scenario scenario;
+
+    /** events manager to simulate with */
+    @Inject
+    private EventsManager eventsManager;
+
+    /** sampled view of the population */
+    private final SampledPopulation sampledPopulation;
+
+    /** scenario with the sampled population, created once so Hermes can reuse its imported scenario across iterations */
+    private Scenario sampledScenario = null;
+
+    /** Constructor
+     *
+     * @param sampledPopulation sampled view of the population
+     */
+    private SampledHermesProvider(final SampledPopulation sampledPopulation) {
+      this.sampledPopulation = sampledPopulation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HermesProvider get() {
+      if(sampledScenario == null) {
+        sampledScenario = new ScenarioUtils.ScenarioBuilder(scenario.getConfig()).setNetwork(scenario.getNetwork()).setPopulation(sampledPopulation)
+            .setActivityFacilities(scenario.getActivityFacilities()).setTransitSchedule(scenario.getTransitSchedule())
+            .setTransitVehicles(scenario.getTransitVehicles()).setVehicles(scenario.getVehicles()).build();
+      }
+      return new HermesProvider(sampledScenario, eventsManager);
+    }
+  }
+
+  /** Constructor
+   *
+   * @param population to sample, fully prepared for the simulation by the time the first iteration starts
+   * @param network to warm-route on
+   * @param schedule to follow
+   * @param flowCapacityFactor configured flow capacity factor for the full population
+   * @param storageCapacityFactor configured storage capacity factor for the full population
+   */
+  public SampleScheduleModule(final Population population, final Network network, final SampleSchedule schedule,
+      double flowCapacityFactor, double storageCapacityFactor) {
+    this.sampledPopulation = new SampledPopulation(population);
+    this.listener = new SampleScheduleListener(sampledPopulation, network, schedule, flowCapacityFactor, storageCapacityFactor);
+  }
+
+  /** Sampled view of the population simulated by the mobsim
+   *
+   * @return sampled population
+   */
+  public SampledPopulation getSampledPopulation() {
+    return sampledPopulation;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void install() {
+    addControlerListenerBinding().toInstance(listener);
+    bind(Population.class).toInstance(sampledPopulation);
+    bind(HermesProvider.class).toProvider(new SampledHermesProvider(sampledPopulation));
+  }
+}
@@ -0,0 +1,142 @@
+package org.goplanit.aurin.matsim.plans;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Read-only view of the persons of a population within a sample, selected by a hash of their id (see {@link HashSampler}). The view is handed to
+ * MATSim instead of the population (see {@link SampleScheduleModule}), so persons outside the sample are not simulated, scored or replanned while
+ * they remain in the population. Changes to the persons of the population are visible through the view, adding and removing persons is not
+ * supported.
+ *
+ * @author markr
+ *
+ */
+public class SampledPopulation implements Population {
+
+  /** the full population */
+  private final Population population;
+
+  /** share of the population in the sample */
+  private double share = 1;
+
+  /** persons in the sample, in population order */
+  private Map<Id<Person>, ? extends Person> activePersons;
+
+  /** Constructor, initially all persons are in the sample
+   *
+   * @param population the full population
+   */
+  public SampledPopulation(final Population population) {
+    this.population = population;
+    this.activePersons = Collections.unmodifiableMap(population.getPersons());
+  }
+
+  /** Change the share of the population in the sample
+   *
+   * @param share of the population, between 0 and 1
+   */
+  public void setShare(double share) {
+    Map<Id<Person>, Person> persons = new LinkedHashMap<>();
+    for(Person person : population.getPersons().values()) {
+      if(HashSampler.isSampled(person.getId(), share)) {
+        persons.put(person.getId(), person);
+      }
+    }
+    this.activePersons = Collections.unmodifiableMap(persons);
+    this.share = share;
+  }
+
+  /** Share of the population in the sample
+   *
+   * @return share
+   */
+  public double getShare() {
+    return share;
+  }
+
+  /** Verify if a person is in the sample
+   *
+   * @param personId to verify
+   * @return true when in the sample, false otherwise
+   */
+  public boolean isActive(final Id<Person> personId) {
+    return HashSampler.isSampled(personId, share);
+  }
+
+  /** The full population the sample is taken from
+   *
+   * @return population
+   */
+  public Population getFullPopulation() {
+    return population;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PopulationFactory getFactory() {
+    return population.getFactory();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getName() {
+    return population.getName();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setName(final String name) {
+    population.setName(name);
+  }
+
+  /** Persons in the sample
+   *
+   * @return unmodifiable persons in the sample
+   */
+  @Override
+  public Map<Id<Person>, ? extends Person> getPersons() {
+    return activePersons;
+  }
+
+  /** Not supported, add the person to the full population instead
+   *
+   * @param person to add
+   */
+  @Override
+  public void addPerson(final Person person) {
+    throw new UnsupportedOperationException("Unable to add a person to a sampled population, add it to the full population instead");
+  }
+
+  /** Not supported, remove the person from the full population instead
+   *
+   * @param personId to remove
+   * @return never
+   */
+  @Override
+  public Person removePerson(final Id<Person> personId) {
+    throw new UnsupportedOperationException("Unable to remove a person from a sampled population, remove it from the full population instead");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Attributes getAttributes() {
+    return population.getAttributes();
+  }
+}
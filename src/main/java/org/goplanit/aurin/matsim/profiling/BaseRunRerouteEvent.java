@@ -0,0 +1,39 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the comparison of the network with that of a base run and the rerouting of the affected agents of its plans
+ * 
+ * @author markr
+ *
+ */
+@Name(BaseRunRerouteEvent.NAME)
+@Label("Base Run Reroute")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Rerouting of the agents of a base run affected by network changes by the PLANit AURIN MATSim wrapper")
+public class BaseRunRerouteEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "BaseRunReroute";
+
+  /** number of links changed compared to the base run */
+  @Label("Changed Links")
+  public long changedLinks;
+
+  /** number of links whose traversal makes an agent affected */
+  @Label("Affected Links")
+  public long affectedLinks;
+
+  /** number of affected persons */
+  @Label("Persons Affected")
+  public long personsAffected;
+
+  /** number of rerouted car legs */
+  @Label("Legs Rerouted")
+  public long legsRerouted;
+}
@@ -0,0 +1,31 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the creation of a MATSim configuration by the wrapper, either from the command line or from config file(s)
+ * 
+ * @author markr
+ *
+ */
+@Name(ConfigBuildEvent.NAME)
+@Label("Config Build")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Creation of the in-memory MATSim configuration by the PLANit AURIN MATSim wrapper")
+public class ConfigBuildEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "ConfigBuild";
+
+  /** source of the configuration, e.g. template resource or user config file */
+  @Label("Source")
+  public String source;
+
+  /** modes type the configuration was built for (if command line based) */
+  @Label("Modes")
+  public String modes;
+}
@@ -0,0 +1,39 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the fail-fast validation of the network, plans and activity configuration before the scenario is loaded
+ * 
+ * @author markr
+ *
+ */
+@Name(InputValidationEvent.NAME)
+@Label("Input Validation")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Streamed validation of the simulation inputs by the PLANit AURIN MATSim wrapper")
+public class InputValidationEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "InputValidation";
+
+  /** number of persons validated */
+  @Label("Persons")
+  public long persons;
+
+  /** number of activities validated */
+  @Label("Activities")
+  public long activities;
+
+  /** number of errors found */
+  @Label("Errors")
+  public int errors;
+
+  /** number of warnings found */
+  @Label("Warnings")
+  public int warnings;
+}
@@ -0,0 +1,31 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning a single phase of a MATSim iteration, see {@link IterationPhaseProfilingListener} for the available phases
+ * 
+ * @author markr
+ *
+ */
+@Name(IterationPhaseEvent.NAME)
+@Label("Iteration Phase")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER, "Iterations"})
+@Description("Phase of a MATSim iteration run via the PLANit AURIN MATSim wrapper")
+public class IterationPhaseEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "IterationPhase";
+
+  /** the iteration */
+  @Label("Iteration")
+  public int iteration;
+
+  /** the phase within the iteration */
+  @Label("Phase")
+  public String phase;
+}
@@ -0,0 +1,88 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+/**
+ * Controller listener that emits an {@link IterationPhaseEvent} for each phase of each MATSim iteration. The phases are:
+ * <ul>
+ * <li>{@code replanning}, from the start of the iteration until the mobsim is about to start</li>
+ * <li>{@code mobsim}, the network loading itself</li>
+ * <li>{@code scoring}, from the end of the mobsim until the end of the iteration (scoring, analysis, output)</li>
+ * </ul>
+ * When no JFR recording is active the events are not committed and the overhead is negligible.
+ * 
+ * @author markr
+ *
+ */
+public class IterationPhaseProfilingListener implements IterationStartsListener, BeforeMobsimListener, AfterMobsimListener, IterationEndsListener {
+
+  /** phase before the mobsim */
+  public static final String PHASE_REPLANNING = "replanning";
+
+  /** phase of the mobsim */
+  public static final String PHASE_MOBSIM = "mobsim";
+
+  /** phase after the mobsim */
+  public static final String PHASE_SCORING = "scoring";
+
+  /** currently active event (if any) */
+  private IterationPhaseEvent activeEvent = null;
+
+  /** Commit the active event (if any) and begin a new one for the given phase
+   * 
+   * @param iteration to begin phase for
+   * @param phase to begin, when null no new phase is started
+   */
+  private void nextPhase(int iteration, String phase) {
+    if(activeEvent != null) {
+      activeEvent.commit();
+      activeEvent = null;
+    }
+    if(phase != null) {
+      activeEvent = new IterationPhaseEvent();
+      activeEvent.iteration = iteration;
+      activeEvent.phase = phase;
+      activeEvent.begin();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyIterationStarts(IterationStartsEvent event) {
+    nextPhase(event.getIteration(), PHASE_REPLANNING);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+    nextPhase(event.getIteration(), PHASE_MOBSIM);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyAfterMobsim(AfterMobsimEvent event) {
+    nextPhase(event.getIteration(), PHASE_SCORING);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyIterationEnds(IterationEndsEvent event) {
+    nextPhase(event.getIteration(), null);
+  }
+
+}
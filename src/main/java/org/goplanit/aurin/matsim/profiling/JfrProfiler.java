@@ -0,0 +1,115 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.goplanit.utils.exceptions.PlanItException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts and stops a Java Flight Recorder recording for a wrapper run. The recording uses the JDK's {@code default} settings
+ * supplemented with the tuned settings of {@link #PROFILE_SETTINGS_RESOURCE}, which enables the wrapper's own events
+ * and raises the sampling detail for the hot paths of a MATSim run. The result is persisted in the output directory
+ * as {@link #RECORDING_FILE_NAME}.
+ * 
+ * @author markr
+ *
+ */
+public class JfrProfiler implements AutoCloseable {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(JfrProfiler.class.getCanonicalName());
+
+  /** the resource holding the tuned JFR settings for the wrapper */
+  public static final String PROFILE_SETTINGS_RESOURCE = "planit_matsim_profile.jfc";
+
+  /** name of the JFR base configuration the tuned settings are applied on top of */
+  public static final String BASE_CONFIGURATION = "default";
+
+  /** name of the file the recording is persisted to in the output directory */
+  public static final String RECORDING_FILE_NAME = "planit_aurin_matsim.jfr";
+
+  /** the recording */
+  private final Recording recording;
+
+  /** the location the recording is persisted to */
+  private final Path destination;
+
+  /** Collect the tuned settings from the resource and overlay them on the base configuration
+   * 
+   * @return settings to use
+   * @throws IOException thrown if error
+   * @throws ParseException thrown if error
+   */
+  private static Map<String, String> createSettings() throws IOException, ParseException {
+    Map<String, String> settings = new HashMap<>(Configuration.getConfiguration(BASE_CONFIGURATION).getSettings());
+    try(InputStream settingsStream = JfrProfiler.class.getClassLoader().getResourceAsStream(PROFILE_SETTINGS_RESOURCE)){
+      if(settingsStream == null) {
+        LOGGER.warning(String.format("JFR settings resource %s not found, using JFR %s settings only", PROFILE_SETTINGS_RESOURCE, BASE_CONFIGURATION));
+        return settings;
+      }
+      try(Reader settingsReader = new InputStreamReader(settingsStream, StandardCharsets.UTF_8)){
+        settings.putAll(Configuration.create(settingsReader).getSettings());
+      }
+    }
+    return settings;
+  }
+
+  /** Constructor
+   * 
+   * @param recording to use
+   * @param destination to persist to
+   */
+  private JfrProfiler(final Recording recording, final Path destination) {
+    this.recording = recording;
+    this.destination = destination;
+  }
+
+  /** Start a JFR recording that is persisted in the given output directory once stopped
+   * 
+   * @param outputDir to persist the recording in
+   * @return profiler with active recording
+   * @throws PlanItException thrown if error
+   */
+  public static JfrProfiler start(final Path outputDir) throws PlanItException {
+    PlanItException.throwIfNull(outputDir, "Output directory for JFR recording null");
+    try {
+      Recording recording = new Recording(createSettings());
+      recording.setName("PLANit AURIN MATSim wrapper");
+      recording.setToDisk(true);
+
+      Path destination = outputDir.resolve(RECORDING_FILE_NAME).toAbsolutePath();
+      destination.getParent().toFile().mkdirs();
+      recording.setDestination(destination);
+      recording.start();
+      LOGGER.info(String.format("[SETTING] JFR profiling recording to: %s", destination.toString()));
+      return new JfrProfiler(recording, destination);
+    }catch(Exception e) {
+      throw new PlanItException("Unable to start JFR recording: %s", e.getMessage());
+    }
+  }
+
+  /** Stop the recording, which persists it to its destination
+   */
+  @Override
+  public void close() {
+    try {
+      recording.stop();
+      LOGGER.info(String.format("JFR recording persisted in %s", destination.toString()));
+    }catch(Exception e) {
+      LOGGER.warning(String.format("Unable to persist JFR recording to %s: %s", destination.toString(), e.getMessage()));
+    }finally {
+      recording.close();
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the cleaning and persisting of the in-memory MATSim network
+ * 
+ * @author markr
+ *
+ */
+@Name(NetworkCleanEvent.NAME)
+@Label("Network Clean")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Cleaning and persisting of the MATSim network by the PLANit AURIN MATSim wrapper")
+public class NetworkCleanEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "NetworkClean";
+
+  /** number of links before cleaning */
+  @Label("Links Before")
+  public long linksBefore;
+
+  /** number of links after cleaning */
+  @Label("Links After")
+  public long linksAfter;
+}
@@ -0,0 +1,39 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the simplification of the in-memory MATSim network by merging chains of links
+ * 
+ * @author markr
+ *
+ */
+@Name(NetworkSimplifyEvent.NAME)
+@Label("Network Simplify")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Simplification of the MATSim network by the PLANit AURIN MATSim wrapper")
+public class NetworkSimplifyEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "NetworkSimplify";
+
+  /** number of links before simplification */
+  @Label("Links Before")
+  public long linksBefore;
+
+  /** number of links after simplification */
+  @Label("Links After")
+  public long linksAfter;
+
+  /** number of nodes before simplification */
+  @Label("Nodes Before")
+  public long nodesBefore;
+
+  /** number of nodes after simplification */
+  @Label("Nodes After")
+  public long nodesAfter;
+}
@@ -0,0 +1,39 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the collapsing of persons with identical plans of a plans file into agent groups
+ * 
+ * @author markr
+ *
+ */
+@Name(PlansCollapseEvent.NAME)
+@Label("Plans Collapse")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Collapsing of identical plans of the MATSim plans file into agent groups by the PLANit AURIN MATSim wrapper")
+public class PlansCollapseEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "PlansCollapse";
+
+  /** plans file that is collapsed */
+  @Label("Plans File")
+  public String plansFile;
+
+  /** maximum number of persons per group */
+  @Label("Max Group Size")
+  public int maxGroupSize;
+
+  /** number of persons before collapsing */
+  @Label("Persons")
+  public long persons;
+
+  /** number of agent groups after collapsing */
+  @Label("Groups")
+  public long groups;
+}
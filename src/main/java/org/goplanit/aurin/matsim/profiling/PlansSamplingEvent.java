@@ -0,0 +1,35 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the down sampling of a plans file, i.e., reading, sampling and persisting the population
+ * 
+ * @author markr
+ *
+ */
+@Name(PlansSamplingEvent.NAME)
+@Label("Plans Sampling")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Down sampling of the MATSim plans file by the PLANit AURIN MATSim wrapper")
+public class PlansSamplingEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "PlansSampling";
+
+  /** plans file that is sampled */
+  @Label("Plans File")
+  public String plansFile;
+
+  /** sample size applied */
+  @Label("Sample Size")
+  public double sampleSize;
+
+  /** number of persons retained after sampling */
+  @Label("Persons")
+  public long persons;
+}
@@ -0,0 +1,43 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the filtering of a plans file to the simulated time window, i.e., streaming, trimming and persisting the population
+ * 
+ * @author markr
+ *
+ */
+@Name(PlansTimeFilterEvent.NAME)
+@Label("Plans Time Filter")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Filtering of the MATSim plans file to the simulated time window by the PLANit AURIN MATSim wrapper")
+public class PlansTimeFilterEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "PlansTimeFilter";
+
+  /** plans file that is filtered */
+  @Label("Plans File")
+  public String plansFile;
+
+  /** start of the time window (s) */
+  @Label("Start Time")
+  public double startTime;
+
+  /** end of the time window (s), infinite when open ended */
+  @Label("End Time")
+  public double endTime;
+
+  /** number of persons before filtering */
+  @Label("Persons Before")
+  public long personsBefore;
+
+  /** number of persons retained after filtering */
+  @Label("Persons After")
+  public long personsAfter;
+}
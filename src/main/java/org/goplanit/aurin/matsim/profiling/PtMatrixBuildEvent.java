@@ -0,0 +1,36 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the wrapper's preparation of the MATSim matrix based pt router, i.e., processing the pt stops
+ * and configuring the router
+ * 
+ * @author markr
+ *
+ */
+@Name(PtMatrixBuildEvent.NAME)
+@Label("PT Matrix Build")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Preparation of the stop based pt matrix router by the PLANit AURIN MATSim wrapper")
+public class PtMatrixBuildEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "PtMatrixBuild";
+
+  /** pt stops file used */
+  @Label("PT Stops File")
+  public String ptStopsFile;
+
+  /** number of pt stops in the pt stops file */
+  @Label("Stops Before")
+  public int stopsBefore;
+
+  /** number of pt stops after merging co-located stops */
+  @Label("Stops After")
+  public int stopsAfter;
+}
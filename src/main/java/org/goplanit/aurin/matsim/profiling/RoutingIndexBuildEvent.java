@@ -0,0 +1,40 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the preparation of the index of the wrapper's accelerated car router, i.e., the routing graph and its landmarks, either
+ * created or loaded
+ * 
+ * @author markr
+ *
+ */
+@Name(RoutingIndexBuildEvent.NAME)
+@Label("Routing Index Build")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Preparation of the accelerated car routing index by the PLANit AURIN MATSim wrapper")
+public class RoutingIndexBuildEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "RoutingIndexBuild";
+
+  /** number of nodes of the routing graph */
+  @Label("Nodes")
+  public long nodes;
+
+  /** number of links of the routing graph */
+  @Label("Links")
+  public long links;
+
+  /** number of landmarks */
+  @Label("Landmarks")
+  public int landmarks;
+
+  /** true when the index was loaded from a file persisted by an earlier run, false when created */
+  @Label("Loaded")
+  public boolean loaded;
+}
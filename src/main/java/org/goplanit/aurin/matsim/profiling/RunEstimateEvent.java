@@ -0,0 +1,46 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the pre-run estimate of the heap and runtime of a simulation
+ * 
+ * @author markr
+ *
+ */
+@Name(RunEstimateEvent.NAME)
+@Label("Run Estimate")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Estimate of the heap and runtime of a MATSim simulation from streamed inputs by the PLANit AURIN MATSim wrapper")
+public class RunEstimateEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "RunEstimate";
+
+  /** number of persons in the plans file */
+  @Label("Persons")
+  public long persons;
+
+  /** number of links in the network */
+  @Label("Links")
+  public long links;
+
+  /** sample of the persons that is simulated */
+  @Label("Sample")
+  public double sample;
+
+  /** estimated heap */
+  @Label("Estimated Heap")
+  @DataAmount
+  public long heapBytes;
+
+  /** available heap */
+  @Label("Available Heap")
+  @DataAmount
+  public long availableHeapBytes;
+}
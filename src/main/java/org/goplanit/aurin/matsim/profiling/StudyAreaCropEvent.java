@@ -0,0 +1,47 @@
+package org.goplanit.aurin.matsim.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the cropping of the network and the streaming of the plans to the study area
+ * 
+ * @author markr
+ *
+ */
+@Name(StudyAreaCropEvent.NAME)
+@Label("Study Area Crop")
+@Category({WrapperEventCategory.PLANIT, WrapperEventCategory.WRAPPER})
+@Description("Cropping of the MATSim network and plans to the study area by the PLANit AURIN MATSim wrapper")
+public class StudyAreaCropEvent extends Event {
+
+  /** name of this event type */
+  public static final String NAME = WrapperEventCategory.EVENT_PREFIX + "StudyAreaCrop";
+
+  /** number of links before cropping */
+  @Label("Links Before")
+  public long linksBefore;
+
+  /** number of links after cropping */
+  @Label("Links After")
+  public long linksAfter;
+
+  /** number of persons before cropping */
+  @Label("Persons Before")
+  public long personsBefore;
+
+  /** number of persons after cropping */
+  @Label("Persons After")
+  public long personsAfter;
+
+  /** number of persons after cropping without any activity within the study area */
+  @Label("Through Persons")
+  public long throughPersons;
+
+  /** number of activities replaced by an activity where a route crosses the cordon of the study area */
+  @Label("Cordon Activities")
+  public long cordonActivities;
+}
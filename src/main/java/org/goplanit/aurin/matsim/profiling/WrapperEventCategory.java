@@ -0,0 +1,22 @@
+package org.goplanit.aurin.matsim.profiling;
+
+/**
+ * Shared naming of the JFR events emitted by the wrapper
+ * 
+ * @author markr
+ *
+ */
+public final class WrapperEventCategory {
+
+  /** top level category */
+  public static final String PLANIT = "PLANit";
+
+  /** wrapper category */
+  public static final String WRAPPER = "AURIN MATSim Wrapper";
+
+  /** prefix used for all event names */
+  public static final String EVENT_PREFIX = "org.goplanit.aurin.matsim.";
+
+  private WrapperEventCategory() {
+  }
+}
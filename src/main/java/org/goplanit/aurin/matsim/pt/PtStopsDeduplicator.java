@@ -0,0 +1,317 @@
+package org.goplanit.aurin.matsim.pt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.goplanit.utils.exceptions.PlanItException;
+
+/**
+ * Merge co-located or near coincident pt stops of a pt stops CSV file (as used by the MATSim matrix based pt router) into representative
+ * stops. The router creates a stop-to-stop matrix, so its memory and build time grow quadratically with the number of stops, while stops
+ * at (almost) the same location yield identical matrix entries.
+ * <p>
+ * Stops are processed in file order, a stop within the snap tolerance (in units of the stops' coordinate reference system) of an earlier
+ * representative is merged into it, otherwise it becomes a representative itself. Representatives are looked up via a uniform grid with cells
+ * the size of the tolerance so only the surrounding cells have to be checked. With a tolerance of zero only stops with identical coordinates
+ * are merged.
+ * <p>
+ * The result is persisted as a reduced CSV in the same format (header {@code id,x,y}) together with a mapping CSV of each original stop id to the
+ * id of its representative.
+ *
+ * @author markr
+ *
+ */
+public class PtStopsDeduplicator {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(PtStopsDeduplicator.class.getCanonicalName());
+
+  /** separator used in pt stops CSV files */
+  public static final String CSV_SEPARATOR = ",";
+
+  /** id column of a pt stops CSV file */
+  public static final String ID_COLUMN = "id";
+
+  /** x coordinate column of a pt stops CSV file */
+  public static final String X_COLUMN = "x";
+
+  /** y coordinate column of a pt stops CSV file */
+  public static final String Y_COLUMN = "y";
+
+  /** header of the mapping CSV file */
+  public static final String MAPPING_HEADER = "original_id,representative_id";
+
+  /** postfix added to the file name of the reduced pt stops file */
+  public static final String DEDUPLICATED_POSTFIX = "_dedup";
+
+  /** postfix added to the file name of the reduced pt stops file for the mapping file */
+  public static final String MAPPING_POSTFIX = "_dedup_mapping";
+
+  /** tolerance within which stops are merged */
+  private final double snapTolerance;
+
+  /** ids of the representative stops in order of appearance */
+  private final List<String> representativeIds = new ArrayList<>();
+
+  /** x coordinates of the representative stops */
+  private double[] representativeX = new double[64];
+
+  /** y coordinates of the representative stops */
+  private double[] representativeY = new double[64];
+
+  /** grid cell to indices of the representatives in that cell, only used for positive tolerance */
+  private final Map<Long, List<Integer>> grid = new HashMap<>();
+
+  /** exact coordinates to index of the representative, only used for zero tolerance */
+  private final Map<List<Double>, Integer> exactLocations = new HashMap<>();
+
+  /** original stop id to representative stop id, in order of appearance */
+  private final Map<String, String> mapping = new LinkedHashMap<>();
+
+  /** Grid cell of a coordinate
+   *
+   * @param coordinate to find cell for
+   * @return cell index along the axis
+   */
+  private long cellOf(double coordinate) {
+    return (long) Math.floor(coordinate / snapTolerance);
+  }
+
+  /** Key of a cell in the grid
+   *
+   * @param cellX cell along x axis
+   * @param cellY cell along y axis
+   * @return key
+   */
+  private static long cellKey(long cellX, long cellY) {
+    return (cellX << 32) ^ (cellY & 0xffffffffL);
+  }
+
+  /** Find a representative within tolerance of the given location
+   *
+   * @param x coordinate
+   * @param y coordinate
+   * @return index of representative, -1 if none
+   */
+  private int findRepresentative(double x, double y) {
+    if(snapTolerance <= 0) {
+      return exactLocations.getOrDefault(Arrays.asList(x, y), -1);
+    }
+
+    final double squaredTolerance = snapTolerance * snapTolerance;
+    final long cellX = cellOf(x);
+    final long cellY = cellOf(y);
+    int closest = -1;
+    double closestSquaredDistance = Double.POSITIVE_INFINITY;
+    for(long dx = -1; dx <= 1; ++dx) {
+      for(long dy = -1; dy <= 1; ++dy) {
+        List<Integer> cell = grid.get(cellKey(cellX + dx, cellY + dy));
+        if(cell == null) {
+          continue;
+        }
+        for(int index : cell) {
+          double diffX = representativeX[index] - x;
+          double diffY = representativeY[index] - y;
+          double squaredDistance = diffX * diffX + diffY * diffY;
+          if(squaredDistance <= squaredTolerance && squaredDistance < closestSquaredDistance) {
+            closest = index;
+            closestSquaredDistance = squaredDistance;
+          }
+        }
+      }
+    }
+    return closest;
+  }
+
+  /** Register a new representative
+   *
+   * @param id of stop
+   * @param x coordinate
+   * @param y coordinate
+   */
+  private void addRepresentative(String id, double x, double y) {
+    int index = representativeIds.size();
+    if(index == representativeX.length) {
+      representativeX = Arrays.copyOf(representativeX, index * 2);
+      representativeY = Arrays.copyOf(representativeY, index * 2);
+    }
+    representativeIds.add(id);
+    representativeX[index] = x;
+    representativeY[index] = y;
+
+    if(snapTolerance <= 0) {
+      exactLocations.put(Arrays.asList(x, y), index);
+    }else {
+      grid.computeIfAbsent(cellKey(cellOf(x), cellOf(y)), k -> new ArrayList<>(2)).add(index);
+    }
+  }
+
+  /** Process a single stop
+   *
+   * @param id of stop
+   * @param x coordinate
+   * @param y coordinate
+   */
+  private void addStop(String id, double x, double y) {
+    int representative = findRepresentative(x, y);
+    if(representative < 0) {
+      addRepresentative(id, x, y);
+      mapping.put(id, id);
+    }else {
+      mapping.put(id, representativeIds.get(representative));
+    }
+  }
+
+  /** Index of a column in the header
+   *
+   * @param header columns
+   * @param column to find
+   * @param ptStopsCsv for reporting
+   * @return index
+   * @throws PlanItException thrown if absent
+   */
+  private static int columnIndex(String[] header, String column, Path ptStopsCsv) throws PlanItException {
+    for(int index = 0; index < header.length; ++index) {
+      if(header[index].trim().equalsIgnoreCase(column)) {
+        return index;
+      }
+    }
+    throw new PlanItException("Column %s missing in header of pt stops file %s", column, ptStopsCsv.toString());
+  }
+
+  /** Derive a file name from the original with a postfix before its extension
+   *
+   * @param original file
+   * @param postfix to add
+   * @return new file name
+   */
+  private static String postfixFileName(Path original, String postfix) {
+    String fileName = original.getFileName().toString();
+    int extensionIndex = fileName.lastIndexOf('.');
+    if(extensionIndex < 0) {
+      return fileName + postfix;
+    }
+    return fileName.substring(0, extensionIndex) + postfix + fileName.substring(extensionIndex);
+  }
+
+  /** Constructor
+   *
+   * @param snapTolerance within which stops are merged, in units of the stops' coordinate reference system, zero to only merge identical locations
+   */
+  public PtStopsDeduplicator(double snapTolerance) {
+    this.snapTolerance = Math.max(0, snapTolerance);
+  }
+
+  /** Parse the pt stops and merge them into representatives
+   *
+   * @param ptStopsCsv to parse
+   * @throws PlanItException thrown if error
+   */
+  public void parse(Path ptStopsCsv) throws PlanItException {
+    try(BufferedReader reader = Files.newBufferedReader(ptStopsCsv, StandardCharsets.UTF_8)){
+      String line = reader.readLine();
+      if(line == null) {
+        throw new PlanItException("Pt stops file %s is empty", ptStopsCsv.toString());
+      }
+      String[] header = line.split(CSV_SEPARATOR);
+      int idIndex = columnIndex(header, ID_COLUMN, ptStopsCsv);
+      int xIndex = columnIndex(header, X_COLUMN, ptStopsCsv);
+      int yIndex = columnIndex(header, Y_COLUMN, ptStopsCsv);
+
+      int lineNumber = 1;
+      while((line = reader.readLine()) != null) {
+        ++lineNumber;
+        if(line.isBlank()) {
+          continue;
+        }
+        String[] columns = line.split(CSV_SEPARATOR);
+        if(columns.length <= Math.max(idIndex, Math.max(xIndex, yIndex))) {
+          throw new PlanItException("Line %d of pt stops file %s has %d columns, expected %d", lineNumber, ptStopsCsv.toString(), columns.length, header.length);
+        }
+        addStop(columns[idIndex].trim(), Double.parseDouble(columns[xIndex].trim()), Double.parseDouble(columns[yIndex].trim()));
+      }
+    }catch(IOException | RuntimeException e) {
+      throw new PlanItException("Unable to parse pt stops file %s: %s", ptStopsCsv.toString(), e.getMessage());
+    }
+    LOGGER.info(String.format("[SETTING] pt stops: %d, representative stops: %d (snap tolerance %.2f)", getNumberOfStops(), getNumberOfRepresentatives(), snapTolerance));
+  }
+
+  /** Persist the representative stops and the mapping of the original stops in the output directory, named after the original pt stops file
+   *
+   * @param ptStopsCsv original pt stops file
+   * @param outputDir to persist in
+   * @return location of the reduced pt stops file
+   * @throws PlanItException thrown if error
+   */
+  public Path write(Path ptStopsCsv, Path outputDir) throws PlanItException {
+    Path reducedCsv = outputDir.resolve(postfixFileName(ptStopsCsv, DEDUPLICATED_POSTFIX)).toAbsolutePath();
+    Path mappingCsv = outputDir.resolve(postfixFileName(ptStopsCsv, MAPPING_POSTFIX)).toAbsolutePath();
+    try {
+      Files.createDirectories(outputDir);
+      try(BufferedWriter writer = Files.newBufferedWriter(reducedCsv, StandardCharsets.UTF_8)){
+        writer.write(String.join(CSV_SEPARATOR, ID_COLUMN, X_COLUMN, Y_COLUMN));
+        writer.newLine();
+        for(int index = 0; index < representativeIds.size(); ++index) {
+          writer.write(representativeIds.get(index) + CSV_SEPARATOR + representativeX[index] + CSV_SEPARATOR + representativeY[index]);
+          writer.newLine();
+        }
+      }
+      try(BufferedWriter writer = Files.newBufferedWriter(mappingCsv, StandardCharsets.UTF_8)){
+        writer.write(MAPPING_HEADER);
+        writer.newLine();
+        for(var entry : mapping.entrySet()) {
+          writer.write(entry.getKey() + CSV_SEPARATOR + entry.getValue());
+          writer.newLine();
+        }
+      }
+    }catch(IOException e) {
+      throw new PlanItException("Unable to persist deduplicated pt stops in %s: %s", outputDir.toString(), e.getMessage());
+    }
+    LOGGER.info(String.format("Persisted deduplicated pt stops %s and id mapping %s", reducedCsv.toString(), mappingCsv.toString()));
+    return reducedCsv;
+  }
+
+  /** Number of parsed stops
+   *
+   * @return number of stops
+   */
+  public int getNumberOfStops() {
+    return mapping.size();
+  }
+
+  /** Number of representative stops
+   *
+   * @return number of representatives
+   */
+  public int getNumberOfRepresentatives() {
+    return representativeIds.size();
+  }
+
+  /** Verify if any stops were merged
+   *
+   * @return true when at least two stops were merged, false otherwise
+   */
+  public boolean hasDuplicates() {
+    return getNumberOfRepresentatives() < getNumberOfStops();
+  }
+
+  /** Mapping of each original stop id to the id of its representative (a representative maps to itself)
+   *
+   * @return unmodifiable mapping, in order of appearance
+   */
+  public Map<String, String> getMapping() {
+    return Collections.unmodifiableMap(mapping);
+  }
+}
@@ -0,0 +1,249 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Landmarks and their free-flow travel times to and from all nodes of a {@link RoutingGraph}, used to derive lower bounds on the free-flow travel time
+ * between any two nodes via the triangle inequality (ALT: A*, Landmarks, Triangle inequality).
+ * <p>
+ * Landmarks are selected farthest first: each next landmark is the node that is farthest (in free-flow travel time) from all landmarks selected so far,
+ * which places them at the edges of the network where they yield the tightest bounds. Travel times are stored as floats (node major per landmark) to halve
+ * the memory footprint, the bounds compensate for the loss of precision. They are held in float buffers so that landmarks persisted by {@link AltLandmarksFile}
+ * can be used directly from a memory mapped file.
+ * <p>
+ * Because travel times in MATSim never drop below their free-flow value, the bounds remain valid for any time of day, so a single set of landmarks serves
+ * all time bins and iterations.
+ *
+ * @author markr
+ *
+ */
+public class AltLandmarks {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(AltLandmarks.class.getCanonicalName());
+
+  /** relative slack applied to bounds to compensate for float precision */
+  private static final double FLOAT_SLACK = 1e-6;
+
+  /** graph the landmarks apply to */
+  private final RoutingGraph graph;
+
+  /** node index of each landmark */
+  private final int[] landmarks;
+
+  /** free-flow travel time from each landmark to each node, index: landmark * number of nodes + node */
+  private final FloatBuffer fromLandmark;
+
+  /** free-flow travel time from each node to each landmark, index: landmark * number of nodes + node */
+  private final FloatBuffer toLandmark;
+
+  /** Free-flow travel times from (or to) a source node to (or from) all other nodes
+   *
+   * @param graph to search
+   * @param source node index
+   * @param forward when true travel times from source, otherwise travel times to source
+   * @param heap to use
+   * @return travel times per node, infinite when unreachable
+   */
+  private static double[] freeFlowTravelTimes(final RoutingGraph graph, int source, boolean forward, final NodeHeap heap) {
+    final double[] travelTimes = new double[graph.getNumberOfNodes()];
+    Arrays.fill(travelTimes, Double.POSITIVE_INFINITY);
+    final boolean[] settled = new boolean[graph.getNumberOfNodes()];
+
+    travelTimes[source] = 0;
+    heap.clear();
+    heap.addOrDecrease(source, 0);
+    while(!heap.isEmpty()) {
+      int node = heap.poll();
+      settled[node] = true;
+      int end = forward ? graph.getOutEnd(node) : graph.getInEnd(node);
+      for(int position = forward ? graph.getOutStart(node) : graph.getInStart(node); position < end; ++position) {
+        int link = forward ? graph.getOutLink(position) : graph.getInLink(position);
+        int next = forward ? graph.getToNodeIndex(link) : graph.getFromNodeIndex(link);
+        if(settled[next]) {
+          continue;
+        }
+        double travelTime = travelTimes[node] + graph.getFreeFlowTravelTime(link);
+        if(travelTime < travelTimes[next]) {
+          travelTimes[next] = travelTime;
+          heap.addOrDecrease(next, travelTime);
+        }
+      }
+    }
+    return travelTimes;
+  }
+
+  /** Store travel times of a landmark
+   *
+   * @param target to store in
+   * @param landmark position of landmark
+   * @param travelTimes to store
+   */
+  private static void store(float[] target, int landmark, double[] travelTimes) {
+    int offset = landmark * travelTimes.length;
+    for(int node = 0; node < travelTimes.length; ++node) {
+      target[offset + node] = (float) travelTimes[node];
+    }
+  }
+
+  /** Create landmarks for a graph
+   *
+   * @param graph to create landmarks for
+   * @param numberOfLandmarks to select, capped by the number of nodes
+   * @return created landmarks
+   */
+  public static AltLandmarks create(final RoutingGraph graph, int numberOfLandmarks) {
+    final int numberOfNodes = graph.getNumberOfNodes();
+    numberOfLandmarks = Math.max(0, Math.min(numberOfLandmarks, numberOfNodes));
+
+    final int[] landmarks = new int[numberOfLandmarks];
+    final float[] fromLandmark = new float[numberOfLandmarks * numberOfNodes];
+    final float[] toLandmark = new float[numberOfLandmarks * numberOfNodes];
+    final NodeHeap heap = new NodeHeap(numberOfNodes);
+
+    /* smallest travel time from any selected landmark per node, the next landmark maximises it */
+    final double[] closestLandmark = new double[numberOfNodes];
+    Arrays.fill(closestLandmark, Double.POSITIVE_INFINITY);
+
+    /* the first landmark is the node farthest from an arbitrary (first) node */
+    int next = 0;
+    if(numberOfNodes > 0) {
+      next = farthest(freeFlowTravelTimes(graph, 0, true, heap));
+    }
+    for(int landmark = 0; landmark < numberOfLandmarks; ++landmark) {
+      landmarks[landmark] = next;
+      double[] fromTravelTimes = freeFlowTravelTimes(graph, next, true, heap);
+      store(fromLandmark, landmark, fromTravelTimes);
+      store(toLandmark, landmark, freeFlowTravelTimes(graph, next, false, heap));
+
+      for(int node = 0; node < numberOfNodes; ++node) {
+        closestLandmark[node] = Math.min(closestLandmark[node], fromTravelTimes[node]);
+      }
+      next = farthest(closestLandmark);
+    }
+
+    LOGGER.info(String.format("[SETTING] ALT routing: %d landmarks selected on %d nodes", numberOfLandmarks, numberOfNodes));
+    return new AltLandmarks(graph, landmarks, FloatBuffer.wrap(fromLandmark), FloatBuffer.wrap(toLandmark));
+  }
+
+  /** Node with the largest finite travel time
+   *
+   * @param travelTimes per node
+   * @return node index, 0 if none is reachable
+   */
+  private static int farthest(final double[] travelTimes) {
+    int farthest = 0;
+    double farthestTravelTime = -1;
+    for(int node = 0; node < travelTimes.length; ++node) {
+      if(travelTimes[node] > farthestTravelTime && Double.isFinite(travelTimes[node])) {
+        farthest = node;
+        farthestTravelTime = travelTimes[node];
+      }
+    }
+    return farthest;
+  }
+
+  /** Constructor
+   *
+   * @param graph the landmarks apply to
+   * @param landmarks node index of each landmark
+   * @param fromLandmark free-flow travel time from each landmark to each node, index: landmark * number of nodes + node
+   * @param toLandmark free-flow travel time from each node to each landmark, index: landmark * number of nodes + node
+   */
+  public AltLandmarks(final RoutingGraph graph, final int[] landmarks, final FloatBuffer fromLandmark, final FloatBuffer toLandmark) {
+    this.graph = graph;
+    this.landmarks = landmarks;
+    this.fromLandmark = fromLandmark;
+    this.toLandmark = toLandmark;
+  }
+
+  /** Lower bound on the free-flow travel time from node to target based on a single landmark
+   *
+   * @param landmark position of the landmark
+   * @param node index
+   * @param target index
+   * @return lower bound (s), 0 when no bound is available
+   */
+  public double lowerBound(int landmark, int node, int target) {
+    final int offset = landmark * graph.getNumberOfNodes();
+    double bound = 0;
+
+    /* landmark -> node -> target */
+    double fromNode = fromLandmark.get(offset + node);
+    double fromTarget = fromLandmark.get(offset + target);
+    if(fromNode != Float.POSITIVE_INFINITY && fromTarget != Float.POSITIVE_INFINITY) {
+      bound = fromTarget - fromNode - FLOAT_SLACK * (fromTarget + fromNode);
+    }
+
+    /* node -> target -> landmark */
+    double toNode = toLandmark.get(offset + node);
+    double toTarget = toLandmark.get(offset + target);
+    if(toNode != Float.POSITIVE_INFINITY && toTarget != Float.POSITIVE_INFINITY) {
+      bound = Math.max(bound, toNode - toTarget - FLOAT_SLACK * (toNode + toTarget));
+    }
+    return bound;
+  }
+
+  /** Graph the landmarks apply to
+   *
+   * @return graph
+   */
+  public RoutingGraph getGraph() {
+    return graph;
+  }
+
+  /** Number of landmarks
+   *
+   * @return number of landmarks
+   */
+  public int getNumberOfLandmarks() {
+    return landmarks.length;
+  }
+
+  /** Node index of a landmark
+   *
+   * @param landmark position of landmark
+   * @return node index
+   */
+  public int getLandmarkNode(int landmark) {
+    return landmarks[landmark];
+  }
+
+  /** Free-flow travel time from a landmark to a node
+   *
+   * @param landmark position of landmark
+   * @param node index
+   * @return travel time (s), infinite if unreachable
+   */
+  public float getFromLandmark(int landmark, int node) {
+    return fromLandmark.get(landmark * graph.getNumberOfNodes() + node);
+  }
+
+  /** Free-flow travel time from a node to a landmark
+   *
+   * @param landmark position of landmark
+   * @param node index
+   * @return travel time (s), infinite if unreachable
+   */
+  public float getToLandmark(int landmark, int node) {
+    return toLandmark.get(landmark * graph.getNumberOfNodes() + node);
+  }
+
+  /** Free-flow travel times from the landmarks to all nodes, index: landmark * number of nodes + node
+   *
+   * @return read only view
+   */
+  public FloatBuffer getFromLandmarks() {
+    return fromLandmark.asReadOnlyBuffer();
+  }
+
+  /** Free-flow travel times from all nodes to the landmarks, index: landmark * number of nodes + node
+   *
+   * @return read only view
+   */
+  public FloatBuffer getToLandmarks() {
+    return toLandmark.asReadOnlyBuffer();
+  }
+}
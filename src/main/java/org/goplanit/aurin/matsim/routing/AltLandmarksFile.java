@@ -0,0 +1,184 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Persistence of {@link AltLandmarks} in a compact binary file that is memory mapped when read, so a run reusing the landmarks of an earlier run does not
+ * have to parse or copy them. Landmarks only depend on the topology and free-flow travel times of the network, so files are keyed by the
+ * {@link RoutingGraph#getFingerprint()} of the graph they were created for, which is part of the file name and verified upon reading.
+ * <p>
+ * Layout (little endian): a header of magic number, version, fingerprint, number of nodes, number of links and number of landmarks, followed by the landmark
+ * node indices, the travel times from the landmarks and the travel times to the landmarks.
+ * <p>
+ * Files are written to a temporary file first and then moved in place, so concurrent runs on the same network never observe a partially written file.
+ *
+ * @author markr
+ *
+ */
+public class AltLandmarksFile {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(AltLandmarksFile.class.getCanonicalName());
+
+  /** extension of landmark files */
+  public static final String EXTENSION = ".alt";
+
+  /** identifies a landmark file */
+  private static final int MAGIC = 0x504c414c;
+
+  /** version of the layout */
+  private static final int VERSION = 1;
+
+  /** size of the header in bytes */
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+
+  /** byte order of the file */
+  private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  /** number of floats written per chunk */
+  private static final int CHUNK_FLOATS = 1 << 18;
+
+  /** Location of the landmark file for a graph
+   *
+   * @param networkFile the graph was created from, the landmarks are persisted next to it
+   * @param graph of the landmarks
+   * @return location
+   */
+  public static Path getLocation(final Path networkFile, final RoutingGraph graph) {
+    return networkFile.resolveSibling(networkFile.getFileName().toString() + "." + Long.toHexString(graph.getFingerprint()) + EXTENSION);
+  }
+
+  /** Read landmarks via a memory mapping of the file
+   *
+   * @param file to read
+   * @param graph the landmarks should apply to
+   * @param numberOfLandmarks expected
+   * @return landmarks, empty when the file is absent or does not match the graph or number of landmarks
+   */
+  public static Optional<AltLandmarks> read(final Path file, final RoutingGraph graph, int numberOfLandmarks) {
+    if(!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+      while(header.hasRemaining() && channel.read(header) >= 0) {
+        /* until header is complete or end of file */
+      }
+      header.flip();
+      if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+        LOGGER.warning(String.format("Ignoring ALT landmarks file %s, unknown format", file.toString()));
+        return Optional.empty();
+      }
+      long fingerprint = header.getLong();
+      int numberOfNodes = header.getInt();
+      int numberOfLinks = header.getInt();
+      int fileLandmarks = header.getInt();
+      if(fingerprint != graph.getFingerprint() || numberOfNodes != graph.getNumberOfNodes() || numberOfLinks != graph.getNumberOfLinks()) {
+        LOGGER.warning(String.format("Ignoring ALT landmarks file %s, it was created for a different network", file.toString()));
+        return Optional.empty();
+      }
+      if(fileLandmarks != numberOfLandmarks) {
+        LOGGER.info(String.format("ALT landmarks file %s holds %d instead of %d landmarks, recreating", file.toString(), fileLandmarks, numberOfLandmarks));
+        return Optional.empty();
+      }
+
+      long landmarksBytes = 4L * fileLandmarks;
+      long travelTimesBytes = 4L * fileLandmarks * numberOfNodes;
+      if(channel.size() != HEADER_BYTES + landmarksBytes + 2 * travelTimesBytes) {
+        LOGGER.warning(String.format("Ignoring ALT landmarks file %s, unexpected size", file.toString()));
+        return Optional.empty();
+      }
+
+      int[] landmarks = new int[fileLandmarks];
+      channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, landmarksBytes).order(BYTE_ORDER).asIntBuffer().get(landmarks);
+      /* a mapping remains valid after its channel is closed */
+      FloatBuffer fromLandmark = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + landmarksBytes, travelTimesBytes).order(BYTE_ORDER).asFloatBuffer();
+      FloatBuffer toLandmark = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + landmarksBytes + travelTimesBytes, travelTimesBytes).order(BYTE_ORDER).asFloatBuffer();
+      return Optional.of(new AltLandmarks(graph, landmarks, fromLandmark, toLandmark));
+    }catch(IOException | IllegalArgumentException e) {
+      LOGGER.warning(String.format("Unable to read ALT landmarks file %s: %s", file.toString(), e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  /** Write travel times to a channel in chunks
+   *
+   * @param channel to write to
+   * @param travelTimes to write
+   * @throws IOException thrown if error
+   */
+  private static void writeTravelTimes(final FileChannel channel, final FloatBuffer travelTimes) throws IOException {
+    ByteBuffer chunk = ByteBuffer.allocateDirect(4 * CHUNK_FLOATS).order(BYTE_ORDER);
+    travelTimes.rewind();
+    while(travelTimes.hasRemaining()) {
+      chunk.clear();
+      FloatBuffer chunkFloats = chunk.asFloatBuffer();
+      int floats = Math.min(CHUNK_FLOATS, travelTimes.remaining());
+      FloatBuffer slice = travelTimes.slice();
+      slice.limit(floats);
+      chunkFloats.put(slice);
+      travelTimes.position(travelTimes.position() + floats);
+      chunk.limit(4 * floats);
+      while(chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+    }
+  }
+
+  /** Write landmarks, failure to do so is logged but otherwise ignored since the landmarks can always be recreated
+   *
+   * @param file to write to
+   * @param landmarks to write
+   * @return true when written, false otherwise
+   */
+  public static boolean write(final Path file, final AltLandmarks landmarks) {
+    final RoutingGraph graph = landmarks.getGraph();
+    Path temporaryFile = null;
+    try {
+      temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+      try(FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4 * landmarks.getNumberOfLandmarks()).order(BYTE_ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(graph.getFingerprint());
+        header.putInt(graph.getNumberOfNodes()).putInt(graph.getNumberOfLinks()).putInt(landmarks.getNumberOfLandmarks());
+        for(int landmark = 0; landmark < landmarks.getNumberOfLandmarks(); ++landmark) {
+          header.putInt(landmarks.getLandmarkNode(landmark));
+        }
+        header.flip();
+        while(header.hasRemaining()) {
+          channel.write(header);
+        }
+        writeTravelTimes(channel, landmarks.getFromLandmarks());
+        writeTravelTimes(channel, landmarks.getToLandmarks());
+      }
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }catch(AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      LOGGER.info(String.format("Persisted ALT landmarks in %s", file.toString()));
+      return true;
+    }catch(IOException | UnsupportedOperationException e) {
+      LOGGER.warning(String.format("Unable to persist ALT landmarks in %s, they will be recreated in the next run: %s", file.toString(), e.getMessage()));
+      if(temporaryFile != null) {
+        try {
+          Files.deleteIfExists(temporaryFile);
+        }catch(IOException ignored) {
+          /* best effort only */
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Time dependent A* least cost path calculator guided by {@link AltLandmarks}. The landmarks provide lower bounds on the free-flow travel time to the
+ * destination, which are converted to lower bounds on the remaining travel disutility by multiplying them with the smallest disutility per second of
+ * free-flow travel time of any link, based on {@link TravelDisutility#getLinkMinimumTravelDisutility(Link)}. The costs themselves are evaluated exactly
+ * as MATSim's Dijkstra does, i.e., for the time the link is entered, so the resulting paths are least cost paths for the current travel times.
+ * <p>
+ * Per query only the landmarks yielding the best bound at the origin are used. Search state is kept between queries and reset lazily, so an instance is
+ * cheap to query repeatedly but, like MATSim's own calculators, must not be shared between threads.
+ *
+ * @author markr
+ *
+ */
+public class AltLeastCostPathCalculator implements LeastCostPathCalculator {
+
+  /** number of landmarks used per query */
+  public static final int ACTIVE_LANDMARKS = 4;
+
+  /** the landmarks */
+  private final AltLandmarks landmarks;
+
+  /** the graph of the landmarks */
+  private final RoutingGraph graph;
+
+  /** disutility of links */
+  private final TravelDisutility travelDisutility;
+
+  /** travel time of links */
+  private final TravelTime travelTime;
+
+  /** smallest disutility per second of free-flow travel time of any link, scales the free-flow bounds */
+  private final double heuristicFactor;
+
+  /** cost to reach each node in current query */
+  private final double[] costs;
+
+  /** time each node is reached in current query */
+  private final double[] times;
+
+  /** heuristic of each node in current query */
+  private final double[] heuristics;
+
+  /** link by which each node is reached in current query, -1 for the origin */
+  private final int[] parentLinks;
+
+  /** query in which each node was last reached */
+  private final int[] reachedStamps;
+
+  /** query in which each node was last settled */
+  private final int[] settledStamps;
+
+  /** heap of the search */
+  private final NodeHeap heap;
+
+  /** bound of each landmark between origin and destination of current query */
+  private final double[] landmarkBounds;
+
+  /** landmarks used in current query */
+  private final int[] activeLandmarks;
+
+  /** number of landmarks used in current query */
+  private int numberOfActiveLandmarks = 0;
+
+  /** current query */
+  private int stamp = 0;
+
+  /** Derive the factor converting free-flow travel time bounds to disutility bounds
+   *
+   * @param graph to use
+   * @param travelDisutility to use
+   * @return factor, 0 if no bound can be derived
+   */
+  private static double computeHeuristicFactor(final RoutingGraph graph, final TravelDisutility travelDisutility) {
+    double factor = Double.POSITIVE_INFINITY;
+    for(int linkIndex = 0; linkIndex < graph.getNumberOfLinks(); ++linkIndex) {
+      double freeFlowTravelTime = graph.getFreeFlowTravelTime(linkIndex);
+      if(freeFlowTravelTime > 0) {
+        factor = Math.min(factor, travelDisutility.getLinkMinimumTravelDisutility(graph.getLink(linkIndex)) / freeFlowTravelTime);
+      }
+    }
+    return (Double.isFinite(factor) && factor > 0) ? factor : 0;
+  }
+
+  /** Start a new query
+   */
+  private void nextStamp() {
+    if(++stamp == Integer.MAX_VALUE) {
+      Arrays.fill(reachedStamps, 0);
+      Arrays.fill(settledStamps, 0);
+      stamp = 1;
+    }
+    heap.clear();
+  }
+
+  /** Choose the landmarks with the best bound between origin and destination
+   *
+   * @param origin node index
+   * @param destination node index
+   */
+  private void chooseActiveLandmarks(int origin, int destination) {
+    final int numberOfLandmarks = landmarks.getNumberOfLandmarks();
+    final double[] bounds = landmarkBounds;
+    numberOfActiveLandmarks = 0;
+    for(int landmark = 0; landmark < numberOfLandmarks; ++landmark) {
+      bounds[landmark] = landmarks.lowerBound(landmark, origin, destination);
+      /* insertion into the sorted active landmarks, best bound first, replacing the worst when full */
+      int position;
+      if(numberOfActiveLandmarks < activeLandmarks.length) {
+        position = numberOfActiveLandmarks++;
+      }else if(numberOfActiveLandmarks > 0 && bounds[activeLandmarks[numberOfActiveLandmarks - 1]] < bounds[landmark]) {
+        position = numberOfActiveLandmarks - 1;
+      }else {
+        continue;
+      }
+      while(position > 0 && bounds[activeLandmarks[position - 1]] < bounds[landmark]) {
+        activeLandmarks[position] = activeLandmarks[position - 1];
+        --position;
+      }
+      activeLandmarks[position] = landmark;
+    }
+  }
+
+  /** Lower bound on the remaining cost from a node to the destination
+   *
+   * @param node index
+   * @param destination node index
+   * @return lower bound
+   */
+  private double heuristic(int node, int destination) {
+    if(heuristicFactor <= 0) {
+      return 0;
+    }
+    double bound = 0;
+    for(int active = 0; active < numberOfActiveLandmarks; ++active) {
+      bound = Math.max(bound, landmarks.lowerBound(activeLandmarks[active], node, destination));
+    }
+    return heuristicFactor * bound;
+  }
+
+  /** Construct the path found by the last query
+   *
+   * @param origin node index
+   * @param destination node index
+   * @param startTime of the query
+   * @return path
+   */
+  private Path createPath(int origin, int destination, double startTime) {
+    List<Link> links = new ArrayList<>();
+    for(int node = destination; node != origin; node = graph.getFromNodeIndex(parentLinks[node])) {
+      links.add(graph.getLink(parentLinks[node]));
+    }
+    Collections.reverse(links);
+
+    List<Node> nodes = new ArrayList<>(links.size() + 1);
+    nodes.add(graph.getNode(origin));
+    for(Link link : links) {
+      nodes.add(link.getToNode());
+    }
+    return new Path(nodes, links, times[destination] - startTime, costs[destination]);
+  }
+
+  /** Constructor
+   *
+   * @param landmarks to guide the search with
+   * @param travelDisutility of links
+   * @param travelTime of links
+   */
+  public AltLeastCostPathCalculator(final AltLandmarks landmarks, final TravelDisutility travelDisutility, final TravelTime travelTime) {
+    this.landmarks = landmarks;
+    this.graph = landmarks.getGraph();
+    this.travelDisutility = travelDisutility;
+    this.travelTime = travelTime;
+    this.heuristicFactor = computeHeuristicFactor(graph, travelDisutility);
+
+    final int numberOfNodes = graph.getNumberOfNodes();
+    this.costs = new double[numberOfNodes];
+    this.times = new double[numberOfNodes];
+    this.heuristics = new double[numberOfNodes];
+    this.parentLinks = new int[numberOfNodes];
+    this.reachedStamps = new int[numberOfNodes];
+    this.settledStamps = new int[numberOfNodes];
+    this.heap = new NodeHeap(numberOfNodes);
+    this.landmarkBounds = new double[landmarks.getNumberOfLandmarks()];
+    this.activeLandmarks = new int[Math.min(ACTIVE_LANDMARKS, landmarks.getNumberOfLandmarks())];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Path calcLeastCostPath(Node fromNode, Node toNode, double startTime, Person person, Vehicle vehicle) {
+    final int origin = graph.getNodeIndex(fromNode);
+    final int destination = graph.getNodeIndex(toNode);
+    if(origin < 0 || destination < 0) {
+      return null;
+    }
+
+    nextStamp();
+    chooseActiveLandmarks(origin, destination);
+
+    costs[origin] = 0;
+    times[origin] = startTime;
+    parentLinks[origin] = -1;
+    reachedStamps[origin] = stamp;
+    heuristics[origin] = heuristic(origin, destination);
+    heap.addOrDecrease(origin, heuristics[origin]);
+
+    while(!heap.isEmpty()) {
+      final int node = heap.poll();
+      if(node == destination) {
+        return createPath(origin, destination, startTime);
+      }
+      settledStamps[node] = stamp;
+
+      final double nodeTime = times[node];
+      final double nodeCost = costs[node];
+      final int end = graph.getOutEnd(node);
+      for(int position = graph.getOutStart(node); position < end; ++position) {
+        final int linkIndex = graph.getOutLink(position);
+        final int next = graph.getToNodeIndex(linkIndex);
+        if(settledStamps[next] == stamp) {
+          continue;
+        }
+
+        final Link link = graph.getLink(linkIndex);
+        final double cost = nodeCost + travelDisutility.getLinkTravelDisutility(link, nodeTime, person, vehicle);
+        if(reachedStamps[next] != stamp) {
+          reachedStamps[next] = stamp;
+          heuristics[next] = heuristic(next, destination);
+        }else if(cost >= costs[next]) {
+          continue;
+        }
+        costs[next] = cost;
+        times[next] = nodeTime + travelTime.getLinkTravelTime(link, nodeTime, person, vehicle);
+        parentLinks[next] = linkIndex;
+        heap.addOrDecrease(next, cost + heuristics[next]);
+      }
+    }
+
+    /* destination not reachable */
+    return null;
+  }
+}
@@ -0,0 +1,116 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import org.goplanit.aurin.matsim.profiling.RoutingIndexBuildEvent;
+
+/**
+ * Factory for {@link AltLeastCostPathCalculator}s. The landmarks only depend on the network's topology and free-flow travel times, so they are created once
+ * per network and shared by all calculators (and threads) routing on that network, regardless of the time of day or iteration. MATSim routes each mode on its
+ * own (filtered) copy of the network, hence the landmarks are kept per network instance.
+ * <p>
+ * When the location of the network file is known, landmarks are persisted next to it via {@link AltLandmarksFile} and reused by later runs on the same
+ * network (with the same number of landmarks) instead of being recreated.
+ *
+ * @author markr
+ *
+ */
+public class AltLeastCostPathCalculatorFactory implements LeastCostPathCalculatorFactory {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(AltLeastCostPathCalculatorFactory.class.getCanonicalName());
+
+  /** number of landmarks to create per network */
+  private final int numberOfLandmarks;
+
+  /** network file next to which landmarks are persisted, null if they are not persisted */
+  private final Path networkFile;
+
+  /** landmarks per network, networks do not override equals so they are identified by instance */
+  private final Map<Network, AltLandmarks> landmarksByNetwork = new WeakHashMap<>();
+
+  /** Create the landmarks for a network, or load them when persisted by an earlier run
+   *
+   * @param network to create landmarks for
+   * @return created landmarks
+   */
+  protected AltLandmarks createLandmarks(final Network network) {
+    var routingIndexBuildEvent = new RoutingIndexBuildEvent();
+    routingIndexBuildEvent.begin();
+    long startTime = System.currentTimeMillis();
+
+    var graph = new RoutingGraph(network);
+    Path landmarksFile = networkFile != null ? AltLandmarksFile.getLocation(networkFile, graph) : null;
+    AltLandmarks landmarks = null;
+    if(landmarksFile != null) {
+      landmarks = AltLandmarksFile.read(landmarksFile, graph, numberOfLandmarks).orElse(null);
+    }
+    routingIndexBuildEvent.loaded = landmarks != null;
+    if(landmarks == null) {
+      landmarks = AltLandmarks.create(graph, numberOfLandmarks);
+      if(landmarksFile != null) {
+        AltLandmarksFile.write(landmarksFile, landmarks);
+      }
+    }
+
+    routingIndexBuildEvent.nodes = graph.getNumberOfNodes();
+    routingIndexBuildEvent.links = graph.getNumberOfLinks();
+    routingIndexBuildEvent.landmarks = landmarks.getNumberOfLandmarks();
+    routingIndexBuildEvent.commit();
+    LOGGER.info(String.format("ALT routing index %s for %d links in %d ms", 
+        routingIndexBuildEvent.loaded ? "loaded from " + landmarksFile.toString() : "created", graph.getNumberOfLinks(), System.currentTimeMillis() - startTime));
+    return landmarks;
+  }
+
+  /** Constructor, landmarks are not persisted
+   *
+   * @param numberOfLandmarks to create per network
+   */
+  public AltLeastCostPathCalculatorFactory(int numberOfLandmarks) {
+    this(numberOfLandmarks, null);
+  }
+
+  /** Constructor
+   *
+   * @param numberOfLandmarks to create per network
+   * @param networkFile next to which landmarks are persisted and from which they are reused, null to not persist them
+   */
+  public AltLeastCostPathCalculatorFactory(int numberOfLandmarks, final Path networkFile) {
+    this.numberOfLandmarks = numberOfLandmarks;
+    this.networkFile = networkFile;
+  }
+
+  /** Collect the landmarks of a network, creating them on first use
+   *
+   * @param network to collect landmarks for
+   * @return landmarks
+   */
+  public synchronized AltLandmarks getLandmarks(final Network network) {
+    return landmarksByNetwork.computeIfAbsent(network, this::createLandmarks);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
+    return new AltLeastCostPathCalculator(getLandmarks(network), travelCosts, travelTimes);
+  }
+
+  /** Number of landmarks created per network
+   *
+   * @return number of landmarks
+   */
+  public int getNumberOfLandmarks() {
+    return numberOfLandmarks;
+  }
+}
@@ -0,0 +1,33 @@
+package org.goplanit.aurin.matsim.routing;
+
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+
+/**
+ * Overriding module replacing MATSim's least cost path calculator for network routing (used by ReRoute and the initial routing of plans) with the
+ * wrapper's landmark based {@link AltLeastCostPathCalculator}.
+ *
+ * @author markr
+ *
+ */
+public class AltRoutingModule extends AbstractModule {
+
+  /** factory to bind */
+  private final AltLeastCostPathCalculatorFactory factory;
+
+  /** Constructor
+   *
+   * @param factory to bind
+   */
+  public AltRoutingModule(final AltLeastCostPathCalculatorFactory factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void install() {
+    bind(LeastCostPathCalculatorFactory.class).toInstance(factory);
+  }
+}
@@ -0,0 +1,150 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices keyed by a double, supporting decrease-key. Intended to be reused for many shortest path searches
+ * on the same {@link RoutingGraph}, clearing only touches the nodes still on the heap. Not thread safe.
+ *
+ * @author markr
+ *
+ */
+public class NodeHeap {
+
+  /** node indices in heap order */
+  private final int[] heap;
+
+  /** key per heap position */
+  private final double[] keys;
+
+  /** heap position per node index, -1 when not on the heap */
+  private final int[] positions;
+
+  /** number of nodes on the heap */
+  private int size = 0;
+
+  /** Swap two heap positions
+   *
+   * @param first position
+   * @param second position
+   */
+  private void swap(int first, int second) {
+    int firstNode = heap[first];
+    double firstKey = keys[first];
+    heap[first] = heap[second];
+    keys[first] = keys[second];
+    heap[second] = firstNode;
+    keys[second] = firstKey;
+    positions[heap[first]] = first;
+    positions[heap[second]] = second;
+  }
+
+  /** Move entry up until heap property holds
+   *
+   * @param position to start from
+   */
+  private void siftUp(int position) {
+    while(position > 0) {
+      int parent = (position - 1) >>> 1;
+      if(keys[parent] <= keys[position]) {
+        return;
+      }
+      swap(parent, position);
+      position = parent;
+    }
+  }
+
+  /** Move entry down until heap property holds
+   *
+   * @param position to start from
+   */
+  private void siftDown(int position) {
+    while(true) {
+      int smallest = position;
+      int left = 2 * position + 1;
+      int right = left + 1;
+      if(left < size && keys[left] < keys[smallest]) {
+        smallest = left;
+      }
+      if(right < size && keys[right] < keys[smallest]) {
+        smallest = right;
+      }
+      if(smallest == position) {
+        return;
+      }
+      swap(position, smallest);
+      position = smallest;
+    }
+  }
+
+  /** Constructor
+   *
+   * @param numberOfNodes maximum node index + 1
+   */
+  public NodeHeap(int numberOfNodes) {
+    this.heap = new int[numberOfNodes];
+    this.keys = new double[numberOfNodes];
+    this.positions = new int[numberOfNodes];
+    Arrays.fill(positions, -1);
+  }
+
+  /** Add a node, or decrease its key when it is already on the heap with a larger key
+   *
+   * @param nodeIndex to add
+   * @param key of node
+   */
+  public void addOrDecrease(int nodeIndex, double key) {
+    int position = positions[nodeIndex];
+    if(position < 0) {
+      position = size++;
+      heap[position] = nodeIndex;
+      positions[nodeIndex] = position;
+    }else if(keys[position] <= key) {
+      return;
+    }
+    keys[position] = key;
+    siftUp(position);
+  }
+
+  /** Remove the node with the smallest key
+   *
+   * @return node index
+   */
+  public int poll() {
+    int nodeIndex = heap[0];
+    positions[nodeIndex] = -1;
+    --size;
+    if(size > 0) {
+      heap[0] = heap[size];
+      keys[0] = keys[size];
+      positions[heap[0]] = 0;
+      siftDown(0);
+    }
+    return nodeIndex;
+  }
+
+  /** Smallest key on the heap
+   *
+   * @return key, only valid when not empty
+   */
+  public double peekKey() {
+    return keys[0];
+  }
+
+  /** Verify if heap is empty
+   *
+   * @return true when empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Remove all nodes
+   */
+  public void clear() {
+    for(int position = 0; position < size; ++position) {
+      positions[heap[position]] = -1;
+    }
+    size = 0;
+  }
+}
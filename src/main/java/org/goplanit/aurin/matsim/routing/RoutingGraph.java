@@ -0,0 +1,264 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Compact, array based (compressed sparse row) representation of a MATSim network used by the wrapper's routing algorithms. Nodes and links are
+ * indexed in the order of their ids, so the same network always yields the same indices regardless of the order in which it was read or filtered, which
+ * allows index based preprocessing to be reused across runs (see {@link #getFingerprint()}).
+ * <p>
+ * Besides the topology it holds the free-flow travel time of each link, i.e., length over free speed, being the lowest travel time a link can have.
+ *
+ * @author markr
+ *
+ */
+public class RoutingGraph {
+
+  /** nodes by index */
+  private final Node[] nodes;
+
+  /** links by index */
+  private final Link[] links;
+
+  /** node index by id */
+  private final Map<Id<Node>, Integer> nodeIndices;
+
+  /** upstream node index per link */
+  private final int[] linkFromNode;
+
+  /** downstream node index per link */
+  private final int[] linkToNode;
+
+  /** free-flow travel time per link (s) */
+  private final double[] freeFlowTravelTimes;
+
+  /** offset of the outgoing links of each node in {@link #outLinks}, size number of nodes + 1 */
+  private final int[] outOffsets;
+
+  /** outgoing link indices, grouped by upstream node */
+  private final int[] outLinks;
+
+  /** offset of the incoming links of each node in {@link #inLinks}, size number of nodes + 1 */
+  private final int[] inOffsets;
+
+  /** incoming link indices, grouped by downstream node */
+  private final int[] inLinks;
+
+  /** fingerprint of topology and free-flow travel times */
+  private final long fingerprint;
+
+  /** Create the offsets and grouped link indices of an adjacency (CSR) structure
+   *
+   * @param groupNodes node index by which each link is grouped
+   * @param numberOfNodes total number of nodes
+   * @param offsets to populate, size number of nodes + 1
+   * @return grouped link indices
+   */
+  private static int[] createAdjacency(int[] groupNodes, int numberOfNodes, int[] offsets) {
+    for(int linkIndex = 0; linkIndex < groupNodes.length; ++linkIndex) {
+      ++offsets[groupNodes[linkIndex] + 1];
+    }
+    for(int nodeIndex = 0; nodeIndex < numberOfNodes; ++nodeIndex) {
+      offsets[nodeIndex + 1] += offsets[nodeIndex];
+    }
+    int[] position = Arrays.copyOf(offsets, numberOfNodes);
+    int[] grouped = new int[groupNodes.length];
+    for(int linkIndex = 0; linkIndex < groupNodes.length; ++linkIndex) {
+      grouped[position[groupNodes[linkIndex]]++] = linkIndex;
+    }
+    return grouped;
+  }
+
+  /** Mix a value into a running 64 bit hash
+   *
+   * @param hash so far
+   * @param value to mix in
+   * @return updated hash
+   */
+  private static long mix(long hash, long value) {
+    hash ^= value;
+    hash *= 0x100000001b3L;
+    return hash ^ (hash >>> 29);
+  }
+
+  /** Constructor
+   *
+   * @param network to create routing graph for
+   */
+  public RoutingGraph(final Network network) {
+    this.nodes = network.getNodes().values().toArray(new Node[0]);
+    Arrays.sort(nodes, Comparator.comparing(node -> node.getId().toString()));
+    this.links = network.getLinks().values().toArray(new Link[0]);
+    Arrays.sort(links, Comparator.comparing(link -> link.getId().toString()));
+
+    this.nodeIndices = new HashMap<>((int) (nodes.length / 0.75) + 1);
+    long hash = 0xcbf29ce484222325L;
+    for(int nodeIndex = 0; nodeIndex < nodes.length; ++nodeIndex) {
+      nodeIndices.put(nodes[nodeIndex].getId(), nodeIndex);
+      hash = mix(hash, nodes[nodeIndex].getId().toString().hashCode());
+    }
+
+    this.linkFromNode = new int[links.length];
+    this.linkToNode = new int[links.length];
+    this.freeFlowTravelTimes = new double[links.length];
+    for(int linkIndex = 0; linkIndex < links.length; ++linkIndex) {
+      Link link = links[linkIndex];
+      linkFromNode[linkIndex] = nodeIndices.get(link.getFromNode().getId());
+      linkToNode[linkIndex] = nodeIndices.get(link.getToNode().getId());
+      freeFlowTravelTimes[linkIndex] = link.getLength() / link.getFreespeed();
+
+      hash = mix(hash, link.getId().toString().hashCode());
+      hash = mix(hash, linkFromNode[linkIndex]);
+      hash = mix(hash, linkToNode[linkIndex]);
+      hash = mix(hash, Double.doubleToLongBits(freeFlowTravelTimes[linkIndex]));
+    }
+    this.fingerprint = hash;
+
+    this.outOffsets = new int[nodes.length + 1];
+    this.outLinks = createAdjacency(linkFromNode, nodes.length, outOffsets);
+    this.inOffsets = new int[nodes.length + 1];
+    this.inLinks = createAdjacency(linkToNode, nodes.length, inOffsets);
+  }
+
+  /** Number of nodes
+   *
+   * @return number of nodes
+   */
+  public int getNumberOfNodes() {
+    return nodes.length;
+  }
+
+  /** Number of links
+   *
+   * @return number of links
+   */
+  public int getNumberOfLinks() {
+    return links.length;
+  }
+
+  /** Index of a node
+   *
+   * @param node to get index for
+   * @return index, -1 if node is not part of this graph
+   */
+  public int getNodeIndex(final Node node) {
+    Integer index = nodeIndices.get(node.getId());
+    return index == null ? -1 : index;
+  }
+
+  /** Node by index
+   *
+   * @param nodeIndex of node
+   * @return node
+   */
+  public Node getNode(int nodeIndex) {
+    return nodes[nodeIndex];
+  }
+
+  /** Link by index
+   *
+   * @param linkIndex of link
+   * @return link
+   */
+  public Link getLink(int linkIndex) {
+    return links[linkIndex];
+  }
+
+  /** Upstream node of a link
+   *
+   * @param linkIndex of link
+   * @return node index
+   */
+  public int getFromNodeIndex(int linkIndex) {
+    return linkFromNode[linkIndex];
+  }
+
+  /** Downstream node of a link
+   *
+   * @param linkIndex of link
+   * @return node index
+   */
+  public int getToNodeIndex(int linkIndex) {
+    return linkToNode[linkIndex];
+  }
+
+  /** Free-flow travel time of a link
+   *
+   * @param linkIndex of link
+   * @return free-flow travel time (s)
+   */
+  public double getFreeFlowTravelTime(int linkIndex) {
+    return freeFlowTravelTimes[linkIndex];
+  }
+
+  /** Start (inclusive) of the outgoing links of a node in {@link #getOutLink(int)}
+   *
+   * @param nodeIndex of node
+   * @return start position
+   */
+  public int getOutStart(int nodeIndex) {
+    return outOffsets[nodeIndex];
+  }
+
+  /** End (exclusive) of the outgoing links of a node in {@link #getOutLink(int)}
+   *
+   * @param nodeIndex of node
+   * @return end position
+   */
+  public int getOutEnd(int nodeIndex) {
+    return outOffsets[nodeIndex + 1];
+  }
+
+  /** Outgoing link at a position
+   *
+   * @param position of link
+   * @return link index
+   */
+  public int getOutLink(int position) {
+    return outLinks[position];
+  }
+
+  /** Start (inclusive) of the incoming links of a node in {@link #getInLink(int)}
+   *
+   * @param nodeIndex of node
+   * @return start position
+   */
+  public int getInStart(int nodeIndex) {
+    return inOffsets[nodeIndex];
+  }
+
+  /** End (exclusive) of the incoming links of a node in {@link #getInLink(int)}
+   *
+   * @param nodeIndex of node
+   * @return end position
+   */
+  public int getInEnd(int nodeIndex) {
+    return inOffsets[nodeIndex + 1];
+  }
+
+  /** Incoming link at a position
+   *
+   * @param position of link
+   * @return link index
+   */
+  public int getInLink(int position) {
+    return inLinks[position];
+  }
+
+  /** Fingerprint of the topology, ids and free-flow travel times of this graph. Preprocessing based on the free-flow travel times of a graph with
+   * the same fingerprint can be reused
+   *
+   * @return fingerprint
+   */
+  public long getFingerprint() {
+    return fingerprint;
+  }
+}
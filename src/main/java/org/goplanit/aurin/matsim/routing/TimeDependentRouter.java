@@ -0,0 +1,205 @@
+package org.goplanit.aurin.matsim.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Reroutes car legs of plans outside of MATSim's replanning, e.g., while preparing or adjusting the population, by a time dependent fastest path
+ * search on the car network for given link travel times, departing at the planned departure time of each leg. Car legs whose route cannot be found
+ * lose their route so MATSim routes them.
+ * <p>
+ * Holds the state of a single search, so not thread safe.
+ *
+ * @author markr
+ *
+ */
+public class TimeDependentRouter {
+
+  /** car network the graph is based on */
+  private final Network carNetwork;
+
+  /** routing graph of the car network */
+  private final RoutingGraph graph;
+
+  /** link travel times to route on */
+  private final TravelTime travelTime;
+
+  /** heap of the search */
+  private final NodeHeap heap;
+
+  /** travel time since departure per node */
+  private final double[] times;
+
+  /** link index by which each node was reached */
+  private final int[] predecessorLinks;
+
+  /** number of rerouted car legs */
+  private long legsRerouted = 0;
+
+  /** number of car legs whose route is removed */
+  private long legsUnrouted = 0;
+
+  /** Constructor
+   *
+   * @param network to route on, only its car links are used
+   * @param travelTime link travel times to route on
+   */
+  public TimeDependentRouter(final Network network, final TravelTime travelTime) {
+    this.carNetwork = NetworkUtils.createNetwork();
+    new TransportModeNetworkFilter(network).filter(carNetwork, Set.of(TransportMode.car));
+    this.graph = new RoutingGraph(carNetwork);
+    this.travelTime = travelTime;
+    this.heap = new NodeHeap(graph.getNumberOfNodes());
+    this.times = new double[graph.getNumberOfNodes()];
+    this.predecessorLinks = new int[graph.getNumberOfNodes()];
+  }
+
+  /** Find the fastest car route between two links departing at a given time
+   *
+   * @param startLinkId to depart from
+   * @param endLinkId to arrive on
+   * @param departureTime at the end of the start link
+   * @return route, null when either link is not in the car network or unreachable
+   */
+  public NetworkRoute route(final Id<Link> startLinkId, final Id<Link> endLinkId, double departureTime) {
+    Link startLink = carNetwork.getLinks().get(startLinkId);
+    Link endLink = carNetwork.getLinks().get(endLinkId);
+    if(startLink == null || endLink == null) {
+      return null;
+    }
+    if(startLink == endLink) {
+      NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(startLinkId, endLinkId);
+      route.setTravelTime(0);
+      route.setDistance(0);
+      return route;
+    }
+
+    int source = graph.getNodeIndex(startLink.getToNode());
+    int target = graph.getNodeIndex(endLink.getFromNode());
+    Arrays.fill(times, Double.POSITIVE_INFINITY);
+    heap.clear();
+    times[source] = 0;
+    heap.addOrDecrease(source, 0);
+    while(!heap.isEmpty()) {
+      int node = heap.poll();
+      if(node == target) {
+        break;
+      }
+      for(int position = graph.getOutStart(node); position < graph.getOutEnd(node); ++position) {
+        int link = graph.getOutLink(position);
+        int next = graph.getToNodeIndex(link);
+        double time = times[node] + travelTime.getLinkTravelTime(graph.getLink(link), departureTime + times[node], null, null);
+        if(time < times[next]) {
+          times[next] = time;
+          predecessorLinks[next] = link;
+          heap.addOrDecrease(next, time);
+        }
+      }
+    }
+    if(Double.isInfinite(times[target])) {
+      return null;
+    }
+
+    List<Id<Link>> linkIds = new ArrayList<>();
+    double distance = endLink.getLength();
+    for(int node = target; node != source; node = graph.getFromNodeIndex(predecessorLinks[node])) {
+      Link link = graph.getLink(predecessorLinks[node]);
+      linkIds.add(link.getId());
+      distance += link.getLength();
+    }
+    Collections.reverse(linkIds);
+    NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(startLinkId, linkIds, endLinkId);
+    route.setTravelTime(times[target] + travelTime.getLinkTravelTime(endLink, departureTime + times[target], null, null));
+    route.setDistance(distance);
+    return route;
+  }
+
+  /** Reroute the car legs of a plan, tracking the time along the plan from activity end times, maximum durations and leg travel times
+   *
+   * @param plan to reroute
+   * @param selection of the car routes to reroute
+   */
+  public void reroute(final Plan plan, final Predicate<NetworkRoute> selection) {
+    double time = 0;
+    for(PlanElement element : plan.getPlanElements()) {
+      if(element instanceof Activity) {
+        Activity activity = (Activity) element;
+        if(activity.getEndTime().isDefined()) {
+          time = activity.getEndTime().seconds();
+        }else if(activity.getMaximumDuration().isDefined()) {
+          time += activity.getMaximumDuration().seconds();
+        }
+        continue;
+      }
+      if(!(element instanceof Leg)) {
+        continue;
+      }
+
+      Leg leg = (Leg) element;
+      if(leg.getDepartureTime().isDefined()) {
+        time = leg.getDepartureTime().seconds();
+      }
+      if(!TransportMode.car.equals(leg.getMode()) || !(leg.getRoute() instanceof NetworkRoute) || !selection.test((NetworkRoute) leg.getRoute())) {
+        if(leg.getTravelTime().isDefined()) {
+          time += leg.getTravelTime().seconds();
+        }
+        continue;
+      }
+
+      NetworkRoute oldRoute = (NetworkRoute) leg.getRoute();
+      NetworkRoute route = route(oldRoute.getStartLinkId(), oldRoute.getEndLinkId(), time);
+      if(route == null) {
+        leg.setRoute(null);
+        ++legsUnrouted;
+        continue;
+      }
+      route.setVehicleId(oldRoute.getVehicleId());
+      leg.setRoute(route);
+      leg.setTravelTime(route.getTravelTime().seconds());
+      time += route.getTravelTime().seconds();
+      ++legsRerouted;
+    }
+  }
+
+  /** Car network routed on, a copy of the car links of the network provided on construction
+   *
+   * @return car network
+   */
+  public Network getNetwork() {
+    return carNetwork;
+  }
+
+  /** Number of rerouted car legs
+   *
+   * @return legs rerouted
+   */
+  public long getLegsRerouted() {
+    return legsRerouted;
+  }
+
+  /** Number of car legs whose route was removed to be routed by MATSim
+   *
+   * @return legs unrouted
+   */
+  public long getLegsUnrouted() {
+    return legsUnrouted;
+  }
+}
@@ -0,0 +1,30 @@
+package org.goplanit.aurin.matsim.sampling;
+
+import org.matsim.api.core.v01.Id;
+
+/**
+ * Deterministic sampling of agents by a hash of their id, shared by all components that sample agents during a run, so the same agents are sampled
+ * in every iteration and by every component, and each sample contains all smaller samples.
+ *
+ * @author markr
+ *
+ */
+public class HashSampler {
+
+  /** Verify if an agent is in the sample, based on a hash of its id
+   *
+   * @param agentId to verify
+   * @param sample to verify against, between 0 (no agents) and 1 (all agents)
+   * @return true when sampled, false otherwise
+   */
+  public static boolean isSampled(final Id<?> agentId, double sample) {
+    /* spread the string hash (murmur3 finalizer) so similar ids are sampled independently */
+    int hash = agentId.toString().hashCode();
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return (hash >>> 8) < sample * (1 << 24);
+  }
+}
@@ -0,0 +1,149 @@
+package org.goplanit.aurin.matsim.skim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.goplanit.aurin.matsim.routing.NodeHeap;
+import org.goplanit.aurin.matsim.routing.RoutingGraph;
+
+/**
+ * Many-to-many fastest paths between zones on a {@link RoutingGraph} for given link travel times, i.e., one shortest path tree (Dijkstra) per origin
+ * zone, ended as soon as all zone nodes are settled. The origins are split into contiguous partitions that are processed in parallel, each partition
+ * with its own search state, so the result does not depend on the number of threads.
+ *
+ * @author markr
+ *
+ */
+public class SkimCalculator {
+
+  /** graph to search */
+  private final RoutingGraph graph;
+
+  /** node index per zone */
+  private final int[] zoneNodes;
+
+  /** zones per node index, null for nodes without zones */
+  private final int[][] nodeZones;
+
+  /** number of distinct zone nodes */
+  private final int distinctZoneNodes;
+
+  /** Search state of a single thread */
+  private class Search {
+
+    /** heap of the search */
+    private final NodeHeap heap = new NodeHeap(graph.getNumberOfNodes());
+
+    /** travel time per node */
+    private final double[] times = new double[graph.getNumberOfNodes()];
+
+    /** distance per node, along the fastest path */
+    private final double[] distances = new double[graph.getNumberOfNodes()];
+
+    /** Build the tree of an origin zone and fill its row of the skims
+     *
+     * @param origin zone
+     * @param linkTravelTimes travel time per link index
+     * @param travelTimes row major skim to fill
+     * @param distanceSkim row major skim to fill
+     */
+    private void search(int origin, final double[] linkTravelTimes, final float[] travelTimes, final float[] distanceSkim) {
+      int numberOfZones = zoneNodes.length;
+      Arrays.fill(travelTimes, origin * numberOfZones, (origin + 1) * numberOfZones, Float.NaN);
+      Arrays.fill(distanceSkim, origin * numberOfZones, (origin + 1) * numberOfZones, Float.NaN);
+
+      Arrays.fill(times, Double.POSITIVE_INFINITY);
+      heap.clear();
+      int source = zoneNodes[origin];
+      times[source] = 0;
+      distances[source] = 0;
+      heap.addOrDecrease(source, 0);
+
+      int settledZoneNodes = 0;
+      while(!heap.isEmpty() && settledZoneNodes < distinctZoneNodes) {
+        int node = heap.poll();
+        if(nodeZones[node] != null) {
+          ++settledZoneNodes;
+          for(int destination : nodeZones[node]) {
+            travelTimes[origin * numberOfZones + destination] = (float) times[node];
+            distanceSkim[origin * numberOfZones + destination] = (float) distances[node];
+          }
+        }
+
+        for(int position = graph.getOutStart(node); position < graph.getOutEnd(node); ++position) {
+          int link = graph.getOutLink(position);
+          int next = graph.getToNodeIndex(link);
+          double time = times[node] + linkTravelTimes[link];
+          if(time < times[next]) {
+            times[next] = time;
+            distances[next] = distances[node] + graph.getLink(link).getLength();
+            heap.addOrDecrease(next, time);
+          }
+        }
+      }
+    }
+  }
+
+  /** Constructor
+   *
+   * @param graph to search
+   * @param zoneNodes node index per zone
+   */
+  public SkimCalculator(final RoutingGraph graph, final int[] zoneNodes) {
+    this.graph = graph;
+    this.zoneNodes = zoneNodes;
+
+    int[] zonesPerNode = new int[graph.getNumberOfNodes()];
+    for(int zoneNode : zoneNodes) {
+      ++zonesPerNode[zoneNode];
+    }
+    this.nodeZones = new int[graph.getNumberOfNodes()][];
+    int distinct = 0;
+    for(int zone = 0; zone < zoneNodes.length; ++zone) {
+      int zoneNode = zoneNodes[zone];
+      if(nodeZones[zoneNode] == null) {
+        nodeZones[zoneNode] = new int[zonesPerNode[zoneNode]];
+        zonesPerNode[zoneNode] = 0;
+        ++distinct;
+      }
+      nodeZones[zoneNode][zonesPerNode[zoneNode]++] = zone;
+    }
+    this.distinctZoneNodes = distinct;
+  }
+
+  /** Calculate the travel time and distance skims of all zone pairs, unreachable pairs are {@link Float#NaN}
+   *
+   * @param linkTravelTimes travel time per link index
+   * @param travelTimes row major skim of size zones x zones to fill, in seconds
+   * @param distances row major skim of size zones x zones to fill, in metres
+   * @param executor to run the partitions on
+   * @param threads number of partitions
+   * @throws InterruptedException thrown when interrupted
+   * @throws ExecutionException thrown when a partition fails
+   */
+  public void calculate(final double[] linkTravelTimes, final float[] travelTimes, final float[] distances,
+      final ExecutorService executor, int threads) throws InterruptedException, ExecutionException {
+    int numberOfZones = zoneNodes.length;
+    int partitionSize = (numberOfZones + threads - 1) / threads;
+    List<Callable<Void>> partitions = new ArrayList<>(threads);
+    for(int start = 0; start < numberOfZones; start += partitionSize) {
+      final int from = start;
+      final int to = Math.min(numberOfZones, start + partitionSize);
+      partitions.add(() -> {
+        Search search = new Search();
+        for(int origin = from; origin < to; ++origin) {
+          search.search(origin, linkTravelTimes, travelTimes, distances);
+        }
+        return null;
+      });
+    }
+    for(Future<Void> partition : executor.invokeAll(partitions)) {
+      partition.get();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package org.goplanit.aurin.matsim.skim;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.goplanit.aurin.matsim.routing.RoutingGraph;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Controller listener creating zone-to-zone car travel time and distance skims on the travel times of the last iteration, for each travel time bin
+ * of the travel time calculator. Each zone is represented by the car network node nearest to its centroid, the skims of a bin are calculated in
+ * parallel (see {@link SkimCalculator}) and persisted before the next bin is calculated, so memory is bounded by the skims of a single bin.
+ * <p>
+ * The skims are persisted in the output directory, either as CSV ({@link #SKIMS_CSV_FILE}, header {@link #SKIMS_CSV_HEADER}, unreachable pairs omitted)
+ * or in a compact gzipped binary format ({@link #SKIMS_BINARY_FILE}, big endian, see {@link java.io.DataOutputStream}): magic {@link #MAGIC}, version
+ * {@link #VERSION}, number of zones z (int) followed by the zone ids (UTF), number of bins (int) and bin size in seconds (double), then per bin its start time
+ * (double), z x z travel times in seconds (float, row major by origin) and z x z distances in metres (float), unreachable pairs being NaN.
+ *
+ * @author markr
+ *
+ */
+public class SkimListener implements IterationEndsListener {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(SkimListener.class.getCanonicalName());
+
+  /** name of the persisted CSV skims file */
+  public static final String SKIMS_CSV_FILE = "planit_skims.csv";
+
+  /** header of the CSV skims file */
+  public static final String SKIMS_CSV_HEADER = "bin_start,origin,destination,travel_time_s,distance_m";
+
+  /** name of the persisted binary skims file */
+  public static final String SKIMS_BINARY_FILE = "planit_skims.bin.gz";
+
+  /** magic number identifying the binary format */
+  public static final int MAGIC = 0x504C534B;
+
+  /** version of the binary format */
+  public static final int VERSION = 1;
+
+  /** the car network */
+  private final Network network;
+
+  /** zones to skim */
+  private final SkimZones zones;
+
+  /** persist in binary format when true, CSV otherwise */
+  private final boolean binary;
+
+  /** number of threads to use */
+  private final int threads;
+
+  /** size of the travel time bins (s) */
+  private final double binSize;
+
+  /** number of travel time bins */
+  private final int bins;
+
+  /** Persist the skims of a bin as CSV
+   *
+   * @param writer to persist with
+   * @param binStart start time of the bin
+   * @param travelTimes skim of the bin
+   * @param distances skim of the bin
+   * @throws IOException thrown if error
+   */
+  private void writeCsv(final BufferedWriter writer, double binStart, final float[] travelTimes, final float[] distances) throws IOException {
+    int numberOfZones = zones.size();
+    for(int origin = 0; origin < numberOfZones; ++origin) {
+      for(int destination = 0; destination < numberOfZones; ++destination) {
+        int index = origin * numberOfZones + destination;
+        if(!Float.isNaN(travelTimes[index])) {
+          writer.write(String.format("%.0f,%s,%s,%.1f,%.1f", binStart, zones.getId(origin), zones.getId(destination), travelTimes[index], distances[index]));
+          writer.newLine();
+        }
+      }
+    }
+  }
+
+  /** Persist the skims of a bin in binary format
+   *
+   * @param out to persist with
+   * @param binStart start time of the bin
+   * @param travelTimes skim of the bin
+   * @param distances skim of the bin
+   * @throws IOException thrown if error
+   */
+  private static void writeBinary(final DataOutputStream out, double binStart, final float[] travelTimes, final float[] distances) throws IOException {
+    out.writeDouble(binStart);
+    for(float travelTime : travelTimes) {
+      out.writeFloat(travelTime);
+    }
+    for(float distance : distances) {
+      out.writeFloat(distance);
+    }
+  }
+
+  /** Create and persist the skims
+   *
+   * @param travelTime of the last iteration
+   * @param outputDir to persist in
+   * @throws IOException thrown if error
+   * @throws InterruptedException thrown when interrupted
+   * @throws ExecutionException thrown when a calculation fails
+   */
+  private void createSkims(final TravelTime travelTime, final Path outputDir) throws IOException, InterruptedException, ExecutionException {
+    long startNanos = System.nanoTime();
+
+    Network carNetwork = NetworkUtils.createNetwork();
+    new TransportModeNetworkFilter(network).filter(carNetwork, Set.of(TransportMode.car));
+    RoutingGraph graph = new RoutingGraph(carNetwork);
+    int[] zoneNodes = new int[zones.size()];
+    for(int zone = 0; zone < zones.size(); ++zone) {
+      zoneNodes[zone] = graph.getNodeIndex(NetworkUtils.getNearestNode(carNetwork, zones.getCentroid(zone)));
+    }
+    SkimCalculator calculator = new SkimCalculator(graph, zoneNodes);
+
+    float[] travelTimes = new float[zones.size() * zones.size()];
+    float[] distances = new float[zones.size() * zones.size()];
+    double[] linkTravelTimes = new double[graph.getNumberOfLinks()];
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "planit-skims");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Path outputFile = outputDir.resolve(binary ? SKIMS_BINARY_FILE : SKIMS_CSV_FILE);
+    try(DataOutputStream out = binary ? new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(outputFile)))) : null;
+        BufferedWriter writer = binary ? null : Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)){
+      if(binary) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(zones.size());
+        for(int zone = 0; zone < zones.size(); ++zone) {
+          out.writeUTF(zones.getId(zone));
+        }
+        out.writeInt(bins);
+        out.writeDouble(binSize);
+      }else {
+        writer.write(SKIMS_CSV_HEADER);
+        writer.newLine();
+      }
+
+      for(int bin = 0; bin < bins; ++bin) {
+        double binStart = bin * binSize;
+        for(int link = 0; link < linkTravelTimes.length; ++link) {
+          linkTravelTimes[link] = travelTime.getLinkTravelTime(graph.getLink(link), binStart, null, null);
+        }
+        calculator.calculate(linkTravelTimes, travelTimes, distances, executor, threads);
+        if(binary) {
+          writeBinary(out, binStart, travelTimes, distances);
+        }else {
+          writeCsv(writer, binStart, travelTimes, distances);
+        }
+      }
+    }finally {
+      executor.shutdown();
+    }
+    LOGGER.info(String.format("Persisted skims of %d zones for %d travel time bins to %s in %d ms on %d threads",
+        zones.size(), bins, outputFile.toString(), (System.nanoTime() - startNanos) / 1_000_000, threads));
+  }
+
+  /** Constructor
+   *
+   * @param network of the scenario, skims are created on its car links
+   * @param zones to skim
+   * @param binary persist in binary format when true, CSV otherwise
+   * @param threads number of threads to use
+   * @param binSize size of the travel time bins (s)
+   * @param maxTime end of the last travel time bin (s)
+   */
+  public SkimListener(final Network network, final SkimZones zones, boolean binary, int threads, double binSize, double maxTime) {
+    this.network = network;
+    this.zones = zones;
+    this.binary = binary;
+    this.threads = Math.max(1, threads);
+    this.binSize = binSize;
+    this.bins = (int) Math.ceil(maxTime / binSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyIterationEnds(IterationEndsEvent event) {
+    if(!event.isLastIteration()) {
+      return;
+    }
+    Path outputDir = Path.of(event.getServices().getControlerIO().getOutputPath());
+    try {
+      createSkims(event.getServices().getLinkTravelTimes(), outputDir);
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }catch(IOException | ExecutionException e) {
+      LOGGER.warning(String.format("Unable to create skims in %s: %s", outputDir.toString(), e.getMessage()));
+    }
+  }
+}
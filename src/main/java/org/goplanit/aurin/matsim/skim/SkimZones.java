@@ -0,0 +1,114 @@
+package org.goplanit.aurin.matsim.skim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.goplanit.utils.exceptions.PlanItException;
+import org.matsim.api.core.v01.Coord;
+
+/**
+ * Zones (centroids) to create skim matrices for, parsed from a CSV file with header {@code id,x,y} where the coordinates are in the simulation crs.
+ * The order of the file is the order of the rows and columns of the skim matrices.
+ *
+ * @author markr
+ *
+ */
+public class SkimZones {
+
+  /** separator used in zones CSV files */
+  public static final String CSV_SEPARATOR = ",";
+
+  /** id column of a zones CSV file */
+  public static final String ID_COLUMN = "id";
+
+  /** x coordinate column of a zones CSV file */
+  public static final String X_COLUMN = "x";
+
+  /** y coordinate column of a zones CSV file */
+  public static final String Y_COLUMN = "y";
+
+  /** zone ids in file order */
+  private final List<String> ids;
+
+  /** zone centroids in file order */
+  private final List<Coord> centroids;
+
+  /** Constructor
+   *
+   * @param ids of the zones
+   * @param centroids of the zones
+   */
+  private SkimZones(final List<String> ids, final List<Coord> centroids) {
+    this.ids = ids;
+    this.centroids = centroids;
+  }
+
+  /** Parse zones from a CSV file
+   *
+   * @param zonesFile to parse
+   * @return zones
+   * @throws PlanItException thrown if error
+   */
+  public static SkimZones parse(final Path zonesFile) throws PlanItException {
+    List<String> ids = new ArrayList<>();
+    List<Coord> centroids = new ArrayList<>();
+    try(BufferedReader reader = Files.newBufferedReader(zonesFile, StandardCharsets.UTF_8)){
+      String header = reader.readLine();
+      List<String> columns = header == null ? List.of() : Arrays.asList(header.trim().split(CSV_SEPARATOR));
+      int idIndex = columns.indexOf(ID_COLUMN);
+      int xIndex = columns.indexOf(X_COLUMN);
+      int yIndex = columns.indexOf(Y_COLUMN);
+      if(idIndex < 0 || xIndex < 0 || yIndex < 0) {
+        throw new PlanItException("Zones file %s lacks %s,%s,%s header", zonesFile.toString(), ID_COLUMN, X_COLUMN, Y_COLUMN);
+      }
+
+      String line;
+      while((line = reader.readLine()) != null) {
+        if(line.isBlank()) {
+          continue;
+        }
+        String[] values = line.split(CSV_SEPARATOR);
+        ids.add(values[idIndex].trim());
+        centroids.add(new Coord(Double.parseDouble(values[xIndex].trim()), Double.parseDouble(values[yIndex].trim())));
+      }
+    }catch(IOException | RuntimeException e) {
+      throw new PlanItException("Unable to parse zones file %s: %s", zonesFile.toString(), e.getMessage());
+    }
+    if(ids.isEmpty()) {
+      throw new PlanItException("Zones file %s contains no zones", zonesFile.toString());
+    }
+    return new SkimZones(ids, centroids);
+  }
+
+  /** Number of zones
+   *
+   * @return number of zones
+   */
+  public int size() {
+    return ids.size();
+  }
+
+  /** Id of a zone
+   *
+   * @param zoneIndex of the zone
+   * @return id
+   */
+  public String getId(int zoneIndex) {
+    return ids.get(zoneIndex);
+  }
+
+  /** Centroid of a zone
+   *
+   * @param zoneIndex of the zone
+   * @return centroid
+   */
+  public Coord getCentroid(int zoneIndex) {
+    return centroids.get(zoneIndex);
+  }
+}
@@ -0,0 +1,77 @@
+package org.goplanit.aurin.matsim.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.MatsimServices;
+import org.matsim.vis.snapshotwriters.SnapshotWriter;
+
+/**
+ * Overriding module registering the wrapper's {@link SampledSnapshotWriter} with MATSim's snapshot writers. MATSim requests a new writer for each
+ * iteration in which snapshots are written (see controler.writeSnapshotsInterval), at the qsim.snapshotperiod resolution, which persists them as
+ * {@link #SNAPSHOTS_FILE} in the iteration's output directory.
+ *
+ * @author markr
+ *
+ */
+public class SampledSnapshotModule extends AbstractModule {
+
+  /** name of the persisted snapshots file, prefixed with the iteration */
+  public static final String SNAPSHOTS_FILE = "planit_snapshots.bin.gz";
+
+  /** sample of the agents to persist */
+  private final double sample;
+
+  /** Provides a writer for the current iteration */
+  private static class SampledSnapshotWriterProvider implements Provider<SnapshotWriter> {
+
+    /** services to obtain iteration and output directory from */
+    @Inject
+    private MatsimServices services;
+
+    /** sample of the agents to persist */
+    private final double sample;
+
+    /** Constructor
+     *
+     * @param sample of the agents to persist
+     */
+    private SampledSnapshotWriterProvider(double sample) {
+      this.sample = sample;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapshotWriter get() {
+      Path outputFile = Path.of(services.getControlerIO().getIterationFilename(services.getIterationNumber(), SNAPSHOTS_FILE));
+      try {
+        return new SampledSnapshotWriter(outputFile, sample, services.getConfig().qsim().getSnapshotPeriod());
+      }catch(IOException e) {
+        throw new UncheckedIOException(String.format("Unable to create snapshots file %s", outputFile.toString()), e);
+      }
+    }
+  }
+
+  /** Constructor
+   *
+   * @param sample of the agents to persist
+   */
+  public SampledSnapshotModule(double sample) {
+    this.sample = sample;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void install() {
+    addSnapshotWriterBinding().toProvider(new SampledSnapshotWriterProvider(sample));
+  }
+}
@@ -0,0 +1,267 @@
+package org.goplanit.aurin.matsim.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.matsim.api.core.v01.Id;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo;
+import org.matsim.vis.snapshotwriters.SnapshotWriter;
+
+/**
+ * Snapshot writer persisting the positions of a sample of the agents in a compact, columnar, gzipped binary format. Which agents are sampled is
+ * decided by a hash of their id (see {@link HashSampler}), so the same agents are sampled in every snapshot and every iteration. On the mobsim
+ * thread the positions of the sampled agents are only collected into column arrays, a completed snapshot is handed to a background thread via a
+ * bounded queue, which encodes and persists it. When the writer falls behind the queue fills up and the mobsim waits, so memory remains bounded.
+ * <p>
+ * The format (big endian, see {@link java.io.DataOutputStream}) is a header followed by one frame per snapshot:
+ * <ul>
+ * <li>header: magic {@link #MAGIC}, version {@link #VERSION}, sample (double), snapshot period in seconds (double)</li>
+ * <li>frame: time (double), number of agents first seen in this frame (int) followed by their ids (UTF) which are numbered consecutively from 0 in order of
+ * appearance, number of positions n (int), then the columns: n agent numbers (int), n x coordinates (double), n y coordinates (double) and n agent states
+ * (byte, ordinal of {@link AgentSnapshotInfo.AgentState})</li>
+ * </ul>
+ * The stream ends with a frame time of {@link Double#NaN}.
+ *
+ * @author markr
+ *
+ */
+public class SampledSnapshotWriter implements SnapshotWriter {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(SampledSnapshotWriter.class.getCanonicalName());
+
+  /** magic number identifying the format */
+  public static final int MAGIC = 0x504C5353;
+
+  /** version of the format */
+  public static final int VERSION = 1;
+
+  /** maximum number of completed snapshots waiting to be persisted */
+  public static final int QUEUE_CAPACITY = 16;
+
+  /** marks the end of the snapshots in the queue */
+  private static final Frame END = new Frame(Double.NaN);
+
+  /** one snapshot of the sampled agents in columnar form */
+  private static class Frame {
+
+    /** time of the snapshot */
+    private final double time;
+
+    /** ids of the agents first seen in this snapshot, in order of their number */
+    private final List<String> newAgentIds = new ArrayList<>();
+
+    /** number of positions */
+    private int size = 0;
+
+    /** agent numbers */
+    private int[] agents = new int[64];
+
+    /** x coordinates */
+    private double[] xs = new double[64];
+
+    /** y coordinates */
+    private double[] ys = new double[64];
+
+    /** agent states */
+    private byte[] states = new byte[64];
+
+    /** Constructor
+     *
+     * @param time of the snapshot
+     */
+    private Frame(double time) {
+      this.time = time;
+    }
+
+    /** Add a position
+     *
+     * @param agent number
+     * @param x coordinate
+     * @param y coordinate
+     * @param state of the agent
+     */
+    private void add(int agent, double x, double y, byte state) {
+      if(size == agents.length) {
+        agents = Arrays.copyOf(agents, 2 * size);
+        xs = Arrays.copyOf(xs, 2 * size);
+        ys = Arrays.copyOf(ys, 2 * size);
+        states = Arrays.copyOf(states, 2 * size);
+      }
+      agents[size] = agent;
+      xs[size] = x;
+      ys[size] = y;
+      states[size] = state;
+      ++size;
+    }
+
+    /** Encode the frame
+     *
+     * @param out to encode to
+     * @throws IOException thrown if error
+     */
+    private void write(final DataOutputStream out) throws IOException {
+      out.writeDouble(time);
+      out.writeInt(newAgentIds.size());
+      for(String agentId : newAgentIds) {
+        out.writeUTF(agentId);
+      }
+      out.writeInt(size);
+      for(int index = 0; index < size; ++index) {
+        out.writeInt(agents[index]);
+      }
+      for(int index = 0; index < size; ++index) {
+        out.writeDouble(xs[index]);
+      }
+      for(int index = 0; index < size; ++index) {
+        out.writeDouble(ys[index]);
+      }
+      out.write(states, 0, size);
+    }
+  }
+
+  /** sample of the agents to persist */
+  private final double sample;
+
+  /** numbers of the sampled agents seen so far */
+  private final Map<Id<?>, Integer> agentNumbers = new HashMap<>();
+
+  /** completed snapshots to persist */
+  private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+  /** stream the snapshots are persisted to, owned by the writer thread once started */
+  private final DataOutputStream out;
+
+  /** background thread persisting the snapshots */
+  private final Thread writerThread;
+
+  /** snapshot currently collected, null if none */
+  private Frame frame = null;
+
+  /** number of snapshots persisted */
+  private long frames = 0;
+
+  /** Persist the queued snapshots until the end marker is taken, closing the output stream afterwards
+   *
+   * @param outputFile persisted to, for logging
+   */
+  private void persist(final Path outputFile) {
+    try(DataOutputStream output = out){
+      Frame next;
+      while((next = queue.take()) != END) {
+        next.write(output);
+        ++frames;
+      }
+      output.writeDouble(Double.NaN);
+      return;
+    }catch(IOException e) {
+      LOGGER.warning(String.format("Unable to persist snapshots to %s: %s", outputFile.toString(), e.getMessage()));
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    /* keep draining so the mobsim does not block on a full queue */
+    try {
+      while(queue.take() != END) {
+        continue;
+      }
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Constructor
+   *
+   * @param outputFile to persist the snapshots to
+   * @param sample of the agents to persist
+   * @param snapshotPeriod in seconds between snapshots, only recorded in the header
+   * @throws IOException thrown when the header cannot be persisted
+   */
+  public SampledSnapshotWriter(final Path outputFile, double sample, double snapshotPeriod) throws IOException {
+    this.sample = sample;
+    this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(outputFile))));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeDouble(sample);
+      out.writeDouble(snapshotPeriod);
+    }catch(IOException e) {
+      out.close();
+      throw e;
+    }
+
+    this.writerThread = new Thread(() -> persist(outputFile), "planit-snapshot-writer");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void beginSnapshot(double time) {
+    frame = new Frame(time);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addAgent(final AgentSnapshotInfo position) {
+    if(frame == null || !HashSampler.isSampled(position.getId(), sample)) {
+      return;
+    }
+    Integer agentNumber = agentNumbers.get(position.getId());
+    if(agentNumber == null) {
+      agentNumber = agentNumbers.size();
+      agentNumbers.put(position.getId(), agentNumber);
+      frame.newAgentIds.add(position.getId().toString());
+    }
+    frame.add(agentNumber, position.getEasting(), position.getNorthing(),
+        position.getAgentState() == null ? -1 : (byte) position.getAgentState().ordinal());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void endSnapshot() {
+    if(frame == null) {
+      return;
+    }
+    try {
+      queue.put(frame);
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    frame = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void finish() {
+    try {
+      queue.put(END);
+      writerThread.join();
+    }catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    LOGGER.info(String.format("Persisted %d snapshots of %d sampled agents", frames, agentNumbers.size()));
+  }
+}
@@ -0,0 +1,119 @@
+package org.goplanit.aurin.matsim.studyarea;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.goplanit.utils.exceptions.PlanItException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+import org.matsim.api.core.v01.Coord;
+
+/**
+ * Area a simulation is restricted to, i.e., a polygon (or bounding box) extended with a buffer, expressed in the coordinate reference system of the
+ * simulation. Containment checks use a prepared geometry preceded by an envelope check, so they remain cheap for the millions of activities of a
+ * state wide plans file.
+ *
+ * @author markr
+ *
+ */
+public class StudyArea {
+
+  /** geometry factory to create points with */
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+  /** buffered area */
+  private final Geometry area;
+
+  /** prepared buffered area for containment checks */
+  private final PreparedGeometry preparedArea;
+
+  /** envelope of the buffered area */
+  private final Envelope envelope;
+
+  /** Parse a bounding box in "minx,miny,maxx,maxy" format
+   *
+   * @param bbox to parse
+   * @return geometry, null if not in bounding box format
+   */
+  private static Geometry parseBoundingBox(final String bbox) {
+    String[] values = bbox.split(",");
+    if(values.length != 4) {
+      return null;
+    }
+    double[] bounds = new double[4];
+    for(int index = 0; index < 4; ++index) {
+      try {
+        bounds[index] = Double.parseDouble(values[index].trim());
+      }catch(NumberFormatException e) {
+        return null;
+      }
+    }
+    return GEOMETRY_FACTORY.toGeometry(new Envelope(bounds[0], bounds[2], bounds[1], bounds[3]));
+  }
+
+  /** Parse a study area from either a bounding box in "minx,miny,maxx,maxy" format or a file containing a (multi)polygon in WKT format
+   *
+   * @param value to parse
+   * @param buffer to extend the area with in units of the coordinate reference system
+   * @return study area
+   * @throws PlanItException thrown if error
+   */
+  public static StudyArea parse(final String value, double buffer) throws PlanItException {
+    Geometry geometry = parseBoundingBox(value);
+    if(geometry == null) {
+      Path wktFile = Path.of(value);
+      if(!Files.isRegularFile(wktFile)) {
+        throw new PlanItException("Study area %s is neither a bounding box (minx,miny,maxx,maxy) nor an existing WKT file", value);
+      }
+      try {
+        geometry = new WKTReader(GEOMETRY_FACTORY).read(Files.readString(wktFile));
+      }catch(IOException | ParseException e) {
+        throw new PlanItException("Unable to parse study area WKT file %s: %s", value, e.getMessage());
+      }
+    }
+    if(geometry.getDimension() != 2 || geometry.isEmpty()) {
+      throw new PlanItException("Study area %s does not describe an area", value);
+    }
+    if(buffer < 0) {
+      throw new PlanItException("Study area buffer %.2f should not be negative", buffer);
+    }
+    return new StudyArea(buffer > 0 ? geometry.buffer(buffer) : geometry);
+  }
+
+  /** Constructor
+   *
+   * @param area of the study, including any buffer
+   */
+  public StudyArea(final Geometry area) {
+    this.area = area;
+    this.preparedArea = PreparedGeometryFactory.prepare(area);
+    this.envelope = area.getEnvelopeInternal();
+  }
+
+  /** Verify if a coordinate lies within the study area
+   *
+   * @param coord to verify
+   * @return true when within (or on the boundary of) the area, false otherwise
+   */
+  public boolean contains(final Coord coord) {
+    if(!envelope.contains(coord.getX(), coord.getY())) {
+      return false;
+    }
+    return preparedArea.covers(GEOMETRY_FACTORY.createPoint(new Coordinate(coord.getX(), coord.getY())));
+  }
+
+  /** The study area, including any buffer
+   *
+   * @return area
+   */
+  public Geometry getArea() {
+    return area;
+  }
+}
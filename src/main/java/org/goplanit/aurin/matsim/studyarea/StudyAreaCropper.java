@@ -0,0 +1,558 @@
+package org.goplanit.aurin.matsim.studyarea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.goplanit.aurin.matsim.routing.TimeDependentRouter;
+import org.locationtech.jts.geom.Envelope;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.NetworkCleaner;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+
+/**
+ * Crops a network and population to a {@link StudyArea}, so the memory and runtime of a simulation scale with the study area rather than with the
+ * region the inputs were prepared for.
+ * <p>
+ * The network retains the links of which both nodes lie within the area, after which it is cleaned so that it remains strongly connected. The
+ * population is streamed, so persons outside the area are never held in memory. Persons are retained when they have an activity within the area, or
+ * when one of their car legs crosses it, i.e., through traffic. Plans that cross the boundary become cordon agents: each car leg from or to an
+ * activity outside the area is routed on the free-flow travel times of the full car network (or follows its existing route), and the outside
+ * activity is replaced by a cordon activity on the link where that route enters or leaves the cropped network. A cordon activity where the route
+ * enters ends when the agent would have reached the end of that link, so the time spent travelling outside the area is accounted for. Where a route
+ * remains within the cropped network between entry and exit it is retained, other routes are removed so they are recomputed before the first
+ * iteration.
+ * <p>
+ * Legs of teleported modes keep their outside activity at its original location, since their travel time follows from the beeline distance. An agent
+ * that leaves the area and later re-enters waits at its cordon activity where it left until it re-enters, and departs from there. Car legs between
+ * activities outside the area are only routed when their end points lie within a margin of the area (see {@link #DETOUR_MARGIN}), since a route far
+ * from the area cannot reasonably cross it. A car leg with one end within the area that cannot be routed on the full network falls back to a cordon
+ * activity on the link of the cropped network nearest to its outside activity.
+ *
+ * @author markr
+ *
+ */
+public class StudyAreaCropper {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(StudyAreaCropper.class.getCanonicalName());
+
+  /** margin, relative to the distance between its end points, around a car leg between activities outside the area within which its route is
+   * assumed to remain, so legs whose margin does not reach the area are not routed */
+  public static final double DETOUR_MARGIN = 0.5;
+
+  /** area to crop to */
+  private final StudyArea studyArea;
+
+  /** envelope of the area */
+  private final Envelope envelope;
+
+  /** router on the free-flow travel times of the full car network, available between cropping the network and the population */
+  private TimeDependentRouter fullNetworkRouter = null;
+
+  /** persons read */
+  private long personsRead = 0;
+
+  /** persons retained */
+  private long personsRetained = 0;
+
+  /** persons retained without any activity within the area */
+  private long throughPersons = 0;
+
+  /** activities replaced by an activity at the boundary of the area */
+  private long cordonActivities = 0;
+
+  /** car legs with one end within the area that could not be routed on the full network */
+  private long unroutedCordonLegs = 0;
+
+  /** Where a car route enters and leaves the cropped network */
+  private static class Crossing {
+
+    /** first link of the route in the cropped network */
+    private Id<Link> entryLinkId = null;
+
+    /** time the end of the entry link is reached (s) */
+    private double entryTime;
+
+    /** last link of the route in the cropped network */
+    private Id<Link> exitLinkId = null;
+
+    /** time the end of the exit link is reached (s) */
+    private double exitTime;
+
+    /** part of the route between entry and exit, null when it leaves the cropped network in between */
+    private NetworkRoute route;
+
+    /** time the end of the route is reached (s) */
+    private double arrivalTime;
+  }
+
+  /** Verify a route only uses links of the network
+   *
+   * @param route to verify
+   * @param network to verify against
+   * @return true when valid, false otherwise
+   */
+  private static boolean isValid(final Route route, final Network network) {
+    if(!network.getLinks().containsKey(route.getStartLinkId()) || !network.getLinks().containsKey(route.getEndLinkId())) {
+      return false;
+    }
+    if(route instanceof NetworkRoute) {
+      for(Id<Link> linkId : ((NetworkRoute) route).getLinkIds()) {
+        if(!network.getLinks().containsKey(linkId)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** End time of an activity given the time it starts
+   *
+   * @param activity to get end time for
+   * @param time activity starts
+   * @return end time
+   */
+  private static double getActivityEndTime(final Activity activity, double time) {
+    if(activity.getEndTime().isDefined()) {
+      return activity.getEndTime().seconds();
+    }
+    if(activity.getMaximumDuration().isDefined()) {
+      return time + activity.getMaximumDuration().seconds();
+    }
+    return time;
+  }
+
+  /** Free-flow travel time of a link
+   *
+   * @param link to use
+   * @param time of entering the link
+   * @return travel time (s)
+   */
+  private static double getFreeFlowTravelTime(final Link link, double time) {
+    return link.getLength() / link.getFreespeed(time);
+  }
+
+  /** Create a cordon activity replacing an activity outside the area
+   *
+   * @param activity to replace
+   * @param link of the cropped network to locate the cordon activity on
+   * @param endTime of the cordon activity, null for none
+   * @return cordon activity
+   */
+  private Activity createCordonActivity(final Activity activity, final Link link, final Double endTime) {
+    Activity cordonActivity = PopulationUtils.createActivityFromLinkId(activity.getType(), link.getId());
+    cordonActivity.setCoord(new Coord(link.getCoord().getX(), link.getCoord().getY()));
+    if(endTime != null) {
+      cordonActivity.setEndTime(endTime);
+    }
+    ++cordonActivities;
+    return cordonActivity;
+  }
+
+  /** Verify if an activity lies within the area
+   *
+   * @param activity to verify
+   * @param network cropped network
+   * @return true when within, false otherwise
+   */
+  private boolean isWithin(final Activity activity, final Network network) {
+    if(activity.getCoord() == null) {
+      /* location is given by its link only */
+      return activity.getLinkId() != null && network.getLinks().containsKey(activity.getLinkId());
+    }
+    return studyArea.contains(activity.getCoord());
+  }
+
+  /** Link of the full car network an activity is located on
+   *
+   * @param activity to locate
+   * @return link, null when it cannot be located
+   */
+  private Link getFullNetworkLink(final Activity activity) {
+    Network carNetwork = fullNetworkRouter.getNetwork();
+    if(activity.getLinkId() != null && carNetwork.getLinks().containsKey(activity.getLinkId())) {
+      return carNetwork.getLinks().get(activity.getLinkId());
+    }
+    if(activity.getCoord() == null || carNetwork.getLinks().isEmpty()) {
+      return null;
+    }
+    return NetworkUtils.getNearestLinkExactly(carNetwork, activity.getCoord());
+  }
+
+  /** Verify if a car leg between two activities outside the area may cross it, i.e., the envelope of its end points extended by the detour margin
+   * intersects the envelope of the area
+   *
+   * @param origin of the leg
+   * @param destination of the leg
+   * @param originLink of the origin in the full car network
+   * @param destinationLink of the destination in the full car network
+   * @return true when it may cross, false otherwise
+   */
+  private boolean mayCross(final Activity origin, final Activity destination, final Link originLink, final Link destinationLink) {
+    Coord from = origin.getCoord() != null ? origin.getCoord() : originLink.getCoord();
+    Coord to = destination.getCoord() != null ? destination.getCoord() : destinationLink.getCoord();
+    Envelope legEnvelope = new Envelope(from.getX(), to.getX(), from.getY(), to.getY());
+    legEnvelope.expandBy(DETOUR_MARGIN * NetworkUtils.getEuclideanDistance(from, to));
+    return legEnvelope.intersects(envelope);
+  }
+
+  /** Find where the route of a car leg enters and leaves the cropped network, following the existing route of the leg when it is valid on the full
+   * car network and the free-flow fastest route otherwise
+   *
+   * @param origin of the leg
+   * @param leg to find crossing of
+   * @param destination of the leg
+   * @param departureTime of the leg
+   * @param bothOutside true when both origin and destination lie outside the area
+   * @param network cropped network
+   * @return crossing, null when the route does not use the cropped network or cannot be found
+   */
+  private Crossing findCrossing(final Activity origin, final Leg leg, final Activity destination, double departureTime, boolean bothOutside,
+      final Network network) {
+    Link originLink = getFullNetworkLink(origin);
+    Link destinationLink = getFullNetworkLink(destination);
+    if(originLink == null || destinationLink == null) {
+      return null;
+    }
+    if(bothOutside && !mayCross(origin, destination, originLink, destinationLink)) {
+      return null;
+    }
+
+    NetworkRoute route = null;
+    Network carNetwork = fullNetworkRouter.getNetwork();
+    if(leg.getRoute() instanceof NetworkRoute && isValid(leg.getRoute(), carNetwork)
+        && leg.getRoute().getStartLinkId().equals(originLink.getId()) && leg.getRoute().getEndLinkId().equals(destinationLink.getId())) {
+      route = (NetworkRoute) leg.getRoute();
+    }else {
+      route = fullNetworkRouter.route(originLink.getId(), destinationLink.getId(), departureTime);
+    }
+    if(route == null) {
+      return null;
+    }
+
+    /* departure from the end of the start link, every later link is traversed */
+    List<Id<Link>> linkIds = new ArrayList<>(route.getLinkIds().size() + 2);
+    linkIds.add(route.getStartLinkId());
+    linkIds.addAll(route.getLinkIds());
+    if(!route.getEndLinkId().equals(route.getStartLinkId()) || !route.getLinkIds().isEmpty()) {
+      linkIds.add(route.getEndLinkId());
+    }
+    var crossing = new Crossing();
+    int entryIndex = -1;
+    int exitIndex = -1;
+    double time = departureTime;
+    for(int index = 0; index < linkIds.size(); ++index) {
+      if(index > 0) {
+        time += getFreeFlowTravelTime(carNetwork.getLinks().get(linkIds.get(index)), time);
+      }
+      if(network.getLinks().containsKey(linkIds.get(index))) {
+        if(entryIndex < 0) {
+          entryIndex = index;
+          crossing.entryLinkId = linkIds.get(index);
+          crossing.entryTime = time;
+        }
+        exitIndex = index;
+        crossing.exitLinkId = linkIds.get(index);
+        crossing.exitTime = time;
+      }
+    }
+    crossing.arrivalTime = time;
+    if(entryIndex < 0) {
+      return null;
+    }
+
+    List<Id<Link>> innerLinkIds = linkIds.subList(entryIndex, exitIndex + 1);
+    if(innerLinkIds.stream().allMatch(network.getLinks()::containsKey)) {
+      crossing.route = RouteUtils.createLinkNetworkRouteImpl(crossing.entryLinkId,
+          innerLinkIds.size() > 2 ? innerLinkIds.subList(1, innerLinkIds.size() - 1) : List.of(), crossing.exitLinkId);
+    }
+    return crossing;
+  }
+
+  /** Activity located on the link of the cropped network nearest to an activity outside the area, used when a car leg cannot be routed
+   *
+   * @param activity outside the area
+   * @param network cropped network
+   * @param endTime of the activity, null for none
+   * @return cordon activity
+   */
+  private Activity createNearestCordonActivity(final Activity activity, final Network network, final Double endTime) {
+    Coord coord = activity.getCoord();
+    if(coord == null) {
+      Link fullNetworkLink = getFullNetworkLink(activity);
+      coord = fullNetworkLink != null ? fullNetworkLink.getCoord() : network.getNodes().values().iterator().next().getCoord();
+    }
+    ++unroutedCordonLegs;
+    return createCordonActivity(activity, NetworkUtils.getNearestLinkExactly(network, coord), endTime);
+  }
+
+  /** Prepare an activity within the area, or an activity outside it used by a teleported leg, for the cropped network
+   *
+   * @param activity to prepare
+   * @param network cropped network
+   * @return the activity
+   */
+  private static Activity retain(final Activity activity, final Network network) {
+    if(activity.getLinkId() != null && !network.getLinks().containsKey(activity.getLinkId()) && activity.getCoord() != null) {
+      activity.setLinkId(null);
+      activity.setFacilityId(null);
+    }
+    return activity;
+  }
+
+  /** Crop a plan to the study area, see class description
+   *
+   * @param plan to crop
+   * @param network cropped network
+   * @param transformation to apply to activity coordinates, null if none
+   * @return number of activities of the plan within the area, -1 when it has neither activities within the area nor legs crossing it
+   */
+  private int crop(final Plan plan, final Network network, final CoordinateTransformation transformation) {
+    final List<PlanElement> elements = plan.getPlanElements();
+    int activitiesWithin = 0;
+    for(PlanElement element : elements) {
+      if(element instanceof Activity) {
+        Activity activity = (Activity) element;
+        if(transformation != null && activity.getCoord() != null) {
+          activity.setCoord(transformation.transform(activity.getCoord()));
+        }
+        activitiesWithin += isWithin(activity, network) ? 1 : 0;
+      }
+    }
+    if(elements.size() == 1) {
+      retain((Activity) elements.get(0), network);
+      return activitiesWithin > 0 ? activitiesWithin : -1;
+    }
+
+    List<PlanElement> cropped = new ArrayList<>(elements.size());
+    double time = 0;
+    for(int index = 1; index + 1 < elements.size(); index += 2) {
+      final Activity origin = (Activity) elements.get(index - 1);
+      final Leg leg = (Leg) elements.get(index);
+      final Activity destination = (Activity) elements.get(index + 1);
+      time = getActivityEndTime(origin, time);
+      final double departureTime = leg.getDepartureTime().orElse(time);
+      final boolean originWithin = isWithin(origin, network);
+      final boolean destinationWithin = isWithin(destination, network);
+
+      Activity croppedOrigin = originWithin ? retain(origin, network) : null;
+      Activity croppedDestination = destinationWithin ? retain(destination, network) : null;
+      double originEndTime = departureTime;
+      boolean routeValid = true;
+      if(TransportMode.car.equals(leg.getMode()) && !(originWithin && destinationWithin)) {
+        Crossing crossing = findCrossing(origin, leg, destination, departureTime, !originWithin && !destinationWithin, network);
+        if(crossing != null) {
+          if(!originWithin) {
+            originEndTime = crossing.entryTime;
+            croppedOrigin = createCordonActivity(origin, network.getLinks().get(crossing.entryLinkId), originEndTime);
+          }
+          if(!destinationWithin) {
+            croppedDestination = createCordonActivity(destination, network.getLinks().get(crossing.exitLinkId), null);
+          }
+          leg.setRoute(crossing.route);
+          if(leg.getDepartureTime().isDefined()) {
+            leg.setDepartureTime(originEndTime);
+          }
+          if(leg.getTravelTime().isDefined()) {
+            leg.setTravelTime(crossing.exitTime - originEndTime);
+          }
+          time = crossing.arrivalTime;
+        }else {
+          if(originWithin || destinationWithin) {
+            croppedOrigin = originWithin ? croppedOrigin : createNearestCordonActivity(origin, network, departureTime);
+            croppedDestination = destinationWithin ? croppedDestination : createNearestCordonActivity(destination, network, null);
+            routeValid = false;
+          }
+          time = departureTime + leg.getTravelTime().orElse(0);
+        }
+      }else {
+        if(originWithin || destinationWithin) {
+          /* teleported legs keep their outside activity, car legs within the area keep both */
+          croppedOrigin = retain(origin, network);
+          croppedDestination = retain(destination, network);
+        }
+        time = departureTime + leg.getTravelTime().orElse(0);
+      }
+      if(croppedOrigin == null || croppedDestination == null) {
+        /* leg does not touch the area */
+        continue;
+      }
+
+      if(cropped.isEmpty()) {
+        if(croppedOrigin.getEndTime().isUndefined()) {
+          croppedOrigin.setEndTime(originEndTime);
+        }
+        cropped.add(croppedOrigin);
+      }else if(cropped.get(cropped.size() - 1) != croppedOrigin) {
+        /* re-entering after legs outside the area, wait where the area was left */
+        ((Activity) cropped.get(cropped.size() - 1)).setEndTime(originEndTime);
+        if(croppedOrigin != origin) {
+          --cordonActivities;
+        }
+        routeValid = false;
+      }
+      if(leg.getRoute() != null && (!routeValid || !isValid(leg.getRoute(), network))) {
+        leg.setRoute(null);
+      }
+      cropped.add(leg);
+      cropped.add(croppedDestination);
+    }
+
+    if(cropped.isEmpty()) {
+      return -1;
+    }
+    elements.clear();
+    elements.addAll(cropped);
+    return activitiesWithin;
+  }
+
+  /** Crop a person's plans to the study area
+   *
+   * @param person to crop
+   * @param network cropped network
+   * @param transformation to apply to activity coordinates, null if none
+   * @return true when the person has remaining plans, false otherwise
+   */
+  private boolean crop(final Person person, final Network network, final CoordinateTransformation transformation) {
+    Plan selectedPlan = person.getSelectedPlan();
+    boolean hasActivityWithin = false;
+    for(Plan plan : new ArrayList<>(person.getPlans())) {
+      int activitiesWithin = crop(plan, network, transformation);
+      if(activitiesWithin < 0) {
+        person.removePlan(plan);
+      }
+      hasActivityWithin |= activitiesWithin > 0;
+    }
+    if(person.getPlans().isEmpty()) {
+      return false;
+    }
+    if(!hasActivityWithin) {
+      ++throughPersons;
+    }
+    if(!person.getPlans().contains(selectedPlan)) {
+      person.setSelectedPlan(person.getPlans().get(0));
+    }
+    return true;
+  }
+
+  /** Constructor
+   *
+   * @param studyArea to crop to
+   */
+  public StudyAreaCropper(final StudyArea studyArea) {
+    this.studyArea = studyArea;
+    this.envelope = studyArea.getArea().getEnvelopeInternal();
+  }
+
+  /** Crop the network to the study area, retaining the links of which both nodes lie within the area and its strongly connected part. The car links
+   * of the full network are retained until the population is cropped, to find where car legs cross the area
+   *
+   * @param network to crop
+   */
+  public void cropNetwork(final Network network) {
+    int linksBefore = network.getLinks().size();
+    fullNetworkRouter = new TimeDependentRouter(network, (link, time, person, vehicle) -> getFreeFlowTravelTime(link, time));
+    for(Node node : new ArrayList<>(network.getNodes().values())) {
+      if(!studyArea.contains(node.getCoord())) {
+        /* removes its links as well */
+        network.removeNode(node.getId());
+      }
+    }
+    new NetworkCleaner().run(network);
+    LOGGER.info(String.format("Cropped MATSim network to study area, retained %d of %d links", network.getLinks().size(), linksBefore));
+  }
+
+  /** Stream a plans file and add the persons with activities within the study area, or car legs crossing it, to the population, cropped to the
+   * area. The network should be cropped first, since routes are determined on the full network and cordon activities are located on the cropped one
+   *
+   * @param plansFile to stream
+   * @param population to add retained persons to
+   * @param network cropped network
+   * @param transformation to apply to activity coordinates to bring them in the coordinate reference system of the network, null if none
+   */
+  public void cropPopulation(final URL plansFile, final Population population, final Network network, final CoordinateTransformation transformation) {
+    if(fullNetworkRouter == null) {
+      throw new IllegalStateException("Network should be cropped before the population");
+    }
+    if(network.getNodes().isEmpty()) {
+      LOGGER.warning("Cropped MATSim network is empty, no persons retained");
+      return;
+    }
+
+    StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+    reader.addAlgorithm(person -> {
+      ++personsRead;
+      if(crop(person, network, transformation)) {
+        ++personsRetained;
+        population.addPerson(person);
+      }
+    });
+    try(InputStream inputStream = PipelinedGzipInputStream.open(plansFile)){
+      reader.parse(inputStream);
+    }catch(IOException e) {
+      throw new UncheckedIOException(String.format("Unable to crop MATSim plans %s", plansFile.toString()), e);
+    }finally {
+      /* the full network is no longer needed */
+      fullNetworkRouter = null;
+    }
+    LOGGER.info(String.format("Cropped MATSim plans to study area, retained %d of %d persons (%d through traffic), %d cordon activities at the boundary crossing, %d car legs without route placed at the nearest link",
+        personsRetained, personsRead, throughPersons, cordonActivities, unroutedCordonLegs));
+  }
+
+  /** Number of persons read
+   *
+   * @return persons read
+   */
+  public long getPersonsRead() {
+    return personsRead;
+  }
+
+  /** Number of persons retained
+   *
+   * @return persons retained
+   */
+  public long getPersonsRetained() {
+    return personsRetained;
+  }
+
+  /** Number of persons retained without any activity within the area, i.e., through traffic
+   *
+   * @return through persons
+   */
+  public long getThroughPersons() {
+    return throughPersons;
+  }
+
+  /** Number of activities replaced by an activity at the boundary of the study area
+   *
+   * @return cordon activities
+   */
+  public long getCordonActivities() {
+    return cordonActivities;
+  }
+}
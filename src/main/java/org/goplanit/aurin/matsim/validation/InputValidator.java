@@ -0,0 +1,393 @@
+package org.goplanit.aurin.matsim.validation;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.goplanit.aurin.matsim.pt.PtStopsDeduplicator;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.io.IOUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Fail-fast validation of the inputs of a simulation before the scenario is loaded. Inconsistent inputs otherwise only surface deep into loading the
+ * scenario or in the first iteration, after minutes of loading. The network is streamed once to collect its link ids and extent, after which the plans
+ * are streamed once and checked against them and the configured activity types. Only the link ids are held in memory, the plans are never loaded, so
+ * memory is bounded by the network and validation takes seconds.
+ * <p>
+ * The following is reported:
+ * <ul>
+ * <li>activities and routes referencing link ids that are not in the network (error)</li>
+ * <li>activities of a type without activity parameters in the configuration (error)</li>
+ * <li>activity coordinates outside the network extent, an error when (nearly) all are outside since that indicates a crs mismatch, a warning otherwise</li>
+ * <li>pt stops outside the network extent, an error when (nearly) all are outside, a warning otherwise</li>
+ * </ul>
+ * Each check is skipped when its inputs are not available, e.g., no link or extent checks for a network that is provided in memory.
+ *
+ * @author markr
+ *
+ */
+public class InputValidator {
+
+  /** the logger to use */
+  private static final Logger LOGGER = Logger.getLogger(InputValidator.class.getCanonicalName());
+
+  /** share of the coordinates outside the network extent above which a crs mismatch is assumed */
+  public static final double CRS_MISMATCH_SHARE = 0.9;
+
+  /** margin added around the network extent, relative to its largest side */
+  public static final double EXTENT_MARGIN = 0.1;
+
+  /** maximum number of examples reported per issue */
+  public static final int MAX_EXAMPLES = 5;
+
+  /** postfix of the stage activity types MATSim adds itself, e.g. "car interaction" */
+  public static final String STAGE_ACTIVITY_POSTFIX = " interaction";
+
+  /** route type listing its link ids */
+  private static final String LINKS_ROUTE_TYPE = "links";
+
+  /** network file, null to skip the network based checks */
+  private final URL networkUrl;
+
+  /** transformation of the network crs to the simulation crs */
+  private final CoordinateTransformation networkTransformation;
+
+  /** plans file */
+  private final URL plansUrl;
+
+  /** transformation of the plans crs to the simulation crs */
+  private final CoordinateTransformation plansTransformation;
+
+  /** configured activity types, null to skip the activity type check */
+  private final Set<String> activityTypes;
+
+  /** pt stops file (in the simulation crs), null to skip the pt stops check */
+  private final URL ptStopsUrl;
+
+  /** Occurrences of an issue with the first few examples */
+  private static class Occurrences {
+
+    /** number of occurrences */
+    private long count = 0;
+
+    /** examples of the first occurrences */
+    private final List<String> examples = new ArrayList<>();
+
+    /** Register an occurrence
+     *
+     * @param example describing the occurrence
+     */
+    private void add(final String example) {
+      if(count++ < MAX_EXAMPLES) {
+        examples.add(example);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return String.format("%d (e.g., %s%s)", count, String.join(", ", examples), count > MAX_EXAMPLES ? ", ..." : "");
+    }
+  }
+
+  /** Extent of the network in the simulation crs, including margin */
+  private static class Extent {
+
+    /** minimum x, minimum y, maximum x, maximum y */
+    private final double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    /** Expand to include a coordinate
+     *
+     * @param coord to include
+     */
+    private void include(final Coord coord) {
+      bounds[0] = Math.min(bounds[0], coord.getX());
+      bounds[1] = Math.min(bounds[1], coord.getY());
+      bounds[2] = Math.max(bounds[2], coord.getX());
+      bounds[3] = Math.max(bounds[3], coord.getY());
+    }
+
+    /** Add the margin to the extent, to be invoked once all coordinates are included */
+    private void addMargin() {
+      double margin = EXTENT_MARGIN * Math.max(bounds[2] - bounds[0], bounds[3] - bounds[1]);
+      bounds[0] -= margin;
+      bounds[1] -= margin;
+      bounds[2] += margin;
+      bounds[3] += margin;
+    }
+
+    /** Verify if any coordinate was included
+     *
+     * @return true when empty, false otherwise
+     */
+    private boolean isEmpty() {
+      return bounds[0] > bounds[2];
+    }
+
+    /** Verify if a coordinate lies within the extent
+     *
+     * @param x coordinate
+     * @param y coordinate
+     * @return true when within, false otherwise
+     */
+    private boolean contains(double x, double y) {
+      return x >= bounds[0] && x <= bounds[2] && y >= bounds[1] && y <= bounds[3];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return String.format("[%.1f,%.1f,%.1f,%.1f]", bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+  }
+
+  /** Stream an XML file with a SAX handler
+   *
+   * @param url to stream
+   * @param handler to stream with
+   * @throws PlanItException thrown if error, including malformed XML
+   */
+  private static void stream(final URL url, final DefaultHandler handler) throws PlanItException {
+    try(InputStream inputStream = PipelinedGzipInputStream.open(url)){
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setValidating(false);
+      factory.setNamespaceAware(false);
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      SAXParser parser = factory.newSAXParser();
+      parser.parse(inputStream, handler);
+    }catch(Exception e) {
+      throw new PlanItException("Invalid input %s: %s", url.toString(), e.getMessage());
+    }
+  }
+
+  /** Report the coordinates outside the network extent, as error when their share indicates a crs mismatch
+   *
+   * @param report to add to
+   * @param outside occurrences of coordinates outside the extent
+   * @param checked number of coordinates checked
+   * @param description of the coordinates
+   * @param extent of the network
+   */
+  private static void reportOutsideExtent(final ValidationReport report, final Occurrences outside, long checked, final String description, final Extent extent) {
+    if(outside.count == 0) {
+      return;
+    }
+    String issue = String.format("%s of %d %s outside network extent %s", outside.toString(), checked, description, extent.toString());
+    if(outside.count > CRS_MISMATCH_SHARE * checked) {
+      report.addError(String.format("%s, likely a crs mismatch", issue));
+    }else {
+      report.addWarning(issue);
+    }
+  }
+
+  /** Stream the network, collecting its link ids and extent
+   *
+   * @param linkIds to collect link ids in
+   * @param extent to collect extent in
+   * @throws PlanItException thrown if error
+   */
+  private void streamNetwork(final Set<String> linkIds, final Extent extent) throws PlanItException {
+    stream(networkUrl, new DefaultHandler() {
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if("node".equals(qName)) {
+          String x = attributes.getValue("x");
+          String y = attributes.getValue("y");
+          if(x != null && y != null) {
+            extent.include(networkTransformation.transform(new Coord(Double.parseDouble(x), Double.parseDouble(y))));
+          }
+        }else if("link".equals(qName)) {
+          linkIds.add(attributes.getValue("id"));
+        }
+      }
+    });
+    extent.addMargin();
+  }
+
+  /** Stream the pt stops CSV and report stops outside the network extent
+   *
+   * @param report to add to
+   * @param extent of the network
+   * @throws PlanItException thrown if error
+   */
+  private void validatePtStops(final ValidationReport report, final Extent extent) throws PlanItException {
+    Occurrences outside = new Occurrences();
+    long checked = 0;
+    try(BufferedReader reader = IOUtils.getBufferedReader(ptStopsUrl)){
+      String header = reader.readLine();
+      List<String> columns = header == null ? List.of() : Arrays.asList(header.trim().split(PtStopsDeduplicator.CSV_SEPARATOR));
+      int idIndex = columns.indexOf(PtStopsDeduplicator.ID_COLUMN);
+      int xIndex = columns.indexOf(PtStopsDeduplicator.X_COLUMN);
+      int yIndex = columns.indexOf(PtStopsDeduplicator.Y_COLUMN);
+      if(idIndex < 0 || xIndex < 0 || yIndex < 0) {
+        report.addError(String.format("pt stops %s lacks %s,%s,%s header", ptStopsUrl.toString(),
+            PtStopsDeduplicator.ID_COLUMN, PtStopsDeduplicator.X_COLUMN, PtStopsDeduplicator.Y_COLUMN));
+        return;
+      }
+
+      String line;
+      while((line = reader.readLine()) != null) {
+        if(line.isBlank()) {
+          continue;
+        }
+        String[] values = line.split(PtStopsDeduplicator.CSV_SEPARATOR);
+        ++checked;
+        if(!extent.contains(Double.parseDouble(values[xIndex].trim()), Double.parseDouble(values[yIndex].trim()))) {
+          outside.add(values[idIndex].trim());
+        }
+      }
+    }catch(Exception e) {
+      throw new PlanItException("Invalid input %s: %s", ptStopsUrl.toString(), e.getMessage());
+    }
+    reportOutsideExtent(report, outside, checked, "pt stops", extent);
+  }
+
+  /** Constructor
+   *
+   * @param networkUrl network file, null to skip the network based checks
+   * @param networkTransformation of the network crs to the simulation crs
+   * @param plansUrl plans file
+   * @param plansTransformation of the plans crs to the simulation crs
+   * @param activityTypes configured activity types, null to skip the activity type check
+   * @param ptStopsUrl pt stops file in the simulation crs, null to skip the pt stops check
+   */
+  public InputValidator(final URL networkUrl, final CoordinateTransformation networkTransformation, final URL plansUrl,
+      final CoordinateTransformation plansTransformation, final Set<String> activityTypes, final URL ptStopsUrl) {
+    this.networkUrl = networkUrl;
+    this.networkTransformation = networkTransformation;
+    this.plansUrl = plansUrl;
+    this.plansTransformation = plansTransformation;
+    this.activityTypes = activityTypes;
+    this.ptStopsUrl = ptStopsUrl;
+  }
+
+  /** Validate the inputs
+   *
+   * @return report of the validation
+   * @throws PlanItException thrown when an input cannot be streamed
+   */
+  public ValidationReport validate() throws PlanItException {
+    long startNanos = System.nanoTime();
+    final ValidationReport report = new ValidationReport();
+
+    /* network: link ids and extent */
+    final Set<String> linkIds = networkUrl != null ? new HashSet<>() : null;
+    final Extent extent = new Extent();
+    if(networkUrl != null) {
+      streamNetwork(linkIds, extent);
+    }
+    final boolean checkExtent = !extent.isEmpty();
+
+    /* plans: single pass over all activities and routes */
+    final Occurrences missingLinks = new Occurrences();
+    final Occurrences outsideExtent = new Occurrences();
+    final Map<String, long[]> unknownActivityTypes = new TreeMap<>();
+    final long[] counts = new long[3]; // persons, activities, activities with coordinates
+    stream(plansUrl, new DefaultHandler() {
+
+      /** person currently parsed */
+      private String personId = null;
+
+      /** link ids of the links route currently parsed, null when not in such a route */
+      private StringBuilder routeLinks = null;
+
+      private void checkLink(final String linkId) {
+        if(linkIds != null && linkId != null && !linkId.isBlank() && !linkIds.contains(linkId)) {
+          missingLinks.add(String.format("person %s link %s", personId, linkId));
+        }
+      }
+
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (qName) {
+          case "person":
+            personId = attributes.getValue("id");
+            ++counts[0];
+            break;
+          case "act":
+          case "activity":
+            ++counts[1];
+            String type = attributes.getValue("type");
+            if(activityTypes != null && type != null && !activityTypes.contains(type) && !type.endsWith(STAGE_ACTIVITY_POSTFIX)) {
+              unknownActivityTypes.computeIfAbsent(type, t -> new long[1])[0]++;
+            }
+            checkLink(attributes.getValue("link"));
+            String x = attributes.getValue("x");
+            String y = attributes.getValue("y");
+            if(checkExtent && x != null && y != null) {
+              ++counts[2];
+              Coord coord = plansTransformation.transform(new Coord(Double.parseDouble(x), Double.parseDouble(y)));
+              if(!extent.contains(coord.getX(), coord.getY())) {
+                outsideExtent.add(String.format("person %s (%s,%s)", personId, x, y));
+              }
+            }
+            break;
+          case "route":
+            checkLink(attributes.getValue("start_link"));
+            checkLink(attributes.getValue("end_link"));
+            routeLinks = LINKS_ROUTE_TYPE.equals(attributes.getValue("type")) && linkIds != null ? new StringBuilder() : null;
+            break;
+          default:
+            break;
+        }
+      }
+
+      @Override
+      public void characters(char[] ch, int start, int length) {
+        if(routeLinks != null) {
+          routeLinks.append(ch, start, length);
+        }
+      }
+
+      @Override
+      public void endElement(String uri, String localName, String qName) {
+        if("route".equals(qName) && routeLinks != null) {
+          for(String linkId : routeLinks.toString().trim().split("\\s+")) {
+            checkLink(linkId);
+          }
+          routeLinks = null;
+        }
+      }
+    });
+    report.setValidated(counts[0], counts[1]);
+
+    if(missingLinks.count > 0) {
+      report.addError(String.format("%s references to link ids not in the network", missingLinks.toString()));
+    }
+    if(!unknownActivityTypes.isEmpty()) {
+      report.addError(String.format("%d activities of types without activity parameters in the configuration: %s",
+          unknownActivityTypes.values().stream().mapToLong(count -> count[0]).sum(),
+          unknownActivityTypes.entrySet().stream().map(entry -> String.format("%s (%d)", entry.getKey(), entry.getValue()[0])).collect(Collectors.joining(", "))));
+    }
+    if(checkExtent) {
+      reportOutsideExtent(report, outsideExtent, counts[2], "activity coordinates", extent);
+      if(ptStopsUrl != null) {
+        validatePtStops(report, extent);
+      }
+    }
+
+    LOGGER.info(String.format("Validated inputs in %d ms", (System.nanoTime() - startNanos) / 1_000_000));
+    return report;
+  }
+}
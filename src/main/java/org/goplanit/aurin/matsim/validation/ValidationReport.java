@@ -0,0 +1,105 @@
+package org.goplanit.aurin.matsim.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an input validation, see {@link InputValidator}. Errors are inconsistencies that would make the simulation fail (or be meaningless),
+ * warnings are inconsistencies the simulation can cope with but that are likely unintended
+ *
+ * @author markr
+ *
+ */
+public class ValidationReport {
+
+  /** errors found */
+  private final List<String> errors = new ArrayList<>();
+
+  /** warnings found */
+  private final List<String> warnings = new ArrayList<>();
+
+  /** number of persons validated */
+  private long persons = 0;
+
+  /** number of activities validated */
+  private long activities = 0;
+
+  /** Add an error
+   *
+   * @param error to add
+   */
+  void addError(final String error) {
+    errors.add(error);
+  }
+
+  /** Add a warning
+   *
+   * @param warning to add
+   */
+  void addWarning(final String warning) {
+    warnings.add(warning);
+  }
+
+  /** Set the number of persons and activities validated
+   *
+   * @param persons validated
+   * @param activities validated
+   */
+  void setValidated(long persons, long activities) {
+    this.persons = persons;
+    this.activities = activities;
+  }
+
+  /** Verify if no errors were found
+   *
+   * @return true when valid, false otherwise
+   */
+  public boolean isValid() {
+    return errors.isEmpty();
+  }
+
+  /** Errors found
+   *
+   * @return errors
+   */
+  public List<String> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /** Warnings found
+   *
+   * @return warnings
+   */
+  public List<String> getWarnings() {
+    return Collections.unmodifiableList(warnings);
+  }
+
+  /** Number of persons validated
+   *
+   * @return persons
+   */
+  public long getPersons() {
+    return persons;
+  }
+
+  /** Number of activities validated
+   *
+   * @return activities
+   */
+  public long getActivities() {
+    return activities;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format("%d persons, %d activities validated: %d errors, %d warnings",
+        persons, activities, errors.size(), warnings.size()));
+    errors.forEach(error -> sb.append(System.lineSeparator()).append("  ERROR: ").append(error));
+    warnings.forEach(warning -> sb.append(System.lineSeparator()).append("  WARNING: ").append(warning));
+    return sb.toString();
+  }
+}
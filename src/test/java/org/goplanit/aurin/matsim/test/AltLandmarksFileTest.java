@@ -0,0 +1,113 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.goplanit.aurin.matsim.routing.AltLandmarks;
+import org.goplanit.aurin.matsim.routing.AltLandmarksFile;
+import org.goplanit.aurin.matsim.routing.AltLeastCostPathCalculatorFactory;
+import org.goplanit.aurin.matsim.routing.RoutingGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+/**
+ * Test persisting and reusing ALT landmarks via the {@link AltLandmarksFile}, in a temporary folder standing in for the network's directory
+ *
+ * @author markr
+ *
+ */
+public class AltLandmarksFileTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Verify two sets of landmarks are identical
+   *
+   * @param expected landmarks
+   * @param actual landmarks
+   */
+  private static void assertSameLandmarks(final AltLandmarks expected, final AltLandmarks actual) {
+    assertEquals(expected.getNumberOfLandmarks(), actual.getNumberOfLandmarks());
+    int numberOfNodes = expected.getGraph().getNumberOfNodes();
+    for(int landmark = 0; landmark < expected.getNumberOfLandmarks(); ++landmark) {
+      assertEquals(expected.getLandmarkNode(landmark), actual.getLandmarkNode(landmark));
+      for(int node = 0; node < numberOfNodes; ++node) {
+        assertEquals(expected.getFromLandmark(landmark, node), actual.getFromLandmark(landmark, node), 0);
+        assertEquals(expected.getToLandmark(landmark, node), actual.getToLandmark(landmark, node), 0);
+      }
+    }
+  }
+
+  /**
+   * Written landmarks are read back identically for the same network and number of landmarks
+   */
+  @Test
+  public void roundTrip() {
+    RoutingGraph graph = new RoutingGraph(TestNetworks.createGrid(7, 5, 11L));
+    AltLandmarks landmarks = AltLandmarks.create(graph, 6);
+    Path file = AltLandmarksFile.getLocation(tempFolder.getRoot().toPath().resolve("network.xml"), graph);
+
+    assertTrue(AltLandmarksFile.write(file, landmarks));
+    assertTrue(file.getFileName().toString().startsWith("network.xml."));
+    assertTrue(file.getFileName().toString().endsWith(AltLandmarksFile.EXTENSION));
+    assertSameLandmarks(landmarks, AltLandmarksFile.read(file, new RoutingGraph(TestNetworks.createGrid(7, 5, 11L)), 6).orElseThrow());
+  }
+
+  /**
+   * Landmarks are not reused for a network with other free-flow travel times, nor for another number of landmarks
+   */
+  @Test
+  public void mismatchIsIgnored() {
+    Network network = TestNetworks.createGrid(4, 4, 5L);
+    RoutingGraph graph = new RoutingGraph(network);
+    Path file = AltLandmarksFile.getLocation(tempFolder.getRoot().toPath().resolve("network.xml"), graph);
+    assertTrue(AltLandmarksFile.write(file, AltLandmarks.create(graph, 4)));
+
+    assertFalse(AltLandmarksFile.read(file, graph, 3).isPresent());
+
+    Link link = network.getLinks().values().iterator().next();
+    link.setFreespeed(link.getFreespeed() / 2);
+    RoutingGraph changedGraph = new RoutingGraph(network);
+    assertNotEquals(graph.getFingerprint(), changedGraph.getFingerprint());
+    assertNotEquals(file, AltLandmarksFile.getLocation(tempFolder.getRoot().toPath().resolve("network.xml"), changedGraph));
+    assertFalse(AltLandmarksFile.read(file, changedGraph, 4).isPresent());
+  }
+
+  /**
+   * A truncated or foreign file is ignored rather than failing the run
+   */
+  @Test
+  public void corruptFileIsIgnored() throws Exception {
+    RoutingGraph graph = new RoutingGraph(TestNetworks.createGrid(3, 3, null));
+    Path file = AltLandmarksFile.getLocation(tempFolder.getRoot().toPath().resolve("network.xml"), graph);
+    Files.write(file, new byte[] {1, 2, 3});
+    assertFalse(AltLandmarksFile.read(file, graph, 2).isPresent());
+  }
+
+  /**
+   * The factory persists the landmarks next to the network file on first use and a later factory, i.e., a later run, reuses them
+   */
+  @Test
+  public void factoryPersistsAndReuses() throws Exception {
+    Path networkFile = tempFolder.getRoot().toPath().resolve("network.xml");
+    AltLandmarks created = new AltLeastCostPathCalculatorFactory(4, networkFile).getLandmarks(TestNetworks.createGrid(5, 5, 9L));
+    Path file = AltLandmarksFile.getLocation(networkFile, created.getGraph());
+    assertTrue(Files.isRegularFile(file));
+    long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+    AltLandmarks reused = new AltLeastCostPathCalculatorFactory(4, networkFile).getLandmarks(TestNetworks.createGrid(5, 5, 9L));
+    assertSameLandmarks(created, reused);
+    assertEquals(lastModified, Files.getLastModifiedTime(file).toMillis());
+    try(var files = Files.list(tempFolder.getRoot().toPath())){
+      assertEquals(1, files.count());
+    }
+  }
+}
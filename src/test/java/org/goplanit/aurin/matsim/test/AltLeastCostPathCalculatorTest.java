@@ -0,0 +1,131 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.goplanit.aurin.matsim.routing.AltLandmarks;
+import org.goplanit.aurin.matsim.routing.AltLeastCostPathCalculator;
+import org.goplanit.aurin.matsim.routing.AltLeastCostPathCalculatorFactory;
+import org.goplanit.aurin.matsim.routing.RoutingGraph;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Test the landmark based (ALT) least cost path calculator against MATSim's Dijkstra on a grid with varying link lengths and speeds and time
+ * dependent congestion
+ *
+ * @author markr
+ *
+ */
+public class AltLeastCostPathCalculatorTest {
+
+  /** start of the congested period (s) */
+  private static final double PEAK_START = 8 * 3600;
+
+  /** Congested travel times, between one and four times the free-flow travel time depending on link and time of day */
+  private static final TravelTime CONGESTED_TRAVEL_TIME = new TravelTime() {
+    @Override
+    public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+      double congestion = 1 + (Math.abs(link.getId().toString().hashCode()) % 4) * 0.5 * (time >= PEAK_START ? 2 : 1);
+      return congestion * link.getLength() / link.getFreespeed(time);
+    }
+  };
+
+  /** Travel time as disutility, with the free-flow travel time as minimum */
+  private static final TravelDisutility TRAVEL_TIME_DISUTILITY = new TravelDisutility() {
+    @Override
+    public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+      return CONGESTED_TRAVEL_TIME.getLinkTravelTime(link, time, person, vehicle);
+    }
+
+    @Override
+    public double getLinkMinimumTravelDisutility(Link link) {
+      return link.getLength() / link.getFreespeed();
+    }
+  };
+
+  /** Verify two paths are equally good and traverse the same links
+   *
+   * @param expected path
+   * @param actual path
+   */
+  private static void assertSamePath(final Path expected, final Path actual) {
+    assertNotNull(actual);
+    assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+    assertEquals(expected.travelTime, actual.travelTime, 1e-6);
+    List<Id<Link>> expectedLinks = new ArrayList<>();
+    expected.links.forEach(link -> expectedLinks.add(link.getId()));
+    List<Id<Link>> actualLinks = new ArrayList<>();
+    actual.links.forEach(link -> actualLinks.add(link.getId()));
+    assertEquals(expectedLinks, actualLinks);
+  }
+
+  /**
+   * Random origin destination pairs, off-peak and in the peak, yield the same paths as Dijkstra
+   */
+  @Test
+  public void sameAsDijkstra() {
+    Network network = TestNetworks.createGrid(12, 12, 42L);
+    LeastCostPathCalculator dijkstra = new DijkstraFactory().createPathCalculator(network, TRAVEL_TIME_DISUTILITY, CONGESTED_TRAVEL_TIME);
+    LeastCostPathCalculator alt = new AltLeastCostPathCalculator(
+        AltLandmarks.create(new RoutingGraph(network), 8), TRAVEL_TIME_DISUTILITY, CONGESTED_TRAVEL_TIME);
+
+    List<Node> nodes = new ArrayList<>(network.getNodes().values());
+    Random random = new Random(7);
+    for(int query = 0; query < 200; ++query) {
+      Node from = nodes.get(random.nextInt(nodes.size()));
+      Node to = nodes.get(random.nextInt(nodes.size()));
+      double departureTime = query % 2 == 0 ? PEAK_START - 1800 : PEAK_START + 1800;
+      assertSamePath(dijkstra.calcLeastCostPath(from, to, departureTime, null, null), alt.calcLeastCostPath(from, to, departureTime, null, null));
+    }
+  }
+
+  /**
+   * Calculators created by the factory share the landmarks of a network and find the same paths as Dijkstra
+   */
+  @Test
+  public void factorySharesLandmarks() {
+    Network network = TestNetworks.createGrid(6, 6, 3L);
+    var factory = new AltLeastCostPathCalculatorFactory(4);
+    assertEquals(factory.getLandmarks(network), factory.getLandmarks(network));
+    assertEquals(4, factory.getLandmarks(network).getNumberOfLandmarks());
+
+    LeastCostPathCalculator dijkstra = new DijkstraFactory().createPathCalculator(network, TRAVEL_TIME_DISUTILITY, CONGESTED_TRAVEL_TIME);
+    LeastCostPathCalculator alt = factory.createPathCalculator(network, TRAVEL_TIME_DISUTILITY, CONGESTED_TRAVEL_TIME);
+    Node from = network.getNodes().get(TestNetworks.gridNodeId(0, 0));
+    Node to = network.getNodes().get(TestNetworks.gridNodeId(5, 5));
+    assertSamePath(dijkstra.calcLeastCostPath(from, to, PEAK_START, null, null), alt.calcLeastCostPath(from, to, PEAK_START, null, null));
+  }
+
+  /**
+   * A destination that cannot be reached yields no path
+   */
+  @Test
+  public void unreachableDestination() {
+    Network network = TestNetworks.createGrid(3, 3, null);
+    Node isolated = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(-5000, -5000));
+    Node island = NetworkUtils.createAndAddNode(network, Id.createNodeId("island"), new Coord(-6000, -5000));
+    TestNetworks.addLink(network, island, isolated, 1000, 10);
+
+    LeastCostPathCalculator alt = new AltLeastCostPathCalculator(
+        AltLandmarks.create(new RoutingGraph(network), 2), TRAVEL_TIME_DISUTILITY, CONGESTED_TRAVEL_TIME);
+    assertNull(alt.calcLeastCostPath(network.getNodes().get(TestNetworks.gridNodeId(0, 0)), isolated, 0, null, null));
+  }
+}
@@ -0,0 +1,162 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.goplanit.aurin.matsim.MatsimHelper;
+import org.goplanit.aurin.matsim.WrapperOptions;
+import org.goplanit.aurin.matsim.checkpoint.Checkpoint;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Test finding the latest complete {@link Checkpoint} of a run and resuming from it
+ *
+ * @author markr
+ *
+ */
+public class CheckpointTest {
+
+  /** coordinate reference system of the simulation */
+  private static final String GLOBAL_CRS = "epsg:3112";
+
+  /** coordinate reference system of the original plans, differing from the simulation's */
+  private static final String PLANS_CRS = "epsg:4326";
+
+  /** home location of the checkpointed person, in the coordinate reference system of the simulation */
+  private static final Coord HOME = new Coord(970000, -4300000);
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Persist a checkpoint of a single person living at {@link #HOME}, as the checkpoint listener does
+   *
+   * @param outputDir of the run
+   * @param iteration of the checkpoint
+   * @return the checkpoint
+   * @throws Exception thrown if error
+   */
+  private static Checkpoint writeCheckpoint(final Path outputDir, int iteration) throws Exception {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    Person person = population.getFactory().createPerson(Id.createPersonId("person"));
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromCoord("home", HOME);
+    home.setEndTime(8 * 3600);
+    plan.addActivity(home);
+    plan.addLeg(population.getFactory().createLeg(TransportMode.car));
+    plan.addActivity(population.getFactory().createActivityFromCoord("work", new Coord(HOME.getX() + 5000, HOME.getY())));
+    person.addPlan(plan);
+    population.addPerson(person);
+
+    Path checkpointDir = Checkpoint.getCheckpointDir(outputDir);
+    Files.createDirectories(checkpointDir);
+    new PopulationWriter(population).write(Checkpoint.getPlansFile(checkpointDir, iteration).toString());
+    return Checkpoint.complete(checkpointDir, iteration, 4711, 1);
+  }
+
+  /** Configuration of a simulation of which the plans are in another coordinate reference system than the simulation
+   *
+   * @param lastIteration of the simulation
+   * @return config
+   */
+  private static Config createConfig(int lastIteration) {
+    Config config = ConfigUtils.createConfig();
+    config.global().setCoordinateSystem(GLOBAL_CRS);
+    config.plans().setInputCRS(PLANS_CRS);
+    config.controler().setLastIteration(lastIteration);
+    return config;
+  }
+
+  /**
+   * The latest complete checkpoint is found, incomplete checkpoints without properties or without plans are ignored
+   */
+  @Test
+  public void findLatest() throws Exception {
+    Path outputDir = tempFolder.getRoot().toPath();
+    assertFalse(Checkpoint.findLatest(outputDir).isPresent());
+
+    writeCheckpoint(outputDir, 2);
+    writeCheckpoint(outputDir, 4);
+    Path checkpointDir = Checkpoint.getCheckpointDir(outputDir);
+    /* plans of iteration 6 without properties, i.e., still being written */
+    Files.write(Checkpoint.getPlansFile(checkpointDir, 6), new byte[] {0});
+    /* properties of iteration 8 whose plans are gone */
+    Checkpoint.complete(checkpointDir, 8, 4711, 1);
+
+    Checkpoint latest = Checkpoint.findLatest(outputDir).orElseThrow();
+    assertEquals(4, latest.getIteration());
+    assertEquals(4711, latest.getRandomSeed());
+    assertEquals(1, latest.getPersons());
+    assertEquals(Checkpoint.getPlansFile(checkpointDir, 4), latest.getPlansFile());
+
+    latest.delete();
+    assertFalse(Files.exists(latest.getPlansFile()));
+    assertEquals(2, Checkpoint.findLatest(outputDir).orElseThrow().getIteration());
+  }
+
+  /**
+   * Resuming starts from the checkpointed plans at the next iteration with the run's random seed, and the checkpointed coordinates, already in the
+   * coordinate reference system of the simulation, are not transformed again from that of the original plans
+   */
+  @Test
+  public void resumeKeepsCoordinates() throws Exception {
+    Path runDir = tempFolder.newFolder("run").toPath();
+    Checkpoint checkpoint = writeCheckpoint(runDir, 3);
+
+    Config config = createConfig(10);
+    MatsimHelper.configureResume(config, WrapperOptions.builder().resume(runDir).build());
+    assertEquals(4, config.controler().getFirstIteration());
+    assertEquals(4711, config.global().getRandomSeed());
+    assertEquals(checkpoint.getPlansFile().toAbsolutePath().toString(), config.plans().getInputFile());
+    assertNull(config.plans().getInputCRS());
+
+    Scenario scenario = ScenarioUtils.loadScenario(config);
+    Person person = scenario.getPopulation().getPersons().get(Id.createPersonId("person"));
+    Coord home = ((Activity) person.getSelectedPlan().getPlanElements().get(0)).getCoord();
+    assertEquals(HOME.getX(), home.getX(), 1e-6);
+    assertEquals(HOME.getY(), home.getY(), 1e-6);
+  }
+
+  /**
+   * A checkpoint at or beyond the last iteration, or a run without checkpoints, cannot be resumed
+   */
+  @Test
+  public void nothingToResume() throws Exception {
+    Path runDir = tempFolder.newFolder("run").toPath();
+    WrapperOptions options = WrapperOptions.builder().resume(runDir).build();
+    try {
+      MatsimHelper.configureResume(createConfig(10), options);
+      fail("expected no checkpoint to be found");
+    }catch(PlanItException e) {
+      /* expected */
+    }
+
+    writeCheckpoint(runDir, 10);
+    try {
+      MatsimHelper.configureResume(createConfig(10), options);
+      fail("expected checkpoint at last iteration to be rejected");
+    }catch(PlanItException e) {
+      /* expected */
+    }
+  }
+}
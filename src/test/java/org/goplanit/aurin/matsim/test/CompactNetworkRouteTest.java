@@ -0,0 +1,147 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.goplanit.aurin.matsim.plans.CompactNetworkRoute;
+import org.goplanit.aurin.matsim.plans.PlansCompactionListener;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Test the {@link CompactNetworkRoute} holds the same route as the MATSim network route it is created from, and the {@link PlansCompactionListener}
+ * compacts non-selected plans only
+ *
+ * @author markr
+ *
+ */
+public class CompactNetworkRouteTest {
+
+  /** links between start and end link of the test route */
+  private static final List<Id<Link>> LINK_IDS = List.of(Id.createLinkId("b"), Id.createLinkId("c"), Id.createLinkId("d"));
+
+  /** Create the test route from a to e via b, c and d
+   *
+   * @return route
+   */
+  private static NetworkRoute createRoute() {
+    NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(Id.createLinkId("a"), LINK_IDS, Id.createLinkId("e"));
+    route.setDistance(4200);
+    route.setTravelTime(360);
+    route.setTravelCost(12.5);
+    route.setVehicleId(Id.create("vehicle", Vehicle.class));
+    return route;
+  }
+
+  /** Create a plan with a single car leg holding the test route
+   *
+   * @param population to create plan with
+   * @return plan
+   */
+  private static Plan createPlan(final Population population) {
+    Plan plan = population.getFactory().createPlan();
+    plan.addActivity(population.getFactory().createActivityFromLinkId("home", Id.createLinkId("a")));
+    Leg leg = population.getFactory().createLeg(TransportMode.car);
+    leg.setRoute(createRoute());
+    plan.addLeg(leg);
+    plan.addActivity(population.getFactory().createActivityFromLinkId("work", Id.createLinkId("e")));
+    return plan;
+  }
+
+  /**
+   * A compacted route and its expanded copy hold the links and attributes of the original route
+   */
+  @Test
+  public void roundTrip() {
+    NetworkRoute route = createRoute();
+    CompactNetworkRoute compactRoute = CompactNetworkRoute.of(route);
+    assertEquals(route.getStartLinkId(), compactRoute.getStartLinkId());
+    assertEquals(LINK_IDS, compactRoute.getLinkIds());
+    assertEquals(route.getEndLinkId(), compactRoute.getEndLinkId());
+    assertEquals(route.getRouteDescription(), compactRoute.getRouteDescription());
+    assertEquals(route.getRouteType(), compactRoute.getRouteType());
+
+    NetworkRoute expanded = compactRoute.expand();
+    assertFalse(expanded instanceof CompactNetworkRoute);
+    assertEquals(route.getStartLinkId(), expanded.getStartLinkId());
+    assertEquals(LINK_IDS, expanded.getLinkIds());
+    assertEquals(route.getEndLinkId(), expanded.getEndLinkId());
+    assertEquals(4200, expanded.getDistance(), 0);
+    assertEquals(360, expanded.getTravelTime().seconds(), 0);
+    assertEquals(12.5, expanded.getTravelCost(), 0);
+    assertEquals(route.getVehicleId(), expanded.getVehicleId());
+  }
+
+  /**
+   * Parsing a route description yields the route it describes, a clone is unaffected by later changes to the original
+   */
+  @Test
+  public void routeDescriptionAndClone() {
+    var compactRoute = new CompactNetworkRoute(null, null);
+    compactRoute.setRouteDescription(" a b  c d e ");
+    assertEquals(Id.createLinkId("a"), compactRoute.getStartLinkId());
+    assertEquals(LINK_IDS, compactRoute.getLinkIds());
+    assertEquals(Id.createLinkId("e"), compactRoute.getEndLinkId());
+    assertEquals("a b c d e", compactRoute.getRouteDescription());
+
+    CompactNetworkRoute clone = compactRoute.clone();
+    compactRoute.setLinkIds(Id.createLinkId("a"), List.of(), Id.createLinkId("f"));
+    assertEquals(LINK_IDS, clone.getLinkIds());
+    assertEquals(Id.createLinkId("e"), clone.getEndLinkId());
+    assertEquals("a f", compactRoute.getRouteDescription());
+  }
+
+  /**
+   * Before the mobsim, routes of non-selected plans are compacted and compacted routes of the selected plan are expanded
+   */
+  @Test
+  public void compactNonSelectedPlans() {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    Person person = population.getFactory().createPerson(Id.createPersonId("person"));
+    Plan selectedPlan = createPlan(population);
+    Plan otherPlan = createPlan(population);
+    person.addPlan(selectedPlan);
+    person.addPlan(otherPlan);
+    person.setSelectedPlan(selectedPlan);
+    population.addPerson(person);
+
+    var listener = new PlansCompactionListener(population);
+    listener.notifyBeforeMobsim(new BeforeMobsimEvent(null, 1, false));
+    Leg selectedLeg = (Leg) selectedPlan.getPlanElements().get(1);
+    Leg otherLeg = (Leg) otherPlan.getPlanElements().get(1);
+    assertFalse(selectedLeg.getRoute() instanceof CompactNetworkRoute);
+    assertTrue(otherLeg.getRoute() instanceof CompactNetworkRoute);
+    assertEquals(LINK_IDS, ((NetworkRoute) otherLeg.getRoute()).getLinkIds());
+
+    /* replanning selects the other plan, its route is expanded and the former selected plan's route compacted */
+    person.setSelectedPlan(otherPlan);
+    var compactedRoute = otherLeg.getRoute();
+    listener.notifyBeforeMobsim(new BeforeMobsimEvent(null, 2, false));
+    assertFalse(otherLeg.getRoute() instanceof CompactNetworkRoute);
+    assertEquals(LINK_IDS, ((NetworkRoute) otherLeg.getRoute()).getLinkIds());
+    assertTrue(selectedLeg.getRoute() instanceof CompactNetworkRoute);
+    assertNotSame(compactedRoute, otherLeg.getRoute());
+
+    /* a further call leaves compact routes untouched */
+    var stillCompact = selectedLeg.getRoute();
+    listener.notifyBeforeMobsim(new BeforeMobsimEvent(null, 3, false));
+    assertSame(stillCompact, selectedLeg.getRoute());
+  }
+}
@@ -0,0 +1,37 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+
+/**
+ * Test the agents sampled by the {@link HashSampler}
+ *
+ * @author markr
+ *
+ */
+public class HashSamplerTest {
+
+  /**
+   * The hash based sample is close to the requested share, nests for increasing shares and includes all or no agents at the extremes
+   */
+  @Test
+  public void sampleByHash() {
+    int sampled = 0;
+    for(int index = 0; index < 10000; ++index) {
+      Id<Person> agentId = Id.createPersonId("agent_" + index);
+      if(HashSampler.isSampled(agentId, 0.25)) {
+        ++sampled;
+        assertTrue(HashSampler.isSampled(agentId, 0.5));
+      }
+      assertTrue(HashSampler.isSampled(agentId, 1));
+      assertFalse(HashSampler.isSampled(agentId, 0));
+    }
+    assertEquals(2500, sampled, 150);
+  }
+}
@@ -0,0 +1,167 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import org.goplanit.aurin.matsim.validation.InputValidator;
+import org.goplanit.aurin.matsim.validation.ValidationReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.NetworkWriter;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+
+/**
+ * Test the errors and warnings reported by the {@link InputValidator} on a grid network of 4 by 4 nodes
+ *
+ * @author markr
+ *
+ */
+public class InputValidatorTest {
+
+  /** configured activity types */
+  private static final Set<String> ACTIVITY_TYPES = Set.of("home", "work");
+
+  /** link from the first to the second grid node of the bottom row */
+  private static final Id<Link> FIRST_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(1, 0));
+
+  /** link from the second to the third grid node of the bottom row */
+  private static final Id<Link> SECOND_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(1, 0), TestNetworks.gridNodeId(2, 0));
+
+  /** link from the third to the fourth grid node of the bottom row */
+  private static final Id<Link> THIRD_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(2, 0), TestNetworks.gridNodeId(3, 0));
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Add a person travelling by car from home to work via the given links
+   *
+   * @param population to add to
+   * @param id of the person
+   * @param workType activity type at work
+   * @param homeCoord home location
+   * @param links of the route, the first and last being the home and work link
+   */
+  private static void addPerson(final Population population, final String id, final String workType, final Coord homeCoord, final List<Id<Link>> links) {
+    Person person = population.getFactory().createPerson(Id.createPersonId(id));
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromCoord("home", homeCoord);
+    home.setLinkId(links.get(0));
+    home.setEndTime(8 * 3600);
+    plan.addActivity(home);
+    Leg leg = population.getFactory().createLeg(TransportMode.car);
+    leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(links.get(0), links.subList(1, links.size() - 1), links.get(links.size() - 1)));
+    plan.addLeg(leg);
+    plan.addActivity(population.getFactory().createActivityFromLinkId(workType, links.get(links.size() - 1)));
+    person.addPlan(plan);
+    population.addPerson(person);
+  }
+
+  /** Persist the test network
+   *
+   * @return its location
+   * @throws Exception thrown if error
+   */
+  private URL writeNetwork() throws Exception {
+    Path networkFile = tempFolder.getRoot().toPath().resolve("network.xml");
+    new NetworkWriter(TestNetworks.createGrid(4, 4, null)).write(networkFile.toString());
+    return networkFile.toUri().toURL();
+  }
+
+  /** Persist a population
+   *
+   * @param population to persist
+   * @return its location
+   * @throws Exception thrown if error
+   */
+  private URL writePopulation(final Population population) throws Exception {
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    new PopulationWriter(population).write(plansFile.toString());
+    return plansFile.toUri().toURL();
+  }
+
+  /** Validate the test network with the given plans and pt stops
+   *
+   * @param plansUrl plans file
+   * @param ptStopsUrl pt stops file, may be null
+   * @return report
+   * @throws Exception thrown if error
+   */
+  private ValidationReport validate(final URL plansUrl, final URL ptStopsUrl) throws Exception {
+    return new InputValidator(writeNetwork(), new IdentityTransformation(), plansUrl, new IdentityTransformation(), ACTIVITY_TYPES, ptStopsUrl).validate();
+  }
+
+  /**
+   * Plans that only reference network links and configured activity types within the network extent are valid
+   */
+  @Test
+  public void validInputs() throws Exception {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    addPerson(population, "first", "work", new Coord(500, 0), List.of(FIRST_LINK, SECOND_LINK, THIRD_LINK));
+    addPerson(population, "second", "work", new Coord(1500, 0), List.of(SECOND_LINK, THIRD_LINK));
+
+    ValidationReport report = validate(writePopulation(population), null);
+    assertTrue(report.toString(), report.isValid());
+    assertTrue(report.getWarnings().isEmpty());
+    assertEquals(2, report.getPersons());
+    assertEquals(4, report.getActivities());
+  }
+
+  /**
+   * Unknown link ids in activities and routes and unknown activity types are errors, a minority of coordinates outside the network extent a warning
+   */
+  @Test
+  public void inconsistentInputs() throws Exception {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    addPerson(population, "valid", "work", new Coord(500, 0), List.of(FIRST_LINK, SECOND_LINK, THIRD_LINK));
+    addPerson(population, "unknownRouteLink", "work", new Coord(500, 0), List.of(FIRST_LINK, Id.createLinkId("unknown"), THIRD_LINK));
+    addPerson(population, "unknownType", "shop", new Coord(1500, 0), List.of(SECOND_LINK, THIRD_LINK));
+    addPerson(population, "outside", "work", new Coord(10000, 0), List.of(SECOND_LINK, THIRD_LINK));
+
+    ValidationReport report = validate(writePopulation(population), null);
+    assertFalse(report.isValid());
+    assertEquals(report.toString(), 2, report.getErrors().size());
+    assertTrue(report.getErrors().get(0), report.getErrors().get(0).startsWith("1 (e.g., person unknownRouteLink link unknown)"));
+    assertTrue(report.getErrors().get(1), report.getErrors().get(1).contains("shop (1)"));
+    assertEquals(report.toString(), 1, report.getWarnings().size());
+    assertTrue(report.getWarnings().get(0), report.getWarnings().get(0).startsWith("1 (e.g., person outside (10000.0,0.0)) of 4 activity coordinates"));
+  }
+
+  /**
+   * (Nearly) all activity coordinates or pt stops outside the network extent indicate a crs mismatch and are errors, here coordinates of another
+   * crs than the network's
+   */
+  @Test
+  public void crsMismatch() throws Exception {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    addPerson(population, "first", "work", new Coord(970000, -4300000), List.of(FIRST_LINK, SECOND_LINK));
+    addPerson(population, "second", "work", new Coord(975000, -4305000), List.of(SECOND_LINK, THIRD_LINK));
+    Path ptStopsFile = tempFolder.getRoot().toPath().resolve("pt_stops.csv");
+    Files.write(ptStopsFile, List.of("id,x,y", "stop_1,970000,-4300000", "stop_2,975000,-4305000"));
+
+    ValidationReport report = validate(writePopulation(population), ptStopsFile.toUri().toURL());
+    assertEquals(report.toString(), 2, report.getErrors().size());
+    assertTrue(report.getErrors().get(0), report.getErrors().get(0).contains("activity coordinates") && report.getErrors().get(0).endsWith("crs mismatch"));
+    assertTrue(report.getErrors().get(1), report.getErrors().get(1).contains("pt stops") && report.getErrors().get(1).endsWith("crs mismatch"));
+  }
+}
@@ -0,0 +1,97 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.goplanit.aurin.matsim.events.LinkVolumeShard;
+import org.goplanit.aurin.matsim.events.LinkVolumesModule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Test counting of hourly link volumes by {@link LinkVolumeShard}s, sharded by link id as done by the {@link LinkVolumesModule}
+ *
+ * @author markr
+ *
+ */
+public class LinkVolumeShardTest {
+
+  /** number of links the events are generated for */
+  private static final int LINKS = 40;
+
+  /** Create random link enter events for the test links over the day
+   *
+   * @return events
+   */
+  private static List<LinkEnterEvent> createEvents() {
+    Random random = new Random(13);
+    Id<Vehicle> vehicleId = Id.create("vehicle", Vehicle.class);
+    List<LinkEnterEvent> events = new ArrayList<>();
+    for(int index = 0; index < 5000; ++index) {
+      events.add(new LinkEnterEvent(random.nextInt(24 * 3600), vehicleId, Id.createLinkId("link_" + random.nextInt(LINKS))));
+    }
+    return events;
+  }
+
+  /**
+   * Each link is owned by exactly one shard and the shards together count the same volumes as a single shard
+   */
+  @Test
+  public void shardsPartitionVolumes() {
+    List<LinkEnterEvent> events = createEvents();
+    var single = new LinkVolumeShard(0, 1, LinkVolumesModule.HOURS);
+    List<LinkVolumeShard> shards = new ArrayList<>();
+    for(int shard = 0; shard < 3; ++shard) {
+      shards.add(new LinkVolumeShard(shard, 3, LinkVolumesModule.HOURS));
+    }
+    for(LinkEnterEvent event : events) {
+      single.handleEvent(event);
+      shards.forEach(shard -> shard.handleEvent(event));
+    }
+
+    for(int index = 0; index < LINKS; ++index) {
+      Id<Link> linkId = Id.createLinkId("link_" + index);
+      assertEquals(1, shards.stream().filter(shard -> shard.isOwner(linkId)).count());
+    }
+    Map<Id<Link>, int[]> merged = new HashMap<>();
+    for(LinkVolumeShard shard : shards) {
+      for(Map.Entry<Id<Link>, int[]> entry : shard.getVolumes().entrySet()) {
+        assertTrue(shard.isOwner(entry.getKey()));
+        assertFalse(merged.containsKey(entry.getKey()));
+        merged.put(entry.getKey(), entry.getValue());
+      }
+    }
+    assertEquals(single.getVolumes().keySet(), merged.keySet());
+    single.getVolumes().forEach((linkId, volumes) -> assertArrayEquals(volumes, merged.get(linkId)));
+    assertEquals(events.size(), single.getVolumes().values().stream().flatMapToInt(Arrays::stream).sum());
+  }
+
+  /**
+   * Entries are counted in the hour they occur in, entries beyond the tracked hours in the last hour, and a reset clears all volumes
+   */
+  @Test
+  public void hourlyVolumes() {
+    var shard = new LinkVolumeShard(0, 1, 4);
+    Id<Vehicle> vehicleId = Id.create("vehicle", Vehicle.class);
+    Id<Link> linkId = Id.createLinkId("link");
+    for(double time : new double[] {0, 3599, 3600, 2 * 3600 + 10, 10 * 3600}) {
+      shard.handleEvent(new LinkEnterEvent(time, vehicleId, linkId));
+    }
+    assertArrayEquals(new int[] {2, 1, 1, 1}, shard.getVolumes().get(linkId));
+
+    shard.reset(1);
+    assertTrue(shard.getVolumes().isEmpty());
+  }
+}
@@ -1,8 +1,10 @@
 package org.goplanit.aurin.matsim.test;
 
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import org.goplanit.aurin.matsim.PlanitAurinMatsimMain;
@@ -25,6 +27,7 @@ public class MatsimWrapperCarOnlyTest {
   
   private static final URL network = ResourceUtils.getResourceUrl("./Melbourne/car_simple_melbourne_network_cleaned.xml");
   private static final URL plans = ResourceUtils.getResourceUrl("./Melbourne/plans_victoria_car.xml");
+  private static final URL skim_zones = ResourceUtils.getResourceUrl("./Melbourne/skim_zones.csv");
   private static final URL activity_config = ResourceUtils.getResourceUrl("./Melbourne/activity_config.xml");
   private static final URL EXAMPLE_USER_CONFIG_NO_ACTIVITY_TYPES = ResourceUtils.getResourceUrl("./Melbourne/car_no_activity_types_user_config.xml");;
   
@@ -32,6 +35,7 @@ public class MatsimWrapperCarOnlyTest {
 
   private static final Path MATSIM_SIM_OUTPUT_DIR = Path.of(MATSIM_OUTPUT_DIR.toString(),"car");
   private static final Path MATSIM_SIM_CUSTOM_OUTPUT_DIR = Path.of(MATSIM_OUTPUT_DIR.toString(),"car_custom");
+  private static final Path MATSIM_WINDOW_OUTPUT_DIR = Path.of(MATSIM_OUTPUT_DIR.toString(),"car_window");
 
   /**
    * Ensure that generated output files in tmp dir are cleaned up by deleting dirs and content because otherwise
@@ -41,6 +45,7 @@ public class MatsimWrapperCarOnlyTest {
   public static void beforeClass(){
     FileUtils.deleteDirectory(MATSIM_SIM_OUTPUT_DIR.toAbsolutePath().toFile());
     FileUtils.deleteDirectory(MATSIM_SIM_CUSTOM_OUTPUT_DIR.toAbsolutePath().toFile());
+    FileUtils.deleteDirectory(MATSIM_WINDOW_OUTPUT_DIR.toAbsolutePath().toFile());
     FileUtils.deleteDirectory(MATSIM_OUTPUT_DIR.toAbsolutePath().toFile());
   }
   
@@ -162,5 +167,42 @@ public class MatsimWrapperCarOnlyTest {
     }
   }
 
+  /**
+   * Test to generate a configuration file for a morning peak where the plans are filtered to the time window, the filtered plans
+   * file should be persisted alongside the configuration and be smaller than the original plans file
+   */
+  @Test
+  public void matsimTimeWindowFilteredConfigGenerator() {
+    try {  
+      
+      PlanitAurinMatsimMain.main(
+          new String[]{
+              "--type",
+              "config",
+              "--modes",
+              "car_sim",
+              "--plans",
+              UrlUtils.asLocalPath(plans).toString(),
+              "--starttime",
+              "07:00:00",
+              "--endtime",
+              "09:00:00",
+              "--plans_time_filter",
+              "yes",
+              "--iterations_max",
+              "1",
+              "--output",
+              MATSIM_WINDOW_OUTPUT_DIR.toAbsolutePath().toString()});
+      
+      Path filteredPlans = MATSIM_WINDOW_OUTPUT_DIR.resolve("plans_victoria_car_window_25200_32400.xml");
+      assertTrue(Files.exists(filteredPlans));
+      assertTrue(Files.size(filteredPlans) < Files.size(UrlUtils.asLocalPath(plans)));
+      
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail("Error when testing Aurin MATSim simulation Wrapper - matsimTimeWindowFilteredConfigGenerator");
+    }
+  }
+
 }
 
@@ -0,0 +1,117 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.goplanit.aurin.matsim.MatsimHelper;
+import org.goplanit.aurin.matsim.MatsimWrapperRunner;
+import org.goplanit.aurin.matsim.ModesType;
+import org.goplanit.aurin.matsim.WrapperOptions;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.goplanit.utils.misc.FileUtils;
+import org.goplanit.utils.misc.UrlUtils;
+import org.goplanit.utils.resource.ResourceUtils;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+
+/**
+ * Test the PLANit MATSim simulation Wrapper when used from Java via the {@link MatsimWrapperRunner} rather than the command line
+ * 
+ * @author markr
+ *
+ */
+public class MatsimWrapperRunnerTest {
+  
+  private static final URL plans = ResourceUtils.getResourceUrl("./Melbourne/plans_victoria_car.xml");
+  private static final URL activity_config = ResourceUtils.getResourceUrl("./Melbourne/activity_config.xml");
+  
+  private static final Path MATSIM_OUTPUT_DIR = Path.of(".","output");
+
+  private static final Path MATSIM_RUNNER_OUTPUT_DIR = Path.of(MATSIM_OUTPUT_DIR.toString(),"runner");
+
+  /**
+   * Ensure that generated output files are cleaned up
+   */
+  @BeforeClass
+  public static void beforeClass(){
+    FileUtils.deleteDirectory(MATSIM_RUNNER_OUTPUT_DIR.toAbsolutePath().toFile());
+  }
+  
+  /**
+   * Generate configurations for a small sweep over the flow capacity factor and number of iterations concurrently from within the same JVM, each
+   * with its own output directory, and verify each configuration reflects the settings of its own run only
+   */
+  @Test
+  public void matsimConcurrentConfigGeneration() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      
+      WrapperOptions baseOptions = WrapperOptions.builder()
+          .type(MatsimHelper.TYPE_CONFIG_VALUE)
+          .modes(ModesType.CAR_ONLY)
+          .crs("epsg:3112")
+          .plans(Path.of(UrlUtils.asLocalPath(plans).toAbsolutePath().toString()))
+          .plansCrs("epsg:3112")
+          .activityConfig(Path.of(UrlUtils.asLocalPath(activity_config).toAbsolutePath().toString()))
+          .iterationsMax(2).build();
+      
+      double[] flowCapacityFactors = new double[] {0.5, 1};
+      int[] iterationsMax = new int[] {3, 7};
+      List<Path> outputDirs = new ArrayList<>();
+      List<Future<?>> runs = new ArrayList<>();
+      for(int index = 0; index < flowCapacityFactors.length; ++index) {
+        Path outputDir = Path.of(MATSIM_RUNNER_OUTPUT_DIR.toString(), "sweep_" + index);
+        outputDirs.add(outputDir);
+        
+        WrapperOptions options = baseOptions
+            .with(MatsimHelper.CAPACITY_FLOW_FACTOR_KEY, String.valueOf(flowCapacityFactors[index]))
+            .with(MatsimHelper.ITERATIONS_MAX_KEY, String.valueOf(iterationsMax[index]))
+            .with(MatsimHelper.OUTPUT_KEY, outputDir.toAbsolutePath().toString());
+        runs.add(executor.submit(() -> { new MatsimWrapperRunner(options).run(); return null; }));
+      }
+      
+      for(Future<?> run : runs) {
+        run.get();
+      }
+      for(int index = 0; index < outputDirs.size(); ++index) {
+        Path configFile = Path.of(outputDirs.get(index).toString(), MatsimHelper.DEFAULT_MATSIM_CONFIG_FILE);
+        assertTrue(Files.exists(configFile));
+        
+        Config config = ConfigUtils.loadConfig(configFile.toAbsolutePath().toString());
+        assertEquals(flowCapacityFactors[index], config.qsim().getFlowCapFactor(), 0);
+        assertEquals(iterationsMax[index], config.controler().getLastIteration());
+      }
+      
+      /* the shared base options are not affected by the runs */
+      assertFalse(baseOptions.isSet(MatsimHelper.CAPACITY_FLOW_FACTOR_KEY));
+      assertEquals("2", baseOptions.get(MatsimHelper.ITERATIONS_MAX_KEY));
+      
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail("Error when testing Aurin MATSim simulation Wrapper - matsimConcurrentConfigGeneration");
+    } finally {
+      executor.shutdown();
+    }
+  }
+  
+  /**
+   * Ensure that generated output files are cleaned up
+   */  
+  @AfterClass
+  public static void afterClass(){
+    FileUtils.deleteDirectory(MATSIM_RUNNER_OUTPUT_DIR.toAbsolutePath().toFile());
+  }  
+}
@@ -0,0 +1,60 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.goplanit.aurin.matsim.MatsimHelper;
+import org.goplanit.aurin.matsim.WrapperOptions;
+import org.goplanit.aurin.matsim.mobsim.MobsimScheduleModule;
+import org.junit.Test;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+
+/**
+ * Test parsing of the mobsim schedule, i.e., the number of final iterations simulated by QSim with the iterations before simulated by Hermes, see
+ * {@link MobsimScheduleModule}
+ *
+ * @author markr
+ *
+ */
+public class MobsimScheduleTest {
+
+  /** Create a configuration of iterations 0 to 9 with QSim as mobsim
+   *
+   * @return config
+   */
+  private static Config createConfig() {
+    Config config = ConfigUtils.createConfig();
+    config.controler().setFirstIteration(0);
+    config.controler().setLastIteration(9);
+    config.controler().setMobsim(ControlerConfigGroup.MobsimType.qsim.toString());
+    return config;
+  }
+
+  /**
+   * A positive number of QSim iterations less than the configured iterations is accepted, absent or invalid values disable the schedule
+   */
+  @Test
+  public void parseSchedule() {
+    Config config = createConfig();
+    assertEquals(0, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().build()));
+    assertEquals(2, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().mobsimSchedule(2).build()));
+    assertEquals(9, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().mobsimSchedule(9).build()));
+    assertEquals(2, new MobsimScheduleModule(2).getQsimIterations());
+
+    assertEquals(0, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().mobsimSchedule(0).build()));
+    assertEquals(0, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().option(MatsimHelper.MOBSIM_SCHEDULE_KEY, "two").build()));
+    /* QSim simulating all iterations leaves nothing for Hermes */
+    assertEquals(0, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().mobsimSchedule(10).build()));
+  }
+
+  /**
+   * The schedule requires QSim as configured mobsim
+   */
+  @Test
+  public void requireQsim() {
+    Config config = createConfig();
+    config.controler().setMobsim(ControlerConfigGroup.MobsimType.hermes.toString());
+    assertEquals(0, MatsimHelper.parseMobsimSchedule(config, WrapperOptions.builder().mobsimSchedule(2).build()));
+  }
+}
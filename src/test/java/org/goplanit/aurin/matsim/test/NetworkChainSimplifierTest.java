@@ -0,0 +1,186 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.goplanit.aurin.matsim.network.NetworkChainSimplifier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+
+/**
+ * Test merging of chains of links through degree two nodes by the {@link NetworkChainSimplifier}, on a corridor of nodes 0 to 4 that branches
+ * to nodes 5 and 6 at node 4
+ *
+ * @author markr
+ *
+ */
+public class NetworkChainSimplifierTest {
+
+  /** free speed of the corridor (m/s) */
+  private static final double FREESPEED = 50 / 3.6;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Id of a link between two corridor nodes
+   *
+   * @param from node index
+   * @param to node index
+   * @return link id
+   */
+  private static Id<Link> linkId(int from, int to) {
+    return TestNetworks.linkId(Id.createNodeId(from), Id.createNodeId(to));
+  }
+
+  /** Create the corridor with links of 1 km in both directions, node 4 connects to the branch nodes 5 and 6
+   *
+   * @return network
+   */
+  private static Network createCorridor() {
+    Network network = NetworkUtils.createNetwork();
+    for(int index = 0; index <= 4; ++index) {
+      NetworkUtils.createAndAddNode(network, Id.createNodeId(index), new Coord(index * 1000, 0));
+    }
+    NetworkUtils.createAndAddNode(network, Id.createNodeId(5), new Coord(4000, 1000));
+    NetworkUtils.createAndAddNode(network, Id.createNodeId(6), new Coord(4000, -1000));
+    int[][] pairs = {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {4, 6}};
+    for(int[] pair : pairs) {
+      Node first = network.getNodes().get(Id.createNodeId(pair[0]));
+      Node second = network.getNodes().get(Id.createNodeId(pair[1]));
+      TestNetworks.addLink(network, first, second, 1000, FREESPEED);
+      TestNetworks.addLink(network, second, first, 1000, FREESPEED);
+    }
+    return network;
+  }
+
+  /**
+   * The corridor is merged into a single link per direction with the total length and attributes of its first link, every original link maps
+   * onto the link it is merged into
+   */
+  @Test
+  public void mergeChains() {
+    Network network = createCorridor();
+    var simplifier = new NetworkChainSimplifier();
+    simplifier.run(network);
+
+    assertEquals(6, network.getLinks().size());
+    assertEquals(4, network.getNodes().size());
+    Link forward = network.getLinks().get(linkId(0, 1));
+    assertEquals(Id.createNodeId(0), forward.getFromNode().getId());
+    assertEquals(Id.createNodeId(4), forward.getToNode().getId());
+    assertEquals(4000, forward.getLength(), 0);
+    assertEquals(FREESPEED, forward.getFreespeed(), 0);
+    assertEquals(1800, forward.getCapacity(), 0);
+    assertEquals(1, forward.getNumberOfLanes(), 0);
+    assertTrue(forward.getAllowedModes().contains(TransportMode.car));
+    Link backward = network.getLinks().get(linkId(4, 3));
+    assertEquals(Id.createNodeId(0), backward.getToNode().getId());
+    assertEquals(4000, backward.getLength(), 0);
+    assertNotNull(network.getLinks().get(linkId(4, 5)));
+
+    Map<Id<Link>, Id<Link>> mapping = simplifier.getMapping();
+    assertEquals(8, mapping.size());
+    for(int index = 0; index < 4; ++index) {
+      assertEquals(linkId(0, 1), mapping.get(linkId(index, index + 1)));
+      assertEquals(linkId(4, 3), mapping.get(linkId(index + 1, index)));
+    }
+    assertFalse(mapping.containsKey(linkId(4, 5)));
+  }
+
+  /**
+   * A node between links with different attributes is retained, so chains only merge links with identical attributes
+   */
+  @Test
+  public void incompatibleLinksAreNotMerged() {
+    Network network = createCorridor();
+    network.getLinks().get(linkId(2, 3)).setFreespeed(80 / 3.6);
+    network.getLinks().get(linkId(3, 2)).setFreespeed(80 / 3.6);
+    var simplifier = new NetworkChainSimplifier();
+    simplifier.run(network);
+
+    /* only node 1 is merged away */
+    assertEquals(10, network.getLinks().size());
+    assertEquals(2000, network.getLinks().get(linkId(0, 1)).getLength(), 0);
+    assertEquals(Id.createNodeId(2), network.getLinks().get(linkId(0, 1)).getToNode().getId());
+    assertEquals(Map.of(linkId(0, 1), linkId(0, 1), linkId(1, 2), linkId(0, 1), linkId(2, 1), linkId(2, 1), linkId(1, 0), linkId(2, 1)),
+        simplifier.getMapping());
+  }
+
+  /**
+   * Activities on merged links move to the link they are merged into, routes using merged links are removed and other routes are retained
+   */
+  @Test
+  public void updatePopulation() {
+    Network network = createCorridor();
+    var simplifier = new NetworkChainSimplifier();
+    simplifier.run(network);
+
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    Person person = population.getFactory().createPerson(Id.createPersonId("person"));
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromLinkId("home", linkId(2, 3));
+    home.setEndTime(8 * 3600);
+    plan.addActivity(home);
+    Leg mergedLeg = population.getFactory().createLeg(TransportMode.car);
+    mergedLeg.setRoute(RouteUtils.createLinkNetworkRouteImpl(linkId(2, 3), List.of(linkId(3, 4)), linkId(4, 5)));
+    plan.addLeg(mergedLeg);
+    Activity work = population.getFactory().createActivityFromLinkId("work", linkId(4, 5));
+    work.setEndTime(17 * 3600);
+    plan.addActivity(work);
+    Leg branchLeg = population.getFactory().createLeg(TransportMode.car);
+    branchLeg.setRoute(RouteUtils.createLinkNetworkRouteImpl(linkId(4, 5), List.of(linkId(5, 4)), linkId(4, 6)));
+    plan.addLeg(branchLeg);
+    plan.addActivity(population.getFactory().createActivityFromLinkId("shop", linkId(4, 6)));
+    person.addPlan(plan);
+    population.addPerson(person);
+
+    simplifier.updatePopulation(population);
+    assertEquals(linkId(0, 1), home.getLinkId());
+    assertNull(mergedLeg.getRoute());
+    assertEquals(linkId(4, 5), work.getLinkId());
+    assertNotNull(branchLeg.getRoute());
+  }
+
+  /**
+   * The mapping is persisted in the output directory, named after the network file without its extensions
+   */
+  @Test
+  public void writeMapping() throws Exception {
+    Network network = createCorridor();
+    var simplifier = new NetworkChainSimplifier();
+    simplifier.run(network);
+
+    Path outputDir = tempFolder.getRoot().toPath().resolve("output");
+    Path mappingFile = simplifier.writeMapping(Path.of("inputs", "network.xml.gz"), outputDir);
+    assertEquals(outputDir.resolve("network" + NetworkChainSimplifier.MAPPING_POSTFIX + ".csv"), mappingFile);
+    List<String> lines = Files.readAllLines(mappingFile);
+    assertEquals(9, lines.size());
+    assertEquals(NetworkChainSimplifier.MAPPING_HEADER, lines.get(0));
+    assertTrue(lines.contains(linkId(2, 3) + "," + linkId(0, 1)));
+    assertTrue(lines.contains(linkId(1, 0) + "," + linkId(4, 3)));
+  }
+}
@@ -0,0 +1,163 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.goplanit.aurin.matsim.baserun.BaseRunRerouter;
+import org.goplanit.aurin.matsim.baserun.NetworkDiff;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+
+/**
+ * Test the changed and affected links found by the {@link NetworkDiff} between two grids of 4 by 4 nodes, and the rerouting of the agents
+ * traversing them by the {@link BaseRunRerouter}
+ *
+ * @author markr
+ *
+ */
+public class NetworkDiffTest {
+
+  /** link of which the capacity is halved */
+  private static final Id<Link> MODIFIED_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(1, 1), TestNetworks.gridNodeId(2, 1));
+
+  /** link that is removed */
+  private static final Id<Link> REMOVED_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(2, 2), TestNetworks.gridNodeId(2, 3));
+
+  /** diagonal link that is added */
+  private static final Id<Link> ADDED_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(1, 1));
+
+  /** Create the new network, a grid with a modified, a removed and an added link
+   *
+   * @return network
+   */
+  private static Network createNetwork() {
+    Network network = TestNetworks.createGrid(4, 4, null);
+    Link modified = network.getLinks().get(MODIFIED_LINK);
+    modified.setCapacity(modified.getCapacity() / 2);
+    network.removeLink(REMOVED_LINK);
+    TestNetworks.addLink(network, network.getNodes().get(TestNetworks.gridNodeId(0, 0)), network.getNodes().get(TestNetworks.gridNodeId(1, 1)),
+        1500, 50 / 3.6);
+    return network;
+  }
+
+  /** Create a car plan from home to work via the given links
+   *
+   * @param population to create for
+   * @param links of the route, the first and last being the home and work link
+   * @return plan
+   */
+  private static Plan createPlan(final Population population, final List<Id<Link>> links) {
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromLinkId("home", links.get(0));
+    home.setEndTime(8 * 3600);
+    plan.addActivity(home);
+    Leg leg = population.getFactory().createLeg(TransportMode.car);
+    leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(links.get(0), links.subList(1, links.size() - 1), links.get(links.size() - 1)));
+    plan.addLeg(leg);
+    plan.addActivity(population.getFactory().createActivityFromLinkId("work", links.get(links.size() - 1)));
+    plan.setScore(100.0);
+    return plan;
+  }
+
+  /** Link between two grid nodes
+   *
+   * @param fromColumn column of the upstream node
+   * @param fromRow row of the upstream node
+   * @param toColumn column of the downstream node
+   * @param toRow row of the downstream node
+   * @return link id
+   */
+  private static Id<Link> gridLink(int fromColumn, int fromRow, int toColumn, int toRow) {
+    return TestNetworks.linkId(TestNetworks.gridNodeId(fromColumn, fromRow), TestNetworks.gridNodeId(toColumn, toRow));
+  }
+
+  /**
+   * Added, removed and modified links are changed, each hop adds the links incident to the nodes of the previous hop's links in either network
+   */
+  @Test
+  public void affectedLinks() {
+    Network baseNetwork = TestNetworks.createGrid(4, 4, null);
+    NetworkDiff diff = new NetworkDiff(baseNetwork, createNetwork());
+    assertEquals(Set.of(MODIFIED_LINK, REMOVED_LINK, ADDED_LINK), diff.getChangedLinks());
+    assertEquals(diff.getChangedLinks(), diff.getAffectedLinks(0));
+
+    /* nodes of the changed links, including those of the removed link only present in the base network */
+    Set<Id<Node>> changedNodes = Set.of(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(1, 1), TestNetworks.gridNodeId(2, 1),
+        TestNetworks.gridNodeId(2, 2), TestNetworks.gridNodeId(2, 3));
+    Set<Id<Link>> expected = new HashSet<>(diff.getChangedLinks());
+    for(Link link : baseNetwork.getLinks().values()) {
+      if(changedNodes.contains(link.getFromNode().getId()) || changedNodes.contains(link.getToNode().getId())) {
+        expected.add(link.getId());
+      }
+    }
+    assertEquals(expected, diff.getAffectedLinks(1));
+
+    /* a corner link only is reached on the second hop */
+    Id<Link> cornerLink = gridLink(3, 0, 3, 1);
+    assertFalse(diff.getAffectedLinks(1).contains(cornerLink));
+    assertTrue(diff.getAffectedLinks(2).contains(cornerLink));
+
+    assertTrue(new NetworkDiff(baseNetwork, TestNetworks.createGrid(4, 4, null)).getAffectedLinks(3).isEmpty());
+  }
+
+  /**
+   * Only the selected plans traversing an affected link are rerouted on the new network and lose their score, non-selected plans traversing one are
+   * removed and other plans are untouched
+   */
+  @Test
+  public void rerouteAffectedPersons() {
+    Network baseNetwork = TestNetworks.createGrid(4, 4, null);
+    Network network = createNetwork();
+    NetworkDiff diff = new NetworkDiff(baseNetwork, network);
+
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    Person affected = population.getFactory().createPerson(Id.createPersonId("affected"));
+    affected.addPlan(createPlan(population, List.of(gridLink(1, 2, 2, 2), REMOVED_LINK, gridLink(2, 3, 3, 3))));
+    affected.addPlan(createPlan(population, List.of(gridLink(0, 1, 1, 1), MODIFIED_LINK, gridLink(2, 1, 3, 1))));
+    population.addPerson(affected);
+    Person unaffected = population.getFactory().createPerson(Id.createPersonId("unaffected"));
+    Plan unaffectedPlan = createPlan(population, List.of(gridLink(0, 0, 1, 0), gridLink(1, 0, 2, 0), gridLink(2, 0, 3, 0)));
+    unaffected.addPlan(unaffectedPlan);
+    population.addPerson(unaffected);
+    NetworkRoute unaffectedRoute = (NetworkRoute) ((Leg) unaffectedPlan.getPlanElements().get(1)).getRoute();
+
+    BaseRunRerouter rerouter = new BaseRunRerouter(network, (link, time, person, vehicle) -> link.getLength() / link.getFreespeed(time),
+        diff.getChangedLinks(), diff.getAffectedLinks(0));
+    rerouter.run(population);
+    assertEquals(1, rerouter.getPersonsAffected());
+    assertEquals(1, rerouter.getLegsRerouted());
+    assertEquals(0, rerouter.getLegsUnrouted());
+
+    assertEquals(1, affected.getPlans().size());
+    assertNull(affected.getSelectedPlan().getScore());
+    NetworkRoute route = (NetworkRoute) ((Leg) affected.getSelectedPlan().getPlanElements().get(1)).getRoute();
+    assertEquals(gridLink(1, 2, 2, 2), route.getStartLinkId());
+    assertEquals(gridLink(2, 3, 3, 3), route.getEndLinkId());
+    /* shortest detour around the removed link */
+    assertEquals(3, route.getLinkIds().size());
+    assertFalse(route.getLinkIds().contains(REMOVED_LINK));
+
+    assertEquals(100.0, unaffectedPlan.getScore(), 0);
+    assertSame(unaffectedRoute, ((Leg) unaffectedPlan.getPlanElements().get(1)).getRoute());
+  }
+}
@@ -0,0 +1,135 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.goplanit.aurin.matsim.io.PipelinedGzipInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the {@link PipelinedGzipInputStream} yields the inflated content regardless of how it is read, and reports corrupt content
+ *
+ * @author markr
+ *
+ */
+public class PipelinedGzipInputStreamTest {
+
+  /** size of each buffer of the small ring used, so the content spans many buffers */
+  private static final int BUFFER_SIZE = 1000;
+
+  /** number of buffers of the small ring used */
+  private static final int BUFFERS = 3;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Create content resembling a plans file
+   *
+   * @return content
+   */
+  private static byte[] createContent() {
+    StringBuilder content = new StringBuilder("<population>\n");
+    for(int index = 0; index < 2000; ++index) {
+      content.append(String.format("<person id=\"%d\"><plan><act type=\"home\" x=\"%d\" y=\"%d\"/></plan></person>\n", index, index * 7, index * 13));
+    }
+    return content.append("</population>\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Gzip content
+   *
+   * @param content to gzip
+   * @return gzipped content
+   * @throws IOException thrown if error
+   */
+  private static byte[] gzip(final byte[] content) throws IOException {
+    var compressed = new ByteArrayOutputStream();
+    try(var out = new GZIPOutputStream(compressed)){
+      out.write(content);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Content read in chunks of varying size, mixed with single bytes, equals the original content across buffer boundaries
+   */
+  @Test
+  public void inflateAcrossBuffers() throws Exception {
+    byte[] content = createContent();
+    var inflated = new ByteArrayOutputStream();
+    try(InputStream in = new PipelinedGzipInputStream(new ByteArrayInputStream(gzip(content)), BUFFER_SIZE, BUFFERS)){
+      byte[] chunk = new byte[1733];
+      int length = 1;
+      while(true) {
+        int single = in.read();
+        if(single < 0) {
+          break;
+        }
+        inflated.write(single);
+        int read = in.read(chunk, 0, length);
+        if(read < 0) {
+          break;
+        }
+        inflated.write(chunk, 0, read);
+        length = (length + 97) % chunk.length + 1;
+      }
+      assertEquals(-1, in.read(chunk, 0, chunk.length));
+    }
+    assertArrayEquals(content, inflated.toByteArray());
+  }
+
+  /**
+   * Gzipped files are opened pipelined, other files as is, both yielding the original content
+   */
+  @Test
+  public void openFiles() throws Exception {
+    byte[] content = createContent();
+    Path gzippedFile = tempFolder.getRoot().toPath().resolve("plans.xml" + PipelinedGzipInputStream.GZIP_EXTENSION);
+    Files.write(gzippedFile, gzip(content));
+    Path plainFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    Files.write(plainFile, content);
+
+    try(InputStream in = PipelinedGzipInputStream.open(gzippedFile)){
+      assertEquals(PipelinedGzipInputStream.class, in.getClass());
+      assertArrayEquals(content, in.readAllBytes());
+    }
+    try(InputStream in = PipelinedGzipInputStream.open(plainFile)){
+      assertFalse(in instanceof PipelinedGzipInputStream);
+      assertArrayEquals(content, in.readAllBytes());
+    }
+  }
+
+  /**
+   * Corrupt content fails the consumer once the content inflated before the corruption is consumed, closing early does not block
+   */
+  @Test
+  public void corruptContent() throws Exception {
+    byte[] compressed = gzip(createContent());
+    byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+    try(InputStream in = new PipelinedGzipInputStream(new ByteArrayInputStream(truncated), BUFFER_SIZE, BUFFERS)){
+      in.readAllBytes();
+      fail("expected truncated content to fail");
+    }catch(IOException e) {
+      /* expected */
+    }
+
+    /* the inflater waits for a free buffer when the consumer stops reading, closing releases it */
+    InputStream in = new PipelinedGzipInputStream(new ByteArrayInputStream(compressed), BUFFER_SIZE, BUFFERS);
+    assertEquals('<', in.read());
+    in.close();
+    assertEquals(-1, in.read());
+  }
+}
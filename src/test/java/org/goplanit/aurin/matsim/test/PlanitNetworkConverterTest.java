@@ -0,0 +1,152 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Set;
+
+import org.goplanit.aurin.matsim.MatsimHelper;
+import org.goplanit.aurin.matsim.network.PlanitNetworkConverter;
+import org.goplanit.network.MacroscopicNetwork;
+import org.goplanit.network.layer.macroscopic.AccessGroupPropertiesFactory;
+import org.goplanit.utils.geo.PlanitJtsUtils;
+import org.goplanit.utils.id.IdGenerator;
+import org.goplanit.utils.mode.Mode;
+import org.goplanit.utils.mode.PredefinedModeType;
+import org.goplanit.utils.network.layer.MacroscopicNetworkLayer;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegment;
+import org.goplanit.utils.network.layer.macroscopic.MacroscopicLinkSegmentType;
+import org.goplanit.utils.network.layer.physical.Link;
+import org.goplanit.utils.network.layer.physical.Node;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+/**
+ * Test conversion of a PLANit network in memory into a MATSim network by the {@link PlanitNetworkConverter}
+ *
+ * @author markr
+ *
+ */
+public class PlanitNetworkConverterTest {
+
+  /** crs of the PLANit network */
+  private static final String PLANIT_CRS = TransformationFactory.WGS84;
+
+  /** crs of the simulation */
+  private static final String GLOBAL_CRS = "epsg:3112";
+
+  /** position of the upstream node of the test link, in the crs of the PLANit network */
+  private static final Coord ORIGIN = new Coord(144.96, -37.81);
+
+  /** position of the downstream node of the test link, in the crs of the PLANit network */
+  private static final Coord DESTINATION = new Coord(144.97, -37.81);
+
+  /** Create a PLANit network with a single two-way link, of which the AB direction has two lanes of an arterial type allowing cars and bicycles
+   * at 60 km/h and the BA direction a single lane of a local type allowing cars at 40 km/h
+   *
+   * @return network
+   */
+  private static MacroscopicNetwork createPlanitNetwork() {
+    var network = new MacroscopicNetwork(IdGenerator.createIdGroupingToken(PlanitNetworkConverterTest.class.getSimpleName()));
+    network.setXmlId("test");
+    Mode car = network.getModes().getFactory().registerNew(PredefinedModeType.CAR);
+    Mode bicycle = network.getModes().getFactory().registerNew(PredefinedModeType.BICYCLE);
+    MacroscopicNetworkLayer layer = network.getTransportLayers().getFactory().registerNew();
+    layer.registerSupportedMode(car);
+    layer.registerSupportedMode(bicycle);
+
+    Node origin = layer.getNodes().getFactory().registerNew();
+    origin.setXmlId("a");
+    origin.setPosition(PlanitJtsUtils.createPoint(ORIGIN.getX(), ORIGIN.getY()));
+    Node destination = layer.getNodes().getFactory().registerNew();
+    destination.setXmlId("b");
+    destination.setPosition(PlanitJtsUtils.createPoint(DESTINATION.getX(), DESTINATION.getY()));
+    Link link = layer.getLinks().getFactory().registerNew(origin, destination, 0.9, true);
+    link.setXmlId("ab");
+
+    MacroscopicLinkSegmentType arterial = layer.getLinkSegmentTypes().getFactory().registerNew("arterial", 900, 180);
+    arterial.setAccessGroupProperties(AccessGroupPropertiesFactory.create(60, car, bicycle));
+    MacroscopicLinkSegment forward = layer.getLinkSegments().getFactory().registerNew(link, true, true);
+    forward.setXmlId("ab_forward");
+    forward.setLinkSegmentType(arterial);
+    forward.setNumberOfLanes(2);
+    forward.setPhysicalSpeedLimitKmH(60);
+
+    MacroscopicLinkSegmentType local = layer.getLinkSegmentTypes().getFactory().registerNew("local", 600, 180);
+    local.setAccessGroupProperties(AccessGroupPropertiesFactory.create(40, car));
+    MacroscopicLinkSegment backward = layer.getLinkSegments().getFactory().registerNew(link, false, true);
+    backward.setXmlId("ab_backward");
+    backward.setLinkSegmentType(local);
+    backward.setNumberOfLanes(1);
+    backward.setPhysicalSpeedLimitKmH(40);
+    return network;
+  }
+
+  /**
+   * Each link segment becomes a MATSim link with the length, free speed, lanes, capacity, allowed modes and type of the PLANit network
+   */
+  @Test
+  public void convertLinkSegments() throws Exception {
+    MacroscopicNetwork planitNetwork = createPlanitNetwork();
+    Network network = NetworkUtils.createNetwork();
+    new PlanitNetworkConverter(new IdentityTransformation()).convert(planitNetwork, network);
+    assertArrayEquals(new long[] {2, 2}, PlanitNetworkConverter.getSize(planitNetwork));
+    assertEquals(2, network.getNodes().size());
+    assertEquals(2, network.getLinks().size());
+
+    var forward = network.getLinks().get(Id.createLinkId("ab_forward"));
+    assertEquals(Id.createNodeId("a"), forward.getFromNode().getId());
+    assertEquals(Id.createNodeId("b"), forward.getToNode().getId());
+    assertEquals(900, forward.getLength(), 1e-6);
+    assertEquals(60 / 3.6, forward.getFreespeed(), 1e-6);
+    assertEquals(2, forward.getNumberOfLanes(), 0);
+    assertEquals(2 * 900, forward.getCapacity(), 1e-6);
+    /* only cars are mapped onto a MATSim transport mode, other modes keep their PLANit name */
+    assertEquals(Set.of(TransportMode.car, "bicycle"), forward.getAllowedModes());
+    assertEquals("arterial", NetworkUtils.getType(forward));
+
+    var backward = network.getLinks().get(Id.createLinkId("ab_backward"));
+    assertEquals(Id.createNodeId("b"), backward.getFromNode().getId());
+    assertEquals(Id.createNodeId("a"), backward.getToNode().getId());
+    assertEquals(900, backward.getLength(), 1e-6);
+    assertEquals(40 / 3.6, backward.getFreespeed(), 1e-6);
+    assertEquals(1, backward.getNumberOfLanes(), 0);
+    assertEquals(600, backward.getCapacity(), 1e-6);
+    assertEquals(Set.of(TransportMode.car), backward.getAllowedModes());
+    assertEquals("local", NetworkUtils.getType(backward));
+  }
+
+  /**
+   * Node positions are transformed from the network crs of the configuration to the simulation crs, and kept as is without network crs
+   */
+  @Test
+  public void transformCrs() throws Exception {
+    Config config = ConfigUtils.createConfig();
+    config.global().setCoordinateSystem(GLOBAL_CRS);
+    config.network().setInputCRS(PLANIT_CRS);
+    Network network = NetworkUtils.createNetwork();
+    MatsimHelper.convertPlanitNetwork(config, createPlanitNetwork(), network);
+
+    CoordinateTransformation transformation = TransformationFactory.getCoordinateTransformation(PLANIT_CRS, GLOBAL_CRS);
+    Coord expected = transformation.transform(ORIGIN);
+    Coord origin = network.getNodes().get(Id.createNodeId("a")).getCoord();
+    assertEquals(expected.getX(), origin.getX(), 1e-3);
+    assertEquals(expected.getY(), origin.getY(), 1e-3);
+
+    config.network().setInputCRS(null);
+    network = NetworkUtils.createNetwork();
+    MatsimHelper.convertPlanitNetwork(config, createPlanitNetwork(), network);
+    origin = network.getNodes().get(Id.createNodeId("a")).getCoord();
+    assertEquals(ORIGIN.getX(), origin.getX(), 0);
+    assertEquals(ORIGIN.getY(), origin.getY(), 0);
+  }
+}
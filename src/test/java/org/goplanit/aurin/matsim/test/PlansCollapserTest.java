@@ -0,0 +1,155 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.goplanit.aurin.matsim.plans.PlansCollapser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleUtils;
+
+/**
+ * Test the agent groups created by the {@link PlansCollapser} on a small plans file of three distinct plans, and the vehicles created for them
+ *
+ * @author markr
+ *
+ */
+public class PlansCollapserTest {
+
+  /** maximum number of persons per group */
+  private static final int MAX_GROUP_SIZE = 3;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Add a person travelling by car from home to work
+   *
+   * @param population to add to
+   * @param id of the person
+   * @param homeEndTime end time of the home activity (s)
+   * @param workX x coordinate of the work activity
+   */
+  private static void addPerson(final Population population, final String id, double homeEndTime, double workX) {
+    Person person = population.getFactory().createPerson(Id.createPersonId(id));
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromCoord("home", new Coord(0, 0));
+    home.setEndTime(homeEndTime);
+    plan.addActivity(home);
+    plan.addLeg(population.getFactory().createLeg(TransportMode.car));
+    plan.addActivity(population.getFactory().createActivityFromCoord("work", new Coord(workX, 0)));
+    person.addPlan(plan);
+    population.addPerson(person);
+  }
+
+  /** Persist a plans file of five identical persons a, two identical persons b departing later and a single person c working elsewhere,
+   * interleaved so identical persons are not adjacent
+   *
+   * @return plans file
+   */
+  private Path writePlans() {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    addPerson(population, "a_0", 8 * 3600, 1000);
+    addPerson(population, "b_0", 9 * 3600, 1000);
+    addPerson(population, "a_1", 8 * 3600, 1000);
+    addPerson(population, "c_0", 8 * 3600, 2000);
+    addPerson(population, "a_2", 8 * 3600, 1000);
+    addPerson(population, "a_3", 8 * 3600, 1000);
+    addPerson(population, "b_1", 9 * 3600, 1000);
+    addPerson(population, "a_4", 8 * 3600, 1000);
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    new PopulationWriter(population).write(plansFile.toString());
+    return plansFile;
+  }
+
+  /** Load a collapsed plans file
+   *
+   * @param collapsedPlansFile to load
+   * @return scenario with the collapsed population
+   */
+  private static Scenario load(final Path collapsedPlansFile) {
+    Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+    new PopulationReader(scenario).readFile(collapsedPlansFile.toString());
+    return scenario;
+  }
+
+  /**
+   * Persons with identical plans are grouped regardless of their order, groups are capped at the maximum group size, each leader carries its group size
+   * and each person is mapped onto its leader in input order, also when the collapser is reused
+   */
+  @Test
+  public void collapseIdenticalPlans() throws Exception {
+    Path plansFile = writePlans();
+    var collapser = new PlansCollapser(MAX_GROUP_SIZE);
+    for(int run = 0; run < 2; ++run) {
+      Path collapsedPlansFile = tempFolder.getRoot().toPath().resolve("plans_collapsed_" + run + ".xml");
+      Path groupsFile = tempFolder.getRoot().toPath().resolve("plans_collapsed_groups_" + run + ".csv");
+      collapser.collapse(plansFile, collapsedPlansFile, groupsFile);
+      assertEquals(8, collapser.getPersonsRead());
+      assertEquals(4, collapser.getGroupsWritten());
+
+      Population collapsed = load(collapsedPlansFile).getPopulation();
+      assertTrue(PlansCollapser.hasGroups(collapsed));
+      Map<String, Integer> expectedGroupSizes = Map.of("a_0", 3, "b_0", 2, "c_0", 1, "a_3", 2);
+      assertEquals(expectedGroupSizes.size(), collapsed.getPersons().size());
+      for(Map.Entry<String, Integer> entry : expectedGroupSizes.entrySet()) {
+        Person leader = collapsed.getPersons().get(Id.createPersonId(entry.getKey()));
+        assertEquals(entry.getKey(), entry.getValue(), ((Number) leader.getAttributes().getAttribute(PlansCollapser.GROUP_SIZE_ATTRIBUTE)).intValue());
+      }
+
+      assertEquals(List.of(PlansCollapser.GROUPS_HEADER, "a_0,a_0", "b_0,b_0", "a_1,a_0", "c_0,c_0", "a_2,a_0", "a_3,a_3", "b_1,b_0", "a_4,a_3"),
+          Files.readAllLines(groupsFile));
+    }
+  }
+
+  /**
+   * Each leader drives a vehicle of a type with a passenger car equivalent of its group size, with the vehicles taken from the vehicles data,
+   * unless vehicles are already provided by the configuration
+   */
+  @Test
+  public void createGroupVehicles() throws Exception {
+    Path collapsedPlansFile = tempFolder.getRoot().toPath().resolve("plans_collapsed.xml");
+    new PlansCollapser(MAX_GROUP_SIZE).collapse(writePlans(), collapsedPlansFile, tempFolder.getRoot().toPath().resolve("plans_collapsed_groups.csv"));
+
+    Scenario scenario = load(collapsedPlansFile);
+    scenario.getConfig().qsim().setVehiclesSource(QSimConfigGroup.VehiclesSource.defaultVehicle);
+    assertTrue(PlansCollapser.createGroupVehicles(scenario));
+    assertEquals(QSimConfigGroup.VehiclesSource.fromVehiclesData, scenario.getConfig().qsim().getVehiclesSource());
+    /* one type per distinct group size */
+    assertEquals(3, scenario.getVehicles().getVehicleTypes().size());
+    for(Person leader : scenario.getPopulation().getPersons().values()) {
+      int groupSize = ((Number) leader.getAttributes().getAttribute(PlansCollapser.GROUP_SIZE_ATTRIBUTE)).intValue();
+      Id<Vehicle> vehicleId = VehicleUtils.getVehicleId(leader, TransportMode.car);
+      Vehicle vehicle = scenario.getVehicles().getVehicles().get(vehicleId);
+      assertEquals(groupSize * VehicleUtils.getDefaultVehicleType().getPcuEquivalents(), vehicle.getType().getPcuEquivalents(), 1e-9);
+      assertEquals(PlansCollapser.GROUP_VEHICLE_TYPE_PREFIX + groupSize, vehicle.getType().getId().toString());
+    }
+
+    /* configured vehicles are left as is */
+    Scenario configuredScenario = load(collapsedPlansFile);
+    configuredScenario.getConfig().qsim().setVehiclesSource(QSimConfigGroup.VehiclesSource.modeVehicleTypesFromVehiclesData);
+    assertFalse(PlansCollapser.createGroupVehicles(configuredScenario));
+    assertTrue(configuredScenario.getVehicles().getVehicles().isEmpty());
+  }
+}
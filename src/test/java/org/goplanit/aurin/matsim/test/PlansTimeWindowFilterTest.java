@@ -0,0 +1,137 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.goplanit.aurin.matsim.plans.PlansTimeWindowFilter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Test trimming of plans to a time window by the {@link PlansTimeWindowFilter}, for a window from 07:00 to 10:00
+ *
+ * @author markr
+ *
+ */
+public class PlansTimeWindowFilterTest {
+
+  /** start of the window (s) */
+  private static final double WINDOW_START = 7 * 3600;
+
+  /** end of the window (s) */
+  private static final double WINDOW_END = 10 * 3600;
+
+  /** plans of persons travelling before, within, after and into the window */
+  private static final List<String> PLANS = List.of(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+      "<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">",
+      "<population>",
+      /* travels before, within and after the window */
+      "<person id=\"day\"><plan selected=\"yes\">",
+      "<activity type=\"home\" x=\"0\" y=\"0\" end_time=\"06:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"work\" x=\"1000\" y=\"0\" end_time=\"08:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"shop\" x=\"2000\" y=\"0\" end_time=\"12:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"home\" x=\"0\" y=\"0\" />",
+      "</plan></person>",
+      /* only travels after the window */
+      "<person id=\"evening\"><plan selected=\"yes\">",
+      "<activity type=\"home\" x=\"0\" y=\"0\" end_time=\"18:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"home\" x=\"0\" y=\"0\" />",
+      "</plan></person>",
+      /* departure within the window derived from a duration */
+      "<person id=\"duration\"><plan selected=\"yes\">",
+      "<activity type=\"home\" x=\"0\" y=\"0\" max_dur=\"07:30:00\" /><leg mode=\"car\" />",
+      "<activity type=\"work\" x=\"1000\" y=\"0\" />",
+      "</plan></person>",
+      /* departs before the window and is en route when it starts */
+      "<person id=\"enroute\"><plan selected=\"yes\">",
+      "<activity type=\"home\" x=\"0\" y=\"0\" end_time=\"06:00:00\" /><leg mode=\"car\" trav_time=\"01:30:00\" />",
+      "<activity type=\"work\" x=\"1000\" y=\"0\" />",
+      "</plan></person>",
+      "</population>");
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Types of the activities of a person's selected plan
+   *
+   * @param person to collect activity types of
+   * @return types in plan order
+   */
+  private static List<String> activityTypes(final Person person) {
+    return person.getSelectedPlan().getPlanElements().stream().filter(Activity.class::isInstance).map(element -> ((Activity) element).getType())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Plans are trimmed to the legs en route during the window with their surrounding activities, persons without such legs are removed
+   */
+  @Test
+  public void trimToWindow() throws Exception {
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    Files.write(plansFile, PLANS);
+    Path filteredPlansFile = tempFolder.getRoot().toPath().resolve("plans_filtered.xml");
+
+    var filter = new PlansTimeWindowFilter(WINDOW_START, WINDOW_END);
+    filter.filter(plansFile, filteredPlansFile);
+    assertEquals(4, filter.getPersonsRead());
+    assertEquals(3, filter.getPersonsWritten());
+
+    Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+    new PopulationReader(scenario).readFile(filteredPlansFile.toString());
+    var persons = scenario.getPopulation().getPersons();
+    assertEquals(3, persons.size());
+    assertFalse(persons.containsKey(Id.createPersonId("evening")));
+
+    /* only the leg departing at 08:00 remains, between work and shop */
+    Person day = persons.get(Id.createPersonId("day"));
+    assertEquals(List.of("work", "shop"), activityTypes(day));
+    assertEquals(3, day.getSelectedPlan().getPlanElements().size());
+    assertEquals(8 * 3600, ((Activity) day.getSelectedPlan().getPlanElements().get(0)).getEndTime().seconds(), 0);
+
+    /* the departure time derived from the duration is retained as explicit end time */
+    Person duration = persons.get(Id.createPersonId("duration"));
+    assertEquals(List.of("home", "work"), activityTypes(duration));
+    assertEquals(7.5 * 3600, ((Activity) duration.getSelectedPlan().getPlanElements().get(0)).getEndTime().seconds(), 0);
+
+    /* a leg arriving within the window is kept */
+    Person enroute = persons.get(Id.createPersonId("enroute"));
+    List<PlanElement> elements = enroute.getSelectedPlan().getPlanElements();
+    assertEquals(3, elements.size());
+    assertTrue(elements.get(1) instanceof Leg);
+  }
+
+  /**
+   * An open ended window starting at midnight retains every person with its full plan
+   */
+  @Test
+  public void openWindowRetainsAll() throws Exception {
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    Files.write(plansFile, PLANS);
+    Path filteredPlansFile = tempFolder.getRoot().toPath().resolve("plans_filtered.xml");
+
+    var filter = new PlansTimeWindowFilter(0, Double.POSITIVE_INFINITY);
+    filter.filter(plansFile, filteredPlansFile);
+    assertEquals(4, filter.getPersonsWritten());
+
+    Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+    new PopulationReader(scenario).readFile(filteredPlansFile.toString());
+    assertEquals(List.of("home", "work", "shop", "home"), activityTypes(scenario.getPopulation().getPersons().get(Id.createPersonId("day"))));
+  }
+}
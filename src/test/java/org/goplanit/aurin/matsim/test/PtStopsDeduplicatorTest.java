@@ -0,0 +1,124 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.goplanit.aurin.matsim.pt.PtStopsDeduplicator;
+import org.goplanit.utils.exceptions.PlanItException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test merging of co-located pt stops by the {@link PtStopsDeduplicator} on a small stops file with known duplicates
+ *
+ * @author markr
+ *
+ */
+public class PtStopsDeduplicatorTest {
+
+  /** stops: b and f coincide with a and c respectively, c lies 5 from a, e lies 1 from d */
+  private static final List<String> STOPS = List.of(
+      "id,x,y",
+      "a,0,0",
+      "b,0,0",
+      "c,3,4",
+      "d,100,100",
+      "e,100,101",
+      "f,3,4");
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Persist the stops in a file in the temporary folder
+   *
+   * @param lines to persist
+   * @return stops file
+   * @throws Exception thrown if error
+   */
+  private Path writeStops(List<String> lines) throws Exception {
+    Path ptStopsCsv = tempFolder.getRoot().toPath().resolve("stops.csv");
+    Files.write(ptStopsCsv, lines);
+    return ptStopsCsv;
+  }
+
+  /**
+   * With a zero tolerance only stops at identical locations are merged, into the first stop at that location
+   */
+  @Test
+  public void zeroToleranceMergesIdenticalLocations() throws Exception {
+    Path ptStopsCsv = writeStops(STOPS);
+    var deduplicator = new PtStopsDeduplicator(0);
+    deduplicator.parse(ptStopsCsv);
+
+    assertEquals(6, deduplicator.getNumberOfStops());
+    assertEquals(4, deduplicator.getNumberOfRepresentatives());
+    assertTrue(deduplicator.hasDuplicates());
+    assertEquals(Map.of("a", "a", "b", "a", "c", "c", "d", "d", "e", "e", "f", "c"), deduplicator.getMapping());
+
+    Path outputDir = tempFolder.newFolder("zero").toPath();
+    Path reducedCsv = deduplicator.write(ptStopsCsv, outputDir);
+    assertEquals(outputDir.resolve("stops" + PtStopsDeduplicator.DEDUPLICATED_POSTFIX + ".csv").toAbsolutePath(), reducedCsv);
+    assertEquals(List.of("id,x,y", "a,0.0,0.0", "c,3.0,4.0", "d,100.0,100.0", "e,100.0,101.0"), Files.readAllLines(reducedCsv));
+    assertEquals(List.of(PtStopsDeduplicator.MAPPING_HEADER, "a,a", "b,a", "c,c", "d,d", "e,e", "f,c"),
+        Files.readAllLines(outputDir.resolve("stops" + PtStopsDeduplicator.MAPPING_POSTFIX + ".csv")));
+  }
+
+  /**
+   * With a positive tolerance stops within the tolerance of an earlier representative are merged into it, stops beyond it are not
+   */
+  @Test
+  public void positiveToleranceMergesNearbyStops() throws Exception {
+    Path ptStopsCsv = writeStops(STOPS);
+    var deduplicator = new PtStopsDeduplicator(6);
+    deduplicator.parse(ptStopsCsv);
+
+    assertEquals(6, deduplicator.getNumberOfStops());
+    assertEquals(2, deduplicator.getNumberOfRepresentatives());
+    assertEquals(Map.of("a", "a", "b", "a", "c", "a", "d", "d", "e", "d", "f", "a"), deduplicator.getMapping());
+
+    Path outputDir = tempFolder.newFolder("positive").toPath();
+    Path reducedCsv = deduplicator.write(ptStopsCsv, outputDir);
+    assertEquals(List.of("id,x,y", "a,0.0,0.0", "d,100.0,100.0"), Files.readAllLines(reducedCsv));
+    assertEquals(List.of(PtStopsDeduplicator.MAPPING_HEADER, "a,a", "b,a", "c,a", "d,d", "e,d", "f,a"),
+        Files.readAllLines(outputDir.resolve("stops" + PtStopsDeduplicator.MAPPING_POSTFIX + ".csv")));
+
+    /* a tolerance just below the distance between a and c keeps c apart */
+    var tightDeduplicator = new PtStopsDeduplicator(4.99);
+    tightDeduplicator.parse(ptStopsCsv);
+    assertEquals(3, tightDeduplicator.getNumberOfRepresentatives());
+    assertEquals("c", tightDeduplicator.getMapping().get("f"));
+  }
+
+  /**
+   * Stops without duplicates are reported as such, so the original file can be used as is
+   */
+  @Test
+  public void noDuplicates() throws Exception {
+    var deduplicator = new PtStopsDeduplicator(0);
+    deduplicator.parse(writeStops(List.of("id,x,y", "a,0,0", "b,1,0")));
+    assertFalse(deduplicator.hasDuplicates());
+  }
+
+  /**
+   * A stops file without the expected columns cannot be parsed
+   */
+  @Test(expected = PlanItException.class)
+  public void missingColumn() throws Exception {
+    new PtStopsDeduplicator(0).parse(writeStops(List.of("id,lon,lat", "a,0,0")));
+  }
+
+  /**
+   * A stop with missing columns cannot be parsed
+   */
+  @Test(expected = PlanItException.class)
+  public void missingValues() throws Exception {
+    new PtStopsDeduplicator(0).parse(writeStops(List.of("id,x,y", "a,0,0", "b,1")));
+  }
+}
@@ -0,0 +1,185 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+import java.nio.file.Path;
+
+import org.goplanit.aurin.matsim.estimate.RunEstimate;
+import org.goplanit.aurin.matsim.estimate.RunEstimator;
+import org.goplanit.aurin.matsim.studyarea.StudyArea;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.NetworkWriter;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+
+/**
+ * Test the entities counted by the {@link RunEstimator} and the heap it predicts from them
+ *
+ * @author markr
+ *
+ */
+public class RunEstimatorTest {
+
+  /** travel time bins per link used in the estimates */
+  private static final int TIME_BINS = 96;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Create a plan visiting the given coordinates, connected by car legs
+   *
+   * @param population to create plan with
+   * @param coords to visit, null for an activity located by its link only
+   * @return plan
+   */
+  private static Plan createPlan(final Population population, final Coord... coords) {
+    Plan plan = population.getFactory().createPlan();
+    for(Coord coord : coords) {
+      if(!plan.getPlanElements().isEmpty()) {
+        plan.addLeg(population.getFactory().createLeg(TransportMode.car));
+      }
+      Activity activity = coord == null ?
+          population.getFactory().createActivityFromLinkId("work", TestNetworks.linkId(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(1, 0))) :
+          population.getFactory().createActivityFromCoord("home", coord);
+      activity.setEndTime(8 * 3600);
+      plan.addActivity(activity);
+    }
+    return plan;
+  }
+
+  /** Add a person with the given plans, the first being selected
+   *
+   * @param population to add to
+   * @param id of the person
+   * @param plans of the person
+   * @return person
+   */
+  private static Person addPerson(final Population population, final String id, final Plan... plans) {
+    Person person = population.getFactory().createPerson(Id.createPersonId(id));
+    for(Plan plan : plans) {
+      person.addPlan(plan);
+    }
+    population.addPerson(person);
+    return person;
+  }
+
+  /** Persist a population
+   *
+   * @param population to persist
+   * @return its location
+   * @throws Exception thrown if error
+   */
+  private URL writePopulation(final Population population) throws Exception {
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    new PopulationWriter(population).write(plansFile.toString());
+    return plansFile.toUri().toURL();
+  }
+
+  /** Persist a network
+   *
+   * @param network to persist
+   * @return its location
+   * @throws Exception thrown if error
+   */
+  private URL writeNetwork(final Network network) throws Exception {
+    Path networkFile = tempFolder.getRoot().toPath().resolve("network.xml");
+    new NetworkWriter(network).write(networkFile.toString());
+    return networkFile.toUri().toURL();
+  }
+
+  /** Predicted heap of the part that does not scale with the population
+   *
+   * @param estimate to compute it for
+   * @return heap in bytes
+   */
+  private static long getFixedHeapBytes(final RunEstimate estimate) {
+    return RunEstimator.BASE_HEAP_BYTES + estimate.getNodes() * RunEstimator.BYTES_PER_NODE +
+        estimate.getLinks() * (RunEstimator.BYTES_PER_LINK + TIME_BINS * RunEstimator.BYTES_PER_LINK_TIME_BIN);
+  }
+
+  /**
+   * Plans held in memory are predicted from the selected plans times the plans memory, unless all plans of the file take more
+   */
+  @Test
+  public void selectedPlansTimesMemory() throws Exception {
+    Network network = TestNetworks.createGrid(4, 4, null);
+    URL networkUrl = writeNetwork(network);
+
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    Coord home = new Coord(500, 500);
+    Coord work = new Coord(2500, 500);
+    Person person = addPerson(population, "multiple",
+        createPlan(population, home, work), createPlan(population, home, work, home), createPlan(population, home, work));
+    person.setSelectedPlan(person.getPlans().get(1));
+    addPerson(population, "single", createPlan(population, home, work));
+    URL plansUrl = writePopulation(population);
+
+    RunEstimate estimate = RunEstimator.estimate(networkUrl, plansUrl, 1, 5, TIME_BINS);
+    assertEquals(network.getNodes().size(), estimate.getNodes());
+    assertEquals(network.getLinks().size(), estimate.getLinks());
+    assertEquals(2, estimate.getPersons());
+    assertEquals(4, estimate.getPlans());
+    assertEquals(2 + 1, estimate.getLegs());
+    assertEquals(3 + 2, estimate.getActivities());
+
+    /* five copies of the selected plans exceed the nine activities and five legs of all plans */
+    long selectedPlanBytes = 5 * RunEstimator.BYTES_PER_ACTIVITY + 3 * RunEstimator.BYTES_PER_LEG;
+    long populationBytes = 2 * RunEstimator.BYTES_PER_PERSON + 5 * selectedPlanBytes;
+    assertEquals(getFixedHeapBytes(estimate) + (long) (populationBytes * RunEstimator.POPULATION_HEAP_HEADROOM), estimate.getHeapBytes());
+
+    /* with a single plan in memory all plans of the file take more */
+    estimate = RunEstimator.estimate(networkUrl, plansUrl, 1, 1, TIME_BINS);
+    long filePlansBytes = 9 * RunEstimator.BYTES_PER_ACTIVITY + 5 * RunEstimator.BYTES_PER_LEG;
+    populationBytes = 2 * RunEstimator.BYTES_PER_PERSON + filePlansBytes;
+    assertEquals(getFixedHeapBytes(estimate) + (long) (populationBytes * RunEstimator.POPULATION_HEAP_HEADROOM), estimate.getHeapBytes());
+
+    /* the population part scales with the sample */
+    RunEstimate sampledEstimate = RunEstimator.estimate(networkUrl, plansUrl, 0.5, 1, TIME_BINS);
+    assertEquals(getFixedHeapBytes(estimate) + (long) (0.5 * populationBytes * RunEstimator.POPULATION_HEAP_HEADROOM), sampledEstimate.getHeapBytes());
+  }
+
+  /**
+   * With a study area only the nodes within it, the links between them and the persons retained by the study area cropper are counted
+   */
+  @Test
+  public void studyArea() throws Exception {
+    Network network = TestNetworks.createGrid(4, 4, null);
+    URL networkUrl = writeNetwork(network);
+    var studyArea = new StudyArea(new GeometryFactory().toGeometry(new Envelope(0, 1500, 0, 1500)));
+
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    addPerson(population, "within", createPlan(population, new Coord(500, 500), new Coord(2900, 2900)));
+    addPerson(population, "through", createPlan(population, new Coord(-1000, 750), new Coord(3000, 750)));
+    addPerson(population, "linkOnly", createPlan(population, new Coord(2900, 2900), null));
+    addPerson(population, "outside", createPlan(population, new Coord(2900, 2900), new Coord(3000, 2000)));
+    URL plansUrl = writePopulation(population);
+
+    long[] networkSize = RunEstimator.countNetwork(networkUrl, studyArea, null);
+    assertEquals(4, networkSize[0]);
+    long linksWithin = network.getLinks().values().stream().filter(
+        link -> studyArea.contains(link.getFromNode().getCoord()) && studyArea.contains(link.getToNode().getCoord())).count();
+    assertEquals(linksWithin, networkSize[1]);
+
+    RunEstimate estimate = RunEstimator.estimate(networkSize, plansUrl, studyArea, null, 1, 1, TIME_BINS);
+    assertEquals(3, estimate.getPersons());
+    assertEquals(3, estimate.getLegs());
+
+    RunEstimate fullEstimate = RunEstimator.estimate(networkUrl, plansUrl, 1, 1, TIME_BINS);
+    assertEquals(4, fullEstimate.getPersons());
+    assertEquals(network.getLinks().size(), fullEstimate.getLinks());
+  }
+}
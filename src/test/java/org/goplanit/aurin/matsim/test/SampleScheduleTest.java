@@ -0,0 +1,222 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goplanit.aurin.matsim.plans.SampleSchedule;
+import org.goplanit.aurin.matsim.plans.SampleScheduleModule;
+import org.goplanit.aurin.matsim.plans.SampledPopulation;
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.config.groups.StrategyConfigGroup;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule;
+import org.matsim.core.scenario.MutableScenario;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Test parsing of a {@link SampleSchedule}, the persons in the {@link SampledPopulation} and that only those are simulated, scored and replanned
+ *
+ * @author markr
+ *
+ */
+public class SampleScheduleTest {
+
+  /** home link of all test persons */
+  private static final Id<Link> HOME_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(1, 0));
+
+  /** link between home and work of all test persons */
+  private static final Id<Link> ROUTE_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(1, 0), TestNetworks.gridNodeId(2, 0));
+
+  /** work link of all test persons */
+  private static final Id<Link> WORK_LINK = TestNetworks.linkId(TestNetworks.gridNodeId(2, 0), TestNetworks.gridNodeId(3, 0));
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Add a routed car commuter
+   *
+   * @param population to add to
+   * @param index of the person
+   */
+  private static void addCommuter(final Population population, int index) {
+    Person person = population.getFactory().createPerson(Id.createPersonId("person_" + index));
+    Plan plan = population.getFactory().createPlan();
+    Activity home = population.getFactory().createActivityFromCoord("home", new Coord(500, 0));
+    home.setLinkId(HOME_LINK);
+    home.setEndTime(8 * 3600 + index * 60);
+    plan.addActivity(home);
+    Leg leg = population.getFactory().createLeg(TransportMode.car);
+    leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(HOME_LINK, List.of(ROUTE_LINK), WORK_LINK));
+    plan.addLeg(leg);
+    Activity work = population.getFactory().createActivityFromCoord("work", new Coord(2500, 0));
+    work.setLinkId(WORK_LINK);
+    plan.addActivity(work);
+    person.addPlan(plan);
+    population.addPerson(person);
+  }
+
+  /** Create a configuration of two iterations in which every replanned person is rerouted
+   *
+   * @param outputDir to use
+   * @return config
+   */
+  private static Config createConfig(final String outputDir) {
+    Config config = ConfigUtils.createConfig();
+    config.controler().setOutputDirectory(outputDir);
+    config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+    config.controler().setFirstIteration(0);
+    config.controler().setLastIteration(1);
+    config.controler().setWriteEventsInterval(0);
+    config.controler().setWritePlansInterval(0);
+    config.controler().setCreateGraphs(false);
+    for(String type : List.of("home", "work")) {
+      var activityParams = new PlanCalcScoreConfigGroup.ActivityParams(type);
+      activityParams.setTypicalDuration(type.equals("home") ? 16 * 3600 : 8 * 3600);
+      config.planCalcScore().addActivityParams(activityParams);
+    }
+    var reRoute = new StrategyConfigGroup.StrategySettings();
+    reRoute.setStrategyName(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute);
+    reRoute.setWeight(1);
+    config.strategy().addStrategySettings(reRoute);
+    return config;
+  }
+
+  /** Verify a schedule is rejected
+   *
+   * @param schedule to parse
+   */
+  private static void assertInvalid(final String schedule) {
+    try {
+      SampleSchedule.parse(schedule);
+      fail(String.format("expected schedule %s to be rejected", schedule));
+    }catch(IllegalArgumentException e) {
+      /* expected */
+    }
+  }
+
+  /**
+   * Each step applies from its iteration onwards, iterations before the first step use its share, invalid schedules are rejected
+   */
+  @Test
+  public void parseSchedule() {
+    SampleSchedule schedule = SampleSchedule.parse(" 0.1:5, 0.25:21,1:41 ");
+    assertEquals(0.1, schedule.getShare(0), 0);
+    assertEquals(0.1, schedule.getShare(20), 0);
+    assertEquals(0.25, schedule.getShare(21), 0);
+    assertEquals(0.25, schedule.getShare(40), 0);
+    assertEquals(1, schedule.getShare(41), 0);
+    assertEquals(1, schedule.getShare(1000), 0);
+    assertEquals(1, schedule.getFinalShare(), 0);
+
+    assertInvalid("0.1");
+    assertInvalid("0.1:0:5");
+    assertInvalid("0:0,1:10");
+    assertInvalid("0.5:0,1.5:10");
+    assertInvalid("0.5:-1");
+    assertInvalid("0.5:10,1:10");
+    assertInvalid("0.5:0,0.25:10");
+    assertInvalid("half:0");
+  }
+
+  /**
+   * The sampled population initially holds all persons, after changing the share only the sampled persons in population order, while the full
+   * population keeps all persons
+   */
+  @Test
+  public void samplePopulation() {
+    Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+    for(int index = 0; index < 1000; ++index) {
+      population.addPerson(population.getFactory().createPerson(Id.createPersonId("person_" + index)));
+    }
+    SampledPopulation sampledPopulation = new SampledPopulation(population);
+    assertEquals(1000, sampledPopulation.getPersons().size());
+
+    sampledPopulation.setShare(0.25);
+    List<Id<Person>> expected = new ArrayList<>();
+    for(Person person : population.getPersons().values()) {
+      assertEquals(HashSampler.isSampled(person.getId(), 0.25), sampledPopulation.isActive(person.getId()));
+      if(HashSampler.isSampled(person.getId(), 0.25)) {
+        expected.add(person.getId());
+      }
+    }
+    assertEquals(expected, new ArrayList<>(sampledPopulation.getPersons().keySet()));
+    assertEquals(1000, population.getPersons().size());
+    assertSame(population, sampledPopulation.getFullPopulation());
+
+    /* growing the share only adds persons */
+    sampledPopulation.setShare(0.5);
+    assertTrue(sampledPopulation.getPersons().keySet().containsAll(expected));
+    assertTrue(sampledPopulation.getPersons().size() > expected.size());
+
+    try {
+      sampledPopulation.removePerson(expected.get(0));
+      fail("expected removal from a sampled population to be rejected");
+    }catch(UnsupportedOperationException e) {
+      /* expected */
+    }
+    assertEquals(1000, population.getPersons().size());
+  }
+
+  /**
+   * Across an iteration with replanning only the active persons are simulated, scored and replanned, the plans of inactive persons are left untouched
+   * while they remain in the population
+   */
+  @Test
+  public void inactivePersonsUntouched() {
+    MutableScenario scenario = ScenarioUtils.createMutableScenario(createConfig(tempFolder.getRoot().getAbsolutePath()));
+    scenario.setNetwork(TestNetworks.createGrid(4, 4, null));
+    for(int index = 0; index < 20; ++index) {
+      addCommuter(scenario.getPopulation(), index);
+    }
+
+    var controller = new Controler(scenario);
+    controller.addOverridingModule(new SampleScheduleModule(scenario.getPopulation(), scenario.getNetwork(), SampleSchedule.parse("0.5:0,1:10"), 1, 1));
+    controller.run();
+
+    assertEquals(20, scenario.getPopulation().getPersons().size());
+    int active = 0;
+    for(Person person : scenario.getPopulation().getPersons().values()) {
+      if(HashSampler.isSampled(person.getId(), 0.5)) {
+        /* simulated and scored in both iterations, rerouted into a second plan in the second */
+        ++active;
+        assertEquals(person.getId().toString(), 2, person.getPlans().size());
+        for(Plan plan : person.getPlans()) {
+          assertNotNull(person.getId().toString(), plan.getScore());
+        }
+        continue;
+      }
+      assertEquals(person.getId().toString(), 1, person.getPlans().size());
+      Plan plan = person.getSelectedPlan();
+      assertNull(person.getId().toString(), plan.getScore());
+      NetworkRoute route = (NetworkRoute) ((Leg) plan.getPlanElements().get(1)).getRoute();
+      assertEquals(List.of(ROUTE_LINK), route.getLinkIds());
+    }
+    assertTrue(active > 0 && active < 20);
+  }
+}
@@ -0,0 +1,117 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.goplanit.aurin.matsim.sampling.HashSampler;
+import org.goplanit.aurin.matsim.snapshot.SampledSnapshotWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfo.AgentState;
+import org.matsim.vis.snapshotwriters.AgentSnapshotInfoFactory;
+import org.matsim.vis.snapshotwriters.SnapshotLinkWidthCalculator;
+
+/**
+ * Test the agents sampled and the binary format persisted by the {@link SampledSnapshotWriter}
+ *
+ * @author markr
+ *
+ */
+public class SampledSnapshotWriterTest {
+
+  /** number of agents of which positions are offered to the writer */
+  private static final int AGENTS = 200;
+
+  /** sample of the agents to persist */
+  private static final double SAMPLE = 0.5;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Id of a test agent
+   *
+   * @param index of the agent
+   * @return id
+   */
+  private static Id<Person> agentId(int index) {
+    return Id.createPersonId("agent_" + index);
+  }
+
+  /**
+   * Two snapshots are persisted with a header, each sampled agent is numbered once in order of appearance and the positions are persisted in columns,
+   * followed by the end marker
+   */
+  @Test
+  public void persistSnapshots() throws Exception {
+    Path outputFile = tempFolder.getRoot().toPath().resolve("snapshots.bin.gz");
+    var factory = new AgentSnapshotInfoFactory(new SnapshotLinkWidthCalculator());
+    var writer = new SampledSnapshotWriter(outputFile, SAMPLE, 300);
+    List<Id<Person>> expectedAgents = new ArrayList<>();
+    for(int snapshot = 0; snapshot < 2; ++snapshot) {
+      writer.beginSnapshot(snapshot * 300);
+      /* the second snapshot only holds the second half of the agents */
+      for(int index = snapshot * AGENTS / 2; index < AGENTS; ++index) {
+        AgentSnapshotInfo position = factory.createAgentSnapshotInfo(agentId(index), index, snapshot, 0, 0);
+        position.setAgentState(AgentState.PERSON_DRIVING_CAR);
+        writer.addAgent(position);
+        if(snapshot == 0 && HashSampler.isSampled(agentId(index), SAMPLE)) {
+          expectedAgents.add(agentId(index));
+        }
+      }
+      writer.endSnapshot();
+    }
+    writer.finish();
+
+    try(var in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(outputFile))))){
+      assertEquals(SampledSnapshotWriter.MAGIC, in.readInt());
+      assertEquals(SampledSnapshotWriter.VERSION, in.readInt());
+      assertEquals(SAMPLE, in.readDouble(), 0);
+      assertEquals(300, in.readDouble(), 0);
+
+      List<String> agentIds = new ArrayList<>();
+      for(int snapshot = 0; snapshot < 2; ++snapshot) {
+        assertEquals(snapshot * 300, in.readDouble(), 0);
+        int newAgents = in.readInt();
+        assertEquals(snapshot == 0 ? expectedAgents.size() : 0, newAgents);
+        for(int index = 0; index < newAgents; ++index) {
+          agentIds.add(in.readUTF());
+        }
+        int positions = in.readInt();
+        int[] agents = new int[positions];
+        for(int index = 0; index < positions; ++index) {
+          agents[index] = in.readInt();
+        }
+        for(int index = 0; index < positions; ++index) {
+          /* x coordinate is the index of the agent */
+          assertEquals(agentIds.get(agents[index]), agentId((int) in.readDouble()).toString());
+        }
+        for(int index = 0; index < positions; ++index) {
+          assertEquals(snapshot, in.readDouble(), 0);
+        }
+        for(int index = 0; index < positions; ++index) {
+          assertEquals(AgentState.PERSON_DRIVING_CAR.ordinal(), in.readByte());
+        }
+        if(snapshot == 0) {
+          assertEquals(expectedAgents.size(), positions);
+        }else {
+          assertEquals(expectedAgents.stream().filter(agentId -> Integer.parseInt(agentId.toString().substring(6)) >= AGENTS / 2).count(), positions);
+        }
+      }
+      assertEquals(expectedAgents.stream().map(Id::toString).collect(Collectors.toList()), agentIds);
+      assertTrue(Double.isNaN(in.readDouble()));
+    }
+  }
+}
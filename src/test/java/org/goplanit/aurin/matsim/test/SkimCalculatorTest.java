@@ -0,0 +1,133 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.goplanit.aurin.matsim.routing.RoutingGraph;
+import org.goplanit.aurin.matsim.skim.SkimCalculator;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+
+/**
+ * Test the travel time and distance skims of the {@link SkimCalculator} against MATSim's Dijkstra on free-flow travel times
+ *
+ * @author markr
+ *
+ */
+public class SkimCalculatorTest {
+
+  /** Create a grid with varying link lengths and speeds, and an island of two nodes that cannot be reached from the grid
+   *
+   * @return network
+   */
+  private static Network createNetwork() {
+    Network network = TestNetworks.createGrid(6, 5, 5L);
+    Node island = NetworkUtils.createAndAddNode(network, Id.createNodeId("island"), new Coord(-5000, -5000));
+    Node isolated = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(-6000, -5000));
+    TestNetworks.addLink(network, island, isolated, 1000, 10);
+    return network;
+  }
+
+  /** Zone nodes of the test: grid corners and centre, a zone sharing the centre node and the island
+   *
+   * @param network of the zones
+   * @return zone nodes
+   */
+  private static List<Node> createZoneNodes(final Network network) {
+    List<Node> zoneNodes = new ArrayList<>();
+    for(Id<Node> nodeId : List.of(TestNetworks.gridNodeId(0, 0), TestNetworks.gridNodeId(5, 0), TestNetworks.gridNodeId(2, 2),
+        TestNetworks.gridNodeId(2, 2), TestNetworks.gridNodeId(0, 4), TestNetworks.gridNodeId(5, 4), Id.createNodeId("island"))) {
+      zoneNodes.add(network.getNodes().get(nodeId));
+    }
+    return zoneNodes;
+  }
+
+  /** Calculate the skims on free-flow travel times
+   *
+   * @param graph to calculate on
+   * @param zoneNodes of the zones
+   * @param threads to use
+   * @return travel time and distance skims
+   * @throws Exception thrown if error
+   */
+  private static float[][] calculate(final RoutingGraph graph, final List<Node> zoneNodes, int threads) throws Exception {
+    int[] zoneNodeIndices = zoneNodes.stream().mapToInt(graph::getNodeIndex).toArray();
+    double[] linkTravelTimes = new double[graph.getNumberOfLinks()];
+    for(int link = 0; link < linkTravelTimes.length; ++link) {
+      linkTravelTimes[link] = graph.getFreeFlowTravelTime(link);
+    }
+    float[] travelTimes = new float[zoneNodes.size() * zoneNodes.size()];
+    float[] distances = new float[zoneNodes.size() * zoneNodes.size()];
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      new SkimCalculator(graph, zoneNodeIndices).calculate(linkTravelTimes, travelTimes, distances, executor, threads);
+    }finally {
+      executor.shutdownNow();
+    }
+    return new float[][] {travelTimes, distances};
+  }
+
+  /**
+   * Travel times and distances equal those of Dijkstra's fastest paths, zones on the same node have zero skims between them and unreachable pairs
+   * are not a number
+   */
+  @Test
+  public void sameAsDijkstra() throws Exception {
+    Network network = createNetwork();
+    List<Node> zoneNodes = createZoneNodes(network);
+    float[][] skims = calculate(new RoutingGraph(network), zoneNodes, 2);
+
+    var freeFlow = new FreespeedTravelTimeAndDisutility(ConfigUtils.createConfig().planCalcScore());
+    LeastCostPathCalculator dijkstra = new DijkstraFactory().createPathCalculator(network, freeFlow, freeFlow);
+    int zones = zoneNodes.size();
+    for(int origin = 0; origin < zones; ++origin) {
+      for(int destination = 0; destination < zones; ++destination) {
+        float travelTime = skims[0][origin * zones + destination];
+        float distance = skims[1][origin * zones + destination];
+        Path path = dijkstra.calcLeastCostPath(zoneNodes.get(origin), zoneNodes.get(destination), 0, null, null);
+        if(path == null) {
+          assertTrue(Float.isNaN(travelTime));
+          assertTrue(Float.isNaN(distance));
+          continue;
+        }
+        assertEquals(path.travelTime, travelTime, 1e-2);
+        assertEquals(path.links.stream().mapToDouble(Link::getLength).sum(), distance, 1e-1);
+      }
+    }
+    /* zones on the same node */
+    assertEquals(0, skims[0][2 * zones + 3], 0);
+    assertEquals(0, skims[1][3 * zones + 2], 0);
+    /* grid cannot reach the island and vice versa */
+    assertTrue(Float.isNaN(skims[0][6]));
+    assertTrue(Float.isNaN(skims[0][6 * zones]));
+  }
+
+  /**
+   * The skims do not depend on the number of threads
+   */
+  @Test
+  public void independentOfThreads() throws Exception {
+    Network network = createNetwork();
+    List<Node> zoneNodes = createZoneNodes(network);
+    float[][] serial = calculate(new RoutingGraph(network), zoneNodes, 1);
+    float[][] parallel = calculate(new RoutingGraph(network), zoneNodes, 3);
+    assertArrayEquals(serial[0], parallel[0], 0);
+    assertArrayEquals(serial[1], parallel[1], 0);
+  }
+}
@@ -0,0 +1,172 @@
+package org.goplanit.aurin.matsim.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.goplanit.aurin.matsim.studyarea.StudyArea;
+import org.goplanit.aurin.matsim.studyarea.StudyAreaCropper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Test cropping of a network and plans to a {@link StudyArea} by the {@link StudyAreaCropper}, on a grid of 10 by 3 nodes of which the middle four
+ * columns lie within the study area
+ *
+ * @author markr
+ *
+ */
+public class StudyAreaCropperTest {
+
+  /** study area covering grid columns 3 to 6 */
+  private static final String STUDY_AREA = "3000,-100,6000,2100";
+
+  /** plans of persons travelling through, out of, beside and on foot out of the study area */
+  private static final List<String> PLANS = List.of(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+      "<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">",
+      "<population>",
+      /* drives through the area from the west to the east */
+      "<person id=\"through\"><plan selected=\"yes\">",
+      "<activity type=\"home\" link=\"0_1-1_1\" x=\"500\" y=\"1000\" end_time=\"08:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"work\" link=\"8_1-9_1\" x=\"8500\" y=\"1000\" />",
+      "</plan></person>",
+      /* drives from within the area to the east */
+      "<person id=\"outbound\"><plan selected=\"yes\">",
+      "<activity type=\"home\" link=\"4_0-5_0\" x=\"4500\" y=\"0\" end_time=\"08:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"work\" link=\"8_0-9_0\" x=\"8500\" y=\"0\" />",
+      "</plan></person>",
+      /* drives west of the area only */
+      "<person id=\"outside\"><plan selected=\"yes\">",
+      "<activity type=\"home\" link=\"0_0-1_0\" x=\"500\" y=\"0\" end_time=\"08:00:00\" /><leg mode=\"car\" />",
+      "<activity type=\"work\" link=\"1_2-2_2\" x=\"1500\" y=\"2000\" />",
+      "</plan></person>",
+      /* walks from within the area to the east */
+      "<person id=\"walker\"><plan selected=\"yes\">",
+      "<activity type=\"home\" link=\"4_1-5_1\" x=\"4500\" y=\"1000\" end_time=\"08:00:00\" /><leg mode=\"walk\" />",
+      "<activity type=\"shop\" link=\"8_2-9_2\" x=\"8500\" y=\"2000\" />",
+      "</plan></person>",
+      "</population>");
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** Link id between two grid nodes
+   *
+   * @param fromColumn of from node
+   * @param fromRow of from node
+   * @param toColumn of to node
+   * @param toRow of to node
+   * @return link id
+   */
+  private static Id<Link> gridLinkId(int fromColumn, int fromRow, int toColumn, int toRow) {
+    return TestNetworks.linkId(TestNetworks.gridNodeId(fromColumn, fromRow), TestNetworks.gridNodeId(toColumn, toRow));
+  }
+
+  /** Crop the grid network and the test plans
+   *
+   * @param network to crop
+   * @param population to add retained persons to
+   * @return cropper after cropping
+   * @throws Exception thrown if error
+   */
+  private StudyAreaCropper crop(final Network network, final Population population) throws Exception {
+    Path plansFile = tempFolder.getRoot().toPath().resolve("plans.xml");
+    Files.write(plansFile, PLANS);
+    var cropper = new StudyAreaCropper(StudyArea.parse(STUDY_AREA, 0));
+    cropper.cropNetwork(network);
+    cropper.cropPopulation(plansFile.toUri().toURL(), population, network, null);
+    return cropper;
+  }
+
+  /**
+   * The network retains the links between nodes within the area only
+   */
+  @Test
+  public void cropNetwork() throws Exception {
+    Network network = TestNetworks.createGrid(10, 3, null);
+    crop(network, ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation());
+    /* four columns of three rows, three horizontal and two vertical link pairs each */
+    assertEquals(2 * (3 * 3 + 4 * 2), network.getLinks().size());
+    assertTrue(network.getLinks().containsKey(gridLinkId(3, 1, 4, 1)));
+    assertFalse(network.getLinks().containsKey(gridLinkId(2, 1, 3, 1)));
+  }
+
+  /**
+   * Through traffic is retained with cordon activities on the links where its route enters and leaves the area, departing when it reaches the
+   * area at free-flow speed, while persons beside the area are dropped
+   */
+  @Test
+  public void throughTrafficBecomesCordonAgent() throws Exception {
+    Network network = TestNetworks.createGrid(10, 3, null);
+    Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+    StudyAreaCropper cropper = crop(network, population);
+
+    assertEquals(4, cropper.getPersonsRead());
+    assertEquals(3, cropper.getPersonsRetained());
+    assertEquals(1, cropper.getThroughPersons());
+    assertEquals(3, cropper.getCordonActivities());
+    assertFalse(population.getPersons().containsKey(Id.createPersonId("outside")));
+
+    List<? extends PlanElement> elements = population.getPersons().get(Id.createPersonId("through")).getSelectedPlan().getPlanElements();
+    assertEquals(3, elements.size());
+    Activity entry = (Activity) elements.get(0);
+    Activity exit = (Activity) elements.get(2);
+    assertEquals("home", entry.getType());
+    assertEquals(gridLinkId(3, 1, 4, 1), entry.getLinkId());
+    assertEquals(network.getLinks().get(gridLinkId(3, 1, 4, 1)).getCoord(), entry.getCoord());
+    /* three links of 1 km at 50 km/h to reach the end of the entry link */
+    double linkTravelTime = TestNetworks.GRID_SPACING / (50 / 3.6);
+    assertEquals(8 * 3600 + 3 * linkTravelTime, entry.getEndTime().seconds(), 1e-6);
+    assertEquals("work", exit.getType());
+    assertEquals(gridLinkId(5, 1, 6, 1), exit.getLinkId());
+
+    NetworkRoute route = (NetworkRoute) ((Leg) elements.get(1)).getRoute();
+    assertEquals(gridLinkId(3, 1, 4, 1), route.getStartLinkId());
+    assertEquals(List.of(gridLinkId(4, 1, 5, 1)), route.getLinkIds());
+    assertEquals(gridLinkId(5, 1, 6, 1), route.getEndLinkId());
+  }
+
+  /**
+   * A car activity outside the area is replaced by one on the exit link, the activity within the area and the outside activity of a teleported
+   * leg remain where they are
+   */
+  @Test
+  public void outboundLegs() throws Exception {
+    Network network = TestNetworks.createGrid(10, 3, null);
+    Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+    crop(network, population);
+
+    Person outbound = population.getPersons().get(Id.createPersonId("outbound"));
+    List<? extends PlanElement> elements = outbound.getSelectedPlan().getPlanElements();
+    assertEquals(gridLinkId(4, 0, 5, 0), ((Activity) elements.get(0)).getLinkId());
+    assertEquals(8 * 3600, ((Activity) elements.get(0)).getEndTime().seconds(), 0);
+    assertEquals(gridLinkId(5, 0, 6, 0), ((Activity) elements.get(2)).getLinkId());
+    NetworkRoute route = (NetworkRoute) ((Leg) elements.get(1)).getRoute();
+    assertTrue(route.getLinkIds().isEmpty());
+    assertEquals(gridLinkId(5, 0, 6, 0), route.getEndLinkId());
+
+    Person walker = population.getPersons().get(Id.createPersonId("walker"));
+    Activity shop = (Activity) walker.getSelectedPlan().getPlanElements().get(2);
+    assertEquals(8500, shop.getCoord().getX(), 0);
+    assertEquals(2000, shop.getCoord().getY(), 0);
+    assertNull(shop.getLinkId());
+  }
+}
@@ -0,0 +1,103 @@
+package org.goplanit.aurin.matsim.test;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * Small MATSim networks for the unit tests of the wrapper's network based components
+ *
+ * @author markr
+ *
+ */
+public class TestNetworks {
+
+  /** distance between neighbouring grid nodes (m) */
+  public static final double GRID_SPACING = 1000;
+
+  /** Id of a grid node
+   *
+   * @param column of node
+   * @param row of node
+   * @return id
+   */
+  public static Id<Node> gridNodeId(int column, int row) {
+    return Id.createNodeId(column + "_" + row);
+  }
+
+  /** Id of a link between two nodes
+   *
+   * @param from node id
+   * @param to node id
+   * @return id
+   */
+  public static Id<Link> linkId(final Id<Node> from, final Id<Node> to) {
+    return Id.createLinkId(from + "-" + to);
+  }
+
+  /** Add a car link
+   *
+   * @param network to add to
+   * @param from node
+   * @param to node
+   * @param length of link (m)
+   * @param freespeed of link (m/s)
+   * @return added link
+   */
+  public static Link addLink(final Network network, final Node from, final Node to, double length, double freespeed) {
+    Link link = NetworkUtils.createAndAddLink(network, linkId(from.getId(), to.getId()), from, to, length, freespeed, 1800, 1);
+    link.setAllowedModes(Set.of(TransportMode.car));
+    return link;
+  }
+
+  /** Create a grid of nodes connected by car links in both directions between horizontal and vertical neighbours
+   *
+   * @param columns number of node columns
+   * @param rows number of node rows
+   * @param seed to vary link lengths (up to 50% beyond the spacing) and free speeds with, null for uniform links of the spacing at 50 km/h
+   * @return grid network
+   */
+  public static Network createGrid(int columns, int rows, final Long seed) {
+    Random random = seed == null ? null : new Random(seed);
+    Network network = NetworkUtils.createNetwork();
+    for(int row = 0; row < rows; ++row) {
+      for(int column = 0; column < columns; ++column) {
+        NetworkUtils.createAndAddNode(network, gridNodeId(column, row), new Coord(column * GRID_SPACING, row * GRID_SPACING));
+      }
+    }
+    for(int row = 0; row < rows; ++row) {
+      for(int column = 0; column < columns; ++column) {
+        Node node = network.getNodes().get(gridNodeId(column, row));
+        if(column + 1 < columns) {
+          addLinks(network, node, network.getNodes().get(gridNodeId(column + 1, row)), random);
+        }
+        if(row + 1 < rows) {
+          addLinks(network, node, network.getNodes().get(gridNodeId(column, row + 1)), random);
+        }
+      }
+    }
+    return network;
+  }
+
+  /** Add car links in both directions between two grid nodes
+   *
+   * @param network to add to
+   * @param first node
+   * @param second node
+   * @param random to vary the links with, null for uniform links
+   */
+  private static void addLinks(final Network network, final Node first, final Node second, final Random random) {
+    for(Node[] nodes : new Node[][] {{first, second}, {second, first}}) {
+      double length = random == null ? GRID_SPACING : GRID_SPACING * (1 + random.nextDouble() * 0.5);
+      double freespeed = random == null ? 50 / 3.6 : (30 + random.nextInt(4) * 20) / 3.6;
+      addLink(network, nodes[0], nodes[1], length, freespeed);
+    }
+  }
+}